@@ -30,12 +30,15 @@ public class ConfigManager {
     public static final String KEY_WHITELIST = "gal_whitelist";
     public static final String KEY_VERBOSE_LOG = "gal_verbose_log";
     public static final String KEY_DEBUG_HOOK_LOG = "gal_debug_hook_log";
+    public static final String KEY_DEBUG_MSG_STRUCTURE = "gal_debug_msg_structure";
+    public static final String KEY_DEBUG_MAIN_THREAD_STRICT = "gal_debug_main_thread_strict";
     
     // Context Keys
     public static final String KEY_CONTEXT_ENABLED = "gal_context_enabled";
     public static final String KEY_CONTEXT_MESSAGE_COUNT = "gal_context_message_count";
     public static final String KEY_HISTORY_THRESHOLD = "gal_history_threshold";
     public static final String KEY_AUTO_SHOW_OPTIONS = "gal_auto_show_options";
+    public static final String KEY_PREFETCH_WINDOW = "gal_prefetch_window";
     
     // Affinity Keys (好感度功能)
     public static final String KEY_AFFINITY_ENABLED = "gal_affinity_enabled";
@@ -126,10 +129,16 @@ public class ConfigManager {
     public static final int DEFAULT_CONTEXT_MESSAGE_COUNT = 15; // 从10改为15
     public static final int DEFAULT_HISTORY_THRESHOLD = 600; // 历史消息阈值（秒），默认10分钟
     public static final boolean DEFAULT_AUTO_SHOW_OPTIONS = false;
+    public static final int DEFAULT_PREFETCH_WINDOW = 3; // 自动显示时预取可见区域上下各3条消息，0为关闭
     
     // QPS Default Value
     public static final float DEFAULT_AI_QPS = 3.0f;
     public static final String KEY_AI_QPS = "gal_ai_qps";
+    // 突发容量：空闲时可以连续立即发出的请求数
+    public static final int DEFAULT_AI_BURST = 5;
+    public static final String KEY_AI_BURST = "gal_ai_burst";
+    // 按接口学习到的 QPS（JSON 对象：host+path -> qps），由限流器在 429 降速/恢复时写入
+    public static final String KEY_LEARNED_AI_QPS = "gal_learned_ai_qps";
     
     // AI Timeout Default Value (主AI超时时间)
     public static final int DEFAULT_AI_TIMEOUT = 30; // 默认30秒
@@ -183,6 +192,8 @@ public class ConfigManager {
     public static final String DEFAULT_VISION_AI_PROVIDER = PROVIDER_OPENAI;
     public static final boolean DEFAULT_CONTEXT_IMAGE_RECOGNITION_ENABLED = false; // 默认不识别上下文图片
     public static final float DEFAULT_VISION_AI_QPS = 1.0f; // 外挂AI默认速率（图片识别通常较慢，默认1 QPS）
+    public static final String KEY_VISION_AI_BURST = "gal_vision_ai_burst"; // 外挂AI突发容量
+    public static final int DEFAULT_VISION_AI_BURST = 2;
 
     /**
      * Initialize MMKV with MULTI_PROCESS_MODE for cross-process access
@@ -263,6 +274,29 @@ public class ConfigManager {
     
     public static void setDebugHookLogEnabled(boolean enabled) {
         getMmkv().encode(KEY_DEBUG_HOOK_LOG, enabled);
+        top.galqq.utils.LogHelper.invalidateSwitches();
+    }
+    
+    /**
+     * 是否输出图片/表情消息的结构分析（需同时开启调试Hook日志）
+     */
+    public static boolean isMessageStructureDebugEnabled() {
+        return getMmkv().decodeBool(KEY_DEBUG_MSG_STRUCTURE, false);
+    }
+    
+    public static void setMessageStructureDebugEnabled(boolean enabled) {
+        getMmkv().encode(KEY_DEBUG_MSG_STRUCTURE, enabled);
+    }
+    
+    /**
+     * 主线程严格模式：入口超出耗时预算时抛出异常（仅调试版生效）
+     */
+    public static boolean isMainThreadStrictModeEnabled() {
+        return getMmkv().decodeBool(KEY_DEBUG_MAIN_THREAD_STRICT, false);
+    }
+    
+    public static void setMainThreadStrictModeEnabled(boolean enabled) {
+        getMmkv().encode(KEY_DEBUG_MAIN_THREAD_STRICT, enabled);
     }
 
     // ========== String Methods ==========
@@ -587,6 +621,58 @@ public class ConfigManager {
         getMmkv().encode(KEY_AI_QPS, qps);
     }
     
+    /**
+     * 主AI突发容量（空闲时可以连续立即发出的请求数，最小1）
+     */
+    public static int getAiBurst() {
+        return Math.max(1, getMmkv().decodeInt(KEY_AI_BURST, DEFAULT_AI_BURST));
+    }
+    
+    public static void setAiBurst(int burst) {
+        getMmkv().encode(KEY_AI_BURST, burst);
+    }
+    
+    /**
+     * 获取某个接口学习到的 QPS
+     * @param endpoint 接口标识（host + path）
+     * @return 没有记录时返回 0
+     */
+    public static float getLearnedAiQps(String endpoint) {
+        String json = getMmkv().decodeString(KEY_LEARNED_AI_QPS, "");
+        if (json == null || json.isEmpty() || endpoint == null) {
+            return 0f;
+        }
+        try {
+            return (float) new org.json.JSONObject(json).optDouble(endpoint, 0);
+        } catch (Exception e) {
+            return 0f;
+        }
+    }
+    
+    /**
+     * 保存某个接口学习到的 QPS
+     * @param endpoint 接口标识（host + path）
+     * @param qps 学习到的 QPS，<= 0 时删除记录
+     */
+    public static synchronized void setLearnedAiQps(String endpoint, float qps) {
+        if (endpoint == null) {
+            return;
+        }
+        try {
+            String json = getMmkv().decodeString(KEY_LEARNED_AI_QPS, "");
+            org.json.JSONObject obj = (json == null || json.isEmpty())
+                    ? new org.json.JSONObject() : new org.json.JSONObject(json);
+            if (qps > 0) {
+                obj.put(endpoint, (double) qps);
+            } else {
+                obj.remove(endpoint);
+            }
+            getMmkv().encode(KEY_LEARNED_AI_QPS, obj.toString());
+        } catch (Exception e) {
+            android.util.Log.e("GalQQ.ConfigManager", "Failed to save learned QPS", e);
+        }
+    }
+    
     /**
      * 获取主AI请求超时时间（秒）
      * @return 超时时间
@@ -863,6 +949,18 @@ public class ConfigManager {
     public static void setAutoShowOptionsEnabled(boolean enabled) {
         getMmkv().encode(KEY_AUTO_SHOW_OPTIONS, enabled);
     }
+    
+    /**
+     * 预取窗口：自动显示模式下提前为可见区域上下各多少条消息生成选项（0-10，0为关闭）
+     */
+    public static int getPrefetchWindow() {
+        int window = getMmkv().decodeInt(KEY_PREFETCH_WINDOW, DEFAULT_PREFETCH_WINDOW);
+        return Math.max(0, Math.min(10, window));
+    }
+    
+    public static void setPrefetchWindow(int window) {
+        getMmkv().encode(KEY_PREFETCH_WINDOW, window);
+    }
 
     // ========== Affinity Methods (好感度功能) ==========
     
@@ -1541,4 +1639,11 @@ public class ConfigManager {
     public static void setVisionAiQps(float qps) {
         getMmkv().encode(KEY_VISION_AI_QPS, qps);
     }
+    
+    /**
+     * 获取外挂AI突发容量（最小1）
+     */
+    public static int getVisionAiBurst() {
+        return Math.max(1, getMmkv().decodeInt(KEY_VISION_AI_BURST, DEFAULT_VISION_AI_BURST));
+    }
 }
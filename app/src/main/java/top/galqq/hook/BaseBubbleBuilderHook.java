@@ -24,6 +24,7 @@ import java.util.List;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
+import top.galqq.utils.MainThreadWatchdog;
 import top.galqq.utils.QQNTUtils;
 
 /**
@@ -177,11 +178,14 @@ public class BaseBubbleBuilderHook {
                         
                         // 调用所有装饰器
                         for (OnBubbleBuilder decorator : decorators) {
+                            long watchdogToken = MainThreadWatchdog.begin("Decorator.onGetView");
                             try {
                                 decorator.onGetView(rootView, chatMessage, param);
                             } catch (Exception e) {
                                 // 异常隔离 - 一个装饰器出错不影响其他装饰器
                                 XposedBridge.log(TAG + ": Decorator error in onGetView: " + e.getMessage());
+                            } finally {
+                                MainThreadWatchdog.end(watchdogToken);
                             }
                         }
                         
@@ -252,11 +256,14 @@ public class BaseBubbleBuilderHook {
                         
                         // 调用所有装饰器
                         for (OnBubbleBuilder decorator : decorators) {
+                            long watchdogToken = MainThreadWatchdog.begin("Decorator.onGetViewNt");
                             try {
                                 decorator.onGetViewNt(rootView, msgRecord, param);
                             } catch (Exception e) {
                                 // 异常隔离
                                 XposedBridge.log(TAG + ": Decorator error in onGetViewNt: " + e.getMessage());
+                            } finally {
+                                MainThreadWatchdog.end(watchdogToken);
                             }
                         }
                         
@@ -324,11 +331,14 @@ public class BaseBubbleBuilderHook {
                         
                         // 调用所有装饰器
                         for (OnBubbleBuilder decorator : decorators) {
+                            long watchdogToken = MainThreadWatchdog.begin("Decorator.onGetViewNt");
                             try {
                                 decorator.onGetViewNt(rootView, msgRecord, param);
                             } catch (Exception e) {
                                 // 异常隔离
                                 XposedBridge.log(TAG + ": Decorator error in onGetViewNt: " + e.getMessage());
+                            } finally {
+                                MainThreadWatchdog.end(watchdogToken);
                             }
                         }
                         
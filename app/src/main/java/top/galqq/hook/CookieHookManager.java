@@ -79,6 +79,9 @@ public class CookieHookManager {
         // 方法3: Hook getCurrentAccountUin
         if (hookGetCurrentAccountUin(classLoader)) successCount++;
         
+        // 切换账号/退出登录时使账号会话失效（不计入票据Hook数）
+        hookAccountSwitch(classLoader);
+        
         // 方法4: Hook WtloginHelper回调 (QQNT 8.9.58+)
         // 新版QQNT把票据移到native层，需要通过回调获取
         if (hookWtloginHelperCallback(classLoader)) successCount++;
@@ -591,6 +594,8 @@ public class CookieHookManager {
                             if (result instanceof String) {
                                 String uin = (String) result;
                                 if (uin != null && !uin.isEmpty()) {
+                                    // 账号会话：UIN 变化时切换账号分区
+                                    top.galqq.utils.AccountSession.onUinObserved(uin);
                                     boolean isNew = sCachedUin == null || !sCachedUin.equals(uin);
                                     sCachedUin = uin;
                                     sLastUpdateTime = System.currentTimeMillis();
@@ -616,6 +621,36 @@ public class CookieHookManager {
     }
 
 
+    /**
+     * Hook 切换账号/退出登录，使 AccountSession 缓存的账号失效
+     */
+    private static void hookAccountSwitch(ClassLoader classLoader) {
+        XC_MethodHook invalidateHook = new XC_MethodHook() {
+            @Override
+            protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                top.galqq.utils.AccountSession.invalidate();
+            }
+        };
+        String[][] targets = {
+            {"mqq.app.AppRuntime", "switchAccount"},
+            {"mqq.app.AppRuntime", "logout"},
+            {"mqq.app.MobileQQ", "createNewRuntime"}
+        };
+        int hooked = 0;
+        for (String[] target : targets) {
+            try {
+                Class<?> clazz = XposedHelpers.findClassIfExists(target[0], classLoader);
+                if (clazz != null) {
+                    hooked += XposedBridge.hookAllMethods(clazz, target[1], invalidateHook).size();
+                }
+            } catch (Throwable t) {
+                // 继续尝试下一个
+            }
+        }
+        debugLog(TAG + ": [AccountSwitch] Hook " + hooked + " 个方法");
+    }
+
+
     // ==================== 缓存读取方法 ====================
     
     public static String getCachedSkey() {
@@ -32,59 +32,10 @@ public class MessageInterceptor {
     private static final String TAG = "GalQQ.MessageInterceptor";
     private static final int OPTION_BAR_ID = 0x7F0A1234; // Custom ID for option bar
     
-    /**
-     * 调试日志输出（受 gal_debug_hook_log 配置开关控制）
-     */
-    private static void debugLog(String message) {
-        try {
-            if (ConfigManager.isDebugHookLogEnabled()) {
-                XposedBridge.log(message);
-            }
-        } catch (Throwable ignored) {
-            // ConfigManager 未初始化时忽略
-        }
-    }
-    
-    /**
-     * 调试日志输出异常（受 gal_debug_hook_log 配置开关控制）
-     */
-    private static void debugLog(Throwable t) {
-        try {
-            if (ConfigManager.isDebugHookLogEnabled()) {
-                XposedBridge.log(t);
-            }
-        } catch (Throwable ignored) {
-            // ConfigManager 未初始化时忽略
-        }
-    }
-    
-    /**
-     * 调试日志输出异常（受 gal_debug_hook_log 配置开关控制）
-     */
-    private static void debugLog(Exception e) {
-        try {
-            if (ConfigManager.isDebugHookLogEnabled()) {
-                XposedBridge.log(e);
-            }
-        } catch (Throwable ignored) {
-            // ConfigManager 未初始化时忽略
-        }
-    }
-    
-    // AI选项缓存：msgId -> List<String> options
-    private static final java.util.Map<String, java.util.List<String>> optionsCache = 
-        new java.util.LinkedHashMap<String, java.util.List<String>>(100, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(java.util.Map.Entry<String, java.util.List<String>> eldest) {
-                return size() > 100; // 最多缓存100条消息的选项
-            }
-        };
-
-    // 记录已请求显示选项的消息ID，防止View复用时重置回按钮状态
-    private static final java.util.Set<String> requestedOptionsMsgIds = java.util.Collections.synchronizedSet(new java.util.HashSet<>());
+    // 调试日志（受 gal_debug_hook_log 配置开关控制，消息自带 TAG）
+    private static final top.galqq.utils.LogHelper.Logger LOG = top.galqq.utils.LogHelper.hookLogger(null);
     
-    // 记录已收起的消息ID，用于区分「显示选项」和「展开选项」按钮
-    private static final java.util.Set<String> collapsedMsgIds = java.util.Collections.synchronizedSet(new java.util.HashSet<>());
+    // AI选项缓存、「已请求显示选项」和「已收起」状态统一由 MessageUiStateStore 按 long msgId 管理（有界、线程安全）
     
     // 好感度缓存: senderUin -> affinity，用于View复用时快速获取
     // 这个缓存与 AffinityManager 的缓存不同，这里是为了解决 View 复用时的显示问题
@@ -96,6 +47,29 @@ public class MessageInterceptor {
             }
         });
     
+    // 【后台流水线】绑定代号的 View Tag key，ViewHolder 被复用后据此丢弃过期的后台结果
+    private static final int BIND_GENERATION_TAG = 0x7F0A1235;
+    private static final java.util.concurrent.atomic.AtomicLong bindGenerationCounter = new java.util.concurrent.atomic.AtomicLong();
+    private static final android.os.Handler mainHandler = new android.os.Handler(android.os.Looper.getMainLooper());
+    private static volatile android.os.Handler bindWorkerHandler;
+    
+    // 【旧版快速路径】旧版选项条当前显示的消息（uniseq），同一条消息重复 getView 时不重建
+    private static final int LEGACY_MSG_TAG = 0x7F0A123A;
+    
+    // 【颜色常量】绑定路径上不再每次解析颜色字符串
+    private static final int COLOR_HINT = 0xFF999999; // 浅灰：加载中、输入提示
+    private static final int COLOR_TEXT = 0xFF333333; // 深灰：标题、正文
+    private static final int COLOR_BUTTON_TEXT = 0xFF666666; // 操作按钮文字
+    private static final int COLOR_BUTTON_BG = 0xFFF5F5F5; // 操作按钮背景
+    private static final int COLOR_OPTION_BG = 0xFFF2F2F2; // 选项背景
+    private static final int COLOR_BORDER = 0xFFE0E0E0; // 边框
+    private static final int COLOR_ERROR_BG = 0xFFFFEBEE; // 浅红：错误状态背景
+    private static final int COLOR_ERROR_TEXT = 0xFFD32F2F; // 错误状态文字
+    private static final int COLOR_REPLY_BG = 0xFFE3F2FD; // 引用发送按钮背景
+    private static final int COLOR_REPLY_TEXT = 0xFF1976D2; // 引用发送按钮文字
+    private static final int COLOR_ACCENT = 0xFF4A90D9; // 对话框主按钮
+    private static final int COLOR_OVERLAY = 0x80000000; // 半透明黑色遮罩
+    
     /**
      * 清空好感度显示缓存
      * 当用户修改计算模型时需要调用此方法，以便重新计算好感度
@@ -104,23 +78,31 @@ public class MessageInterceptor {
         affinityDisplayCache.clear();
         XposedBridge.log(TAG + ": 好感度显示缓存已清空");
     }
+    
+    /**
+     * 账号切换（任意线程）：清空上一个账号的好感度显示缓存和预取中的消息
+     */
+    public static void onAccountChanged() {
+        affinityDisplayCache.clear();
+        mainHandler.post(prefetchingMsgIds::clear);
+    }
 
     public static void init(ClassLoader classLoader) {
         // Detect QQ architecture and use appropriate hook strategy
         if (top.galqq.utils.QQNTUtils.isQQNT(classLoader)) {
-            debugLog(TAG + ": Detected QQNT, using QQNT hook strategy");
+            LOG.d(TAG + ": Detected QQNT, using QQNT hook strategy");
             hookAIOBubbleMsgItemVB(classLoader);  // QQNT architecture
             
             // 【DEBUG】Hook AIOSendMsgVMDelegate to analyze message structure
             hookDebugAIOSendMsgVMDelegate(classLoader);
         } else {
-            debugLog(TAG + ": Detected legacy QQ, using TextItemBuilder hook strategy");
+            LOG.d(TAG + ": Detected legacy QQ, using TextItemBuilder hook strategy");
             hookTextItemBuilder(classLoader);      // Legacy QQ architecture
         }
     }
     
     // 标记好感度管理器是否已初始化
-    private static boolean sAffinityManagerInitialized = false;
+    private static volatile boolean sAffinityManagerInitialized = false;
     
     /**
      * 初始化好感度管理器（需要在有 Context 时调用）
@@ -133,25 +115,25 @@ public class MessageInterceptor {
         
         if (ConfigManager.isAffinityEnabled()) {
             try {
-                debugLog(TAG + ": [Affinity] 开始初始化好感度管理器...");
+                LOG.d(TAG + ": [Affinity] 开始初始化好感度管理器...");
                 top.galqq.utils.AffinityManager affinityManager = 
                     top.galqq.utils.AffinityManager.getInstance(context);
                 // 强制刷新数据
                 affinityManager.refreshData(true, new top.galqq.utils.AffinityManager.RefreshCallback() {
                     @Override
                     public void onSuccess() {
-                        debugLog(TAG + ": [Affinity] ✓ 好感度数据刷新成功");
+                        LOG.d(TAG + ": [Affinity] ✓ 好感度数据刷新成功");
                     }
                     
                     @Override
                     public void onFailure(Exception e) {
-                        debugLog(TAG + ": [Affinity] ✗ 好感度数据刷新失败: " + e.getMessage());
+                        LOG.d(TAG + ": [Affinity] ✗ 好感度数据刷新失败: {}", e.getMessage());
                     }
                 });
                 sAffinityManagerInitialized = true;
-                debugLog(TAG + ": [Affinity] 好感度管理器初始化完成");
+                LOG.d(TAG + ": [Affinity] 好感度管理器初始化完成");
             } catch (Throwable t) {
-                debugLog(TAG + ": [Affinity] 初始化失败: " + t.getMessage());
+                LOG.d(TAG + ": [Affinity] 初始化失败: {}", t.getMessage());
             }
         }
     }
@@ -166,11 +148,11 @@ public class MessageInterceptor {
             );
             
             if (textItemBuilderClass == null) {
-                debugLog(TAG + ": TextItemBuilder class not found, skipping hook");
+                LOG.d(TAG + ": TextItemBuilder class not found, skipping hook");
                 return;
             }
             
-            debugLog(TAG + ": Found TextItemBuilder class: " + textItemBuilderClass.getName());
+            LOG.d(TAG + ": Found TextItemBuilder class: {}", textItemBuilderClass.getName());
             
             // Find the target method
             Method targetMethod = null;
@@ -195,16 +177,18 @@ public class MessageInterceptor {
             }
 
             if (targetMethod == null) {
-                debugLog(TAG + ": Failed to find target method in TextItemBuilder");
+                LOG.d(TAG + ": Failed to find target method in TextItemBuilder");
                 return;
             }
             
-            debugLog(TAG + ": Found target method: " + methodName);
+            LOG.d(TAG + ": Found target method: {}", methodName);
             
             // Hook the method using QQ's approach (modify BaseChatItemLayout directly)
             XposedBridge.hookMethod(targetMethod, new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) throws Throwable {
+                    long watchdogToken = top.galqq.utils.MainThreadWatchdog.begin("Legacy.getView",
+                        top.galqq.utils.BindTimingStats.BIND_BUDGET_NS);
                     try {
                         Object chatMessage = param.args[0];
                         RelativeLayout baseChatItemLayout = (RelativeLayout) param.args[3];
@@ -216,77 +200,123 @@ public class MessageInterceptor {
                         
                         if (!ConfigManager.isModuleEnabled()) return;
 
-                        boolean isSend = XposedHelpers.getBooleanField(chatMessage, "isSend");
-                        if (isSend) return;
+                        // 【旧版快速路径】字段句柄按类缓存，一次读取
+                        top.galqq.utils.LegacyChatMessageAccessor.Fields fields =
+                            top.galqq.utils.LegacyChatMessageAccessor.read(chatMessage);
+                        if (fields == null || fields.isSend) return;
                         
-                        // 如果选项条已存在，总是更新内容（解决视图复用导致的内容混乱）
-                        if (baseChatItemLayout.findViewById(OPTION_BAR_ID) != null) {
-                            LinearLayout existingBar = baseChatItemLayout.findViewById(OPTION_BAR_ID);
-                            existingBar.removeAllViews();
-                            String msgContent = (String) XposedHelpers.getObjectField(chatMessage, "msg");
-                            setupOptionBarContent(context, existingBar, msgContent, chatMessage, null, null);
-                            return;
+                        // 选项条插入时记录在 Tag 上，O(1) 取回，不再 findViewById 遍历
+                        View inserted = top.galqq.utils.BubbleLayoutStrategy.getInserted(
+                            baseChatItemLayout, top.galqq.utils.BubbleLayoutStrategy.TAG_INSERTED_OPTION_BAR);
+                        LinearLayout optionBar = inserted instanceof LinearLayout ? (LinearLayout) inserted : null;
+                        if (optionBar != null && fields.msgId != null
+                                && fields.msgId.equals(optionBar.getTag(LEGACY_MSG_TAG))) {
+                            return; // 同一条消息重复 getView，选项条内容仍然有效
                         }
                         
-                        LinearLayout optionBar = createOptionBar(context, chatMessage);
-                        optionBar.setId(OPTION_BAR_ID);
-                        
-                        // 获取屏幕宽度
-                        int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
-                        int barWidth = screenWidth - dp2px(context, 24); // 左8+右16=24dp
-                        
-                        debugLog(TAG + ": Screen width=" + screenWidth + ", bar width=" + barWidth);
+                        if (optionBar == null) {
+                            optionBar = top.galqq.utils.OptionBarViewPool.obtainLinearLayout(context, LinearLayout.VERTICAL);
+                            optionBar.setId(OPTION_BAR_ID);
+                            optionBar.setGravity(Gravity.LEFT);
+                            
+                            // 获取屏幕宽度
+                            int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
+                            int barWidth = screenWidth - dp2px(context, 24); // 左8+右16=24dp
+                            
+                            RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(
+                                barWidth, // 使用计算出的具体宽度
+                                ViewGroup.LayoutParams.WRAP_CONTENT
+                            );
+                            params.addRule(RelativeLayout.ALIGN_PARENT_LEFT);
+                            params.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
+                            params.leftMargin = dp2px(context, 8);  // 左边距8dp
+                            params.rightMargin = dp2px(context, 16); // 右边距16dp（冗余但保留）
+                            params.bottomMargin = dp2px(context, 5);
+                            
+                            baseChatItemLayout.addView(optionBar, params);
+                            top.galqq.utils.BubbleLayoutStrategy.rememberInserted(
+                                baseChatItemLayout, top.galqq.utils.BubbleLayoutStrategy.TAG_INSERTED_OPTION_BAR, optionBar);
+                            LOG.d(TAG + ": Successfully added option bar to BaseChatItemLayout");
+                        }
                         
-                        RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(
-                            barWidth, // 使用计算出的具体宽度
-                            ViewGroup.LayoutParams.WRAP_CONTENT
-                        );
-                        params.addRule(RelativeLayout.ALIGN_PARENT_LEFT);
-                        params.addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
-                        params.leftMargin = dp2px(context, 8);  // 左边距8dp
-                        params.rightMargin = dp2px(context, 16); // 右边距16dp（冗余但保留）
-                        params.bottomMargin = dp2px(context, 5);
+                        // 视图复用到另一条消息：清空旧内容
+                        optionBar.setTag(LEGACY_MSG_TAG, fields.msgId);
+                        top.galqq.utils.OptionBarViewPool.recycleChildren(optionBar);
+                        optionBar.setPadding(0, dp2px(context, 5), 0, dp2px(context, 5));
                         
-                        baseChatItemLayout.addView(optionBar, params);
+                        // 已生成过选项：直接显示
+                        List<String> cachedOptions = ConfigManager.isAiEnabled() ? getCachedOptions(fields.msgId, chatMessage) : null;
+                        if (cachedOptions != null) {
+                            optionBar.setVisibility(View.VISIBLE);
+                            populateBarAndShow(context, optionBar, cachedOptions, chatMessage);
+                            return;
+                        }
                         
-                        debugLog(TAG + ": Successfully added option bar to BaseChatItemLayout");
+                        // 选项加载（AI 请求）在列表静止后执行，与 NT 路径一致
+                        final LinearLayout bar = optionBar;
+                        top.galqq.utils.ChatEnvironment.of(baseChatItemLayout).runWhenIdle(
+                            baseChatItemLayout, top.galqq.utils.ChatEnvironment.TASK_REQUEST,
+                            () -> setupOptionBarContent(context, bar, fields.msg, chatMessage, fields.msgId, fields.conversationId));
                         
                     } catch (Throwable t) {
-                        debugLog(TAG + ": Error in afterHook: " + t.getMessage());
+                        LOG.d(TAG + ": Error in afterHook: {}", t.getMessage());
+                    } finally {
+                        top.galqq.utils.MainThreadWatchdog.end(watchdogToken);
                     }
                 }
             });
             
-            debugLog(TAG + ": ✓ Successfully hooked TextItemBuilder." + methodName);
+            LOG.d(TAG + ": ✓ Successfully hooked TextItemBuilder.{}", methodName);
             
         } catch (Throwable t) {
-            debugLog(TAG + ": Failed to hook TextItemBuilder: " + t.getMessage());
+            LOG.d(TAG + ": Failed to hook TextItemBuilder: {}", t.getMessage());
         }
     }
 
-    private static LinearLayout createOptionBar(Context context, Object chatMessage) {
-        LinearLayout bar = new LinearLayout(context);
-        bar.setOrientation(LinearLayout.VERTICAL);
-        bar.setGravity(Gravity.LEFT);
-        bar.setPadding(0, dp2px(context, 5), 0, dp2px(context, 5));
-        
-        String msgContent = (String) XposedHelpers.getObjectField(chatMessage, "msg");
-        setupOptionBarContent(context, bar, msgContent, chatMessage, null, null);
-        return bar;
-    }
-    
-    private static void updateOptionBar(Context context, LinearLayout bar, Object chatMessage) {
-        String msgContent = (String) XposedHelpers.getObjectField(chatMessage, "msg");
-        bar.removeAllViews();
-        setupOptionBarContent(context, bar, msgContent, chatMessage, null, null);
-    }
-
     // 公开缓存方法供队列恢复时使用
     public static void cacheOptions(String msgId, List<String> options) {
+        cacheOptions(msgId, options, 0L);
+    }
+
+    /**
+     * 缓存AI选项
+     * @param promptFingerprint 生成选项时的提示词/模型指纹（未知为 0）
+     */
+    public static void cacheOptions(String msgId, List<String> options, long promptFingerprint) {
         if (msgId != null && options != null) {
-            optionsCache.put(msgId, new java.util.ArrayList<>(options));
-            // debugLog(TAG + ": Cached AI options for msgId=" + msgId);
+            long stateKey = top.galqq.utils.MessageUiStateStore.keyOf(msgId);
+            top.galqq.utils.MessageUiStateStore.putOptions(stateKey, options, promptFingerprint);
+            // 【持久化】指纹已知时异步写入磁盘，QQ 重启后无需重新请求
+            top.galqq.utils.OptionsDiskStore.put(stateKey, promptFingerprint, options);
+            // LOG.d(TAG + ": Cached AI options for msgId=" + msgId);
+        }
+    }
+
+    /**
+     * 获取当前提示词/模型下生成的缓存选项，提示词或模型修改后旧选项按未命中处理
+     * 发送者/会话的读取方式与 {@link #setupOptionBarContentWithRoot} 请求时一致
+     */
+    private static List<String> getCachedOptions(String msgId, Object msgObj) {
+        if (msgId == null) {
+            return null;
+        }
+        long stateKey = top.galqq.utils.MessageUiStateStore.keyOf(msgId);
+        // 内存中没有选项时不需要解析提示词列表
+        if (!top.galqq.utils.MessageUiStateStore.hasOptions(stateKey, 0L)) {
+            return null;
         }
+        top.galqq.utils.MsgRecordAccessor.MsgFields fields = top.galqq.utils.MsgRecordAccessor.read(msgObj);
+        String senderQQ = fields != null && !"null".equals(fields.senderUin) ? fields.senderUin : null;
+        String peerUin = fields != null && !"null".equals(fields.peerUin) ? fields.peerUin : null;
+        return top.galqq.utils.MessageUiStateStore.getOptions(stateKey, currentPromptFingerprint(senderQQ, peerUin));
+    }
+    
+    /**
+     * 是否有当前提示词/模型下生成的缓存选项（同 {@link #getCachedOptions}，只在有选项时计算当前指纹）
+     */
+    private static boolean hasCurrentOptions(long stateKey, String senderUin, String peerUin) {
+        return top.galqq.utils.MessageUiStateStore.hasOptions(stateKey, 0L)
+            && top.galqq.utils.MessageUiStateStore.hasOptions(stateKey, currentPromptFingerprint(senderUin, peerUin));
     }
 
     private static void setupOptionBarContent(Context context, LinearLayout bar, String msgContent, 
@@ -297,50 +327,41 @@ public class MessageInterceptor {
     
     private static void setupOptionBarContentWithRoot(Context context, LinearLayout bar, String msgContent, 
                                                Object msgObj, String msgId, String conversationId, ViewGroup rootView) {
-        // 提取senderQQ和peerUin，用于群聊过滤
-        String senderQQ = null;
-        String peerUin = null;
-        try {
-            Object senderUinObj = XposedHelpers.getObjectField(msgObj, "senderUin");
-            if (senderUinObj != null) {
-                senderQQ = String.valueOf(senderUinObj);
-            }
-            Object peerUinObj = XposedHelpers.getObjectField(msgObj, "peerUin");
-            if (peerUinObj != null) {
-                peerUin = String.valueOf(peerUinObj);
-            }
-        } catch (Throwable t) {
-            debugLog(TAG + ": Failed to extract sender/peer info for pre-check: " + t.getMessage());
-        }
+        // 提取senderQQ和peerUin，用于群聊过滤（一次性读取 MsgRecord 字段）
+        top.galqq.utils.MsgRecordAccessor.MsgFields fields = top.galqq.utils.MsgRecordAccessor.read(msgObj);
+        String senderQQ = fields != null && !"null".equals(fields.senderUin) ? fields.senderUin : null;
+        String peerUin = fields != null && !"null".equals(fields.peerUin) ? fields.peerUin : null;
         
         // 群聊选项显示控制：在方法开头就检查，避免显示"加载中"后再隐藏
         boolean isGroupChat = peerUin != null && senderQQ != null && !peerUin.equals(senderQQ);
         if (isGroupChat) {
             // 检查是否关闭群聊选项显示
             if (ConfigManager.isDisableGroupOptions()) {
-                debugLog(TAG + ": Group options disabled, hiding option bar for group: " + peerUin);
+                LOG.d(TAG + ": Group options disabled, hiding option bar for group: {}", peerUin);
                 bar.setVisibility(View.GONE);
                 return;
             }
             
             // 检查群是否通过过滤（基于群黑白名单和群过滤模式）
             if (!ConfigManager.isGroupPassFilter(peerUin)) {
-                debugLog(TAG + ": Group " + peerUin + " filtered out, hiding option bar");
+                LOG.d(TAG + ": Group {} filtered out, hiding option bar", peerUin);
                 bar.setVisibility(View.GONE);
                 return;
             }
         }
         
         if (ConfigManager.isAiEnabled()) {
+            // 绑定本次请求，选项条被回收复用后过期的回调不再修改它
+            final int ownerToken = top.galqq.utils.OptionBarViewPool.bindOwner(bar);
+            
             // 添加加载指示器 (Loading Text)
-            bar.removeAllViews();
+            top.galqq.utils.OptionBarViewPool.recycleChildren(bar);
             // 加载时减少顶部间距，使其更贴近消息
             bar.setPadding(0, 0, 0, dp2px(context, 5));
             
             TextView tvLoading = new TextView(context);
-            tvLoading.setText("加载中");
             tvLoading.setTextSize(12); // 小字体
-            tvLoading.setTextColor(Color.parseColor("#999999")); // 浅灰色
+            tvLoading.setTextColor(COLOR_HINT); // 浅灰色
             
             LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
                 ViewGroup.LayoutParams.WRAP_CONTENT, 
@@ -353,30 +374,8 @@ public class MessageInterceptor {
             bar.addView(tvLoading);
             bar.setVisibility(View.VISIBLE);
 
-            // 启动呼吸动画 "..." (变长变短)
-            final android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
-            final Runnable animator = new Runnable() {
-                int count = 0;
-                @Override
-                public void run() {
-                    // 检查View是否还在显示，如果已被移除或隐藏则停止动画
-                    if (tvLoading.getParent() == null || bar.getVisibility() != View.VISIBLE) {
-                        return;
-                    }
-                    
-                    StringBuilder sb = new StringBuilder("加载中");
-                    // 动画逻辑：0->1->2->3->2->1->0 (循环)
-                    int phase = count % 6;
-                    int dots = phase <= 3 ? phase : 6 - phase;
-                    
-                    for (int i = 0; i < dots; i++) sb.append(".");
-                    tvLoading.setText(sb.toString());
-                    
-                    count++;
-                    handler.postDelayed(this, 400); // 400ms刷新一次
-                }
-            };
-            handler.postDelayed(animator, 400);
+            // 启动呼吸动画 "..." (变长变短)，所有选项条共用一个帧回调
+            top.galqq.utils.LoadingAnimator.start(tvLoading, "加载中");
             
             // 获取上下文消息（如果启用）
             List<MessageContextManager.ChatMessage> contextMessages = null;
@@ -388,40 +387,11 @@ public class MessageInterceptor {
                 
                 if (autoShow) {
                     // 启用自动显示时，从缓存的上下文管理器获取（已通过拦截缓存）
-                    debugLog(TAG + ": [AUTO_SHOW] 从上下文管理器缓存获取消息");
-                    // 多获取一条，以便如果最后一条是当前消息时移除
-                    contextMessages = MessageContextManager.getContext(conversationId, contextCount + 1);
-                    
-                    // 去除当前消息（如果它已经被存入上下文）
-                    if (!contextMessages.isEmpty()) {
-                        MessageContextManager.ChatMessage lastMsg = contextMessages.get(contextMessages.size() - 1);
-                        // 通过msgId判断（如果msgId不为空）
-                        boolean isSameMsg = false;
-                        if (msgId != null && lastMsg.msgId != null) {
-                            if (msgId.equals(lastMsg.msgId)) {
-                                isSameMsg = true;
-                            }
-                        } else {
-                            // 降级：通过内容和时间戳判断（防止重复）
-                            // 如果内容相同且时间差在1秒内
-                            if (msgContent.equals(lastMsg.content) && 
-                                Math.abs(System.currentTimeMillis() - lastMsg.timestamp) < 1000) {
-                                isSameMsg = true;
-                            }
-                        }
-                        
-                        if (isSameMsg) {
-                            contextMessages.remove(contextMessages.size() - 1);
-                        }
-                    }
-                    
-                    // 确保数量不超过配置
-                    if (contextMessages.size() > contextCount) {
-                        contextMessages = contextMessages.subList(contextMessages.size() - contextCount, contextMessages.size());
-                    }
+                    LOG.d(TAG + ": [AUTO_SHOW] 从上下文管理器缓存获取消息");
+                    contextMessages = getCachedContextMessages(conversationId, msgId, msgContent, contextCount);
                 } else {
                     // 未启用自动显示时，从内存缓存获取（如果有的话）
-                    debugLog(TAG + ": [ON_DEMAND] 从内存缓存获取上下文");
+                    LOG.d(TAG + ": [ON_DEMAND] 从内存缓存获取上下文");
                     try {
                         contextMessages = MessageContextManager.getContext(conversationId, contextCount + 1);
                         
@@ -442,18 +412,17 @@ public class MessageInterceptor {
                             contextMessages = contextMessages.subList(contextMessages.size() - contextCount, contextMessages.size());
                         }
                         
-                        debugLog(TAG + ": [ON_DEMAND] 成功获取 " + contextMessages.size() + " 条本地消息");
+                        LOG.d(TAG + ": [ON_DEMAND] 成功获取 {} 条本地消息", contextMessages.size());
                     } catch (Throwable t) {
-                        debugLog(TAG + ": [ON_DEMAND] 从本地获取消息失败，使用空上下文: " + t.getMessage());
+                        LOG.d(TAG + ": [ON_DEMAND] 从本地获取消息失败，使用空上下文: {}", t.getMessage());
                         contextMessages = new java.util.ArrayList<>();
                     }
                 }
             }
 
-            // 判断选项条是否在屏幕可见区域（用于设置优先级）
-            android.graphics.Rect rect = new android.graphics.Rect();
-            boolean isVisible = bar.getGlobalVisibleRect(rect) && bar.isShown();
-            AiRateLimitedQueue.Priority priority = isVisible ? 
+            // 跟踪选项条可见性：队列据此设置并随滚动调整优先级，选项条被回收后取消请求
+            top.galqq.utils.RequestVisibility visibility = top.galqq.utils.RequestVisibility.track(bar, ownerToken);
+            AiRateLimitedQueue.Priority priority = visibility.isVisible() ? 
                 AiRateLimitedQueue.Priority.HIGH : 
                 AiRateLimitedQueue.Priority.NORMAL;
             
@@ -461,26 +430,15 @@ public class MessageInterceptor {
             // 注意：senderQQ和peerUin已在方法开头提取
             String currentSenderName = null;
             long currentTimestamp = 0;
-            try {
-                // 尝试从msgObj（msgRecord）提取senderName
-                Object remarkNameObj = XposedHelpers.getObjectField(msgObj, "sendRemarkName");
-                if (remarkNameObj != null && !String.valueOf(remarkNameObj).trim().isEmpty()) {
-                    currentSenderName = String.valueOf(remarkNameObj);
+            if (fields != null) {
+                // 优先备注名，其次QQ昵称
+                if (fields.sendRemarkName != null && !fields.sendRemarkName.trim().isEmpty()) {
+                    currentSenderName = fields.sendRemarkName;
                 } else {
-                    Object nickNameObj = XposedHelpers.getObjectField(msgObj, "sendNickName");
-                    if (nickNameObj != null) {
-                        currentSenderName = String.valueOf(nickNameObj);
-                    }
-                }
-                
-                // 提取时间戳
-                Object msgTimeObj = XposedHelpers.getObjectField(msgObj, "msgTime");
-                if (msgTimeObj != null) {
-                    currentTimestamp = Long.parseLong(String.valueOf(msgTimeObj)) * 1000L; // 秒转毫秒
+                    currentSenderName = fields.sendNickName;
                 }
-            } catch (Throwable t) {
-                // 提取失败，使用默认值（null和0）
-                debugLog(TAG + ": Failed to extract current message metadata: " + t.getMessage());
+                // 提取时间戳（秒转毫秒），缺失时使用默认值0
+                currentTimestamp = fields.getMsgTimeMillis();
             }
             
             // 使用 PromptSelector 选择合适的提示词（传递peerUin作为groupId）
@@ -491,24 +449,28 @@ public class MessageInterceptor {
             
             // 如果没有可用的提示词（全部被屏蔽），隐藏选项栏
             if (selectedPrompt == null) {
-                debugLog(TAG + ": No available prompt for sender: " + senderQQ + ", hiding option bar");
+                LOG.d(TAG + ": No available prompt for sender: {}, hiding option bar", senderQQ);
                 bar.setVisibility(View.GONE);
                 return;
             }
             
             String customPrompt = selectedPrompt.content;
-            debugLog(TAG + ": Using prompt: " + selectedPrompt.name + " for sender: " + senderQQ);
+            LOG.d(TAG + ": Using prompt: {} for sender: {}", selectedPrompt.name, senderQQ);
             
-            // 【图片识别】提取消息中的图片元素
+            // 【图片识别】提取消息中的图片元素（优先复用消息快照中的图片列表）
             java.util.List<top.galqq.utils.ImageExtractor.ImageElement> imageElements = null;
-            if (ConfigManager.isImageRecognitionEnabled() && msgObj != null) {
+            top.galqq.utils.MessageSnapshot snapshot = top.galqq.utils.MessageSnapshot.get(msgId);
+            if (ConfigManager.isImageRecognitionEnabled() && snapshot != null
+                    && (snapshot.configStamp & top.galqq.utils.MessageSnapshot.STAMP_IMAGE) != 0) {
+                imageElements = snapshot.hasImages() ? snapshot.imageElements : null;
+            } else if (ConfigManager.isImageRecognitionEnabled() && msgObj != null) {
                 try {
                     imageElements = top.galqq.utils.ImageExtractor.extractImages(msgObj);
                     if (imageElements != null && !imageElements.isEmpty()) {
-                        debugLog(TAG + ": 检测到 " + imageElements.size() + " 张图片");
+                        LOG.d(TAG + ": 检测到 {} 张图片", imageElements.size());
                     }
                 } catch (Throwable t) {
-                    debugLog(TAG + ": 图片提取失败: " + t.getMessage());
+                    LOG.d(TAG + ": 图片提取失败: {}", t.getMessage());
                 }
             }
             
@@ -529,15 +491,23 @@ public class MessageInterceptor {
                 finalCustomPrompt, // 自定义提示词
                 finalImageElements, // 图片元素列表
                 conversationId, // 会话ID（用于图片描述缓存）
+                visibility, // 选项条可见性
                 new HttpAiClient.AiCallbackWithRetry() {
                     @Override
                     public void onSuccess(List<String> options) {
+                        // 缓存AI结果（记录提示词/模型指纹）
+                        cacheOptions(msgId, options, top.galqq.utils.MessageUiStateStore.promptFingerprint(
+                            finalCustomPrompt != null ? finalCustomPrompt : ConfigManager.getSysPrompt(),
+                            ConfigManager.getAiModel()));
+                        
+                        if (!top.galqq.utils.OptionBarViewPool.isOwnedBy(bar, ownerToken)) {
+                            LOG.d(TAG + ": 选项条已被复用，跳过过期结果 msgId={}", msgId);
+                            return;
+                        }
+                        
                         // 恢复顶部间距
                         bar.setPadding(0, dp2px(context, 5), 0, dp2px(context, 5));
                         
-                        // 缓存AI结果
-                        cacheOptions(msgId, options);
-                        
                         // 如果有 rootView，使用带操作按钮的版本
                         if (rootView != null) {
                             populateBarAndShowWithActions(context, bar, options, msgObj, msgId, conversationId, rootView);
@@ -549,13 +519,29 @@ public class MessageInterceptor {
                     @Override
                     public void onFailure(Exception e) {
                         // AI失败时隐藏选项条（已在UI线程）
+                        if (!top.galqq.utils.OptionBarViewPool.isOwnedBy(bar, ownerToken)) {
+                            return;
+                        }
+                        if (e instanceof top.galqq.utils.AiRateLimitedQueue.SupersededException && rootView != null) {
+                            // 【群聊防抖】被同群更新的消息取代：换成「显示选项」按钮，用户仍可手动生成
+                            View removed = top.galqq.utils.BubbleLayoutStrategy.removeInserted(
+                                rootView, top.galqq.utils.BubbleLayoutStrategy.TAG_INSERTED_OPTION_BAR);
+                            if (removed != null) {
+                                top.galqq.utils.OptionBarViewPool.release(removed);
+                            }
+                            addToBubbleLayout(context, rootView,
+                                createShowOptionsButton(context, msgObj, msgId, conversationId, rootView), msgObj);
+                            return;
+                        }
                         bar.setVisibility(View.GONE);
                     }
                     
                     @Override
                     public void onAllRetriesFailed(Runnable retryAction) {
                         // 所有重试都失败后，显示"重新加载"按钮
-                        showReloadButton(context, bar, retryAction, msgObj);
+                        if (top.galqq.utils.OptionBarViewPool.isOwnedBy(bar, ownerToken)) {
+                            showReloadButton(context, bar, retryAction, msgObj);
+                        }
                     }
                 }
             );
@@ -569,35 +555,69 @@ public class MessageInterceptor {
      * 显示"重新加载"按钮（当所有重试都失败后）
      * 使用与选项按钮相同的UI风格
      */
+    /**
+     * 从上下文管理器获取最近的上下文消息（不含当前消息本身）
+     */
+    private static List<MessageContextManager.ChatMessage> getCachedContextMessages(
+            String conversationId, String msgId, String msgContent, int contextCount) {
+        // 多获取一条，以便如果最后一条是当前消息时移除
+        List<MessageContextManager.ChatMessage> contextMessages = MessageContextManager.getContext(conversationId, contextCount + 1);
+        
+        // 去除当前消息（如果它已经被存入上下文）
+        if (!contextMessages.isEmpty()) {
+            MessageContextManager.ChatMessage lastMsg = contextMessages.get(contextMessages.size() - 1);
+            // 通过msgId判断（如果msgId不为空）
+            boolean isSameMsg = false;
+            if (msgId != null && lastMsg.msgId != null) {
+                if (msgId.equals(lastMsg.msgId)) {
+                    isSameMsg = true;
+                }
+            } else {
+                // 降级：通过内容和时间戳判断（防止重复）
+                // 如果内容相同且时间差在1秒内
+                if (msgContent != null && msgContent.equals(lastMsg.content) && 
+                    Math.abs(System.currentTimeMillis() - lastMsg.timestamp) < 1000) {
+                    isSameMsg = true;
+                }
+            }
+            
+            if (isSameMsg) {
+                contextMessages.remove(contextMessages.size() - 1);
+            }
+        }
+        
+        // 确保数量不超过配置
+        if (contextMessages.size() > contextCount) {
+            contextMessages = contextMessages.subList(contextMessages.size() - contextCount, contextMessages.size());
+        }
+        return contextMessages;
+    }
+
     private static void showReloadButton(Context context, LinearLayout bar, Runnable retryAction, Object chatMessage) {
-        bar.removeAllViews();
+        top.galqq.utils.OptionBarViewPool.recycleChildren(bar);
         bar.setPadding(0, dp2px(context, 5), 0, dp2px(context, 5));
         
-        TextView reloadBtn = new TextView(context);
+        TextView reloadBtn = top.galqq.utils.OptionBarViewPool.obtainTextView(context);
         reloadBtn.setText("重新加载");
         reloadBtn.setTextSize(13);
         reloadBtn.setPadding(dp2px(context, 12), dp2px(context, 8), dp2px(context, 12), dp2px(context, 8));
         // 使用浅红色背景表示错误状态
-        reloadBtn.setBackground(getSelectableRoundedBackground(Color.parseColor("#FFEBEE"), dp2px(context, 12)));
-        reloadBtn.setTextColor(Color.parseColor("#D32F2F"));
+        reloadBtn.setBackground(getSelectableRoundedBackground(COLOR_ERROR_BG, dp2px(context, 12)));
+        reloadBtn.setTextColor(COLOR_ERROR_TEXT);
         reloadBtn.setClickable(true);
         reloadBtn.setFocusable(true);
         
-        LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-            ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT
-        );
-        lp.gravity = Gravity.START;
-        reloadBtn.setLayoutParams(lp);
+        top.galqq.utils.OptionBarViewPool.linearParams(reloadBtn).gravity = Gravity.START;
         
         reloadBtn.setOnClickListener(v -> {
-            // 点击后显示加载状态
-            bar.removeAllViews();
+            // 点击后显示加载状态（旧按钮回收到视图池）
+            top.galqq.utils.OptionBarViewPool.recycleChildren(bar);
             bar.setPadding(0, 0, 0, dp2px(context, 5));
             
+            // 动画中的文字不能来自视图池（见 LoadingAnimator.start）
             TextView tvLoading = new TextView(context);
-            tvLoading.setText("重新加载中...");
             tvLoading.setTextSize(12);
-            tvLoading.setTextColor(Color.parseColor("#999999"));
+            tvLoading.setTextColor(COLOR_HINT);
             LinearLayout.LayoutParams loadingLp = new LinearLayout.LayoutParams(
                 ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT
             );
@@ -605,6 +625,7 @@ public class MessageInterceptor {
             loadingLp.leftMargin = dp2px(context, 2);
             tvLoading.setLayoutParams(loadingLp);
             bar.addView(tvLoading);
+            top.galqq.utils.LoadingAnimator.start(tvLoading, "重新加载中");
             
             // 执行重试
             retryAction.run();
@@ -613,7 +634,7 @@ public class MessageInterceptor {
         bar.addView(reloadBtn);
         bar.setVisibility(View.VISIBLE);
         
-        debugLog(TAG + ": Showing reload button after all retries failed");
+        LOG.d(TAG + ": Showing reload button after all retries failed");
     }
 
     private static void useDictionary(Context context, LinearLayout bar, Object chatMessage) {
@@ -625,12 +646,12 @@ public class MessageInterceptor {
     // 填充选项条并显示（如果有选项的话）
     // 支持双击引用回复功能
     private static void populateBarAndShow(Context context, LinearLayout bar, List<String> options, Object chatMessage) {
-        bar.removeAllViews();
+        top.galqq.utils.OptionBarViewPool.recycleChildren(bar);
         
-        debugLog(TAG + ": populateBarAndShow - options count=" + (options != null ? options.size() : "null"));
+        LOG.d(TAG + ": populateBarAndShow - options count={}", (options != null ? options.size() : "null"));
         
         if (options == null || options.isEmpty()) {
-            debugLog(TAG + ": No options available, hiding bar");
+            LOG.d(TAG + ": No options available, hiding bar");
             bar.setVisibility(View.GONE); // 没有选项时隐藏
             return;
         }
@@ -693,10 +714,10 @@ public class MessageInterceptor {
                 }
             } catch (Throwable ignored) {}
             
-            debugLog(TAG + ": 提取引用信息 - msgId=" + replyMsgId + ", seq=" + replyMsgSeq + ", nick=" + replyNick);
+            LOG.d(TAG + ": 提取引用信息 - msgId={}, seq={}, nick={}", replyMsgId, replyMsgSeq, replyNick);
             
         } catch (Throwable t) {
-            debugLog(TAG + ": 提取引用信息失败: " + t.getMessage());
+            LOG.d(TAG + ": 提取引用信息失败: {}", t.getMessage());
         }
         
         // 保存引用信息供点击事件使用
@@ -705,33 +726,32 @@ public class MessageInterceptor {
         final String finalReplyNick = replyNick;
         final String finalReplyContent = replyContent;
         
-        debugLog(TAG + ": Adding " + options.size() + " options to bar");
+        LOG.d(TAG + ": Adding {} options to bar", options.size());
+        // 尺寸对所有选项相同，循环外计算一次
+        int paddingH = dp2px(context, 12);
+        int paddingV = dp2px(context, 8);
+        int cornerRadius = dp2px(context, 12);
+        int bottomMargin = dp2px(context, 6);
+        int maxWidth = context.getResources().getDisplayMetrics().widthPixels - dp2px(context, 16);
         for (String option : options) {
-            TextView tv = new TextView(context);
+            TextView tv = top.galqq.utils.OptionBarViewPool.obtainTextView(context);
             tv.setText(option);
             tv.setTextSize(13);
-            tv.setPadding(dp2px(context, 12), dp2px(context, 8), dp2px(context, 12), dp2px(context, 8));
+            tv.setPadding(paddingH, paddingV, paddingH, paddingV);
             // 使用带按压状态的背景，支持视觉反馈
-            tv.setBackground(getSelectableRoundedBackground(Color.parseColor("#F2F2F2"), dp2px(context, 12)));
+            tv.setBackground(getSelectableRoundedBackground(COLOR_OPTION_BG, cornerRadius));
             tv.setTextColor(Color.BLACK);
             // 启用点击和焦点，确保按压状态生效
             tv.setClickable(true);
             tv.setFocusable(true);
             
-            int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
-            int maxWidth = screenWidth - dp2px(context, 16);
-            
-            LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT
-            );
-            lp.setMargins(0, 0, 0, dp2px(context, 6));
+            top.galqq.utils.OptionBarViewPool.linearParams(tv).bottomMargin = bottomMargin;
             tv.setMaxWidth(maxWidth);
-            tv.setLayoutParams(lp);
             tv.setGravity(Gravity.CENTER_VERTICAL);
             
             // 单击事件 - 直接发送消息
             tv.setOnClickListener(v -> {
-                debugLog(TAG + ": 选项被点击: " + option);
+                LOG.d(TAG + ": 选项被点击: {}", option);
                 sendMessage(context, option, chatMessage);
             });
             
@@ -748,7 +768,7 @@ public class MessageInterceptor {
         }
         
         bar.setVisibility(View.VISIBLE); // 有选项时显示
-        debugLog(TAG + ": Option bar populated and made visible (单击=发送, 长按=编辑/引用)");
+        LOG.d(TAG + ": Option bar populated and made visible (单击=发送, 长按=编辑/引用)");
     }
 
 
@@ -789,7 +809,7 @@ public class MessageInterceptor {
             Toast.makeText(context, "已发送: " + text, Toast.LENGTH_SHORT).show();
             
         } catch (Exception e) {
-            debugLog(TAG + ": Failed to send message: " + e.getMessage());
+            LOG.d(TAG + ": Failed to send message: {}", e.getMessage());
             Toast.makeText(context, "发送失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
         }
     }
@@ -820,7 +840,7 @@ public class MessageInterceptor {
                                        long replyMsgId, long replyMsgSeq, String replyNick, String replyContent) {
         // 创建半透明遮罩层
         android.widget.FrameLayout overlay = new android.widget.FrameLayout(context);
-        overlay.setBackgroundColor(Color.parseColor("#80000000")); // 半透明黑色
+        overlay.setBackgroundColor(COLOR_OVERLAY); // 半透明黑色
         
         // 创建对话框容器（白色圆角卡片）
         LinearLayout dialogContainer = new LinearLayout(context);
@@ -842,7 +862,7 @@ public class MessageInterceptor {
         TextView titleView = new TextView(context);
         titleView.setText("编辑回复");
         titleView.setTextSize(18);
-        titleView.setTextColor(Color.parseColor("#333333"));
+        titleView.setTextColor(COLOR_TEXT);
         titleView.setTypeface(null, android.graphics.Typeface.BOLD);
         LinearLayout.LayoutParams titleParams = new LinearLayout.LayoutParams(
             ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT
@@ -869,8 +889,8 @@ public class MessageInterceptor {
         editText.setMinLines(2);
         editText.setMaxLines(6);
         editText.setTextSize(15);
-        editText.setTextColor(Color.parseColor("#333333"));
-        editText.setHintTextColor(Color.parseColor("#999999"));
+        editText.setTextColor(COLOR_TEXT);
+        editText.setHintTextColor(COLOR_HINT);
         editText.setHint("输入回复内容...");
         editText.setBackgroundColor(Color.TRANSPARENT); // 去掉默认下划线
         editText.setPadding(0, 0, 0, 0);
@@ -910,14 +930,14 @@ public class MessageInterceptor {
         android.graphics.drawable.GradientDrawable replyBg = new android.graphics.drawable.GradientDrawable();
         replyBg.setShape(android.graphics.drawable.GradientDrawable.RECTANGLE);
         replyBg.setCornerRadius(dp2px(context, 20));
-        replyBg.setColor(Color.parseColor("#E3F2FD"));
+        replyBg.setColor(COLOR_REPLY_BG);
         replyBtn.setBackground(replyBg);
-        replyBtn.setTextColor(Color.parseColor("#1976D2"));
+        replyBtn.setTextColor(COLOR_REPLY_TEXT);
         
         replyBtn.setOnClickListener(v -> {
             String modifiedText = editText.getText().toString().trim();
             if (!modifiedText.isEmpty()) {
-                debugLog(TAG + ": 引用发送 - msgId=" + replyMsgId + ", text=" + modifiedText);
+                LOG.d(TAG + ": 引用发送 - msgId={}, text={}", replyMsgId, modifiedText);
                 // 尝试发送引用回复，如果失败会自动回退到普通发送
                 SendMessageHelper.sendReplyMessageNT(context, chatMessage, modifiedText,
                     replyMsgId, replyMsgSeq, replyNick, replyContent);
@@ -1006,9 +1026,9 @@ public class MessageInterceptor {
     private static android.graphics.drawable.Drawable createInputBackground() {
         android.graphics.drawable.GradientDrawable drawable = new android.graphics.drawable.GradientDrawable();
         drawable.setShape(android.graphics.drawable.GradientDrawable.RECTANGLE);
-        drawable.setColor(Color.parseColor("#F5F5F5"));
+        drawable.setColor(COLOR_BUTTON_BG);
         drawable.setCornerRadius(16); // 8dp 圆角
-        drawable.setStroke(2, Color.parseColor("#E0E0E0")); // 1dp 边框
+        drawable.setStroke(2, COLOR_BORDER); // 1dp 边框
         return drawable;
     }
     
@@ -1031,12 +1051,12 @@ public class MessageInterceptor {
         
         if (isPrimary) {
             // 主按钮：蓝色背景，白色文字
-            bg.setColor(Color.parseColor("#4A90D9"));
+            bg.setColor(COLOR_ACCENT);
             button.setTextColor(Color.WHITE);
         } else {
             // 次按钮：透明背景，灰色文字
             bg.setColor(Color.TRANSPARENT);
-            button.setTextColor(Color.parseColor("#666666"));
+            button.setTextColor(COLOR_BUTTON_TEXT);
         }
         
         button.setBackgroundDrawable(bg);
@@ -1059,6 +1079,11 @@ public class MessageInterceptor {
             Class<?> kAIOMsgItem = Class.forName("com.tencent.mobileqq.aio.msg.AIOMsgItem", false, classLoader);
             Method getMsgRecord = kAIOMsgItem.getMethod("getMsgRecord");
             
+            // 【预取】适配器中的数据项同样是 AIOMsgItem，用于可见区域附近消息的预取
+            sAIOMsgItemClass = kAIOMsgItem;
+            sGetMsgRecord = getMsgRecord;
+            top.galqq.utils.ViewportPrefetcher.setTarget(MessageInterceptor::prefetchMessage);
+            
             // 1. Try to find handleUIState (Newer QQNT)
             Method handleUIState = null;
             try {
@@ -1071,7 +1096,7 @@ public class MessageInterceptor {
             } catch (Exception e) {}
 
             if (handleUIState != null) {
-                debugLog(TAG + ": Found handleUIState method");
+                LOG.d(TAG + ": Found handleUIState method");
                 XposedBridge.hookMethod(handleUIState, new XC_MethodHook() {
                     @Override
                     protected void afterHookedMethod(MethodHookParam param) throws Throwable {
@@ -1120,7 +1145,7 @@ public class MessageInterceptor {
             }
             
             if (bindMethod != null) {
-                debugLog(TAG + ": Found bind method");
+                LOG.d(TAG + ": Found bind method");
                 XposedBridge.hookMethod(bindMethod, new XC_MethodHook() {
                     @Override
                     protected void afterHookedMethod(MethodHookParam param) throws Throwable {
@@ -1131,234 +1156,78 @@ public class MessageInterceptor {
                 return;
             }
             
-            debugLog(TAG + ": Failed to find handleUIState or bind method in AIOBubbleMsgItemVB");
+            LOG.d(TAG + ": Failed to find handleUIState or bind method in AIOBubbleMsgItemVB");
 
         } catch (Throwable t) {
-            debugLog(TAG + ": Error in hookAIOBubbleMsgItemVB: " + t.getMessage());
-            debugLog(t);
+            LOG.d(TAG + ": Error in hookAIOBubbleMsgItemVB: {}", t.getMessage());
+            LOG.d(t);
         }
     }
 
-    /**
-     * 调试消息结构 - 分析msgRecord中的图片和表情包元素
-     * 受 gal_debug_hook_log 配置开关控制
-     */
-    private static void debugMessageStructure(Object msgRecord) {
-        if (!ConfigManager.isDebugHookLogEnabled()) {
-            return; // 调试日志未启用，直接返回
-        }
-        
-        try {
-            debugLog(TAG + ": ========== 开始分析消息结构 ==========");
-            
-            // 1. 分析msgRecord的基本信息
-            debugLog(TAG + ": msgRecord类型: " + msgRecord.getClass().getName());
-            
-            // 2. 获取elements列表
-            List<?> elements = null;
-            try {
-                elements = (List<?>) XposedHelpers.getObjectField(msgRecord, "elements");
-                if (elements == null || elements.isEmpty()) {
-                    debugLog(TAG + ": ⚠️ elements为空或不存在");
-                    return;
-                }
-                debugLog(TAG + ": ✓ elements数量: " + elements.size());
-            } catch (Throwable t) {
-                debugLog(TAG + ": ✗ 获取elements失败: " + t.getMessage());
-                return;
-            }
-            
-            // 3. 遍历每个element
-            for (int i = 0; i < elements.size(); i++) {
-                Object element = elements.get(i);
-                debugLog(TAG + ": --- Element[" + i + "] ---");
-                debugLog(TAG + ":   类型: " + element.getClass().getName());
-                
-                // 4. 分析element的所有字段
-                try {
-                    Field[] fields = element.getClass().getDeclaredFields();
-                    for (Field field : fields) {
-                        field.setAccessible(true);
-                        try {
-                            Object value = field.get(element);
-                            String valueStr = (value != null) ? value.toString() : "null";
-                            // 限制输出长度
-                            if (valueStr.length() > 200) {
-                                valueStr = valueStr.substring(0, 200) + "...";
-                            }
-                            debugLog(TAG + ":   ." + field.getName() + " = " + valueStr);
-                            
-                            // 如果字段值是对象,尝试分析其类型
-                            if (value != null && !field.getType().isPrimitive() && !field.getType().equals(String.class)) {
-                                debugLog(TAG + ":     └─ 类型: " + value.getClass().getName());
-                                
-                                // 特别关注可能是图片或表情包的字段
-                                String fieldName = field.getName().toLowerCase();
-                                if (fieldName.contains("pic") || fieldName.contains("image") || 
-                                    fieldName.contains("face") || fieldName.contains("emoji")) {
-                                    debugLog(TAG + ":     ⭐ 可能包含图片/表情包数据!");
-                                    // 递归分析这个对象的字段
-                                    analyzeObjectFields(value, "       ");
-                                }
-                            }
-                        } catch (Throwable t) {
-                            debugLog(TAG + ":   ." + field.getName() + " - 访问失败: " + t.getMessage());
-                        }
-                    }
-                } catch (Throwable t) {
-                    debugLog(TAG + ":   分析字段失败: " + t.getMessage());
-                }
-            }
-            
-            debugLog(TAG + ": ========== 消息结构分析完成 ==========");
-            
-        } catch (Throwable t) {
-            debugLog(TAG + ": debugMessageStructure失败: " + t.getMessage());
-            debugLog(t);
-        }
-    }
+    // AIOBubbleMsgItemVB 运行时类 -> getHostView 方法
+    private static final java.util.Map<Class<?>, Method> hostViewMethods = new java.util.concurrent.ConcurrentHashMap<>();
     
-    /**
-     * 递归分析对象的字段（用于深入分析图片/表情包元素）
-     */
-    private static void analyzeObjectFields(Object obj, String indent) {
-        if (obj == null) return;
-        
-        try {
-            Field[] fields = obj.getClass().getDeclaredFields();
-            int maxFields = Math.min(fields.length, 20); // 限制最多分析20个字段
-            
-            for (int i = 0; i < maxFields; i++) {
-                Field field = fields[i];
-                field.setAccessible(true);
-                try {
-                    Object value = field.get(obj);
-                    String valueStr = (value != null) ? value.toString() : "null";
-                    if (valueStr.length() > 100) {
-                        valueStr = valueStr.substring(0, 100) + "...";
-                    }
-                    debugLog(TAG + ": " + indent + "." + field.getName() + " = " + valueStr);
-                    
-                    if (value != null && !field.getType().isPrimitive() && !field.getType().equals(String.class)) {
-                        debugLog(TAG + ": " + indent + "  └─ 类型: " + value.getClass().getName());
-                    }
-                } catch (Throwable t) {
-                    // 忽略访问失败的字段
-                }
-            }
-            
-            if (fields.length > maxFields) {
-                debugLog(TAG + ": " + indent + "... (还有 " + (fields.length - maxFields) + " 个字段未显示)");
-            }
-        } catch (Throwable t) {
-            debugLog(TAG + ": " + indent + "分析对象字段失败: " + t.getMessage());
+    private static Method hostViewMethodOf(Class<?> clazz) throws NoSuchMethodException {
+        Method method = hostViewMethods.get(clazz);
+        if (method == null) {
+            method = clazz.getMethod("getHostView");
+            hostViewMethods.put(clazz, method);
         }
+        return method;
     }
 
     private static void processQQNTMessage(Object aioBubbleMsgItemVB, Object msgItem, Method getMsgRecord) {
+        // 【耗时统计】主线程绑定各阶段计时
+        final long bindStartNs = System.nanoTime();
+        final long watchdogToken = top.galqq.utils.MainThreadWatchdog.begin("QQNT.bind",
+            top.galqq.utils.BindTimingStats.BIND_BUDGET_NS);
         try {
             // Get MsgRecord
             Object msgRecord = getMsgRecord.invoke(msgItem);
             
-            // 【调试】分析消息结构（仅当包含图片或表情包时）
-            try {
-                List<?> elements = (List<?>) XposedHelpers.getObjectField(msgRecord, "elements");
-                if (elements != null && !elements.isEmpty()) {
-                    // 检查是否包含图片或表情包
-                    boolean hasImageOrEmoji = false;
-                    for (Object element : elements) {
-                        String className = element.getClass().getName().toLowerCase();
-                        if (className.contains("pic") || className.contains("image") || 
-                            className.contains("face") || className.contains("emoji")) {
-                            hasImageOrEmoji = true;
-                            break;
-                        }
-                    }
-                    
-                    // 如果包含图片或表情包，执行调试分析
-                    if (hasImageOrEmoji) {
-                        debugMessageStructure(msgRecord);
-                    }
-                }
-            } catch (Throwable t) {
-                // 忽略调试失败
+            // 一次性读取 MsgRecord 字段（Field 句柄按运行时类缓存）
+            top.galqq.utils.MsgRecordAccessor.MsgFields fields = top.galqq.utils.MsgRecordAccessor.read(msgRecord);
+            final long fieldsDoneNs = System.nanoTime();
+            top.galqq.utils.BindTimingStats.record(top.galqq.utils.BindTimingStats.PHASE_FIELDS, fieldsDoneNs - bindStartNs);
+            
+            // 【调试】分析消息结构（配置开启时抽样，后台输出）
+            if (fields != null) {
+                top.galqq.utils.MessageStructureInspector.maybeInspect(msgRecord.getClass().getName(), fields.elements);
             }
             
-            // Get root ViewGroup via getHostView
-            Method getHostView = aioBubbleMsgItemVB.getClass().getMethod("getHostView");
-            ViewGroup rootView = (ViewGroup) getHostView.invoke(aioBubbleMsgItemVB);
+            // Get root ViewGroup via getHostView（Method 按类缓存，不在每次绑定时反射查找）
+            ViewGroup rootView = (ViewGroup) hostViewMethodOf(aioBubbleMsgItemVB.getClass()).invoke(aioBubbleMsgItemVB);
             
-            if (rootView == null || msgRecord == null) return;
+            if (rootView == null) return;
             
-            Context context = rootView.getContext();
-            ConfigManager.init(context);
+            // 【后台流水线】为本次绑定分配代号，ViewHolder 被复用到其他消息后，旧的后台结果直接丢弃
+            // 必须在任何提前返回之前：复用到被过滤/不完整消息的气泡也要让旧的后台挂载失效
+            final long generation = markBindGeneration(rootView);
             
-            // 【方法1】识别 Activity/Context 类型
-            try {
-                String activityName = "unknown";
-                if (context instanceof Activity) {
-                    activityName = context.getClass().getName();
-                } else {
-                    // 尝试解包 ContextWrapper
-                    Context currentCtx = context;
-                    while (currentCtx instanceof android.content.ContextWrapper) {
-                        if (currentCtx instanceof Activity) {
-                            activityName = currentCtx.getClass().getName();
-                            break;
-                        }
-                        currentCtx = ((android.content.ContextWrapper) currentCtx).getBaseContext();
-                    }
-                }
-                // debugLog(TAG + ": [Context] Activity/Context: " + activityName);
-                
-                // 【转发消息过滤】如果是转发消息详情页，则不显示AI选项条
-                if (activityName != null && activityName.contains("MultiForwardActivity")) {
-                    debugLog(TAG + ": ⚠️ Skipping forwarded message in MultiForwardActivity");
-                    return;
-                }
-            } catch (Throwable t) {
-                // debugLog(TAG + ": [Context] Error getting activity: " + t.getMessage());
+            // 无条件清理旧选项条和好感度视图（RecyclerView的ViewHolder会复用）
+            // 【布局策略】插入时已记录在 rootView 的 Tag 上，O(1) 取回，不再遍历 View 树
+            View existingView = top.galqq.utils.BubbleLayoutStrategy.removeInserted(
+                rootView, top.galqq.utils.BubbleLayoutStrategy.TAG_INSERTED_OPTION_BAR);
+            if (existingView != null) {
+                // 回收到视图池，下次绑定复用
+                top.galqq.utils.OptionBarViewPool.release(existingView);
             }
             
-            // 【方法2】识别 ViewHolder 类型
-            try {
-                String viewHolderName = aioBubbleMsgItemVB.getClass().getName();
-                // debugLog(TAG + ": [ViewHolder] Type: " + viewHolderName);
-            } catch (Throwable t) {
-                // debugLog(TAG + ": [ViewHolder] Error: " + t.getMessage());
-            }
+            // 清理好感度视图
+            removeAffinityView(rootView);
             
-            // 【方法3】识别 RecyclerView 的 Adapter 类型 (使用反射)
-            try {
-                android.view.ViewParent parent = rootView.getParent();
-                boolean foundRecyclerView = false;
-                while (parent != null) {
-                    Class<?> parentClass = parent.getClass();
-                    // 检查是否是 RecyclerView (通过类名判断，避免依赖)
-                    if (isRecyclerView(parentClass)) {
-                        foundRecyclerView = true;
-                        // 反射调用 getAdapter
-                        try {
-                            Method getAdapterMethod = parentClass.getMethod("getAdapter");
-                            Object adapter = getAdapterMethod.invoke(parent);
-                            if (adapter != null) {
-                                // debugLog(TAG + ": [Adapter] Type: " + adapter.getClass().getName());
-                            } else {
-                                // debugLog(TAG + ": [Adapter] Adapter is null");
-                            }
-                        } catch (NoSuchMethodException e) {
-                            // 可能是混淆后的名字，或者不是标准的RecyclerView
-                            // debugLog(TAG + ": [Adapter] getAdapter method not found on " + parentClass.getName());
-                        }
-                        break;
-                    }
-                    parent = parent.getParent();
-                }
-                if (!foundRecyclerView) {
-                    // debugLog(TAG + ": [Adapter] RecyclerView not found in parent hierarchy");
-                }
-            } catch (Throwable t) {
-                debugLog(TAG + ": [Adapter] Error: " + t.getMessage());
+            if (fields == null) return;
+            
+            Context context = rootView.getContext();
+            ConfigManager.init(context);
+            
+            // 【聊天环境】Activity 类型 / 转发详情页 / RecyclerView 按界面缓存，不再每次解包 Context、遍历父容器
+            top.galqq.utils.ChatEnvironment env = top.galqq.utils.ChatEnvironment.of(rootView);
+            
+            // 【转发消息过滤】如果是转发消息详情页，则不显示AI选项条
+            if (env.isMultiForward) {
+                LOG.d(TAG + ": ⚠️ Skipping forwarded message in MultiForwardActivity");
+                return;
             }
             
             // Check if module is enabled
@@ -1366,605 +1235,857 @@ public class MessageInterceptor {
                 return; // Module is disabled, don't show option bar
             }
             
-            // 先获取 peerUin，用于后续判断聊天类型
-            String peerUin = null;
-            try {
-                Object peerUinObj = XposedHelpers.getObjectField(msgRecord, "peerUin");
-                peerUin = String.valueOf(peerUinObj);
-            } catch (Throwable t) {
-                debugLog(TAG + ": Failed to get peerUin: " + t.getMessage());
-            }
-            
-            // Check if it's a received message
-            int sendType = XposedHelpers.getIntField(msgRecord, "sendType");
-            boolean isSelfBySendType = (sendType == 1); // 1=自己发送, 0=收到的消息
-            
-            // 判断是群聊还是私聊
-            // 在群聊中：peerUin = 群号，senderUin = 发送者QQ
-            // 在私聊中：peerUin = 对方QQ = senderUin（当对方发消息时）
-            boolean isGroupChat = false;
-            String senderUinForDebug = null;
-            try {
-                Object senderUinObj = XposedHelpers.getObjectField(msgRecord, "senderUin");
-                String senderUinStr = String.valueOf(senderUinObj);
-                senderUinForDebug = senderUinStr;
-                
-                // 如果 peerUin != senderUin，说明是群聊
-                isGroupChat = (peerUin != null && senderUinStr != null && !peerUin.equals(senderUinStr));
-            } catch (Throwable t) {
-                debugLog(TAG + ": [isSelf] Failed to get senderUin: " + t.getMessage());
+            // 【预取】自动显示模式下，列表静止后为可见区域附近的消息提前生成选项
+            if (ConfigManager.isAiEnabled() && ConfigManager.isAutoShowOptionsEnabled()) {
+                top.galqq.utils.ViewportPrefetcher.schedule(env);
             }
             
-            // 在私聊中，只用 sendType 判断；在群聊中，需要额外用 senderUin 判断
-            boolean isSelfBySenderUin = false;
-            long currentUinForDebug = 0;
-            if (isGroupChat) {
-                // 群聊：需要比较 senderUin 和当前登录用户UIN
-                try {
-                    long currentUin = top.galqq.utils.AppRuntimeHelper.getLongAccountUin(context);
-                    currentUinForDebug = currentUin;
-                    if (currentUin > 0 && senderUinForDebug != null && !senderUinForDebug.isEmpty()) {
-                        isSelfBySenderUin = senderUinForDebug.equals(String.valueOf(currentUin));
-                    }
-                } catch (Throwable t) {
-                    debugLog(TAG + ": [isSelf] Failed to compare senderUin: " + t.getMessage());
-                }
+            // sendType/msgType 缺失说明不是 QQNT MsgRecord，直接跳过
+            if (!fields.complete) {
+                LOG.d(TAG + ": MsgRecord fields unavailable: {}", msgRecord.getClass().getName());
+                return;
             }
             
-            // 根据聊天类型判断：
-            // - 私聊：直接用 sendType（sendType == 1 表示自己发的）
-            // - 群聊：sendType == 1 或 senderUin == currentUin
-            boolean isSelf = isGroupChat ? (isSelfBySendType || isSelfBySenderUin) : isSelfBySendType;
-            
-            // 【调试日志】输出判断详情
-            debugLog(TAG + ": [isSelf_CHECK] chatType=" + (isGroupChat ? "GROUP" : "PRIVATE") + 
-                    ", sendType=" + sendType + ", isSelfBySendType=" + isSelfBySendType + 
-                    ", senderUin=" + senderUinForDebug + ", currentUin=" + currentUinForDebug + 
-                    ", isSelfBySenderUin=" + isSelfBySenderUin + ", peerUin=" + peerUin + 
-                    ", FINAL_isSelf=" + isSelf);
-
             // Filter out unwanted message types
-            int msgType = XposedHelpers.getIntField(msgRecord, "msgType");
+            int msgType = fields.msgType;
             
             // 【过滤转发聊天记录容器】msgType=11且subMsgType=7是转发聊天记录的容器消息
-            try {
-                int subMsgType = XposedHelpers.getIntField(msgRecord, "subMsgType");
-                
-                // debugLog(TAG + ": ===== Message Type Analysis =====");
-                // debugLog(TAG + ": msgType=" + msgType + ", subMsgType=" + subMsgType);
-                // debugLog(TAG + ": sendType=" + sendType);
-                
-                if (msgType == 11 && subMsgType == 7) {
-                    // debugLog(TAG + ": ⚠️ FORWARDED CHAT RECORD CONTAINER - SKIPPING!");
-                    return; // 跳过转发聊天记录容器
-                }
-                
-                // debugLog(TAG + ": ================================");
-            } catch (Throwable t) {
-                // debugLog(TAG + ": Error detecting forwarded message: " + t.getMessage());
+            if (msgType == 11 && fields.subMsgType == 7) {
+                return; // 跳过转发聊天记录容器
             }
             
             // 5 = Gray Tips (Revoke), 3 = File, 7 = Video
             if (msgType == 5 || msgType == 3 || msgType == 7) {
                 return;
             }
-
-            // 获取文字内容
-            String msgContent = getMessageContentNT(msgRecord);
             
-            // 【图片识别】提取图片和表情包元素
-            java.util.List<top.galqq.utils.ImageExtractor.ImageElement> imageElements = null;
-            java.util.List<top.galqq.utils.ImageExtractor.EmojiElement> emojiElements = null;
-            boolean hasImages = false;
-            boolean hasEmojis = false;
+            top.galqq.utils.BindTimingStats.record(top.galqq.utils.BindTimingStats.PHASE_FILTERS, System.nanoTime() - fieldsDoneNs);
             
-            if (ConfigManager.isImageRecognitionEnabled() || ConfigManager.isEmojiRecognitionEnabled()) {
-                try {
-                    if (ConfigManager.isImageRecognitionEnabled()) {
-                        imageElements = top.galqq.utils.ImageExtractor.extractImages(msgRecord);
-                        hasImages = imageElements != null && !imageElements.isEmpty();
-                        if (hasImages && ConfigManager.isDebugHookLogEnabled()) {
-                            debugLog(TAG + ": 提取到 " + imageElements.size() + " 张图片");
-                        }
-                    }
-                    
-                    if (ConfigManager.isEmojiRecognitionEnabled()) {
-                        emojiElements = top.galqq.utils.ImageExtractor.extractEmojis(msgRecord);
-                        hasEmojis = emojiElements != null && !emojiElements.isEmpty();
-                        if (hasEmojis && ConfigManager.isDebugHookLogEnabled()) {
-                            debugLog(TAG + ": 提取到 " + emojiElements.size() + " 个表情包");
-                        }
-                    }
-                } catch (Throwable t) {
-                    debugLog(TAG + ": 图片/表情包提取失败: " + t.getMessage());
+            // 【快照】同一条消息重复绑定时直接复用派生数据（内容、图片、发送者、自己/群聊判断）
+            final int configStamp = top.galqq.utils.MessageSnapshot.currentConfigStamp();
+            final top.galqq.utils.MessageSnapshot snapshot = top.galqq.utils.MessageSnapshot.get(fields.msgId, configStamp);
+            if (snapshot != null) {
+                if (!snapshot.displayable || !passesSenderFilter(snapshot.senderUin)) {
+                    return;
+                }
+                // 已知消息：一次查表后直接在主线程挂载视图（内存中没有选项但磁盘上可能有时，先去后台读取）
+                if (!needsPersistedOptions(snapshot)) {
+                    attachBubbleViews(context, rootView, msgRecord, snapshot, generation);
+                    return;
                 }
             }
             
-            // 如果没有文字内容且没有图片/表情包,则跳过
-            if (msgContent.isEmpty() && !hasImages && !hasEmojis) {
-                return;
-            }
-            
-            // 【图片识别】合并图片描述到消息内容
-            if (hasImages || hasEmojis) {
-                java.util.List<String> imageDescriptions = null;
-                java.util.List<String> emojiDescriptions = null;
-                
-                if (hasEmojis) {
-                    // 表情包可以直接获取描述
-                    emojiDescriptions = top.galqq.utils.ImageContextManager.createEmojiDescriptions(emojiElements);
+            // 新消息：内容提取、过滤、上下文写入、好感度查询和持久化选项读取在后台线程完成，只有视图挂载回到主线程
+            // 【滚动感知】列表快速滑动时推迟到静止后再处理，期间被复用或滑出屏幕的气泡直接丢弃
+            env.runWhenIdle(rootView, top.galqq.utils.ChatEnvironment.TASK_BIND, () -> {
+                if (!isCurrentBindGeneration(rootView, generation)) {
+                    return;
                 }
-                
-                if (hasImages) {
-                    // 根据是否启用外挂AI决定如何处理图片
-                    if (ConfigManager.isVisionAiEnabled()) {
-                        // 启用外挂AI时,使用占位符(后续异步识别)
-                        imageDescriptions = top.galqq.utils.ImageContextManager.createPlaceholderDescriptions(imageElements);
-                    } else {
-                        // 未启用外挂AI时,直接把图片信息发送给主AI
-                        imageDescriptions = new java.util.ArrayList<>();
-                        for (top.galqq.utils.ImageExtractor.ImageElement img : imageElements) {
-                            // 使用新的getDescriptionForAi方法获取完整描述
-                            String desc = img.getDescriptionForAi();
-                            imageDescriptions.add(desc);
-                            
-                            if (ConfigManager.isDebugHookLogEnabled()) {
-                                debugLog(TAG + ": 图片描述: " + desc);
-                                debugLog(TAG + ":   sourcePath=" + img.sourcePath);
-                                debugLog(TAG + ":   imageUrl=" + img.imageUrl);
-                            }
-                        }
+                runOnBindWorker(() -> {
+                    top.galqq.utils.MessageSnapshot prepared = snapshot != null
+                        ? snapshot : prepareSnapshot(context, msgRecord, fields, configStamp);
+                    if (prepared == null) {
+                        return;
                     }
+                    loadPersistedOptions(prepared);
+                    mainHandler.post(() -> {
+                        if (!isCurrentBindGeneration(rootView, generation)) {
+                            LOG.d(TAG + ": [PIPELINE] ViewHolder 已复用，丢弃过期结果 msgId={}", prepared.msgId);
+                            return;
+                        }
+                        long attachStartNs = System.nanoTime();
+                        long attachToken = top.galqq.utils.MainThreadWatchdog.begin("QQNT.attach",
+                            top.galqq.utils.BindTimingStats.BIND_BUDGET_NS);
+                        try {
+                            attachBubbleViews(context, rootView, msgRecord, prepared, generation);
+                        } catch (Throwable t) {
+                            LOG.d(TAG + ": Error attaching QQNT message views: {}", t.getMessage());
+                            LOG.d(t);
+                        } finally {
+                            top.galqq.utils.MainThreadWatchdog.end(attachToken);
+                        }
+                        top.galqq.utils.BindTimingStats.record(top.galqq.utils.BindTimingStats.PHASE_ATTACH,
+                            System.nanoTime() - attachStartNs);
+                    });
+                });
+            });
+            
+            // LOG.d(TAG + ": Successfully added option bar to QQNT message");
+
+        } catch (Throwable t) {
+            LOG.d(TAG + ": Error processing QQNT message: {}", t.getMessage());
+            LOG.d(t);
+        } finally {
+            top.galqq.utils.BindTimingStats.recordBind(System.nanoTime() - bindStartNs);
+            top.galqq.utils.MainThreadWatchdog.end(watchdogToken);
+        }
+    }
+
+    // ========== 视口预取 ==========
+    
+    private static Class<?> sAIOMsgItemClass;
+    private static Method sGetMsgRecord;
+    
+    // 正在预取的消息（主线程访问）。请求被取消时回调也会以失败结束并移除；
+    // 超过上限说明有遗漏，直接清空（重复的预取会被队列按 msgId 拒绝）
+    private static final java.util.Set<String> prefetchingMsgIds = new java.util.HashSet<>();
+    private static final int MAX_PREFETCHING = 64;
+    
+    /**
+     * 预取一条尚未显示的消息（主线程，由 ViewportPrefetcher 调用）
+     * 只处理自动显示模式下会自动请求的消息：非自己、非历史、未缓存、未被过滤
+     * @return 是否提交了预取
+     */
+    private static boolean prefetchMessage(Context context, Object msgItem) {
+        if (sAIOMsgItemClass == null || !sAIOMsgItemClass.isInstance(msgItem)
+                || !ConfigManager.isAiEnabled() || !ConfigManager.isAutoShowOptionsEnabled()) {
+            return false;
+        }
+        Object msgRecord;
+        try {
+            msgRecord = sGetMsgRecord.invoke(msgItem);
+        } catch (Throwable t) {
+            return false;
+        }
+        top.galqq.utils.MsgRecordAccessor.MsgFields fields = top.galqq.utils.MsgRecordAccessor.read(msgRecord);
+        if (fields == null || !fields.complete || fields.msgId == null || fields.sendType == 1) {
+            return false;
+        }
+        int msgType = fields.msgType;
+        if ((msgType == 11 && fields.subMsgType == 7) || msgType == 5 || msgType == 3 || msgType == 7) {
+            return false;
+        }
+        // 历史消息不会自动请求，也不预取
+        long thresholdMs = ConfigManager.getHistoryThreshold() * 1000L;
+        if (Math.abs(System.currentTimeMillis() - fields.getMsgTimeMillis()) > thresholdMs) {
+            return false;
+        }
+        final String msgId = fields.msgId;
+        long stateKey = stateKeyOf(fields);
+        if (prefetchingMsgIds.contains(msgId) || hasCurrentOptions(stateKey, fields.senderUin, fields.peerUin)
+                || top.galqq.utils.MessageUiStateStore.isCollapsed(stateKey)) {
+            return false;
+        }
+        final int configStamp = top.galqq.utils.MessageSnapshot.currentConfigStamp();
+        final top.galqq.utils.MessageSnapshot snapshot = top.galqq.utils.MessageSnapshot.get(msgId, configStamp);
+        if (snapshot != null && (!snapshot.displayable || snapshot.isSelf)) {
+            return false;
+        }
+        
+        if (prefetchingMsgIds.size() >= MAX_PREFETCHING) {
+            prefetchingMsgIds.clear();
+        }
+        prefetchingMsgIds.add(msgId);
+        runOnBindWorker(() -> {
+            top.galqq.utils.MessageSnapshot prepared = snapshot != null
+                ? snapshot : prepareSnapshot(context, msgRecord, fields, configStamp);
+            if (prepared != null && !prepared.isSelf && passesSenderFilter(prepared.senderUin)) {
+                loadPersistedOptions(prepared);
+            }
+            mainHandler.post(top.galqq.utils.MainThreadWatchdog.wrap("QQNT.prefetch", () -> {
+                if (prepared == null || prepared.isSelf || !passesSenderFilter(prepared.senderUin)
+                        || !submitPrefetch(context, prepared, fields.getSenderName())) {
+                    prefetchingMsgIds.remove(msgId);
+                }
+            }));
+        });
+        return true;
+    }
+    
+    /**
+     * 以低优先级提交预取请求，结果只写入缓存（主线程）
+     * @return 是否已提交
+     */
+    private static boolean submitPrefetch(Context context, top.galqq.utils.MessageSnapshot snapshot, String senderName) {
+        final String msgId = snapshot.msgId;
+        if (hasCurrentOptions(snapshot.stateKey, snapshot.senderUin, snapshot.peerUin)) {
+            return false;
+        }
+        String peerUin = snapshot.peerUin;
+        String senderUin = snapshot.senderUin;
+        if (snapshot.isGroupChat && (ConfigManager.isDisableGroupOptions() || !ConfigManager.isGroupPassFilter(peerUin))) {
+            return false;
+        }
+        ConfigManager.PromptItem selectedPrompt = top.galqq.utils.PromptSelector.getSelectedPrompt(
+            ConfigManager.getPromptList(), senderUin, peerUin, ConfigManager.isAiEnabled());
+        if (selectedPrompt == null) {
+            return false;
+        }
+        final String customPrompt = selectedPrompt.content;
+        String conversationId = (peerUin != null && !peerUin.isEmpty()) ? peerUin : senderUin;
+        
+        List<MessageContextManager.ChatMessage> contextMessages = null;
+        if (ConfigManager.isContextEnabled() && conversationId != null) {
+            contextMessages = getCachedContextMessages(conversationId, msgId, snapshot.textContent,
+                ConfigManager.getContextMessageCount());
+        }
+        java.util.List<top.galqq.utils.ImageExtractor.ImageElement> imageElements = null;
+        if (ConfigManager.isImageRecognitionEnabled()
+                && (snapshot.configStamp & top.galqq.utils.MessageSnapshot.STAMP_IMAGE) != 0 && snapshot.hasImages()) {
+            imageElements = snapshot.imageElements;
+        }
+        
+        LOG.d(TAG + ": [PREFETCH] 预取选项 msgId={}", msgId);
+        AiRateLimitedQueue.getInstance(context).submitRequest(
+            context,
+            snapshot.textContent,
+            msgId,
+            AiRateLimitedQueue.Priority.LOW,
+            contextMessages,
+            senderName,
+            snapshot.msgTime,
+            senderUin,
+            customPrompt,
+            imageElements,
+            conversationId,
+            new HttpAiClient.AiCallback() {
+                @Override
+                public void onSuccess(List<String> options) {
+                    prefetchingMsgIds.remove(msgId);
+                    cacheOptions(msgId, options, top.galqq.utils.MessageUiStateStore.promptFingerprint(
+                        customPrompt, ConfigManager.getAiModel()));
                 }
                 
-                // 合并内容
-                msgContent = top.galqq.utils.ImageContextManager.mergeImageContext(
-                    msgContent, imageDescriptions, emojiDescriptions);
-                
-                if (ConfigManager.isDebugHookLogEnabled()) {
-                    debugLog(TAG + ": 合并后消息内容: " + msgContent);
+                @Override
+                public void onFailure(Exception e) {
+                    prefetchingMsgIds.remove(msgId);
                 }
             }
-            
-            // 无条件清理旧选项条和好感度视图（RecyclerView的ViewHolder会复用）
-            // 使用View接收，避免ClassCastException（因为可能是LinearLayout也可能是TextView）
-            View existingView = rootView.findViewById(OPTION_BAR_ID);
-            if (existingView != null) {
-                if (existingView.getParent() instanceof ViewGroup) {
-                    ((ViewGroup) existingView.getParent()).removeView(existingView);
-                } else {
-                    rootView.removeView(existingView);
+        );
+        return true;
+    }
+    
+    // ========== 后台绑定流水线 ==========
+    
+    /**
+     * 获取后台绑定线程的 Handler（懒加载）
+     */
+    private static android.os.Handler getBindWorkerHandler() {
+        if (bindWorkerHandler == null) {
+            synchronized (MessageInterceptor.class) {
+                if (bindWorkerHandler == null) {
+                    android.os.HandlerThread thread = new android.os.HandlerThread(
+                        "GalQQ-BindWorker", android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    thread.start();
+                    bindWorkerHandler = new android.os.Handler(thread.getLooper());
                 }
             }
-            
-            // 清理好感度视图 - 遍历所有可能的位置
-            // 好感度视图可能被添加到 rootView 或其子 ViewGroup 中
-            removeAffinityViewRecursively(rootView);
-            
-            // 黑白名单过滤
-            String senderUin = null;
+        }
+        return bindWorkerHandler;
+    }
+    
+    private static void runOnBindWorker(Runnable task) {
+        getBindWorkerHandler().post(() -> {
             try {
-                Object senderUinObj = XposedHelpers.getObjectField(msgRecord, "senderUin");
-                senderUin = String.valueOf(senderUinObj);
-                String filterMode = ConfigManager.getFilterMode();
-                
-                // debugLog(TAG + ": Filter - senderUin=" + senderUin + ", mode=" + filterMode);
+                task.run();
+            } catch (Throwable t) {
+                LOG.d(TAG + ": [PIPELINE] 后台处理失败: {}", t.getMessage());
+                LOG.d(t);
+            }
+        });
+    }
+    
+    /**
+     * 为 rootView 分配新的绑定代号
+     */
+    private static long markBindGeneration(View rootView) {
+        long generation = bindGenerationCounter.incrementAndGet();
+        rootView.setTag(BIND_GENERATION_TAG, generation);
+        return generation;
+    }
+    
+    /**
+     * rootView 是否仍然绑定在该代号对应的消息上
+     */
+    private static boolean isCurrentBindGeneration(View rootView, long generation) {
+        Object tag = rootView.getTag(BIND_GENERATION_TAG);
+        return tag instanceof Long && (Long) tag == generation;
+    }
+    
+    /**
+     * 黑白名单过滤
+     * @return true 表示通过过滤
+     */
+    private static boolean passesSenderFilter(String senderUin) {
+        if (senderUin == null) {
+            return false; // 无法获取发送者，不添加选项条
+        }
+        try {
+            String filterMode = ConfigManager.getFilterMode();
+            if ("blacklist".equals(filterMode)) {
+                return !ConfigManager.isInBlacklist(senderUin);
+            } else if ("whitelist".equals(filterMode)) {
+                return ConfigManager.isInWhitelist(senderUin);
+            }
+            return true;
+        } catch (Throwable t) {
+            return false; // 过滤失败时不添加选项条
+        }
+    }
+    
+    /**
+     * 后台线程：构建快照、过滤、写入上下文并预取好感度
+     * @return 需要挂载视图的快照，不需要显示时返回 null
+     */
+    private static top.galqq.utils.MessageSnapshot prepareSnapshot(Context context, Object msgRecord,
+            top.galqq.utils.MsgRecordAccessor.MsgFields fields, int configStamp) {
+        long startNs = System.nanoTime();
+        try {
+            return prepareSnapshotInternal(context, msgRecord, fields, configStamp);
+        } finally {
+            top.galqq.utils.BindTimingStats.record(top.galqq.utils.BindTimingStats.PHASE_CONTEXT, System.nanoTime() - startNs);
+        }
+    }
+    
+    private static top.galqq.utils.MessageSnapshot prepareSnapshotInternal(Context context, Object msgRecord,
+            top.galqq.utils.MsgRecordAccessor.MsgFields fields, int configStamp) {
+        top.galqq.utils.MessageSnapshot snapshot = buildMessageSnapshot(context, msgRecord, fields, configStamp);
+        
+        // 如果没有文字内容且没有图片/表情包,则跳过
+        if (!snapshot.displayable) {
+            top.galqq.utils.MessageSnapshot.put(snapshot);
+            return null;
+        }
+        
+        // 被过滤的消息不写入快照，解除过滤后重新构建时才会进入上下文
+        if (!passesSenderFilter(snapshot.senderUin)) {
+            return null;
+        }
+        
+        // 保存消息到上下文缓存（带去重），仅在首次构建快照时执行
+        String peerUin = snapshot.peerUin;
+        String msgId = snapshot.msgId;
+        try {
+            LOG.d(TAG + ": [Affinity] peerUin={}, senderUin={}", peerUin, snapshot.senderUin);
+            
+            // 使用peerUin作为conversationId（群聊时为群号，私聊时为对方QQ）
+            // 这样可以确保群聊中不同用户的消息被聚合到同一个上下文中
+            // 总是缓存消息，以便在按需显示时也能使用缓存
+            if (peerUin != null && !snapshot.mergedContent.isEmpty()) {
+                // 【上下文图片识别】传递图片数量，用于后续识别上下文中的图片
+                java.util.List<top.galqq.utils.ImageExtractor.ImageElement> imageElements = snapshot.imageElements;
+                MessageContextManager.addMessage(peerUin, snapshot.senderName, snapshot.mergedContent,
+                    snapshot.isSelf, msgId, snapshot.msgTime, imageElements.size());
                 
-                if ("blacklist".equals(filterMode)) {
-                    if (ConfigManager.isInBlacklist(senderUin)) {
-                        // debugLog(TAG + ": ✗ BLOCKED by blacklist: " + senderUin);
-                        return; // 不通过过滤，不添加选项条
-                    }
-                } else if ("whitelist".equals(filterMode)) {
-                    if (!ConfigManager.isInWhitelist(senderUin)) {
-                        // debugLog(TAG + ": ✗ BLOCKED by whitelist (not in list): " + senderUin);
-                        return; // 不通过过滤，不添加选项条
-                    }
+                // 【上下文图片识别】缓存图片元素，以便后续识别
+                if (!imageElements.isEmpty() && msgId != null) {
+                    top.galqq.utils.ImageDescriptionCache.putImageElements(peerUin, msgId, imageElements);
                 }
-                // debugLog(TAG + ": ✓ PASSED filter: " + senderUin);
                 
-                // 【详细调试日志】已禁用
-                // debugLog(TAG + ": isSelf=" + isSelf);
-                // debugLog(TAG + ": senderUin=" + senderUin);
-                // if (msgContent != null && !msgContent.isEmpty()) {
-                //     String contentPreview = msgContent.length() > 50 ? msgContent.substring(0, 50) + "..." : msgContent;
-                //     debugLog(TAG + ": msgContent=" + contentPreview);
-                // }
-            } catch (Throwable t) {
-                // debugLog(TAG + ": Error filtering by list: " + t.getMessage());
-                // debugLog(t);
-                return; // 过滤失败时不添加选项条
+                LOG.d(TAG + ": 已缓存消息到上下文管理器（支持自动显示和按需显示）");
             }
+        } catch (Throwable t) {
+            LOG.d(TAG + ": Error saving message to context: {}", t.getMessage());
+        }
+        top.galqq.utils.MessageSnapshot.put(snapshot);
+        
+        // 预取好感度，主线程挂载时直接命中显示缓存
+        String senderUin = snapshot.senderUin;
+        if (!snapshot.isSelf && ConfigManager.isAffinityEnabled() && senderUin != null && !senderUin.isEmpty()
+                && !affinityDisplayCache.containsKey(senderUin)) {
+            lookupAffinity(context, senderUin);
+        }
+        return snapshot;
+    }
+    
+    /**
+     * 查询好感度并写入显示缓存（可能读取磁盘缓存，应在后台线程调用）
+     * @return 好感度值，无数据时返回 -1
+     */
+    private static int lookupAffinity(Context context, String senderUin) {
+        try {
+            // 初始化好感度管理器（首次调用时会触发数据获取）
+            initAffinityManager(context);
             
-            // 获取消息ID（用于AI缓存和上下文去重）
-            String msgId = null;
-            try {
-                Object msgIdObj = XposedHelpers.getObjectField(msgRecord, "msgId");
-                msgId = String.valueOf(msgIdObj);
-            } catch (Throwable t) {
-                debugLog(TAG + ": Failed to get msgId: " + t.getMessage());
+            top.galqq.utils.AffinityManager affinityManager = 
+                top.galqq.utils.AffinityManager.getInstance(context);
+            int affinity = affinityManager.getAffinity(senderUin);
+            
+            // 只缓存有效的好感度值（非-1）
+            if (affinity >= 0) {
+                affinityDisplayCache.put(senderUin, affinity);
             }
+            return affinity;
+        } catch (Throwable t) {
+            LOG.d(TAG + ": [Affinity] Error: {}", t.getMessage());
+            return -1;
+        }
+    }
+    
+    /**
+     * 创建好感度视图并添加到布局（主线程）
+     */
+    private static void showAffinityView(Context context, ViewGroup rootView, Object msgRecord,
+                                         String peerUin, String senderUin, int affinity) {
+        // 【修改】只有当好感度有效时才创建视图，无好感度数据的用户不显示
+        if (affinity < 0) {
+            return;
+        }
+        try {
+            // 创建好感度视图
+            TextView affinityView = top.galqq.utils.AffinityViewHelper.createAffinityView(context, affinity);
             
-            // 提前获取消息时间戳，用于历史消息判断
-            long msgTime = 0;
-            try {
-                Object msgTimeObj = XposedHelpers.getObjectField(msgRecord, "msgTime");
-                if (msgTimeObj != null) {
-                    // msgTime通常是秒，转换为毫秒
-                    msgTime = Long.parseLong(String.valueOf(msgTimeObj)) * 1000L;
-                }
-            } catch (Throwable t) {
-                // 失败则使用当前时间（降级）
-                msgTime = System.currentTimeMillis();
-                debugLog(TAG + ": Failed to get msgTime, using current time: " + t.getMessage());
+            // 判断是否是私聊：peerUin == senderUin 时为私聊
+            boolean isPrivateChat = (peerUin != null && peerUin.equals(senderUin));
+            LOG.d(TAG + ": [Affinity] isPrivateChat={}, peerUin={}, senderUin={}", isPrivateChat, peerUin, senderUin);
+            
+            // 添加到布局（传递私聊标志以调整位置）
+            addAffinityViewToLayout(context, rootView, affinityView, msgRecord, isPrivateChat);
+        } catch (Throwable t) {
+            LOG.d(TAG + ": [Affinity] Error: {}", t.getMessage());
+        }
+    }
+    
+    /**
+     * 主线程：根据快照挂载好感度视图、选项条或按钮
+     */
+    private static void attachBubbleViews(Context context, ViewGroup rootView, Object msgRecord,
+                                          top.galqq.utils.MessageSnapshot snapshot, long generation) {
+        String peerUin = snapshot.peerUin;
+        String senderUin = snapshot.senderUin;
+        String msgId = snapshot.msgId;
+        long msgTime = snapshot.msgTime;
+        
+        if (snapshot.isSelf) {
+            // 【新增】即使是自己的消息，也需要检测并调整表情回复位置
+            // 避免表情回复和消息气泡重叠
+            LOG.d(TAG + ": [EMOJI_REACTION_SELF] 检查自己消息的表情回复");
+            adjustEmojiReactionForSelfMessage(context, rootView, msgRecord);
+            return;
+        }
+        
+        // 如果启用好感度功能，添加好感度视图
+        long affinityStartNs = System.nanoTime();
+        if (ConfigManager.isAffinityEnabled() && senderUin != null && !senderUin.isEmpty()) {
+            // 【View复用修复】优先从显示缓存获取，未命中时在后台线程查询
+            Integer cachedAffinity = affinityDisplayCache.get(senderUin);
+            if (cachedAffinity != null) {
+                showAffinityView(context, rootView, msgRecord, peerUin, senderUin, cachedAffinity);
+            } else {
+                // 【滚动感知】快速滑动时推迟到列表静止后再查询
+                top.galqq.utils.ChatEnvironment.of(rootView).runWhenIdle(rootView, top.galqq.utils.ChatEnvironment.TASK_AFFINITY, () -> {
+                    if (!isCurrentBindGeneration(rootView, generation)) {
+                        return;
+                    }
+                    runOnBindWorker(() -> {
+                        int affinity = lookupAffinity(context, senderUin);
+                        if (affinity < 0) {
+                            return;
+                        }
+                        mainHandler.post(top.galqq.utils.MainThreadWatchdog.wrap("QQNT.affinity", () -> {
+                            if (isCurrentBindGeneration(rootView, generation)) {
+                                showAffinityView(context, rootView, msgRecord, peerUin, senderUin, affinity);
+                            }
+                        }));
+                    });
+                });
+            }
+            top.galqq.utils.BindTimingStats.record(top.galqq.utils.BindTimingStats.PHASE_AFFINITY, System.nanoTime() - affinityStartNs);
+        }
+        
+        // 防止加载历史记录时触发AI刷屏
+        // 动态获取配置的阈值（秒转毫秒）
+        int thresholdSeconds = ConfigManager.getHistoryThreshold();
+        long thresholdMs = thresholdSeconds * 1000L;
+        
+        // 检查是否已缓存AI选项（如果有缓存，即使超过阈值也显示）
+        long stateKey = snapshot.stateKey;
+        boolean hasCachedOptions = hasCurrentOptions(stateKey, snapshot.senderUin, snapshot.peerUin);
+        
+        // 历史消息判断：超过阈值的消息不显示任何UI（包括私聊）
+        long currentTime = System.currentTimeMillis();
+        long timeDiff = Math.abs(currentTime - msgTime);
+        boolean isHistoryMessage = (!hasCachedOptions && timeDiff > thresholdMs);
+        
+        // 日志关闭时不拼接、不装箱
+        if (LOG.isEnabled()) {
+            LOG.d(TAG + ": [HISTORY_CHECK] msgTime=" + msgTime + ", currentTime=" + currentTime + 
+                    ", diff=" + timeDiff + "ms, threshold=" + thresholdMs + "ms, hasCached=" + hasCachedOptions + 
+                    ", isHistory=" + isHistoryMessage);
+        }
+        
+        if (isHistoryMessage) {
+            if (LOG.isEnabled()) {
+                LOG.d(TAG + ": [HISTORY] 历史消息，不显示任何UI (diff={}ms > threshold={}ms)", timeDiff, thresholdMs);
+            }
+            return;
+        }
+
+
+        // 检查是否自动显示选项
+        boolean autoShow = ConfigManager.isAutoShowOptionsEnabled();
+        // 确保 conversationId 在作用域内
+        String conversationId = (peerUin != null && !peerUin.isEmpty()) ? peerUin : senderUin;
+
+        // 群聊选项显示控制：仅对群聊进行过滤，私聊不受影响
+        // 判断是否为群聊：peerUin != senderUin 时为群聊
+        boolean isGroupChatForFilter = peerUin != null && senderUin != null && !peerUin.equals(senderUin);
+        if (isGroupChatForFilter) {
+            // 检查是否关闭群聊选项显示
+            if (ConfigManager.isDisableGroupOptions()) {
+                LOG.d(TAG + ": [GROUP_FILTER] Group options disabled, skipping all UI for group: {}", peerUin);
+                return; // 直接返回，不创建任何UI元素
+            }
+            // 检查群是否通过过滤（基于群黑白名单和群过滤模式）
+            if (!ConfigManager.isGroupPassFilter(peerUin)) {
+                LOG.d(TAG + ": [GROUP_FILTER] Group {} filtered out, skipping all UI", peerUin);
+                return; // 直接返回，不创建任何UI元素
             }
+        }
+        // 【私聊】如果不是群聊，说明是私聊，继续显示选项
+        LOG.d(TAG + ": [CHAT_TYPE] isGroupChat={}, autoShow={}", isGroupChatForFilter, autoShow);
+
+        // 检查是否用户手动点击过显示
+        boolean hasRequested = top.galqq.utils.MessageUiStateStore.isRequested(stateKey);
+        // 检查是否有缓存结果（有结果也应该直接显示）
+        boolean hasCache = hasCachedOptions;
+        
+        // 检查是否已收起（优先显示「展开选项」按钮）
+        boolean isCollapsed = top.galqq.utils.MessageUiStateStore.isCollapsed(stateKey);
+        
+        // 【修改逻辑】根据是否启用自动显示来决定UI显示方式
+        long viewCreateStartNs = System.nanoTime();
+        View viewToAdd = null;
+        boolean needFillContent = false;
+        
+        if (isCollapsed && hasCache) {
+            // 已收起且有缓存：显示「展开选项」按钮
+            LOG.d(TAG + ": [UI_MODE] 显示「展开选项」按钮（已收起状态）");
+            viewToAdd = createExpandFromCacheButton(context, msgRecord, msgId, conversationId, rootView);
+            
+        } else if (isHistoryMessage) {
+            // 【历史消息】始终只显示「显示选项」按钮，不自动加载AI
+            LOG.d(TAG + ": [UI_MODE] 历史消息，显示「显示选项」按钮");
+            viewToAdd = createShowOptionsButton(context, msgRecord, msgId, conversationId, rootView);
+            
+        } else if (autoShow) {
+            // 【仅在启用自动显示时】自动创建选项条并填充
+            LOG.d(TAG + ": [UI_MODE] 自动显示选项（autoShow=true）");
+            LinearLayout optionBar = createEmptyOptionBarNT(context);
+            optionBar.setId(OPTION_BAR_ID);
+            viewToAdd = optionBar;
+            needFillContent = true;
             
-            // 保存消息到上下文缓存（带去重）
-            // 注意：peerUin 已在前面获取，这里不需要重复定义
-            try {
-                // 获取发送人昵称（优先使用备注名，其次QQ昵称）
-                String senderName = null;
-                try {
-                    // 优先尝试获取备注名
-                    Object remarkNameObj = XposedHelpers.getObjectField(msgRecord, "sendRemarkName");
-                    if (remarkNameObj != null && !String.valueOf(remarkNameObj).trim().isEmpty()) {
-                        senderName = String.valueOf(remarkNameObj);
-                    } else {
-                        // 备注名为空，尝试获取QQ昵称
-                        Object nickNameObj = XposedHelpers.getObjectField(msgRecord, "sendNickName");
-                        if (nickNameObj != null && !String.valueOf(nickNameObj).trim().isEmpty()) {
-                            senderName = String.valueOf(nickNameObj);
+        } else if (hasRequested || hasCache) {
+            // 【用户已点击显示或有缓存】显示选项条
+            LOG.d(TAG + ": [UI_MODE] 显示选项条（用户已请求或有缓存）");
+            LinearLayout optionBar = createEmptyOptionBarNT(context);
+            optionBar.setId(OPTION_BAR_ID);
+            viewToAdd = optionBar;
+            needFillContent = true;
+            
+        } else {
+            // 【未启用自动显示且未请求】始终显示「显示选项」按钮
+            LOG.d(TAG + ": [UI_MODE] 显示「显示选项」按钮（按需模式）");
+            viewToAdd = createShowOptionsButton(context, msgRecord, msgId, conversationId, rootView);
+        }
+        
+        long layoutStartNs = System.nanoTime();
+        top.galqq.utils.BindTimingStats.record(top.galqq.utils.BindTimingStats.PHASE_VIEW_CREATE, layoutStartNs - viewCreateStartNs);
+        
+        // 统一处理布局添加
+        if (viewToAdd != null) {
+            addToBubbleLayout(context, rootView, viewToAdd, msgRecord);
+            
+            // 如果需要填充内容（选项条）
+            if (needFillContent && viewToAdd instanceof LinearLayout) {
+                final LinearLayout optionBar = (LinearLayout) viewToAdd;
+                if (hasCache) {
+                    fillOptionBarContentWithRoot(context, optionBar, msgRecord, msgId, conversationId, rootView);
+                } else {
+                    // 【滚动感知】没有缓存时会发起AI请求，快速滑动期间推迟到列表静止后再提交
+                    top.galqq.utils.ChatEnvironment.of(rootView).runWhenIdle(rootView, top.galqq.utils.ChatEnvironment.TASK_REQUEST, () -> {
+                        if (isCurrentBindGeneration(rootView, generation) && optionBar.getParent() != null) {
+                            fillOptionBarContentWithRoot(context, optionBar, msgRecord, msgId, conversationId, rootView);
                         }
-                    }
-                } catch (Throwable t) {
-                    // 字段获取失败
-                    debugLog(TAG + ": Failed to get sender name: " + t.getMessage());
-                }
-                
-                // 如果所有尝试都失败，使用UIN
-                if (senderName == null || senderName.trim().isEmpty()) {
-                    senderName = senderUin != null ? senderUin : "未知";
+                    });
                 }
-                
-                // peerUin 已在前面获取，这里添加调试日志
-                debugLog(TAG + ": [Affinity] peerUin=" + peerUin + ", senderUin=" + senderUin);
+            }
+            top.galqq.utils.BindTimingStats.record(top.galqq.utils.BindTimingStats.PHASE_LAYOUT, System.nanoTime() - layoutStartNs);
+        }
+    }
 
-                // 使用peerUin作为conversationId（群聊时为群号，私聊时为对方QQ）
-                // 这样可以确保群聊中不同用户的消息被聚合到同一个上下文中
-                if (peerUin != null && !msgContent.isEmpty()) {
-                    
-                    // 【修改】总是缓存消息到上下文管理器，以便在按需显示时也能使用缓存
-                    // 这样无论是自动显示还是按需显示模式，都能从内存缓存中快速获取上下文
-                    boolean shouldCacheMessage = true;
-                    
-                    // 【新增】提取引用回复的内容并整合到消息
-                    try {
-                        List<?> elements = (List<?>) XposedHelpers.getObjectField(msgRecord, "elements");
-                        if (elements != null && !elements.isEmpty()) {
-                            // 【调试日志已禁用】
-                            // debugLog(TAG + ": Elements count: " + elements.size());
-                            // for (int i = 0; i < elements.size(); i++) {
-                            //     Object element = elements.get(i);
-                            //     debugLog(TAG + ":   [" + i + "] " + element.getClass().getSimpleName());
-                            //     
-                            //     // 尝试所有可能的引用字段名
-                            //     for (String fieldName : new String[]{"replyElement", "g", "h"}) {
-                            //         try {
-                            //             Object field = XposedHelpers.getObjectField(element, fieldName);
-                            //             if (field != null) {
-                            //                 debugLog(TAG + ":     ." + fieldName + " exists: " + field.getClass().getSimpleName());
-                            //             }
-                            //         } catch (Throwable ignored) {}
-                            //     }
-                            // }
-                            
-                            for (Object element : elements) {
-                                try {
-                                    // 尝试获取replyElement
-                                    Object replyElement = XposedHelpers.getObjectField(element, "replyElement");
-                                    if (replyElement != null) {
-                                        // 提取引用的消息文本
-                                        String replyText = null;
-                                        try {
-                                            Object replyTextObj = XposedHelpers.getObjectField(replyElement, "sourceMsgText");
-                                            if (replyTextObj != null) {
-                                                replyText = String.valueOf(replyTextObj);
-                                            }
-                                        } catch (Throwable ignored) {}
-                                        
-                                        // 提取引用消息的发送人
-                                        String replySenderName = null;
-                                        try {
-                                            Object senderShowNameObj = XposedHelpers.getObjectField(replyElement, "senderShowName");
-                                            if (senderShowNameObj != null) {
-                                                replySenderName = String.valueOf(senderShowNameObj);
-                                            }
-                                        } catch (Throwable ignored) {}
-                                        
-                                        // 降级策略1：尝试从当前消息内容中解析 "@昵称 "
-                                        if (replySenderName == null && msgContent != null) {
-                                            String trimmedContent = msgContent.trim();
-                                            if (trimmedContent.startsWith("@")) {
-                                                int spaceIndex = trimmedContent.indexOf(' ');
-                                                if (spaceIndex > 1) {
-                                                    // 提取 @ 和 空格 之间的内容作为名字
-                                                    String potentialName = trimmedContent.substring(1, spaceIndex);
-                                                    // 简单的合法性检查（避免提取到过长的错误内容）
-                                                    if (potentialName.length() < 20) {
-                                                        replySenderName = potentialName;
-                                                        // debugLog(TAG + ": Extracted reply sender from content: " + replySenderName);
-                                                    }
-                                                }
-                                            }
-                                        }
-                                        
-                                        // 降级策略2：使用 senderUid
-                                        if (replySenderName == null) {
-                                            try {
-                                                long senderUid = XposedHelpers.getLongField(replyElement, "senderUid");
-                                                if (senderUid > 0) {
-                                                    replySenderName = String.valueOf(senderUid);
-                                                } else {
-                                                    // 尝试 senderUidStr
-                                                    Object senderUidStrObj = XposedHelpers.getObjectField(replyElement, "senderUidStr");
-                                                    if (senderUidStrObj != null) {
-                                                        replySenderName = String.valueOf(senderUidStrObj);
-                                                    }
-                                                }
-                                            } catch (Throwable ignored) {}
-                                        }
-                                        
-                                        // 最终兜底
-                                        if (replySenderName == null) {
-                                            replySenderName = "某人";
-                                        }
-                                        
-                                        // 如果成功提取引用内容，整合到当前消息内容中
-                                        if (replyText != null && !replyText.trim().isEmpty()) {
-                                            if (replySenderName == null || replySenderName.trim().isEmpty()) {
-                                                replySenderName = "某人";
-                                            }
-                                            
-                                            // 将引用信息附加到消息内容
-                                            // 格式: 原消息内容 (回复 @被引用者: "被引用内容")
-                                            msgContent = msgContent + " (回复 @" + replySenderName + ": \"" + replyText + "\")";
-                                            
-                                            debugLog(TAG + ": ✓ 已将引用信息整合到消息内容");
-                                        }
-                                        break; // 只处理第一个replyElement
-                                    }
-                                } catch (Throwable ignored) {
-                                    // replyElement字段不存在或获取失败，继续下一个element
-                                }
-                            }
-                        }
-                    } catch (Throwable t) {
-                        debugLog(TAG + ": Error extracting reply content: " + t.getMessage());
-                    }
-                    
-                    // 【修改自己消息的显示格式为"昵称[我]"】
-                    if (isSelf && senderName != null && !senderName.isEmpty()) {
-                        senderName = senderName + "[我]";
+    /**
+     * MessageUiStateStore 的键：直接取 MsgRecord 的 long msgId，不经过字符串
+     */
+    private static long stateKeyOf(top.galqq.utils.MsgRecordAccessor.MsgFields fields) {
+        return fields.msgId != null ? top.galqq.utils.MessageUiStateStore.keyOf(fields.msgIdLong) : 0L;
+    }
+    
+    /**
+     * 是否需要去磁盘读取持久化的选项（内存中没有，且磁盘索引中可能存在）
+     */
+    private static boolean needsPersistedOptions(top.galqq.utils.MessageSnapshot snapshot) {
+        if (snapshot.isSelf || snapshot.msgId == null || !ConfigManager.isAiEnabled()) {
+            return false;
+        }
+        long stateKey = snapshot.stateKey;
+        return top.galqq.utils.OptionsDiskStore.mightContain(stateKey)
+            && !hasCurrentOptions(stateKey, snapshot.senderUin, snapshot.peerUin);
+    }
+    
+    /**
+     * 从磁盘读取当前提示词/模型下已生成的选项，放入内存状态存储（后台线程调用）
+     */
+    private static void loadPersistedOptions(top.galqq.utils.MessageSnapshot snapshot) {
+        if (!needsPersistedOptions(snapshot)) {
+            return;
+        }
+        try {
+            long fingerprint = currentPromptFingerprint(snapshot.senderUin, snapshot.peerUin);
+            if (fingerprint == 0L) {
+                return;
+            }
+            long stateKey = snapshot.stateKey;
+            List<String> options = top.galqq.utils.OptionsDiskStore.load(stateKey, fingerprint);
+            if (options != null) {
+                top.galqq.utils.MessageUiStateStore.putOptions(stateKey, options, fingerprint);
+                LOG.d(TAG + ": [OPTIONS_STORE] 命中持久化选项 msgId={}", snapshot.msgId);
+            }
+        } catch (Throwable t) {
+            LOG.d(TAG + ": [OPTIONS_STORE] 读取持久化选项失败: {}", t.getMessage());
+        }
+    }
+    
+    /**
+     * 当前会为该消息选用的提示词/模型指纹（与请求时的选择逻辑一致），没有可用提示词时返回 0
+     */
+    private static long currentPromptFingerprint(String senderUin, String peerUin) {
+        ConfigManager.PromptItem selectedPrompt = top.galqq.utils.PromptSelector.getSelectedPrompt(
+            ConfigManager.getPromptList(), senderUin, peerUin, ConfigManager.isAiEnabled());
+        if (selectedPrompt == null) {
+            return 0L;
+        }
+        return top.galqq.utils.MessageUiStateStore.promptFingerprint(selectedPrompt.content, ConfigManager.getAiModel());
+    }
+    
+    /**
+     * 构建消息快照：提取文字/图片/表情、合并图片描述和引用信息、解析发送者名称、判断自己/群聊
+     * 结果只依赖消息本身和识别配置，可在重复绑定时复用
+     */
+    private static top.galqq.utils.MessageSnapshot buildMessageSnapshot(Context context, Object msgRecord,
+            top.galqq.utils.MsgRecordAccessor.MsgFields fields, int configStamp) {
+        String peerUin = fields.peerUin;
+        String senderUin = fields.senderUin;
+        
+        // Check if it's a received message
+        int sendType = fields.sendType;
+        boolean isSelfBySendType = (sendType == 1); // 1=自己发送, 0=收到的消息
+        
+        // 判断是群聊还是私聊
+        // 在群聊中：peerUin = 群号，senderUin = 发送者QQ
+        // 在私聊中：peerUin = 对方QQ = senderUin（当对方发消息时）
+        boolean isGroupChat = (peerUin != null && senderUin != null && !peerUin.equals(senderUin));
+        
+        // 在私聊中，只用 sendType 判断；在群聊中，需要额外用 senderUin 判断
+        boolean isSelfBySenderUin = false;
+        long currentUinForDebug = 0;
+        if (isGroupChat) {
+            // 群聊：需要比较 senderUin 和当前登录用户UIN
+            try {
+                long currentUin = top.galqq.utils.AccountSession.getUin(context);
+                currentUinForDebug = currentUin;
+                if (currentUin > 0 && senderUin != null && !senderUin.isEmpty()) {
+                    isSelfBySenderUin = senderUin.equals(String.valueOf(currentUin));
+                }
+            } catch (Throwable t) {
+                LOG.d(TAG + ": [isSelf] Failed to compare senderUin: {}", t.getMessage());
+            }
+        }
+        
+        // 根据聊天类型判断：
+        // - 私聊：直接用 sendType（sendType == 1 表示自己发的）
+        // - 群聊：sendType == 1 或 senderUin == currentUin
+        boolean isSelf = isGroupChat ? (isSelfBySendType || isSelfBySenderUin) : isSelfBySendType;
+        
+        // 【调试日志】输出判断详情
+        if (LOG.isEnabled()) {
+            LOG.d(TAG + ": [isSelf_CHECK] chatType=" + (isGroupChat ? "GROUP" : "PRIVATE") + 
+                    ", sendType=" + sendType + ", isSelfBySendType=" + isSelfBySendType + 
+                    ", senderUin=" + senderUin + ", currentUin=" + currentUinForDebug + 
+                    ", isSelfBySenderUin=" + isSelfBySenderUin + ", peerUin=" + peerUin + 
+                    ", FINAL_isSelf=" + isSelf);
+        }
+        
+        // 获取文字内容
+        String textContent = getMessageContentNT(msgRecord);
+        String msgContent = textContent;
+        
+        // 【图片识别】提取图片和表情包元素
+        java.util.List<top.galqq.utils.ImageExtractor.ImageElement> imageElements = null;
+        java.util.List<top.galqq.utils.ImageExtractor.EmojiElement> emojiElements = null;
+        boolean hasImages = false;
+        boolean hasEmojis = false;
+        
+        boolean imageEnabled = (configStamp & top.galqq.utils.MessageSnapshot.STAMP_IMAGE) != 0;
+        boolean emojiEnabled = (configStamp & top.galqq.utils.MessageSnapshot.STAMP_EMOJI) != 0;
+        if (imageEnabled || emojiEnabled) {
+            try {
+                if (imageEnabled) {
+                    imageElements = top.galqq.utils.ImageExtractor.extractImages(msgRecord);
+                    hasImages = imageElements != null && !imageElements.isEmpty();
+                    if (hasImages) {
+                        LOG.d(TAG + ": 提取到 {} 张图片", imageElements.size());
                     }
-                    
-                    // 【修改】总是缓存消息，无论是自动显示还是按需显示模式
-                    if (shouldCacheMessage) {
-                        // 【上下文图片识别】传递图片数量，用于后续识别上下文中的图片
-                        int imageCount = (imageElements != null) ? imageElements.size() : 0;
-                        MessageContextManager.addMessage(peerUin, senderName, msgContent, isSelf, msgId, msgTime, imageCount);
-                        
-                        // 【上下文图片识别】缓存图片元素，以便后续识别
-                        if (imageElements != null && !imageElements.isEmpty() && peerUin != null && msgId != null) {
-                            top.galqq.utils.ImageDescriptionCache.putImageElements(peerUin, msgId, imageElements);
-                        }
-                        
-                        debugLog(TAG + ": 已缓存消息到上下文管理器（支持自动显示和按需显示）");
+                }
+                
+                if (emojiEnabled) {
+                    emojiElements = top.galqq.utils.ImageExtractor.extractEmojis(msgRecord);
+                    hasEmojis = emojiElements != null && !emojiElements.isEmpty();
+                    if (hasEmojis) {
+                        LOG.d(TAG + ": 提取到 {} 个表情包", emojiElements.size());
                     }
                 }
             } catch (Throwable t) {
-                debugLog(TAG + ": Error saving message to context: " + t.getMessage());
+                LOG.d(TAG + ": 图片/表情包提取失败: {}", t.getMessage());
             }
+        }
+        
+        // 如果没有文字内容且没有图片/表情包,则跳过
+        if (msgContent.isEmpty() && !hasImages && !hasEmojis) {
+            return new top.galqq.utils.MessageSnapshot(fields.msgId, stateKeyOf(fields), peerUin, senderUin, 0, isSelf, isGroupChat,
+                false, textContent, textContent, null, null, 0, configStamp);
+        }
+        
+        // 【图片识别】合并图片描述到消息内容
+        if (hasImages || hasEmojis) {
+            java.util.List<String> imageDescriptions = null;
+            java.util.List<String> emojiDescriptions = null;
             
-            if (!isSelf) {
-                // 如果启用好感度功能，添加好感度视图
-                final String finalSenderUin = senderUin;
-                if (ConfigManager.isAffinityEnabled() && finalSenderUin != null && !finalSenderUin.isEmpty()) {
-                    try {
-                        // 初始化好感度管理器（首次调用时会触发数据获取）
-                        initAffinityManager(context);
-                        
-                        // 【View复用修复】优先从显示缓存获取，避免重复计算
-                        int affinity;
-                        if (affinityDisplayCache.containsKey(finalSenderUin)) {
-                            affinity = affinityDisplayCache.get(finalSenderUin);
-                        } else {
-                            // 从 AffinityManager 获取并缓存
-                            top.galqq.utils.AffinityManager affinityManager = 
-                                top.galqq.utils.AffinityManager.getInstance(context);
-                            affinity = affinityManager.getAffinity(finalSenderUin);
+            if (hasEmojis) {
+                // 表情包可以直接获取描述
+                emojiDescriptions = top.galqq.utils.ImageContextManager.createEmojiDescriptions(emojiElements);
+            }
+            
+            if (hasImages) {
+                // 根据是否启用外挂AI决定如何处理图片
+                if ((configStamp & top.galqq.utils.MessageSnapshot.STAMP_VISION) != 0) {
+                    // 启用外挂AI时,使用占位符(后续异步识别)
+                    imageDescriptions = top.galqq.utils.ImageContextManager.createPlaceholderDescriptions(imageElements);
+                } else {
+                    // 未启用外挂AI时,直接把图片信息发送给主AI
+                    imageDescriptions = new java.util.ArrayList<>();
+                    for (top.galqq.utils.ImageExtractor.ImageElement img : imageElements) {
+                        // 使用新的getDescriptionForAi方法获取完整描述
+                        String desc = img.getDescriptionForAi();
+                        imageDescriptions.add(desc);
+                        LOG.d(TAG + ": 图片描述: {}", desc);
+                        LOG.d(TAG + ":   sourcePath={}", img.sourcePath);
+                        LOG.d(TAG + ":   imageUrl={}", img.imageUrl);
+                    }
+                }
+            }
+            
+            // 合并内容
+            msgContent = top.galqq.utils.ImageContextManager.mergeImageContext(
+                msgContent, imageDescriptions, emojiDescriptions);
+            LOG.d(TAG + ": 合并后消息内容: {}", msgContent);
+        }
+        
+        // 提前获取消息时间戳，用于历史消息判断（msgTime通常是秒，转换为毫秒）
+        long msgTime;
+        if (fields.hasMsgTime) {
+            msgTime = fields.getMsgTimeMillis();
+        } else {
+            // 字段不存在则使用当前时间（降级）
+            msgTime = System.currentTimeMillis();
+            LOG.d(TAG + ": Failed to get msgTime, using current time");
+        }
+        
+        // 获取发送人昵称（优先使用备注名，其次QQ昵称）
+        String senderName = fields.getSenderName();
+        
+        // 如果所有尝试都失败，使用UIN
+        if (senderName == null || senderName.trim().isEmpty()) {
+            senderName = senderUin != null ? senderUin : "未知";
+        }
+        
+        if (peerUin != null && !msgContent.isEmpty()) {
+            // 【新增】提取引用回复的内容并整合到消息
+            try {
+                List<?> elements = fields.elements;
+                if (elements != null && !elements.isEmpty()) {
+                    for (Object element : elements) {
+                        // 获取replyElement（字段句柄按元素类缓存，没有该字段的元素直接返回null，不抛异常）
+                        Object replyElement = top.galqq.utils.MsgElementClassifier.getReplyElement(element);
+                        if (replyElement != null) {
+                            // 提取引用的消息文本
+                            String replyText = top.galqq.utils.MsgElementClassifier.getString(replyElement, "sourceMsgText");
+                            
+                            // 提取引用消息的发送人
+                            String replySenderName = top.galqq.utils.MsgElementClassifier.getString(replyElement, "senderShowName");
                             
-                            // 只缓存有效的好感度值（非-1）
-                            if (affinity >= 0) {
-                                affinityDisplayCache.put(finalSenderUin, affinity);
+                            // 降级策略1：尝试从当前消息内容中解析 "@昵称 "
+                            if (replySenderName == null && msgContent != null) {
+                                String trimmedContent = msgContent.trim();
+                                if (trimmedContent.startsWith("@")) {
+                                    int spaceIndex = trimmedContent.indexOf(' ');
+                                    if (spaceIndex > 1) {
+                                        // 提取 @ 和 空格 之间的内容作为名字
+                                        String potentialName = trimmedContent.substring(1, spaceIndex);
+                                        // 简单的合法性检查（避免提取到过长的错误内容）
+                                        if (potentialName.length() < 20) {
+                                            replySenderName = potentialName;
+                                        }
+                                    }
+                                }
+                            }
+                            
+                            // 降级策略2：使用 senderUid
+                            if (replySenderName == null) {
+                                long senderUid = top.galqq.utils.MsgElementClassifier.getLong(replyElement, "senderUid");
+                                if (senderUid > 0) {
+                                    replySenderName = String.valueOf(senderUid);
+                                } else {
+                                    // 尝试 senderUidStr
+                                    replySenderName = top.galqq.utils.MsgElementClassifier.getString(replyElement, "senderUidStr");
+                                }
                             }
-                        }
-                        
-                        // 【调试日志】打印好感度获取结果
-                        // debugLog(TAG + ": [Affinity] senderUin=" + finalSenderUin + ", affinity=" + affinity);
-                        
-                        // 【修改】只有当好感度有效时才创建视图，无好感度数据的用户不显示
-                        if (affinity >= 0) {
-                            // 创建好感度视图
-                            TextView affinityView = top.galqq.utils.AffinityViewHelper.createAffinityView(context, affinity);
                             
-                            // 判断是否是私聊：peerUin == senderUin 时为私聊
-                            boolean isPrivateChat = (peerUin != null && peerUin.equals(finalSenderUin));
-                            debugLog(TAG + ": [Affinity] isPrivateChat=" + isPrivateChat + ", peerUin=" + peerUin + ", senderUin=" + finalSenderUin);
+                            // 最终兜底
+                            if (replySenderName == null) {
+                                replySenderName = "某人";
+                            }
                             
-                            // 添加到布局（传递私聊标志以调整位置）
-                            addAffinityViewToLayout(context, rootView, affinityView, msgRecord, isPrivateChat);
+                            // 如果成功提取引用内容，整合到当前消息内容中
+                            if (replyText != null && !replyText.trim().isEmpty()) {
+                                if (replySenderName == null || replySenderName.trim().isEmpty()) {
+                                    replySenderName = "某人";
+                                }
+                                
+                                // 将引用信息附加到消息内容
+                                // 格式: 原消息内容 (回复 @被引用者: "被引用内容")
+                                msgContent = msgContent + " (回复 @" + replySenderName + ": \"" + replyText + "\")";
+                                
+                                LOG.d(TAG + ": ✓ 已将引用信息整合到消息内容");
+                            }
+                            break; // 只处理第一个replyElement
                         }
-                    } catch (Throwable t) {
-                        debugLog(TAG + ": [Affinity] Error: " + t.getMessage());
-                    }
-                }
-                
-                // 防止加载历史记录时触发AI刷屏
-                // 动态获取配置的阈值（秒转毫秒）
-                int thresholdSeconds = ConfigManager.getHistoryThreshold();
-                long thresholdMs = thresholdSeconds * 1000L;
-                
-                // 检查是否已缓存AI选项（如果有缓存，即使超过阈值也显示）
-                boolean hasCachedOptions = (msgId != null && optionsCache.containsKey(msgId));
-                
-                // 历史消息判断：超过阈值的消息不显示任何UI（包括私聊）
-                long currentTime = System.currentTimeMillis();
-                long timeDiff = Math.abs(currentTime - msgTime);
-                boolean isHistoryMessage = (!hasCachedOptions && timeDiff > thresholdMs);
-                
-                debugLog(TAG + ": [HISTORY_CHECK] msgTime=" + msgTime + ", currentTime=" + currentTime + 
-                        ", diff=" + timeDiff + "ms, threshold=" + thresholdMs + "ms, hasCached=" + hasCachedOptions + 
-                        ", isHistory=" + isHistoryMessage);
-                
-                if (isHistoryMessage) {
-                    debugLog(TAG + ": [HISTORY] 历史消息，不显示任何UI (diff=" + timeDiff + "ms > threshold=" + thresholdMs + "ms)");
-                    return;
-                }
-
-
-                // 检查是否自动显示选项
-                // 检查是否自动显示选项
-                boolean autoShow = ConfigManager.isAutoShowOptionsEnabled();
-                // 确保 conversationId 在作用域内
-                String conversationId = (peerUin != null && !peerUin.isEmpty()) ? peerUin : senderUin;
-
-                // 群聊选项显示控制：仅对群聊进行过滤，私聊不受影响
-                // 判断是否为群聊：peerUin != senderUin 时为群聊
-                boolean isGroupChatForFilter = peerUin != null && senderUin != null && !peerUin.equals(senderUin);
-                if (isGroupChatForFilter) {
-                    // 检查是否关闭群聊选项显示
-                    if (ConfigManager.isDisableGroupOptions()) {
-                        debugLog(TAG + ": [GROUP_FILTER] Group options disabled, skipping all UI for group: " + peerUin);
-                        return; // 直接返回，不创建任何UI元素
-                    }
-                    // 检查群是否通过过滤（基于群黑白名单和群过滤模式）
-                    if (!ConfigManager.isGroupPassFilter(peerUin)) {
-                        debugLog(TAG + ": [GROUP_FILTER] Group " + peerUin + " filtered out, skipping all UI");
-                        return; // 直接返回，不创建任何UI元素
-                    }
-                }
-                // 【私聊】如果不是群聊，说明是私聊，继续显示选项
-                debugLog(TAG + ": [CHAT_TYPE] isGroupChat=" + isGroupChatForFilter + ", autoShow=" + autoShow);
-
-                // 检查是否用户手动点击过显示
-                boolean hasRequested = (msgId != null && requestedOptionsMsgIds.contains(msgId));
-                // 检查是否有缓存结果（有结果也应该直接显示）
-                boolean hasCache = (msgId != null && optionsCache.containsKey(msgId));
-                
-                // 检查是否已收起（优先显示「展开选项」按钮）
-                boolean isCollapsed = (msgId != null && collapsedMsgIds.contains(msgId));
-                
-                // 【修改逻辑】根据是否启用自动显示来决定UI显示方式
-                View viewToAdd = null;
-                boolean needFillContent = false;
-                
-                if (isCollapsed && hasCache) {
-                    // 已收起且有缓存：显示「展开选项」按钮
-                    debugLog(TAG + ": [UI_MODE] 显示「展开选项」按钮（已收起状态）");
-                    viewToAdd = createExpandFromCacheButton(context, msgRecord, msgId, conversationId, rootView);
-                    
-                } else if (isHistoryMessage) {
-                    // 【历史消息】始终只显示「显示选项」按钮，不自动加载AI
-                    debugLog(TAG + ": [UI_MODE] 历史消息，显示「显示选项」按钮");
-                    viewToAdd = createShowOptionsButton(context, msgRecord, msgId, conversationId, rootView);
-                    
-                } else if (autoShow) {
-                    // 【仅在启用自动显示时】自动创建选项条并填充
-                    debugLog(TAG + ": [UI_MODE] 自动显示选项（autoShow=true）");
-                    LinearLayout optionBar = createEmptyOptionBarNT(context);
-                    optionBar.setId(OPTION_BAR_ID);
-                    viewToAdd = optionBar;
-                    needFillContent = true;
-                    
-                } else if (hasRequested || hasCache) {
-                    // 【用户已点击显示或有缓存】显示选项条
-                    debugLog(TAG + ": [UI_MODE] 显示选项条（用户已请求或有缓存）");
-                    LinearLayout optionBar = createEmptyOptionBarNT(context);
-                    optionBar.setId(OPTION_BAR_ID);
-                    viewToAdd = optionBar;
-                    needFillContent = true;
-                    
-                } else {
-                    // 【未启用自动显示且未请求】始终显示「显示选项」按钮
-                    debugLog(TAG + ": [UI_MODE] 显示「显示选项」按钮（按需模式）");
-                    viewToAdd = createShowOptionsButton(context, msgRecord, msgId, conversationId, rootView);
-                }
-                
-                // 统一处理布局添加
-                if (viewToAdd != null) {
-                    Class<?> constraintLayoutClass = null;
-                    try {
-                        constraintLayoutClass = XposedHelpers.findClass("androidx.constraintlayout.widget.ConstraintLayout", context.getClassLoader());
-                    } catch (Throwable t) {
-                        // Ignore if class not found
-                    }
-
-                    if (constraintLayoutClass != null && constraintLayoutClass.isAssignableFrom(rootView.getClass())) {
-                        handleConstraintLayout(context, rootView, viewToAdd, msgRecord);
-                    } else if (rootView.getClass().getName().contains("ConstraintLayout")) {
-                        handleConstraintLayout(context, rootView, viewToAdd, msgRecord);
-                    } else {
-                        handleLegacyLayout(context, rootView, viewToAdd);
-                    }
-                    
-                    // 如果需要填充内容（选项条）
-                    if (needFillContent && viewToAdd instanceof LinearLayout) {
-                        fillOptionBarContentWithRoot(context, (LinearLayout) viewToAdd, msgRecord, msgId, conversationId, rootView);
                     }
                 }
-            } else {
-                // 【新增】即使是自己的消息，也需要检测并调整表情回复位置
-                // 避免表情回复和消息气泡重叠
-                debugLog(TAG + ": [EMOJI_REACTION_SELF] 检查自己消息的表情回复");
-                adjustEmojiReactionForSelfMessage(context, rootView, msgRecord);
+            } catch (Throwable t) {
+                LOG.d(TAG + ": Error extracting reply content: {}", t.getMessage());
             }
-            
-            // debugLog(TAG + ": Successfully added option bar to QQNT message");
-
-        } catch (Throwable t) {
-            debugLog(TAG + ": Error processing QQNT message: " + t.getMessage());
-            debugLog(t);
         }
+        
+        // 【修改自己消息的显示格式为"昵称[我]"】
+        if (isSelf && senderName != null && !senderName.isEmpty()) {
+            senderName = senderName + "[我]";
+        }
+        
+        return new top.galqq.utils.MessageSnapshot(fields.msgId, stateKeyOf(fields), peerUin, senderUin, msgTime, isSelf, isGroupChat,
+            true, textContent, msgContent, senderName, imageElements,
+            emojiElements != null ? emojiElements.size() : 0, configStamp);
     }
 
     /**
-     * 递归清理好感度视图
-     * 由于 View 复用，好感度视图可能被添加到不同的位置
+     * 清理好感度视图
+     * 【布局策略】好感度视图插入时记录在 rootView 的 Tag 上，直接取回移除，不再递归遍历
      */
-    private static void removeAffinityViewRecursively(ViewGroup parent) {
-        if (parent == null) return;
-        
-        int affinityViewId = top.galqq.utils.AffinityViewHelper.AFFINITY_VIEW_ID;
-        
-        // 先检查直接子 View
-        View affinityView = parent.findViewById(affinityViewId);
-        if (affinityView != null) {
-            ViewGroup actualParent = (ViewGroup) affinityView.getParent();
-            if (actualParent != null) {
-                actualParent.removeView(affinityView);
-            }
-        }
-        
-        // 遍历所有子 View，查找并移除
-        for (int i = parent.getChildCount() - 1; i >= 0; i--) {
-            View child = parent.getChildAt(i);
-            if (child.getId() == affinityViewId) {
-                parent.removeViewAt(i);
-            } else if (child instanceof ViewGroup) {
-                // 递归检查子 ViewGroup
-                removeAffinityViewRecursively((ViewGroup) child);
-            }
-        }
+    private static void removeAffinityView(ViewGroup rootView) {
+        if (rootView == null) return;
+        top.galqq.utils.BubbleLayoutStrategy.removeInserted(
+            rootView, top.galqq.utils.BubbleLayoutStrategy.TAG_INSERTED_AFFINITY);
     }
 
     /**
@@ -1976,75 +2097,32 @@ public class MessageInterceptor {
      */
     private static void addAffinityViewToLayout(Context context, ViewGroup rootView, View affinityView, Object msgRecord, boolean isPrivateChat) {
         try {
-            // 1. 创建 ConstraintLayout.LayoutParams
-            Class<?> constraintLayoutParamsClass = XposedHelpers.findClass(
-                "androidx.constraintlayout.widget.ConstraintLayout$LayoutParams", 
-                context.getClassLoader()
-            );
-            Object clp = constraintLayoutParamsClass
-                .getConstructor(int.class, int.class)
-                .newInstance(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-            
-            // 2. 查找消息气泡（与选项条使用完全相同的逻辑）
-            int msgBubbleId = -1;
-            
-            // 2.1 BubbleLayout Class Name Search (Priority)
-            for (int i = 0; i < rootView.getChildCount(); i++) {
-                View child = rootView.getChildAt(i);
-                if (child.getClass().getName().contains("BubbleLayout") && child.getId() != View.NO_ID) {
-                    msgBubbleId = child.getId();
-                    debugLog(TAG + ": [Affinity] 找到气泡 via BubbleLayout: " + child.getClass().getSimpleName() + 
-                            ", ID=" + msgBubbleId + ", Top=" + child.getTop() + ", Height=" + child.getHeight());
-                    break;
-                }
+            top.galqq.utils.BubbleLayoutStrategy strategy = top.galqq.utils.BubbleLayoutStrategy.forRoot(rootView);
+            if (!strategy.isConstraintLayout) {
+                LOG.d(TAG + ": [Affinity] 非 ConstraintLayout，跳过好感度视图");
+                return;
             }
             
-            // 2.2 Text Content Search (Fallback)
-            if (msgBubbleId == -1) {
-                String msgContent = getMessageContentNT(msgRecord);
-                if (!msgContent.isEmpty()) {
-                    View textContainer = findViewWithText(rootView, msgContent);
-                    if (textContainer != null) {
-                        View bubble = textContainer;
-                        while (bubble.getParent() != rootView && bubble.getParent() instanceof View) {
-                            bubble = (View) bubble.getParent();
-                        }
-                        
-                        if (bubble.getParent() == rootView && bubble.getId() != View.NO_ID) {
-                            msgBubbleId = bubble.getId();
-                            debugLog(TAG + ": [Affinity] 找到气泡 via TextContent: " + bubble.getClass().getSimpleName() + 
-                                    ", ID=" + msgBubbleId + ", Top=" + bubble.getTop() + ", Height=" + bubble.getHeight());
-                        }
-                    }
-                }
-            }
+            // 1. 创建 ConstraintLayout.LayoutParams
+            ViewGroup.LayoutParams clp = strategy.newLayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
             
-            // 2.3 LinearLayout Fallback (Last Resort)
-            if (msgBubbleId == -1) {
-                for (int i = 0; i < rootView.getChildCount(); i++) {
-                    View child = rootView.getChildAt(i);
-                    if (child instanceof LinearLayout && child.getId() != View.NO_ID) {
-                        msgBubbleId = child.getId();
-                        break;
-                    }
-                }
-            }
+            // 2. 查找消息气泡（与选项条使用完全相同的逻辑，结果按布局类缓存）
+            int msgBubbleId = findMessageBubbleId(strategy, rootView, msgRecord);
             
             // 3. 如果找不到气泡，不添加好感度视图
             if (msgBubbleId == -1) {
-                debugLog(TAG + ": [Affinity] Could not find message bubble, skipping affinity view");
+                LOG.d(TAG + ": [Affinity] Could not find message bubble, skipping affinity view");
                 return;
             }
             
             // 4. 添加视图到布局
-            rootView.addView(affinityView, (ViewGroup.LayoutParams) clp);
+            rootView.addView(affinityView, clp);
+            top.galqq.utils.BubbleLayoutStrategy.rememberInserted(
+                rootView, top.galqq.utils.BubbleLayoutStrategy.TAG_INSERTED_AFFINITY, affinityView);
             
             // 5. 使用 ConstraintSet 设置约束（与选项条一样的方式）
-            Class<?> constraintSetClass = XposedHelpers.findClass(
-                "androidx.constraintlayout.widget.ConstraintSet", 
-                context.getClassLoader()
-            );
-            Object constraintSet = constraintSetClass.newInstance();
+            Object constraintSet = strategy.newConstraintSet();
             XposedHelpers.callMethod(constraintSet, "clone", rootView);
             
             // 约束常量: TOP=3, BOTTOM=4, LEFT=1
@@ -2057,7 +2135,9 @@ public class MessageInterceptor {
             // 私聊：气泡上方没有昵称，直接使用8dp（和群聊一样，因为群聊正常）
             int bottomMargin = isPrivateChat ? dp2px(context, -16) : dp2px(context, 8);
             
-            debugLog(TAG + ": [Affinity] isPrivateChat=" + isPrivateChat + ", bottomMargin=" + bottomMargin + "px, msgBubbleId=" + msgBubbleId);
+            if (LOG.isEnabled()) {
+                LOG.d(TAG + ": [Affinity] isPrivateChat={}, bottomMargin={}px, msgBubbleId={}", isPrivateChat, bottomMargin, msgBubbleId);
+            }
             
             // 底部连接到气泡顶部
             XposedHelpers.callMethod(constraintSet, "connect", viewId, BOTTOM, msgBubbleId, TOP, bottomMargin);
@@ -2067,17 +2147,42 @@ public class MessageInterceptor {
             // 应用约束
             XposedHelpers.callMethod(constraintSet, "applyTo", rootView);
             
-            debugLog(TAG + ": [Affinity] 好感度视图已添加，使用 ConstraintSet 方式");
+            LOG.d(TAG + ": [Affinity] 好感度视图已添加，使用 ConstraintSet 方式");
             
         } catch (Throwable t) {
-            debugLog(TAG + ": [Affinity] Error adding affinity view: " + t.getMessage());
+            LOG.d(TAG + ": [Affinity] Error adding affinity view: {}", t.getMessage());
             // 出错时移除视图
             try {
+                removeAffinityView(rootView);
                 rootView.removeView(affinityView);
             } catch (Throwable ignored) {}
         }
     }
     
+    /**
+     * 查找消息气泡 ID：BubbleLayout 类名 -> 文字内容 -> LinearLayout
+     * 已学到气泡位置时不再读取消息内容
+     */
+    private static int findMessageBubbleId(top.galqq.utils.BubbleLayoutStrategy strategy, ViewGroup rootView, Object msgRecord) {
+        int msgBubbleId = strategy.getCachedAnchorId(rootView);
+        if (msgBubbleId == -1) {
+            msgBubbleId = strategy.findAnchorId(rootView, getMessageContentNT(msgRecord));
+        }
+        return msgBubbleId;
+    }
+    
+    /**
+     * 将选项条/按钮添加到消息布局中
+     * 是否为 ConstraintLayout 由布局策略按 rootView 类缓存，不再每次反射查找
+     */
+    private static void addToBubbleLayout(Context context, ViewGroup rootView, View view, Object msgRecord) {
+        if (top.galqq.utils.BubbleLayoutStrategy.forRoot(rootView).isConstraintLayout) {
+            handleConstraintLayout(context, rootView, view, msgRecord);
+        } else {
+            handleLegacyLayout(context, rootView, view);
+        }
+    }
+    
     private static void handleLegacyLayout(Context context, ViewGroup rootView, View optionBar) {
         ViewGroup.LayoutParams lp;
         if (rootView instanceof RelativeLayout) {
@@ -2108,6 +2213,8 @@ public class MessageInterceptor {
             lp = mlp;
         }
         rootView.addView(optionBar, lp);
+        top.galqq.utils.BubbleLayoutStrategy.rememberInserted(
+            rootView, top.galqq.utils.BubbleLayoutStrategy.TAG_INSERTED_OPTION_BAR, optionBar);
     }
 
     private static void handleConstraintLayout(Context context, ViewGroup rootView, View optionBar, Object msgRecord) {
@@ -2117,17 +2224,20 @@ public class MessageInterceptor {
             if (rootParams != null) {
                 int originalHeight = rootParams.height;
                 if (originalHeight != ViewGroup.LayoutParams.WRAP_CONTENT && originalHeight != ViewGroup.LayoutParams.MATCH_PARENT) {
-                    debugLog(TAG + ": [LAYOUT_FIX] rootView 高度为固定值: " + originalHeight + "px，可能导致布局问题");
+                    LOG.d(TAG + ": [LAYOUT_FIX] rootView 高度为固定值: {}px，可能导致布局问题", originalHeight);
                 }
                 // 注意：不要强制修改 rootView 的高度，这可能会破坏QQ的布局
             }
             
+            // 【布局策略】按 rootView 类缓存的消息气泡/表情回复位置和 ConstraintLayout 反射句柄
+            top.galqq.utils.BubbleLayoutStrategy strategy = top.galqq.utils.BubbleLayoutStrategy.forRoot(rootView);
+            
             // 检测是否存在表情回复元素
-            int emojiReactionViewId = findEmojiReactionView(rootView);
-            boolean hasEmojiReaction = (emojiReactionViewId != -1);
+            final View emojiReactionView = strategy.findEmojiReactionView(rootView);
+            boolean hasEmojiReaction = (emojiReactionView != null);
             
             if (hasEmojiReaction) {
-                debugLog(TAG + ": [EMOJI_REACTION] 检测到表情回复，ID=" + emojiReactionViewId);
+                LOG.d(TAG + ": [EMOJI_REACTION] 检测到表情回复，ID={}", emojiReactionView.getId());
             }
             
             // 1. Add view to ConstraintLayout first (needed for ConstraintSet to work)
@@ -2136,67 +2246,21 @@ public class MessageInterceptor {
             int widthParam = isButton ? ViewGroup.LayoutParams.WRAP_CONTENT : 0; // 0 = MATCH_CONSTRAINT
 
             // Use ConstraintLayout.LayoutParams if possible
-            Class<?> constraintLayoutParamsClass = XposedHelpers.findClass("androidx.constraintlayout.widget.ConstraintLayout$LayoutParams", context.getClassLoader());
-            ViewGroup.LayoutParams clp = (ViewGroup.LayoutParams) constraintLayoutParamsClass.getConstructor(int.class, int.class)
-                .newInstance(widthParam, ViewGroup.LayoutParams.WRAP_CONTENT);
+            ViewGroup.LayoutParams clp = strategy.newLayoutParams(widthParam, ViewGroup.LayoutParams.WRAP_CONTENT);
             
             rootView.addView(optionBar, clp);
+            top.galqq.utils.BubbleLayoutStrategy.rememberInserted(
+                rootView, top.galqq.utils.BubbleLayoutStrategy.TAG_INSERTED_OPTION_BAR, optionBar);
             
             // 2. Use ConstraintSet to position it
-            Class<?> constraintSetClass = XposedHelpers.findClass("androidx.constraintlayout.widget.ConstraintSet", context.getClassLoader());
-            Object constraintSet = constraintSetClass.newInstance();
-            Class<?> constraintLayoutClass = rootView.getClass();
+            Object constraintSet = strategy.newConstraintSet();
             
             // clone(ConstraintLayout)
             XposedHelpers.callMethod(constraintSet, "clone", rootView);
             
             // Find anchor views (Message Bubble)
-            int msgBubbleId = -1;
-
-            // 1. BubbleLayout Class Name Search (Priority)
-            // debugLog(TAG + ": Trying to find bubble via BubbleLayout class name...");
-            for (int i = 0; i < rootView.getChildCount(); i++) {
-                View child = rootView.getChildAt(i);
-                if (child.getClass().getName().contains("BubbleLayout") && child.getId() != View.NO_ID) {
-                    msgBubbleId = child.getId();
-                    // debugLog(TAG + ": Found bubble via class name, ID: " + msgBubbleId);
-                    break;
-                }
-            }
-
-            // 2. Text Content Search (Fallback)
-            if (msgBubbleId == -1) {
-                String msgContent = getMessageContentNT(msgRecord);
-                if (!msgContent.isEmpty()) {
-                    debugLog(TAG + ": BubbleLayout not found, trying text content: " + msgContent);
-                    View textContainer = findViewWithText(rootView, msgContent);
-                    if (textContainer != null) {
-                        View bubble = textContainer;
-                        while (bubble.getParent() != rootView && bubble.getParent() instanceof View) {
-                            bubble = (View) bubble.getParent();
-                        }
-                        
-                        if (bubble.getParent() == rootView && bubble.getId() != View.NO_ID) {
-                            msgBubbleId = bubble.getId();
-                            debugLog(TAG + ": Found bubble via text content, ID: " + msgBubbleId + ", Class: " + bubble.getClass().getName());
-                        }
-                    }
-                }
-            }
+            int msgBubbleId = findMessageBubbleId(strategy, rootView, msgRecord);
 
-            // 3. LinearLayout Fallback (Last Resort)
-            if (msgBubbleId == -1) {
-                debugLog(TAG + ": Text search failed, trying LinearLayout fallback...");
-                for (int i = 0; i < rootView.getChildCount(); i++) {
-                    View child = rootView.getChildAt(i);
-                    if (child instanceof LinearLayout && child.getId() != View.NO_ID) {
-                        msgBubbleId = child.getId();
-                        debugLog(TAG + ": Found bubble via LinearLayout fallback, ID: " + msgBubbleId);
-                        break;
-                    }
-                }
-            }
-            
             if (msgBubbleId != -1) {
                 // 将 msgBubbleId 声明为 final，以便在内部类中使用
                 final int finalMsgBubbleId = msgBubbleId;
@@ -2210,9 +2274,9 @@ public class MessageInterceptor {
                 int topMargin = dp2px(context, 5); // 默认间距
                 
                 if (hasEmojiReaction) {
-                    final View emojiView = rootView.findViewById(emojiReactionViewId);
+                    final View emojiView = emojiReactionView;
                     
-                    if (emojiView != null && emojiView.getVisibility() == View.VISIBLE) {
+                    if (emojiView.getVisibility() == View.VISIBLE) {
                         // 测量表情回复的高度
                         int emojiHeight = emojiView.getHeight();
                         if (emojiHeight == 0) {
@@ -2239,10 +2303,12 @@ public class MessageInterceptor {
                                         View currentView = (View) current;
                                         int currentHeight = currentView.getHeight();
                                         
-                                        debugLog(TAG + ": [EMOJI_REACTION] 延迟检测 - 第" + level + "层父容器: " + 
-                                                currentView.getClass().getSimpleName() + 
-                                                ", 高度=" + currentHeight + "px" +
-                                                ", ID=" + currentView.getId());
+                                        if (LOG.isEnabled()) {
+                                            LOG.d(TAG + ": [EMOJI_REACTION] 延迟检测 - 第" + level + "层父容器: " + 
+                                                    currentView.getClass().getSimpleName() + 
+                                                    ", 高度=" + currentHeight + "px" +
+                                                    ", ID=" + currentView.getId());
+                                        }
                                         
                                         // 检查这层容器是否高度超过阈值
                                         int singleLineThreshold = dp2px(context, 30); // 约90px
@@ -2251,12 +2317,15 @@ public class MessageInterceptor {
                                             int extraOffset = currentHeight - singleLineThreshold;
                                             int newTopMargin = baseTopMargin + extraOffset;
                                             
-                                            debugLog(TAG + ": [EMOJI_REACTION] 在第" + level + "层检测到多行表情，重新调整topMargin: " + 
-                                                    baseTopMargin + " + " + extraOffset + " = " + newTopMargin + "px");
+                                            if (LOG.isEnabled()) {
+                                                LOG.d(TAG + ": [EMOJI_REACTION] 在第" + level + "层检测到多行表情，重新调整topMargin: " + 
+                                                        baseTopMargin + " + " + extraOffset + " = " + newTopMargin + "px");
+                                            }
                                             
                                             // 【修复】直接修改选项气泡的 LayoutParams，不使用 ConstraintSet.applyTo()
                                             // 这样不会影响好感度视图的约束
-                                            View optionBarView = rootView.findViewById(OPTION_BAR_ID);
+                                            View optionBarView = top.galqq.utils.BubbleLayoutStrategy.getInserted(
+                                                rootView, top.galqq.utils.BubbleLayoutStrategy.TAG_INSERTED_OPTION_BAR);
                                             if (optionBarView != null) {
                                                 ViewGroup.LayoutParams lp = optionBarView.getLayoutParams();
                                                 if (lp != null) {
@@ -2265,9 +2334,9 @@ public class MessageInterceptor {
                                                         XposedHelpers.setIntField(lp, "topMargin", newTopMargin);
                                                         optionBarView.setLayoutParams(lp);
                                                         optionBarView.requestLayout();
-                                                        debugLog(TAG + ": [EMOJI_REACTION] ✓ 已直接更新选项气泡的 topMargin");
+                                                        LOG.d(TAG + ": [EMOJI_REACTION] ✓ 已直接更新选项气泡的 topMargin");
                                                     } catch (Throwable t2) {
-                                                        debugLog(TAG + ": [EMOJI_REACTION] ✗ 直接更新失败: " + t2.getMessage());
+                                                        LOG.d(TAG + ": [EMOJI_REACTION] ✗ 直接更新失败: {}", t2.getMessage());
                                                     }
                                                 }
                                             }
@@ -2279,15 +2348,15 @@ public class MessageInterceptor {
                                         level++;
                                     }
                                     
-                                    debugLog(TAG + ": [EMOJI_REACTION] 所有层级都未检测到高度变化，可能是单行表情");
+                                    LOG.d(TAG + ": [EMOJI_REACTION] 所有层级都未检测到高度变化，可能是单行表情");
                                     
                                 } catch (Throwable t) {
-                                    debugLog(TAG + ": [EMOJI_REACTION] 延迟检测失败: " + t.getMessage());
+                                    LOG.d(TAG + ": [EMOJI_REACTION] 延迟检测失败: {}", t.getMessage());
                                 }
                             }
                         });
                         
-                        debugLog(TAG + ": [EMOJI_REACTION] ✓ 检测到表情回复，基础topMargin=" + topMargin + "px（将延迟检测多行）");
+                        LOG.d(TAG + ": [EMOJI_REACTION] ✓ 检测到表情回复，基础topMargin={}px（将延迟检测多行）", topMargin);
                     }
                 }
                 
@@ -2295,7 +2364,7 @@ public class MessageInterceptor {
                 XposedHelpers.callMethod(constraintSet, "connect", 
                     OPTION_BAR_ID, TOP, finalMsgBubbleId, BOTTOM, topMargin);
                 
-                debugLog(TAG + ": 选项气泡已连接到消息气泡，topMargin=" + topMargin + "px");
+                LOG.d(TAG + ": 选项气泡已连接到消息气泡，topMargin={}px", topMargin);
                 
                 // Align START (Left) of OptionBar to START (Left) of MessageBubble with 8dp margin
                 // 向左移动选项条
@@ -2313,9 +2382,9 @@ public class MessageInterceptor {
                 try {
                     // 保存消息气泡的原始顶部约束（如果有的话）
                     // 这里不做修改，只是确保它保持原样
-                    debugLog(TAG + ": 保持消息气泡原始约束不变");
+                    LOG.d(TAG + ": 保持消息气泡原始约束不变");
                 } catch (Throwable t) {
-                    debugLog(TAG + ": 检查消息气泡约束时出错: " + t.getMessage());
+                    LOG.d(TAG + ": 检查消息气泡约束时出错: {}", t.getMessage());
                 }
                 
                 // Apply constraints
@@ -2323,8 +2392,8 @@ public class MessageInterceptor {
                 
                 // 【调试】等待布局完成后验证位置
                 if (hasEmojiReaction) {
-                    final View finalEmojiView = rootView.findViewById(emojiReactionViewId);
-                    final View finalOptionBar = rootView.findViewById(OPTION_BAR_ID);
+                    final View finalEmojiView = emojiReactionView;
+                    final View finalOptionBar = optionBar;
                     
                     rootView.post(new Runnable() {
                         @Override
@@ -2338,155 +2407,43 @@ public class MessageInterceptor {
                                     int msgBubbleTop = (msgBubble != null) ? msgBubble.getTop() : -1;
                                     int msgBubbleBottom = (msgBubble != null) ? msgBubble.getBottom() : -1;
                                     
-                                    debugLog(TAG + ": [EMOJI_REACTION] 最终位置验证:");
-                                    debugLog(TAG + ": [EMOJI_REACTION] - 消息气泡: top=" + msgBubbleTop + "px, bottom=" + msgBubbleBottom + "px");
-                                    debugLog(TAG + ": [EMOJI_REACTION] - 表情回复: top=" + emojiTop + "px, height=" + emojiHeight + "px");
-                                    debugLog(TAG + ": [EMOJI_REACTION] - 选项气泡: top=" + optionTop + "px");
-                                    debugLog(TAG + ": [EMOJI_REACTION] - 预期选项气泡 top: " + (msgBubbleBottom + emojiHeight) + "px");
+                                    LOG.d(TAG + ": [EMOJI_REACTION] 最终位置验证:");
+                                    LOG.d(TAG + ": [EMOJI_REACTION] - 消息气泡: top={}px, bottom={}px", msgBubbleTop, msgBubbleBottom);
+                                    LOG.d(TAG + ": [EMOJI_REACTION] - 表情回复: top={}px, height={}px", emojiTop, emojiHeight);
+                                    LOG.d(TAG + ": [EMOJI_REACTION] - 选项气泡: top={}px", optionTop);
+                                    if (LOG.isEnabled()) {
+                                        LOG.d(TAG + ": [EMOJI_REACTION] - 预期选项气泡 top: " + (msgBubbleBottom + emojiHeight) + "px");
+                                    }
                                     
                                     int expectedTop = msgBubbleBottom + emojiHeight + dp2px(context, 3);
                                     if (Math.abs(optionTop - expectedTop) > dp2px(context, 10)) {
-                                        debugLog(TAG + ": [EMOJI_REACTION] ⚠️ 位置偏差较大！实际=" + optionTop + "px, 预期=" + expectedTop + "px");
+                                        LOG.d(TAG + ": [EMOJI_REACTION] ⚠️ 位置偏差较大！实际={}px, 预期={}px", optionTop, expectedTop);
                                     } else {
-                                        debugLog(TAG + ": [EMOJI_REACTION] ✓ 位置正确");
+                                        LOG.d(TAG + ": [EMOJI_REACTION] ✓ 位置正确");
                                     }
                                 }
                             } catch (Throwable t) {
-                                debugLog(TAG + ": [EMOJI_REACTION] 位置验证失败: " + t.getMessage());
+                                LOG.d(TAG + ": [EMOJI_REACTION] 位置验证失败: {}", t.getMessage());
                             }
                         }
                     });
                 }
             } else {
-                debugLog(TAG + ": Could not find message bubble ID for ConstraintLayout");
+                LOG.d(TAG + ": Could not find message bubble ID for ConstraintLayout");
             }
             
         } catch (Exception e) {
-            debugLog(TAG + ": Error handling ConstraintLayout: " + e.getMessage());
-            debugLog(e);
+            LOG.d(TAG + ": Error handling ConstraintLayout: {}", e.getMessage());
+            LOG.d(e);
             // Fallback to simple add if failed
             if (optionBar.getParent() == null) {
                 rootView.addView(optionBar);
+                top.galqq.utils.BubbleLayoutStrategy.rememberInserted(
+                    rootView, top.galqq.utils.BubbleLayoutStrategy.TAG_INSERTED_OPTION_BAR, optionBar);
             }
         }
     }
 
-    // Helper to find view with text
-    private static View findViewWithText(ViewGroup root, String text) {
-        for (int i = 0; i < root.getChildCount(); i++) {
-            View child = root.getChildAt(i);
-            if (child instanceof TextView) {
-                String viewText = ((TextView) child).getText().toString();
-                // Check if viewText contains the msgContent (or vice versa, to be safe)
-                if (viewText.contains(text) || text.contains(viewText)) {
-                    return child;
-                }
-            } else if (child instanceof ViewGroup) {
-                View found = findViewWithText((ViewGroup) child, text);
-                if (found != null) return found;
-            }
-        }
-        return null;
-    }
-    
-    /**
-     * 查找表情回复视图
-     * 表情回复通常在消息气泡下方，类名为 EmojiUpdateTextView 或包含 msgtail 等关键字
-     * 
-     * @param rootView 根视图
-     * @return 表情回复视图的ID，如果未找到返回-1
-     */
-    private static int findEmojiReactionView(ViewGroup rootView) {
-        try {
-            
-            // 遍历所有子视图，查找表情回复元素
-            for (int i = 0; i < rootView.getChildCount(); i++) {
-                View child = rootView.getChildAt(i);
-                String className = child.getClass().getName();
-                String classNameLower = className.toLowerCase();
-                String simpleName = child.getClass().getSimpleName().toLowerCase();
-                
-                // 【宽松匹配】只要包含特征关键词就可能是表情回复
-                boolean isReactionView = 
-                    // 精确匹配
-                    className.contains("EmojiUpdateTextView") ||
-                    className.contains("msgtail") ||
-                    // 包含 emoji 且不是输入框
-                    (classNameLower.contains("emoji") && !classNameLower.contains("input") && !classNameLower.contains("edit")) ||
-                    // 包含 reaction
-                    classNameLower.contains("reaction") ||
-                    // 包含 emoticon
-                    classNameLower.contains("emoticon") ||
-                    // 包含 face 且不是头像
-                    (classNameLower.contains("face") && !classNameLower.contains("avatar"));
-                
-                if (isReactionView && child.getId() != View.NO_ID && child.getVisibility() == View.VISIBLE) {
-                    return child.getId();
-                }
-                
-                // 递归检查子视图
-                if (child instanceof ViewGroup) {
-                    int foundId = findEmojiReactionViewRecursive((ViewGroup) child);
-                    if (foundId != -1) {
-                        return foundId;
-                    }
-                }
-            }
-        } catch (Throwable t) {
-            debugLog(TAG + ": [EMOJI_REACTION] 查找表情回复视图失败: " + t.getMessage());
-        }
-        
-        return -1; // 未找到
-    }
-    
-    /**
-     * 递归查找表情回复视图
-     * 【改回模糊匹配】不使用精确类名，使用多种关键字组合判断
-     */
-    private static int findEmojiReactionViewRecursive(ViewGroup parent) {
-        for (int i = 0; i < parent.getChildCount(); i++) {
-            View child = parent.getChildAt(i);
-            String className = child.getClass().getName();
-            String classNameLower = className.toLowerCase();
-            String simpleName = child.getClass().getSimpleName().toLowerCase();
-            
-            // 【模糊匹配】使用多种关键字组合判断，不依赖精确类名
-            boolean isReactionView = 
-                // 匹配包含 emoji 相关的类名
-                (classNameLower.contains("emoji") && (classNameLower.contains("text") || classNameLower.contains("update") || classNameLower.contains("view"))) ||
-                // 匹配包含 reaction 的类名
-                classNameLower.contains("reaction") || 
-                // 匹配包含 emoticon 的类名
-                classNameLower.contains("emoticon") ||
-                // 匹配 msgtail + emoji 组合
-                (classNameLower.contains("msgtail") && classNameLower.contains("emoji")) ||
-                // 匹配 aio + reaction 组合
-                (classNameLower.contains("aio") && classNameLower.contains("reaction")) ||
-                // 匹配 msg + reaction 组合
-                (classNameLower.contains("msg") && classNameLower.contains("reaction")) ||
-                // 简单类名匹配
-                simpleName.contains("reaction") ||
-                simpleName.contains("emoji");
-            
-            if (isReactionView && child.getId() != View.NO_ID) {
-                // 检查视图是否可见（有些表情回复可能是隐藏的）
-                if (child.getVisibility() == View.VISIBLE) {
-                    debugLog(TAG + ": [EMOJI_REACTION] ✓ 模糊匹配找到表情回复: " + className);
-                    return child.getId();
-                }
-            }
-            
-            if (child instanceof ViewGroup) {
-                int foundId = findEmojiReactionViewRecursive((ViewGroup) child);
-                if (foundId != -1) {
-                    return foundId;
-                }
-            }
-        }
-        
-        return -1;
-    }
-    
     /**
      * 为自己发送的消息检测表情回复
      * 【对齐handleConstraintLayout】使用相同的检测逻辑
@@ -2499,13 +2456,12 @@ public class MessageInterceptor {
     private static void adjustEmojiReactionForSelfMessage(Context context, ViewGroup rootView, Object msgRecord) {
         try {
             // 【对齐handleConstraintLayout】检测表情回复视图
-            int emojiReactionViewId = findEmojiReactionView(rootView);
-            boolean hasEmojiReaction = (emojiReactionViewId != -1);
+            final View emojiView = top.galqq.utils.BubbleLayoutStrategy.forRoot(rootView).findEmojiReactionView(rootView);
+            boolean hasEmojiReaction = (emojiView != null);
             
             if (hasEmojiReaction) {
                 // 【对齐handleConstraintLayout】获取表情回复视图并测量
-                View emojiView = rootView.findViewById(emojiReactionViewId);
-                if (emojiView != null && emojiView.getVisibility() == View.VISIBLE) {
+                if (emojiView.getVisibility() == View.VISIBLE) {
                     // 【对齐handleConstraintLayout】强制布局和异步获取实际位置
                     rootView.requestLayout();
                     rootView.post(new Runnable() {
@@ -2514,9 +2470,9 @@ public class MessageInterceptor {
                             try {
                                 int emojiHeight = emojiView.getHeight();
                                 int emojiTop = emojiView.getTop();
-                                debugLog(TAG + ": [EMOJI_REACTION_SELF] 表情回复实际位置: top=" + emojiTop + "px, height=" + emojiHeight + "px");
+                                LOG.d(TAG + ": [EMOJI_REACTION_SELF] 表情回复实际位置: top={}px, height={}px", emojiTop, emojiHeight);
                             } catch (Throwable t) {
-                                debugLog(TAG + ": [EMOJI_REACTION_SELF] 获取表情回复位置失败: " + t.getMessage());
+                                LOG.d(TAG + ": [EMOJI_REACTION_SELF] 获取表情回复位置失败: {}", t.getMessage());
                             }
                         }
                     });
@@ -2529,23 +2485,24 @@ public class MessageInterceptor {
                         emojiHeight = emojiView.getMeasuredHeight();
                     }
                     
-                    debugLog(TAG + ": [EMOJI_REACTION_SELF] 自己的消息检测到表情回复，ID=" + emojiReactionViewId + 
-                            ", 高度=" + emojiHeight + "px，保持默认位置（消息气泡下方）");
+                    if (LOG.isEnabled()) {
+                        LOG.d(TAG + ": [EMOJI_REACTION_SELF] 自己的消息检测到表情回复，ID=" + emojiView.getId() + 
+                                ", 高度=" + emojiHeight + "px，保持默认位置（消息气泡下方）");
+                    }
                 } else {
-                    debugLog(TAG + ": [EMOJI_REACTION_SELF] 表情回复视图不可见或为空");
+                    LOG.d(TAG + ": [EMOJI_REACTION_SELF] 表情回复视图不可见或为空");
                 }
             } else {
-                debugLog(TAG + ": [EMOJI_REACTION_SELF] 未检测到表情回复");
+                LOG.d(TAG + ": [EMOJI_REACTION_SELF] 未检测到表情回复");
             }
         } catch (Throwable t) {
-            debugLog(TAG + ": [EMOJI_REACTION_SELF] 检测失败: " + t.getMessage());
+            LOG.d(TAG + ": [EMOJI_REACTION_SELF] 检测失败: {}", t.getMessage());
         }
     }
     
     // 创建空的选项条（稍后填充内容）
     private static LinearLayout createEmptyOptionBarNT(Context context) {
-        LinearLayout bar = new LinearLayout(context);
-        bar.setOrientation(LinearLayout.VERTICAL);
+        LinearLayout bar = top.galqq.utils.OptionBarViewPool.obtainLinearLayout(context, LinearLayout.VERTICAL);
         bar.setGravity(Gravity.LEFT);
         bar.setPadding(0, dp2px(context, 5), 0, dp2px(context, 5));
         bar.setVisibility(View.GONE); // 初始隐藏，等有内容后再显示
@@ -2560,7 +2517,7 @@ public class MessageInterceptor {
         String conversationId,
         ViewGroup rootView
     ) {
-        TextView button = new TextView(context);
+        TextView button = top.galqq.utils.OptionBarViewPool.obtainTextView(context);
         button.setText("显示选项");
         button.setTextSize(12);
         // 减小Padding，使其更紧凑
@@ -2568,14 +2525,15 @@ public class MessageInterceptor {
         
         // 样式优化：模仿加载中，使用极淡背景或无背景
         // 这里使用一个非常淡的灰色背景，带圆角，类似Tag
-        button.setBackground(getRoundedBackground(Color.parseColor("#F5F5F5"), dp2px(context, 10)));
-        button.setTextColor(Color.parseColor("#333333")); // 深灰色，比黑色淡一点
+        button.setBackground(getRoundedBackground(COLOR_BUTTON_BG, dp2px(context, 10)));
+        button.setTextColor(COLOR_TEXT); // 深灰色，比黑色淡一点
         button.setGravity(Gravity.CENTER);
         
         button.setOnClickListener(v -> {
             // 记录该消息已请求显示选项
             if (msgId != null) {
-                requestedOptionsMsgIds.add(msgId);
+                top.galqq.utils.MessageUiStateStore.setRequested(
+                    top.galqq.utils.MessageUiStateStore.keyOf(msgId), true);
             }
 
             // 1. 移除按钮本身
@@ -2588,23 +2546,7 @@ public class MessageInterceptor {
             optionBar.setId(OPTION_BAR_ID);
             
             // 添加到相同位置
-            Class<?> constraintLayoutClass = null;
-            try {
-                constraintLayoutClass = XposedHelpers.findClass(
-                    "androidx.constraintlayout.widget.ConstraintLayout", 
-                    context.getClassLoader()
-                );
-            } catch (Throwable t) {
-                // Ignore
-            }
-            
-            if (constraintLayoutClass != null && constraintLayoutClass.isAssignableFrom(rootView.getClass())) {
-                handleConstraintLayout(context, rootView, optionBar, msgRecord);
-            } else if (rootView.getClass().getName().contains("ConstraintLayout")) {
-                handleConstraintLayout(context, rootView, optionBar, msgRecord);
-            } else {
-                handleLegacyLayout(context, rootView, optionBar);
-            }
+            addToBubbleLayout(context, rootView, optionBar, msgRecord);
             
             // 填充选项（使用带 rootView 的版本以支持操作按钮）
             fillOptionBarContentWithRoot(context, optionBar, msgRecord, msgId, conversationId, rootView);
@@ -2623,11 +2565,12 @@ public class MessageInterceptor {
     // 填充选项条内容（AI或本地词库）- 带 rootView 版本（支持操作按钮）
     private static void fillOptionBarContentWithRoot(Context context, LinearLayout bar, Object msgRecord, 
                                              String msgId, String conversationId, ViewGroup rootView) {
-        String msgContent = getMessageContentNT(msgRecord);
+        top.galqq.utils.MessageSnapshot snapshot = top.galqq.utils.MessageSnapshot.get(msgId);
+        String msgContent = snapshot != null ? snapshot.textContent : getMessageContentNT(msgRecord);
         
         // 【AI缓存优化】如果启用AI且缓存中有选项，直接使用缓存数据
-        if (ConfigManager.isAiEnabled() && msgId != null && optionsCache.containsKey(msgId)) {
-            List<String> cachedOptions = optionsCache.get(msgId);
+        List<String> cachedOptions = ConfigManager.isAiEnabled() ? getCachedOptions(msgId, msgRecord) : null;
+        if (cachedOptions != null) {
             if (rootView != null) {
                 populateBarAndShowWithActions(context, bar, cachedOptions, msgRecord, msgId, conversationId, rootView);
             } else {
@@ -2668,16 +2611,10 @@ public class MessageInterceptor {
         ViewGroup rootView,
         List<String> currentOptions
     ) {
-        LinearLayout row = new LinearLayout(context);
-        row.setOrientation(LinearLayout.HORIZONTAL);
+        LinearLayout row = top.galqq.utils.OptionBarViewPool.obtainLinearLayout(context, LinearLayout.HORIZONTAL);
         row.setGravity(Gravity.START | Gravity.CENTER_VERTICAL);
         
-        LinearLayout.LayoutParams rowParams = new LinearLayout.LayoutParams(
-            ViewGroup.LayoutParams.WRAP_CONTENT,
-            ViewGroup.LayoutParams.WRAP_CONTENT
-        );
-        rowParams.topMargin = dp2px(context, 6); // 与选项间隔
-        row.setLayoutParams(rowParams);
+        top.galqq.utils.OptionBarViewPool.linearParams(row).topMargin = dp2px(context, 6); // 与选项间隔
         
         // 添加刷新按钮
         TextView refreshBtn = createRefreshButton(context, optionBar, msgRecord, msgId, conversationId, rootView);
@@ -2701,27 +2638,22 @@ public class MessageInterceptor {
         String conversationId,
         ViewGroup rootView
     ) {
-        TextView btn = new TextView(context);
+        TextView btn = top.galqq.utils.OptionBarViewPool.obtainTextView(context);
         btn.setText("刷新");
         btn.setTextSize(12);
         btn.setPadding(dp2px(context, 10), dp2px(context, 6), dp2px(context, 10), dp2px(context, 6));
-        btn.setBackground(getSelectableRoundedBackground(Color.parseColor("#F5F5F5"), dp2px(context, 12)));
-        btn.setTextColor(Color.parseColor("#666666"));
+        btn.setBackground(getSelectableRoundedBackground(COLOR_BUTTON_BG, dp2px(context, 12)));
+        btn.setTextColor(COLOR_BUTTON_TEXT);
         btn.setClickable(true);
         btn.setFocusable(true);
-        
-        LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-            ViewGroup.LayoutParams.WRAP_CONTENT,
-            ViewGroup.LayoutParams.WRAP_CONTENT
-        );
-        btn.setLayoutParams(lp);
+        top.galqq.utils.OptionBarViewPool.linearParams(btn);
         
         btn.setOnClickListener(v -> {
             // 触觉反馈
             v.performHapticFeedback(android.view.HapticFeedbackConstants.KEYBOARD_TAP);
             
             // 清空选项条内容并重新获取（使用带 rootView 的版本以保留操作按钮）
-            optionBar.removeAllViews();
+            top.galqq.utils.OptionBarViewPool.recycleChildren(optionBar);
             String msgContent = getMessageContentNT(msgRecord);
             setupOptionBarContentWithRoot(context, optionBar, msgContent, msgRecord, msgId, conversationId, rootView);
         });
@@ -2741,21 +2673,16 @@ public class MessageInterceptor {
         ViewGroup rootView,
         List<String> currentOptions
     ) {
-        TextView btn = new TextView(context);
+        TextView btn = top.galqq.utils.OptionBarViewPool.obtainTextView(context);
         btn.setText("收起");
         btn.setTextSize(12);
         btn.setPadding(dp2px(context, 10), dp2px(context, 6), dp2px(context, 10), dp2px(context, 6));
-        btn.setBackground(getSelectableRoundedBackground(Color.parseColor("#F5F5F5"), dp2px(context, 12)));
-        btn.setTextColor(Color.parseColor("#666666"));
+        btn.setBackground(getSelectableRoundedBackground(COLOR_BUTTON_BG, dp2px(context, 12)));
+        btn.setTextColor(COLOR_BUTTON_TEXT);
         btn.setClickable(true);
         btn.setFocusable(true);
         
-        LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-            ViewGroup.LayoutParams.WRAP_CONTENT,
-            ViewGroup.LayoutParams.WRAP_CONTENT
-        );
-        lp.leftMargin = dp2px(context, 8); // 与刷新按钮间距
-        btn.setLayoutParams(lp);
+        top.galqq.utils.OptionBarViewPool.linearParams(btn).leftMargin = dp2px(context, 8); // 与刷新按钮间距
         
         btn.setOnClickListener(v -> {
             // 触觉反馈
@@ -2763,8 +2690,11 @@ public class MessageInterceptor {
             
             // 1. 确保当前选项已缓存
             if (msgId != null && currentOptions != null && !currentOptions.isEmpty()) {
-                cacheOptions(msgId, currentOptions);
-                collapsedMsgIds.add(msgId);
+                long stateKey = top.galqq.utils.MessageUiStateStore.keyOf(msgId);
+                if (!top.galqq.utils.MessageUiStateStore.hasOptions(stateKey, 0L)) {
+                    cacheOptions(msgId, currentOptions);
+                }
+                top.galqq.utils.MessageUiStateStore.setCollapsed(stateKey, true);
             }
             
             // 2. 移除选项条
@@ -2775,23 +2705,7 @@ public class MessageInterceptor {
             // 3. 创建并显示「展开选项」按钮
             View expandBtn = createExpandFromCacheButton(context, msgRecord, msgId, conversationId, rootView);
             
-            Class<?> constraintLayoutClass = null;
-            try {
-                constraintLayoutClass = XposedHelpers.findClass(
-                    "androidx.constraintlayout.widget.ConstraintLayout",
-                    context.getClassLoader()
-                );
-            } catch (Throwable t) {
-                // Ignore
-            }
-            
-            if (constraintLayoutClass != null && constraintLayoutClass.isAssignableFrom(rootView.getClass())) {
-                handleConstraintLayout(context, rootView, expandBtn, msgRecord);
-            } else if (rootView.getClass().getName().contains("ConstraintLayout")) {
-                handleConstraintLayout(context, rootView, expandBtn, msgRecord);
-            } else {
-                handleLegacyLayout(context, rootView, expandBtn);
-            }
+            addToBubbleLayout(context, rootView, expandBtn, msgRecord);
         });
         
         return btn;
@@ -2807,12 +2721,12 @@ public class MessageInterceptor {
         String conversationId,
         ViewGroup rootView
     ) {
-        TextView button = new TextView(context);
+        TextView button = top.galqq.utils.OptionBarViewPool.obtainTextView(context);
         button.setText("展开选项");
         button.setTextSize(12);
         button.setPadding(dp2px(context, 8), dp2px(context, 4), dp2px(context, 8), dp2px(context, 4));
-        button.setBackground(getRoundedBackground(Color.parseColor("#F5F5F5"), dp2px(context, 10)));
-        button.setTextColor(Color.parseColor("#666666"));
+        button.setBackground(getRoundedBackground(COLOR_BUTTON_BG, dp2px(context, 10)));
+        button.setTextColor(COLOR_BUTTON_TEXT);
         button.setGravity(Gravity.CENTER);
         
         button.setOnClickListener(v -> {
@@ -2820,11 +2734,12 @@ public class MessageInterceptor {
             v.performHapticFeedback(android.view.HapticFeedbackConstants.KEYBOARD_TAP);
             
             // 1. 从缓存获取选项
-            List<String> cachedOptions = (msgId != null) ? optionsCache.get(msgId) : null;
+            List<String> cachedOptions = getCachedOptions(msgId, msgRecord);
             
             // 2. 从收起状态移除
             if (msgId != null) {
-                collapsedMsgIds.remove(msgId);
+                top.galqq.utils.MessageUiStateStore.setCollapsed(
+                    top.galqq.utils.MessageUiStateStore.keyOf(msgId), false);
             }
             
             // 3. 移除展开按钮
@@ -2836,23 +2751,7 @@ public class MessageInterceptor {
             LinearLayout optionBar = createEmptyOptionBarNT(context);
             optionBar.setId(OPTION_BAR_ID);
             
-            Class<?> constraintLayoutClass = null;
-            try {
-                constraintLayoutClass = XposedHelpers.findClass(
-                    "androidx.constraintlayout.widget.ConstraintLayout",
-                    context.getClassLoader()
-                );
-            } catch (Throwable t) {
-                // Ignore
-            }
-            
-            if (constraintLayoutClass != null && constraintLayoutClass.isAssignableFrom(rootView.getClass())) {
-                handleConstraintLayout(context, rootView, optionBar, msgRecord);
-            } else if (rootView.getClass().getName().contains("ConstraintLayout")) {
-                handleConstraintLayout(context, rootView, optionBar, msgRecord);
-            } else {
-                handleLegacyLayout(context, rootView, optionBar);
-            }
+            addToBubbleLayout(context, rootView, optionBar, msgRecord);
             
             // 5. 填充选项（优先使用缓存，否则重新获取）
             if (cachedOptions != null && !cachedOptions.isEmpty()) {
@@ -2881,7 +2780,7 @@ public class MessageInterceptor {
         String conversationId,
         ViewGroup rootView
     ) {
-        bar.removeAllViews();
+        top.galqq.utils.OptionBarViewPool.recycleChildren(bar);
         
         if (options == null || options.isEmpty()) {
             bar.setVisibility(View.GONE);
@@ -2895,59 +2794,28 @@ public class MessageInterceptor {
         String replyContent = "";
         
         try {
-            // 尝试从 msgRecord 中提取 msgId (long 类型)
-            Object msgIdObj = XposedHelpers.getObjectField(msgRecord, "msgId");
-            debugLog(TAG + ": [WithActions] msgIdObj=" + msgIdObj + " (type=" + (msgIdObj != null ? msgIdObj.getClass().getName() : "null") + ")");
-            if (msgIdObj instanceof Long) {
-                replyMsgId = (Long) msgIdObj;
-            } else if (msgIdObj != null) {
-                try {
-                    replyMsgId = Long.parseLong(String.valueOf(msgIdObj));
-                } catch (NumberFormatException ignored) {}
-            }
-            
-            // 尝试提取消息序列号
-            try {
-                Object msgSeqObj = XposedHelpers.getObjectField(msgRecord, "msgSeq");
-                if (msgSeqObj instanceof Long) {
-                    replyMsgSeq = (Long) msgSeqObj;
-                } else if (msgSeqObj instanceof Integer) {
-                    replyMsgSeq = ((Integer) msgSeqObj).longValue();
+            // 一次性读取 msgId (long 类型)、消息序列号和发送者昵称
+            top.galqq.utils.MsgRecordAccessor.MsgFields fields = top.galqq.utils.MsgRecordAccessor.read(msgRecord);
+            if (fields != null) {
+                replyMsgId = fields.msgIdLong;
+                replyMsgSeq = fields.msgSeq;
+                if (fields.sendRemarkName != null && !fields.sendRemarkName.trim().isEmpty()) {
+                    replyNick = fields.sendRemarkName;
+                } else if (fields.sendNickName != null) {
+                    replyNick = fields.sendNickName;
                 }
-            } catch (Throwable t) {
-                try {
-                    Object seqObj = XposedHelpers.getObjectField(msgRecord, "seq");
-                    if (seqObj instanceof Long) {
-                        replyMsgSeq = (Long) seqObj;
-                    } else if (seqObj instanceof Integer) {
-                        replyMsgSeq = ((Integer) seqObj).longValue();
-                    }
-                } catch (Throwable ignored) {}
             }
             
-            // 提取发送者昵称
-            try {
-                Object remarkNameObj = XposedHelpers.getObjectField(msgRecord, "sendRemarkName");
-                if (remarkNameObj != null && !String.valueOf(remarkNameObj).trim().isEmpty()) {
-                    replyNick = String.valueOf(remarkNameObj);
-                } else {
-                    Object nickNameObj = XposedHelpers.getObjectField(msgRecord, "sendNickName");
-                    if (nickNameObj != null) {
-                        replyNick = String.valueOf(nickNameObj);
-                    }
-                }
-            } catch (Throwable ignored) {}
-            
             // 提取消息内容
             String msgContent = getMessageContentNT(msgRecord);
             if (msgContent != null && !msgContent.isEmpty()) {
                 replyContent = replyNick + ":" + msgContent;
             }
             
-            debugLog(TAG + ": [WithActions] 提取引用信息 - msgId=" + replyMsgId + ", seq=" + replyMsgSeq + ", nick=" + replyNick);
+            LOG.d(TAG + ": [WithActions] 提取引用信息 - msgId={}, seq={}, nick={}", replyMsgId, replyMsgSeq, replyNick);
             
         } catch (Throwable t) {
-            debugLog(TAG + ": [WithActions] 提取引用信息失败: " + t.getMessage());
+            LOG.d(TAG + ": [WithActions] 提取引用信息失败: {}", t.getMessage());
         }
         
         // 保存引用信息供点击事件使用
@@ -2956,26 +2824,24 @@ public class MessageInterceptor {
         final String finalReplyNick = replyNick;
         final String finalReplyContent = replyContent;
         
-        // 添加选项按钮
+        // 添加选项按钮（尺寸对所有选项相同，循环外计算一次）
+        int paddingH = dp2px(context, 12);
+        int paddingV = dp2px(context, 8);
+        int cornerRadius = dp2px(context, 12);
+        int bottomMargin = dp2px(context, 6);
+        int maxWidth = context.getResources().getDisplayMetrics().widthPixels - dp2px(context, 16);
         for (String option : options) {
-            TextView tv = new TextView(context);
+            TextView tv = top.galqq.utils.OptionBarViewPool.obtainTextView(context);
             tv.setText(option);
             tv.setTextSize(13);
-            tv.setPadding(dp2px(context, 12), dp2px(context, 8), dp2px(context, 12), dp2px(context, 8));
-            tv.setBackground(getSelectableRoundedBackground(Color.parseColor("#F2F2F2"), dp2px(context, 12)));
+            tv.setPadding(paddingH, paddingV, paddingH, paddingV);
+            tv.setBackground(getSelectableRoundedBackground(COLOR_OPTION_BG, cornerRadius));
             tv.setTextColor(Color.BLACK);
             tv.setClickable(true);
             tv.setFocusable(true);
             
-            int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
-            int maxWidth = screenWidth - dp2px(context, 16);
-            
-            LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT
-            );
-            lp.setMargins(0, 0, 0, dp2px(context, 6));
+            top.galqq.utils.OptionBarViewPool.linearParams(tv).bottomMargin = bottomMargin;
             tv.setMaxWidth(maxWidth);
-            tv.setLayoutParams(lp);
             tv.setGravity(Gravity.CENTER_VERTICAL);
             
             // 短按：直接发送消息
@@ -3002,25 +2868,22 @@ public class MessageInterceptor {
     
     private static String getMessageContentNT(Object msgRecord) {
         try {
-            List<?> elements = (List<?>) XposedHelpers.getObjectField(msgRecord, "elements");
+            List<?> elements = top.galqq.utils.MsgRecordAccessor.getElements(msgRecord);
             if (elements == null || elements.isEmpty()) {
                 return "";
             }
             
             StringBuilder content = new StringBuilder();
             for (Object element : elements) {
-                Object textElement = XposedHelpers.getObjectField(element, "textElement");
-                if (textElement != null) {
-                    String text = (String) XposedHelpers.getObjectField(textElement, "content");
-                    if (text != null) {
-                        content.append(text);
-                    }
+                String text = top.galqq.utils.MsgElementClassifier.getTextContent(element);
+                if (text != null) {
+                    content.append(text);
                 }
             }
             
             return content.toString();
         } catch (Exception e) {
-            debugLog(TAG + ": Failed to extract message content: " + e.getMessage());
+            LOG.d(TAG + ": Failed to extract message content: {}", e.getMessage());
             return "";
         }
     }
@@ -3031,27 +2894,9 @@ public class MessageInterceptor {
         return (int) (dp * scale + 0.5f);
     }
 
-    // Helper to create rounded background
+    // Helper to create rounded background（共享 ConstantState，见 OptionBarViewPool）
     private static android.graphics.drawable.Drawable getRoundedBackground(int color, int radiusPx) {
-        android.graphics.drawable.GradientDrawable drawable = new android.graphics.drawable.GradientDrawable();
-        drawable.setShape(android.graphics.drawable.GradientDrawable.RECTANGLE);
-        drawable.setColor(color);
-        drawable.setCornerRadius(radiusPx);
-        return drawable;
-    }
-
-    /**
-     * 将颜色加深指定比例
-     * @param color 原始颜色
-     * @param factor 加深因子 (0.0-1.0)，例如 0.1 表示加深 10%
-     * @return 加深后的颜色
-     */
-    private static int darkenColor(int color, float factor) {
-        int a = Color.alpha(color);
-        int r = Math.max(0, (int) (Color.red(color) * (1 - factor)));
-        int g = Math.max(0, (int) (Color.green(color) * (1 - factor)));
-        int b = Math.max(0, (int) (Color.blue(color) * (1 - factor)));
-        return Color.argb(a, r, g, b);
+        return top.galqq.utils.OptionBarViewPool.getRoundedBackground(color, radiusPx);
     }
 
     /**
@@ -3062,34 +2907,7 @@ public class MessageInterceptor {
      * @return StateListDrawable
      */
     private static android.graphics.drawable.Drawable getSelectableRoundedBackground(int color, int radiusPx) {
-        // 创建普通状态背景
-        android.graphics.drawable.GradientDrawable normalDrawable = new android.graphics.drawable.GradientDrawable();
-        normalDrawable.setShape(android.graphics.drawable.GradientDrawable.RECTANGLE);
-        normalDrawable.setColor(color);
-        normalDrawable.setCornerRadius(radiusPx);
-        
-        // 创建按压状态背景（颜色加深 10%）
-        android.graphics.drawable.GradientDrawable pressedDrawable = new android.graphics.drawable.GradientDrawable();
-        pressedDrawable.setShape(android.graphics.drawable.GradientDrawable.RECTANGLE);
-        pressedDrawable.setColor(darkenColor(color, 0.1f));
-        pressedDrawable.setCornerRadius(radiusPx);
-        
-        // 创建 StateListDrawable
-        android.graphics.drawable.StateListDrawable stateListDrawable = new android.graphics.drawable.StateListDrawable();
-        stateListDrawable.addState(new int[]{android.R.attr.state_pressed}, pressedDrawable);
-        stateListDrawable.addState(new int[]{}, normalDrawable);
-        
-        return stateListDrawable;
-    }
-
-    // 辅助方法：判断类是否是 RecyclerView 或其子类
-    private static boolean isRecyclerView(Class<?> clazz) {
-        if (clazz == null) return false;
-        if ("androidx.recyclerview.widget.RecyclerView".equals(clazz.getName()) || 
-            "android.support.v7.widget.RecyclerView".equals(clazz.getName())) {
-            return true;
-        }
-        return isRecyclerView(clazz.getSuperclass());
+        return top.galqq.utils.OptionBarViewPool.getSelectableRoundedBackground(color, radiusPx);
     }
 
     // Hook AIO消息发送相关类的所有方法以分析调用流程
@@ -3129,7 +2947,7 @@ public class MessageInterceptor {
                     }
                 }
                 
-                // debugLog(TAG + ": [DEBUG] Hooked " + hookedCount + " methods in " + className);
+                // LOG.d(TAG + ": [DEBUG] Hooked " + hookedCount + " methods in " + className);
             } catch (Throwable t) {
                 // 类不存在或其他错误，跳过
             }
@@ -3145,13 +2963,13 @@ public class MessageInterceptor {
             String methodName = param.method.getName();
             String className = param.thisObject != null ? param.thisObject.getClass().getSimpleName() : "static";
             
-            //debugLog(TAG + ": [DEBUG] " + className + "." + methodName + " called");
-            //debugLog(TAG + ":   Args count: " + param.args.length);
+            //LOG.d(TAG + ": [DEBUG] " + className + "." + methodName + " called");
+            //LOG.d(TAG + ":   Args count: " + param.args.length);
             
             for (int i = 0; i < param.args.length; i++) {
                 Object arg = param.args[i];
                 String type = arg != null ? arg.getClass().getName() : "null";
-                //debugLog(TAG + ":   arg[" + i + "] (" + type + "): " + arg);
+                //LOG.d(TAG + ":   arg[" + i + "] (" + type + "): " + arg);
                 
                 // 如果参数是 List，尝试打印第一个元素的详细信息
                 if (arg instanceof List) {
@@ -3160,29 +2978,29 @@ public class MessageInterceptor {
                         for (int j = 0; j < list.size(); j++) {
                             Object item = list.get(j);
                             if (item != null) {
-                                //debugLog(TAG + ":     List[" + j + "] class: " + item.getClass().getName());
+                                //LOG.d(TAG + ":     List[" + j + "] class: " + item.getClass().getName());
                                 // 反射打印字段
                                 try {
                                     for (Field f : item.getClass().getDeclaredFields()) {
                                         f.setAccessible(true);
                                         Object val = f.get(item);
                                         String fieldType = f.getType().getName();
-                                        //debugLog(TAG + ":       Field '" + f.getName() + "' (" + fieldType + "): " + val);
+                                        //LOG.d(TAG + ":       Field '" + f.getName() + "' (" + fieldType + "): " + val);
                                         
                                         // 深入分析 AIOElementType 相关对象
                                         if (val != null && val.getClass().getName().contains("AIOElementType")) {
-                                            //debugLog(TAG + ":         -> Found AIOElementType: " + val.getClass().getName());
+                                            //LOG.d(TAG + ":         -> Found AIOElementType: " + val.getClass().getName());
                                             analyzeAIOElementType(val);
                                         }
                                         
                                         // 深入分析可能的 ReplyElement
                                         if (val != null && (fieldType.contains("Reply") || f.getName().equals("h"))) {
-                                            //debugLog(TAG + ":         -> Potential ReplyElement found!");
+                                            //LOG.d(TAG + ":         -> Potential ReplyElement found!");
                                             analyzeReplyElement(val);
                                         }
                                     }
                                 } catch (Exception e) {
-                                    //debugLog(TAG + ":       Error inspecting list item: " + e.getMessage());
+                                    //LOG.d(TAG + ":       Error inspecting list item: " + e.getMessage());
                                 }
                             }
                         }
@@ -3190,7 +3008,7 @@ public class MessageInterceptor {
                 }
             }
         } catch (Throwable t) {
-            debugLog(TAG + ": [DEBUG] Error logging method call: " + t.getMessage());
+            LOG.d(TAG + ": [DEBUG] Error logging method call: {}", t.getMessage());
         }
     }
     
@@ -3199,18 +3017,18 @@ public class MessageInterceptor {
      */
     private static void analyzeAIOElementType(Object element) {
         try {
-            //debugLog(TAG + ":         ┌─ AIOElementType 分析 ─┐");
+            //LOG.d(TAG + ":         ┌─ AIOElementType 分析 ─┐");
             for (Field f : element.getClass().getDeclaredFields()) {
                 f.setAccessible(true);
                 Object val = f.get(element);
                 String fieldType = f.getType().getSimpleName();
                 String valStr = val != null ? val.toString() : "null";
                 if (valStr.length() > 100) valStr = valStr.substring(0, 100) + "...";
-                debugLog(TAG + ":         │ " + f.getName() + " (" + fieldType + "): " + valStr);
+                LOG.d(TAG + ":         │ {} ({}): {}", f.getName(), fieldType, valStr);
             }
-           // debugLog(TAG + ":         └─────────────────────┘");
+           // LOG.d(TAG + ":         └─────────────────────┘");
         } catch (Throwable t) {
-            debugLog(TAG + ":         分析AIOElementType失败: " + t.getMessage());
+            LOG.d(TAG + ":         分析AIOElementType失败: {}", t.getMessage());
         }
     }
     
@@ -3220,19 +3038,19 @@ public class MessageInterceptor {
      */
     private static void analyzeReplyElement(Object replyElement) {
         try {
-            //debugLog(TAG + ":         ┌─ ReplyElement 分析 ─┐");
-            //debugLog(TAG + ":         │ Class: " + replyElement.getClass().getName());
+            //LOG.d(TAG + ":         ┌─ ReplyElement 分析 ─┐");
+            //LOG.d(TAG + ":         │ Class: " + replyElement.getClass().getName());
             for (Field f : replyElement.getClass().getDeclaredFields()) {
                 f.setAccessible(true);
                 Object val = f.get(replyElement);
                 String fieldType = f.getType().getSimpleName();
                 String valStr = val != null ? val.toString() : "null";
                 if (valStr.length() > 100) valStr = valStr.substring(0, 100) + "...";
-                debugLog(TAG + ":         │ " + f.getName() + " (" + fieldType + "): " + valStr);
+                LOG.d(TAG + ":         │ {} ({}): {}", f.getName(), fieldType, valStr);
             }
-            //debugLog(TAG + ":         └─────────────────────┘");
+            //LOG.d(TAG + ":         └─────────────────────┘");
         } catch (Throwable t) {
-            debugLog(TAG + ":         分析ReplyElement失败: " + t.getMessage());
+            LOG.d(TAG + ":         分析ReplyElement失败: {}", t.getMessage());
         }
     }
 }
@@ -17,7 +17,6 @@ package top.galqq.hook;
 
 import android.content.Context;
 import android.graphics.Color;
-import android.graphics.drawable.GradientDrawable;
 import android.text.TextUtils;
 import android.view.Gravity;
 import android.view.View;
@@ -30,9 +29,14 @@ import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.constraintlayout.widget.ConstraintSet;
 import java.lang.reflect.Method;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
+import top.galqq.utils.BubbleLayoutStrategy;
+import top.galqq.utils.LogHelper;
+import top.galqq.utils.OptionBarViewPool;
 import top.galqq.utils.ViewUtils;
 
 /**
@@ -44,11 +48,27 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
     
     private static final String TAG = "GalQQ.MessageOptionBarDecorator";
     
+    private static final LogHelper.Logger LOG = LogHelper.hookLogger(TAG);
+    
     // 缓存反射方法
     private static Method getMsgTypeMethod;
     private static Method getSenderUinMethod;
     private static Method getMsgContentMethod;
-    
+
+    // 【旧版快速路径】根视图类 -> 选项条容器的位置（子 View 下标路径）
+    // 同一种气泡布局结构相同，只在第一次 getView 时遍历查找，之后按路径直接取
+    private static final Map<Class<?>, ContainerPath> legacyContainerPaths = new ConcurrentHashMap<>();
+
+    private static final class ContainerPath {
+        final int[] indices;
+        final Class<?> type;
+
+        ContainerPath(int[] indices, Class<?> type) {
+            this.indices = indices;
+            this.type = type;
+        }
+    }
+
     @Override
     public void onGetView(ViewGroup rootView, Object chatMessage, XC_MethodHook.MethodHookParam param) {
         try {
@@ -79,7 +99,7 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
             int msgType = getMessageType(chatMessage);
             long senderUin = getSenderUin(chatMessage);
             
-            XposedBridge.log(TAG + ": NT setup - msgType=" + msgType + ", senderUin=" + senderUin);
+            LOG.d("NT setup - msgType={}, senderUin={}", msgType, senderUin);
             
             // 创建选项条
             View optionBar = createOptionBar(rootView.getContext(), chatMessage);
@@ -106,8 +126,15 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
             int msgType = getMessageType(chatMessage);
             long senderUin = getSenderUin(chatMessage);
             
-            XposedBridge.log(TAG + ": Legacy setup - msgType=" + msgType + ", senderUin=" + senderUin);
-            
+            LOG.d("Legacy setup - msgType={}, senderUin={}", msgType, senderUin);
+
+            // 【快速路径】getView 复用的根视图上已有选项条：只更新内容，不再查找容器、重新创建
+            View inserted = BubbleLayoutStrategy.getInserted(rootView, BubbleLayoutStrategy.TAG_INSERTED_OPTION_BAR);
+            if (inserted instanceof TextView) {
+                bindOptionBarText((TextView) inserted, getMessageContent(chatMessage));
+                return;
+            }
+
             // 创建选项条
             View optionBar = createOptionBar(rootView.getContext(), chatMessage);
             if (optionBar == null) {
@@ -131,22 +158,20 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
         try {
             // 获取消息内容
             String msgContent = getMessageContent(chatMessage);
-            
-            // 创建文本视图
-            TextView textView = new TextView(context);
-            textView.setText("📋 " + (TextUtils.isEmpty(msgContent) ? "消息" : msgContent.substring(0, Math.min(10, msgContent.length()))));
+
+            // 创建文本视图（视图池复用）
+            TextView textView = OptionBarViewPool.obtainTextView(context);
+            bindOptionBarText(textView, msgContent);
             textView.setTextColor(Color.WHITE);
             textView.setTextSize(12);
-            textView.setPadding(ViewUtils.dp2px(context, 8), 
-                              ViewUtils.dp2px(context, 4), 
-                              ViewUtils.dp2px(context, 8), 
+            textView.setPadding(ViewUtils.dp2px(context, 8),
+                              ViewUtils.dp2px(context, 4),
+                              ViewUtils.dp2px(context, 8),
                               ViewUtils.dp2px(context, 4));
-            
-            // 设置背景
-            GradientDrawable background = new GradientDrawable();
-            background.setColor(Color.parseColor("#4CAF50"));
-            background.setCornerRadius(ViewUtils.dp2px(context, 12));
-            textView.setBackground(background);
+
+            // 设置背景（共享圆角背景状态）
+            textView.setBackground(OptionBarViewPool.getRoundedBackground(
+                Color.parseColor("#4CAF50"), ViewUtils.dp2px(context, 12)));
             
             // 设置布局参数
             LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
@@ -163,6 +188,10 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
             return null;
         }
     }
+
+    private static void bindOptionBarText(TextView textView, String msgContent) {
+        textView.setText("📋 " + (TextUtils.isEmpty(msgContent) ? "消息" : msgContent.substring(0, Math.min(10, msgContent.length()))));
+    }
     
     /**
      * 添加选项条到根视图（NT版本）
@@ -200,7 +229,7 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
             }
             
             // 策略5: 直接添加到根视图（最后手段）
-            XposedBridge.log(TAG + ": Using fallback strategy - adding directly to root");
+            LOG.d("Using fallback strategy - adding directly to root");
             addToRootView(rootView, optionBar);
             
         } catch (Exception e) {
@@ -213,37 +242,93 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
      */
     private void addOptionBarToRoot(ViewGroup rootView, View optionBar, Object chatMessage) {
         try {
-            // 非NT版本通常使用RelativeLayout或LinearLayout
-            
-            // 策略1: 查找LinearLayout
-            LinearLayout linearLayout = ViewUtils.findViewByType(rootView, LinearLayout.class);
-            if (linearLayout != null) {
-                addToLinearLayout(linearLayout, optionBar);
-                return;
-            }
-            
-            // 策略2: 查找FrameLayout
-            FrameLayout frameLayout = ViewUtils.findViewByType(rootView, FrameLayout.class);
-            if (frameLayout != null) {
-                addToFrameLayout(frameLayout, optionBar);
-                return;
-            }
-            
-            // 策略3: 查找消息气泡视图
-            ViewGroup bubbleView = findBubbleView(rootView);
-            if (bubbleView != null) {
-                addToBubbleView(bubbleView, optionBar);
-                return;
+            // 【快速路径】按根视图类缓存的容器位置
+            ViewGroup container = resolveCachedContainer(rootView);
+            if (container == null) {
+                container = findLegacyContainer(rootView);
+                ContainerPath path = pathOf(rootView, container);
+                legacyContainerPaths.put(rootView.getClass(), path);
+                if (path.indices.length == 0) {
+                    container = rootView;
+                }
             }
-            
-            // 策略4: 直接添加到根视图
-            XposedBridge.log(TAG + ": Using fallback strategy - adding directly to root");
-            addToRootView(rootView, optionBar);
-            
+
+            // 按容器类型添加（LinearLayout / FrameLayout / 其他）
+            addToBubbleView(container, optionBar);
+            BubbleLayoutStrategy.rememberInserted(rootView, BubbleLayoutStrategy.TAG_INSERTED_OPTION_BAR, optionBar);
+
         } catch (Exception e) {
             XposedBridge.log(TAG + ": Error adding option bar to root: " + e.getMessage());
         }
     }
+
+    /**
+     * 遍历查找选项条容器（非NT版本通常使用RelativeLayout或LinearLayout）
+     * 只在每种根视图类第一次 getView 时调用
+     */
+    private ViewGroup findLegacyContainer(ViewGroup rootView) {
+        // 策略1: 查找LinearLayout
+        LinearLayout linearLayout = ViewUtils.findViewByType(rootView, LinearLayout.class);
+        if (linearLayout != null) {
+            return linearLayout;
+        }
+
+        // 策略2: 查找FrameLayout
+        FrameLayout frameLayout = ViewUtils.findViewByType(rootView, FrameLayout.class);
+        if (frameLayout != null) {
+            return frameLayout;
+        }
+
+        // 策略3: 查找消息气泡视图
+        ViewGroup bubbleView = findBubbleView(rootView);
+        if (bubbleView != null) {
+            return bubbleView;
+        }
+
+        // 策略4: 直接添加到根视图
+        LOG.d("Using fallback strategy - adding directly to root");
+        return rootView;
+    }
+
+    /**
+     * 按缓存的下标路径取容器，结构不一致（路径失效）时返回 null
+     */
+    private static ViewGroup resolveCachedContainer(ViewGroup rootView) {
+        ContainerPath path = legacyContainerPaths.get(rootView.getClass());
+        if (path == null) {
+            return null;
+        }
+        View current = rootView;
+        for (int index : path.indices) {
+            if (!(current instanceof ViewGroup) || index >= ((ViewGroup) current).getChildCount()) {
+                return null;
+            }
+            current = ((ViewGroup) current).getChildAt(index);
+        }
+        return current.getClass() == path.type ? (ViewGroup) current : null;
+    }
+
+    /**
+     * 记录容器相对根视图的下标路径
+     */
+    private static ContainerPath pathOf(ViewGroup rootView, ViewGroup container) {
+        List<Integer> reversed = new java.util.ArrayList<>();
+        View current = container;
+        while (current != rootView && current.getParent() instanceof ViewGroup) {
+            ViewGroup parent = (ViewGroup) current.getParent();
+            reversed.add(parent.indexOfChild(current));
+            current = parent;
+        }
+        if (current != rootView) {
+            // 不在根视图内（例如通过字段找到的视图），退化为根视图
+            return new ContainerPath(new int[0], rootView.getClass());
+        }
+        int[] indices = new int[reversed.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = reversed.get(indices.length - 1 - i);
+        }
+        return new ContainerPath(indices, container.getClass());
+    }
     
     /**
      * 添加到ConstraintLayout
@@ -266,7 +351,7 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
             // 添加视图
             constraintLayout.addView(optionBar, params);
             
-            XposedBridge.log(TAG + ": Option bar added to ConstraintLayout successfully");
+            LOG.d("Option bar added to ConstraintLayout successfully");
             
         } catch (Exception e) {
             XposedBridge.log(TAG + ": Error adding option bar to ConstraintLayout: " + e.getMessage());
@@ -303,7 +388,7 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
             optionBar.setLayoutParams(params);
             linearLayout.addView(optionBar);
             
-            XposedBridge.log(TAG + ": Successfully added option bar to LinearLayout");
+            LOG.d("Successfully added option bar to LinearLayout");
             
         } catch (Exception e) {
             XposedBridge.log(TAG + ": Error adding to LinearLayout: " + e.getMessage());
@@ -326,7 +411,7 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
             optionBar.setLayoutParams(params);
             frameLayout.addView(optionBar);
             
-            XposedBridge.log(TAG + ": Successfully added option bar to FrameLayout");
+            LOG.d("Successfully added option bar to FrameLayout");
             
         } catch (Exception e) {
             XposedBridge.log(TAG + ": Error adding to FrameLayout: " + e.getMessage());
@@ -353,7 +438,7 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
                 bubbleView.addView(optionBar);
             }
             
-            XposedBridge.log(TAG + ": Successfully added option bar to bubble view");
+            LOG.d("Successfully added option bar to bubble view");
             
         } catch (Exception e) {
             XposedBridge.log(TAG + ": Error adding to bubble view: " + e.getMessage());
@@ -372,7 +457,7 @@ public class MessageOptionBarDecorator implements OnBubbleBuilder {
             optionBar.setLayoutParams(params);
             rootView.addView(optionBar);
             
-            XposedBridge.log(TAG + ": Successfully added option bar to root view");
+            LOG.d("Successfully added option bar to root view");
             
         } catch (Exception e) {
             XposedBridge.log(TAG + ": Error adding to root view: " + e.getMessage());
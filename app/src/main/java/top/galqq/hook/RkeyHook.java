@@ -20,6 +20,7 @@ import de.robv.android.xposed.XposedBridge;
 
 import top.galqq.config.ConfigManager;
 import top.galqq.utils.FunProtoData;
+import top.galqq.utils.LogHelper;
 import top.galqq.utils.XField;
 import top.galqq.utils.XMethod;
 
@@ -54,14 +55,7 @@ public class RkeyHook {
     /**
      * 调试日志输出（受 gal_debug_hook_log 配置开关控制）
      */
-    private static void debugLog(String message) {
-        try {
-            if (ConfigManager.isDebugHookLogEnabled()) {
-                XposedBridge.log(TAG + ": " + message);
-            }
-        } catch (Throwable ignored) {
-        }
-    }
+    private static final LogHelper.Logger LOG = LogHelper.hookLogger(TAG);
     
     /**
      * 强制日志输出（不受配置开关控制，用于关键信息）
@@ -81,26 +75,28 @@ public class RkeyHook {
         forceLog("★★★ init() 被调用 ★★★");
         
         if (sInitialized) {
-            debugLog("已经初始化过，跳过");
+            LOG.d("已经初始化过，跳过");
             return;
         }
         
         try {
-            debugLog("开始初始化 RkeyHook...");
+            LOG.d("开始初始化 RkeyHook...");
             
             // 【重要】先初始化 Initiator
             top.galqq.utils.Initiator.init(classLoader);
-            debugLog("Initiator 初始化完成");
+            LOG.d("Initiator 初始化完成");
             
             // 直接使用 classLoader 加载类
             Class<?> msgRespHandlerClass = classLoader.loadClass("mqq.app.msghandle.MsgRespHandler");
-            debugLog("加载 MsgRespHandler 成功: " + msgRespHandlerClass);
+            LOG.d("加载 MsgRespHandler 成功: {}", msgRespHandlerClass);
             
             // 【调试】打印所有方法
             Method[] allMethods = msgRespHandlerClass.getDeclaredMethods();
-            debugLog("MsgRespHandler 共有 " + allMethods.length + " 个方法:");
+            LOG.d("MsgRespHandler 共有 {} 个方法:", allMethods.length);
             for (Method m : allMethods) {
-                debugLog("  " + m.getName() + "(" + Arrays.toString(m.getParameterTypes()) + ")");
+                if (LOG.isEnabled()) {
+                    LOG.d("  " + m.getName() + "(" + Arrays.toString(m.getParameterTypes()) + ")");
+                }
             }
             
             // 【调试】Hook 所有方法，看看哪些会被调用
@@ -114,12 +110,14 @@ public class RkeyHook {
                             // 只记录第一次调用
                             if (!sLoggedMethods.contains(methodName)) {
                                 sLoggedMethods.add(methodName);
-                                debugLog("★ 方法被调用: " + methodName);
-                                debugLog("  参数数量: " + param.args.length);
+                                LOG.d("★ 方法被调用: {}", methodName);
+                                LOG.d("  参数数量: {}", param.args.length);
                                 for (int i = 0; i < param.args.length; i++) {
                                     Object arg = param.args[i];
-                                    debugLog("  args[" + i + "] = " + 
-                                        (arg != null ? arg.getClass().getName() : "null"));
+                                    if (LOG.isEnabled()) {
+                                        LOG.d("  args[" + i + "] = " + 
+                                            (arg != null ? arg.getClass().getName() : "null"));
+                                    }
                                 }
                             }
                             
@@ -147,11 +145,11 @@ public class RkeyHook {
                     });
                     hookedCount++;
                 } catch (Throwable t) {
-                    debugLog("Hook方法失败 " + method.getName() + ": " + t.getMessage());
+                    LOG.d("Hook方法失败 {}: {}", method.getName(), t.getMessage());
                 }
             }
             
-            debugLog("成功Hook " + hookedCount + " 个方法");
+            LOG.d("成功Hook {} 个方法", hookedCount);
             
             sInitialized = true;
             forceLog("★★★ RkeyHook 初始化成功 ★★★");
@@ -204,23 +202,25 @@ public class RkeyHook {
             String cmdKey = methodName + ":" + serviceCmd;
             if (isInteresting && !sLoggedCommands.contains(cmdKey)) {
                 sLoggedCommands.add(cmdKey);
-                debugLog("========== 发现命令 ==========");
-                debugLog("方法: " + methodName);
-                debugLog("命令: " + serviceCmd);
-                debugLog("总消息: " + sTotalMsgCount + ", Oidb: " + sOidbMsgCount);
-                debugLog("================================");
+                LOG.d("========== 发现命令 ==========");
+                LOG.d("方法: {}", methodName);
+                LOG.d("命令: {}", serviceCmd);
+                LOG.d("总消息: {}, Oidb: {}", sTotalMsgCount, sOidbMsgCount);
+                LOG.d("================================");
             }
             
             // 每100次打印统计
             if (sTotalMsgCount % 100 == 0) {
-                debugLog("统计 - 总消息: " + sTotalMsgCount + 
-                    ", 已发现方法: " + sLoggedMethods.size() + 
-                    ", 已发现命令: " + sLoggedCommands.size());
+                if (LOG.isEnabled()) {
+                    LOG.d("统计 - 总消息: " + sTotalMsgCount + 
+                        ", 已发现方法: " + sLoggedMethods.size() + 
+                        ", 已发现命令: " + sLoggedCommands.size());
+                }
             }
             
             // 处理 rkey 响应
             if ("OidbSvcTrpcTcp.0x9067_202".equals(serviceCmd)) {
-                debugLog("★★★ 捕获到 rkey 响应 ★★★");
+                LOG.d("★★★ 捕获到 rkey 响应 ★★★");
                 processRkeyResponse(fromServiceMsg);
             }
             
@@ -234,13 +234,13 @@ public class RkeyHook {
      */
     private static void processRkeyResponse(Object fromServiceMsg) {
         try {
-            debugLog("========== 处理 rkey 响应 ==========");
-            debugLog("FromServiceMsg 类型: " + fromServiceMsg.getClass().getName());
+            LOG.d("========== 处理 rkey 响应 ==========");
+            LOG.d("FromServiceMsg 类型: {}", fromServiceMsg.getClass().getName());
             
             // 先打印所有字段，找到正确的数据字段
             byte[] wupBuffer = null;
             Field[] fields = fromServiceMsg.getClass().getDeclaredFields();
-            debugLog("FromServiceMsg 共有 " + fields.length + " 个字段:");
+            LOG.d("FromServiceMsg 共有 {} 个字段:", fields.length);
             
             for (Field field : fields) {
                 try {
@@ -256,25 +256,25 @@ public class RkeyHook {
                         // 如果是 byte[] 且长度大于 0，可能是我们要的数据
                         if (bytes.length > 0 && wupBuffer == null) {
                             wupBuffer = bytes;
-                            debugLog("  ★ " + field.getName() + " = " + valueStr + " (可能是数据)");
+                            LOG.d("  ★ {} = {} (可能是数据)", field.getName(), valueStr);
                         } else {
-                            debugLog("  " + field.getName() + " = " + valueStr);
+                            LOG.d("  {} = {}", field.getName(), valueStr);
                         }
                     } else {
                         valueStr = String.valueOf(value);
                         if (valueStr.length() > 100) {
                             valueStr = valueStr.substring(0, 100) + "...";
                         }
-                        debugLog("  " + field.getName() + " = " + valueStr);
+                        LOG.d("  {} = {}", field.getName(), valueStr);
                     }
                 } catch (Throwable t) {
-                    debugLog("  " + field.getName() + " = [访问失败]");
+                    LOG.d("  {} = [访问失败]", field.getName());
                 }
             }
             
             // 尝试通过方法获取数据
             if (wupBuffer == null) {
-                debugLog("尝试通过方法获取数据...");
+                LOG.d("尝试通过方法获取数据...");
                 Method[] methods = fromServiceMsg.getClass().getDeclaredMethods();
                 for (Method method : methods) {
                     if (method.getParameterCount() == 0 && method.getReturnType() == byte[].class) {
@@ -282,7 +282,7 @@ public class RkeyHook {
                             method.setAccessible(true);
                             byte[] result = (byte[]) method.invoke(fromServiceMsg);
                             if (result != null && result.length > 0) {
-                                debugLog("  ★ " + method.getName() + "() 返回 byte[" + result.length + "]");
+                                LOG.d("  ★ {}() 返回 byte[{}]", method.getName(), result.length);
                                 if (wupBuffer == null) {
                                     wupBuffer = result;
                                 }
@@ -293,18 +293,18 @@ public class RkeyHook {
             }
             
             if (wupBuffer == null || wupBuffer.length == 0) {
-                debugLog("未找到有效的数据字段");
+                LOG.d("未找到有效的数据字段");
                 return;
             }
             
-            debugLog("数据长度: " + wupBuffer.length);
-            debugLog("数据前50字节: " + bytesToHex(wupBuffer, 50));
+            LOG.d("数据长度: {}", wupBuffer.length);
+            LOG.d("数据前50字节: {}", bytesToHex(wupBuffer, 50));
             
             // 尝试解析 protobuf
             try {
                 FunProtoData data = new FunProtoData();
                 byte[] unpacked = getUnpPackage(wupBuffer);
-                debugLog("解包后长度: " + (unpacked != null ? unpacked.length : 0));
+                LOG.d("解包后长度: {}", (unpacked != null ? unpacked.length : 0));
                 
                 data.fromBytes(unpacked);
                 
@@ -313,7 +313,7 @@ public class RkeyHook {
                 if (jsonStr.length() > 3000) {
                     jsonStr = jsonStr.substring(0, 3000) + "\n... [截断]";
                 }
-                debugLog("解析结果:\n" + jsonStr);
+                LOG.d("解析结果:\n{}", jsonStr);
                 
                 // 根据 NapCatQQ 的 proto 结构解析
                 // 路径: 4 (body) -> 4 (data) -> 1 (rkeyList array)
@@ -321,14 +321,14 @@ public class RkeyHook {
                 try {
                     JSONObject body = obj.optJSONObject("4");
                     if (body == null) {
-                        debugLog("未找到 field 4 (body)");
+                        LOG.d("未找到 field 4 (body)");
                         findRkeyInJson(obj, "");
                         return;
                     }
                     
                     JSONObject rkeyData = body.optJSONObject("4");
                     if (rkeyData == null) {
-                        debugLog("未找到 field 4.4 (data)");
+                        LOG.d("未找到 field 4.4 (data)");
                         findRkeyInJson(obj, "");
                         return;
                     }
@@ -336,7 +336,7 @@ public class RkeyHook {
                     // rkeyList 可能是数组或单个对象
                     Object rkeyListObj = rkeyData.opt("1");
                     if (rkeyListObj == null) {
-                        debugLog("未找到 field 4.4.1 (rkeyList)");
+                        LOG.d("未找到 field 4.4.1 (rkeyList)");
                         findRkeyInJson(obj, "");
                         return;
                     }
@@ -348,12 +348,12 @@ public class RkeyHook {
                         rkeyList = new org.json.JSONArray();
                         rkeyList.put(rkeyListObj);
                     } else {
-                        debugLog("rkeyList 类型不正确: " + rkeyListObj.getClass().getName());
+                        LOG.d("rkeyList 类型不正确: {}", rkeyListObj.getClass().getName());
                         findRkeyInJson(obj, "");
                         return;
                     }
                     
-                    debugLog("找到 " + rkeyList.length() + " 个 rkey 项");
+                    LOG.d("找到 {} 个 rkey 项", rkeyList.length());
                     
                     for (int i = 0; i < rkeyList.length(); i++) {
                         JSONObject rkeyItem = rkeyList.getJSONObject(i);
@@ -362,50 +362,54 @@ public class RkeyHook {
                         long ttl = rkeyItem.optLong("2", 0);
                         long time = rkeyItem.optLong("4", 0);
                         
-                        debugLog("rkey[" + i + "]: type=" + type + ", ttl=" + ttl + ", time=" + time);
-                        debugLog("  rkey=" + (rkey != null ? rkey.substring(0, Math.min(80, rkey.length())) + "..." : "null"));
+                        if (LOG.isEnabled()) {
+                            LOG.d("rkey[" + i + "]: type=" + type + ", ttl=" + ttl + ", time=" + time);
+                        }
+                        if (LOG.isEnabled()) {
+                            LOG.d("  rkey=" + (rkey != null ? rkey.substring(0, Math.min(80, rkey.length())) + "..." : "null"));
+                        }
                         
                         if (type == 10) {
                             // private
                             rkey_private = rkey;
-                            debugLog("✓ 设置 rkey_private");
+                            LOG.d("✓ 设置 rkey_private");
                         } else if (type == 20) {
                             // group
                             rkey_group = rkey;
-                            debugLog("✓ 设置 rkey_group");
+                            LOG.d("✓ 设置 rkey_group");
                         } else {
                             // 未知类型，尝试按顺序分配
                             if (rkey_group == null) {
                                 rkey_group = rkey;
-                                debugLog("✓ 设置 rkey_group (按顺序)");
+                                LOG.d("✓ 设置 rkey_group (按顺序)");
                             } else if (rkey_private == null) {
                                 rkey_private = rkey;
-                                debugLog("✓ 设置 rkey_private (按顺序)");
+                                LOG.d("✓ 设置 rkey_private (按顺序)");
                             }
                         }
                     }
                     
                     if (rkey_group != null || rkey_private != null) {
-                        debugLog("★★★ rkey 获取成功 ★★★");
-                        debugLog("rkey_group: " + (rkey_group != null ? "有效" : "无"));
-                        debugLog("rkey_private: " + (rkey_private != null ? "有效" : "无"));
+                        LOG.d("★★★ rkey 获取成功 ★★★");
+                        LOG.d("rkey_group: {}", (rkey_group != null ? "有效" : "无"));
+                        LOG.d("rkey_private: {}", (rkey_private != null ? "有效" : "无"));
                     } else {
-                        debugLog("未能提取有效的 rkey");
+                        LOG.d("未能提取有效的 rkey");
                         findRkeyInJson(obj, "");
                     }
                 } catch (Throwable t) {
-                    debugLog("解析rkey失败: " + t.getMessage());
-                    debugLog("尝试遍历JSON查找rkey...");
+                    LOG.d("解析rkey失败: {}", t.getMessage());
+                    LOG.d("尝试遍历JSON查找rkey...");
                     findRkeyInJson(obj, "");
                 }
             } catch (Throwable t) {
-                debugLog("解析protobuf失败: " + t.getMessage());
+                LOG.d("解析protobuf失败: {}", t.getMessage());
             }
             
-            debugLog("========================================");
+            LOG.d("========================================");
             
         } catch (Throwable t) {
-            debugLog("处理rkey响应失败: " + t.getMessage());
+            LOG.d("处理rkey响应失败: {}", t.getMessage());
         }
     }
     
@@ -424,7 +428,9 @@ public class RkeyHook {
                     String strValue = (String) value;
                     // 检查是否像rkey（通常以&rkey=开头或包含特定格式）
                     if (strValue.contains("rkey") || strValue.contains("&") || strValue.length() > 50) {
-                        debugLog("  [" + currentPath + "] = " + strValue.substring(0, Math.min(100, strValue.length())) + (strValue.length() > 100 ? "..." : ""));
+                        if (LOG.isEnabled()) {
+                            LOG.d("  [" + currentPath + "] = " + strValue.substring(0, Math.min(100, strValue.length())) + (strValue.length() > 100 ? "..." : ""));
+                        }
                     }
                 } else if (value instanceof JSONObject) {
                     findRkeyInJson((JSONObject) value, currentPath);
@@ -437,14 +443,16 @@ public class RkeyHook {
                         } else if (item instanceof String) {
                             String strItem = (String) item;
                             if (strItem.contains("rkey") || strItem.contains("&") || strItem.length() > 50) {
-                                debugLog("  [" + currentPath + "[" + i + "]] = " + strItem.substring(0, Math.min(100, strItem.length())) + (strItem.length() > 100 ? "..." : ""));
+                                if (LOG.isEnabled()) {
+                                    LOG.d("  [" + currentPath + "[" + i + "]] = " + strItem.substring(0, Math.min(100, strItem.length())) + (strItem.length() > 100 ? "..." : ""));
+                                }
                             }
                         }
                     }
                 }
             }
         } catch (Throwable t) {
-            debugLog("遍历JSON失败: " + t.getMessage());
+            LOG.d("遍历JSON失败: {}", t.getMessage());
         }
     }
     
@@ -453,8 +461,8 @@ public class RkeyHook {
      */
     private static void dumpFromServiceMsg(Object fromServiceMsg, String serviceCmd) {
         try {
-            debugLog("========== Dump FromServiceMsg: " + serviceCmd + " ==========");
-            debugLog("类型: " + fromServiceMsg.getClass().getName());
+            LOG.d("========== Dump FromServiceMsg: {} ==========", serviceCmd);
+            LOG.d("类型: {}", fromServiceMsg.getClass().getName());
             
             // 遍历所有字段
             Class<?> clazz = fromServiceMsg.getClass();
@@ -478,7 +486,7 @@ public class RkeyHook {
                             }
                         }
                         
-                        debugLog("  ." + field.getName() + " = " + valueStr);
+                        LOG.d("  .{} = {}", field.getName(), valueStr);
                     } catch (Throwable t) {
                         // 忽略
                     }
@@ -492,7 +500,7 @@ public class RkeyHook {
                 byte[] wupBuffer = (byte[]) getWupBufferMethod.invoke(fromServiceMsg);
                 
                 if (wupBuffer != null && wupBuffer.length > 0) {
-                    debugLog("WupBuffer 长度: " + wupBuffer.length);
+                    LOG.d("WupBuffer 长度: {}", wupBuffer.length);
                     
                     try {
                         FunProtoData data = new FunProtoData();
@@ -502,18 +510,18 @@ public class RkeyHook {
                         if (jsonStr.length() > 3000) {
                             jsonStr = jsonStr.substring(0, 3000) + "\n... [截断]";
                         }
-                        debugLog("Protobuf解析结果:\n" + jsonStr);
+                        LOG.d("Protobuf解析结果:\n{}", jsonStr);
                     } catch (Throwable t) {
-                        debugLog("Protobuf解析失败: " + t.getMessage());
+                        LOG.d("Protobuf解析失败: {}", t.getMessage());
                     }
                 }
             } catch (Throwable t) {
-                debugLog("获取WupBuffer失败: " + t.getMessage());
+                LOG.d("获取WupBuffer失败: {}", t.getMessage());
             }
             
-            debugLog("==============================================");
+            LOG.d("==============================================");
         } catch (Throwable t) {
-            debugLog("Dump失败: " + t.getMessage());
+            LOG.d("Dump失败: {}", t.getMessage());
         }
     }
     
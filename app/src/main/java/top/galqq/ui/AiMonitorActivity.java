@@ -6,7 +6,9 @@ import android.os.Looper;
 import android.widget.TextView;
 import top.galqq.R;
 import top.galqq.utils.AiRateLimitedQueue;
+import top.galqq.utils.BindTimingStats;
 import top.galqq.utils.HostInfo;
+import top.galqq.utils.MainThreadWatchdog;
 import java.util.List;
 import java.util.Locale;
 
@@ -15,7 +17,11 @@ public class AiMonitorActivity extends AppCompatTransferActivity {
     private TextView tvQueueSize;
     private TextView tvQps;
     private TextView tvThreads;
+    private TextView tvConcurrency;
+    private TextView tvRtt;
     private TextView tvActiveRequests;
+    private TextView tvBindTiming;
+    private TextView tvMainThreadWatchdog;
     private Handler handler;
     private Runnable refreshRunnable;
     private boolean isResumed = false;
@@ -36,7 +42,11 @@ public class AiMonitorActivity extends AppCompatTransferActivity {
         tvQueueSize = findViewById(R.id.tv_queue_size);
         tvQps = findViewById(R.id.tv_qps);
         tvThreads = findViewById(R.id.tv_threads);
+        tvConcurrency = findViewById(R.id.tv_concurrency);
+        tvRtt = findViewById(R.id.tv_rtt);
         tvActiveRequests = findViewById(R.id.tv_active_requests);
+        tvBindTiming = findViewById(R.id.tv_bind_timing);
+        tvMainThreadWatchdog = findViewById(R.id.tv_main_thread_watchdog);
         handler = new Handler(Looper.getMainLooper());
 
         refreshRunnable = new Runnable() {
@@ -97,6 +107,25 @@ public class AiMonitorActivity extends AppCompatTransferActivity {
         }
         tvThreads.setText(activeThreads + "/" + poolSize);
 
+        // Update Adaptive Concurrency (in flight / current limit, recent round trip)
+        tvConcurrency.setText(queue.getInFlightCount() + "/" + queue.getConcurrencyLimit());
+        long rttMs = queue.getRecentRttMs();
+        tvRtt.setText(rttMs > 0 ? "RTT " + rttMs + "ms" : "-");
+
+        // Update Bind Timing (p50/p95/p99 per phase)
+        if (BindTimingStats.getCount(BindTimingStats.PHASE_TOTAL) == 0) {
+            tvBindTiming.setText("暂无数据");
+        } else {
+            tvBindTiming.setText(BindTimingStats.getSummary());
+        }
+
+        // Update Main Thread Watchdog (per entry point + recent offenders)
+        if (!MainThreadWatchdog.hasData()) {
+            tvMainThreadWatchdog.setText("暂无数据（开启调试Hook日志后采集）");
+        } else {
+            tvMainThreadWatchdog.setText(MainThreadWatchdog.getSummary());
+        }
+
         // Update Active Requests List
         List<String> requests = queue.getActiveRequests();
         if (requests.isEmpty()) {
@@ -281,6 +281,23 @@ public class GalSettingsFragment extends PreferenceFragmentCompat {
             });
         }
         
+        // AI Burst (突发请求数)
+        EditTextPreference aiBurstPref = findPreference(ConfigManager.KEY_AI_BURST);
+        if (aiBurstPref != null) {
+            aiBurstPref.setText(String.valueOf(ConfigManager.getAiBurst()));
+            aiBurstPref.setOnPreferenceChangeListener((preference, newValue) -> {
+                try {
+                    int burst = Integer.parseInt((String) newValue);
+                    if (burst >= 1) {
+                        ConfigManager.setAiBurst(burst);
+                        aiBurstPref.setText((String) newValue);
+                        return true;
+                    }
+                } catch (Exception e) {}
+                return false;
+            });
+        }
+        
         // AI Timeout (请求超时时间)
         EditTextPreference aiTimeoutPref = findPreference(ConfigManager.KEY_AI_TIMEOUT);
         if (aiTimeoutPref != null) {
@@ -394,6 +411,23 @@ public class GalSettingsFragment extends PreferenceFragmentCompat {
             });
         }
         
+        // Prefetch Window (预取消息数)
+        EditTextPreference prefetchWindowPref = findPreference(ConfigManager.KEY_PREFETCH_WINDOW);
+        if (prefetchWindowPref != null) {
+            prefetchWindowPref.setText(String.valueOf(ConfigManager.getPrefetchWindow()));
+            prefetchWindowPref.setOnPreferenceChangeListener((preference, newValue) -> {
+                try {
+                    int window = Integer.parseInt((String) newValue);
+                    if (window >= 0 && window <= 10) {
+                        ConfigManager.setPrefetchWindow(window);
+                        prefetchWindowPref.setText((String) newValue);
+                        return true;
+                    }
+                } catch (Exception e) {}
+                return false;
+            });
+        }
+        
         // Affinity Display (好感度显示)
         Preference affinitySwitch = findPreference(ConfigManager.KEY_AFFINITY_ENABLED);
         if (affinitySwitch != null) {
@@ -534,6 +568,27 @@ public class GalSettingsFragment extends PreferenceFragmentCompat {
             });
         }
         
+        // Message Structure Debug (分析消息结构)
+        SwitchPreference msgStructurePref = findPreference(ConfigManager.KEY_DEBUG_MSG_STRUCTURE);
+        if (msgStructurePref != null) {
+            msgStructurePref.setChecked(ConfigManager.isMessageStructureDebugEnabled());
+            msgStructurePref.setOnPreferenceChangeListener((preference, newValue) -> {
+                ConfigManager.setMessageStructureDebugEnabled((Boolean) newValue);
+                return true;
+            });
+        }
+        
+        // 主线程严格模式（只在调试版显示）
+        SwitchPreference strictModePref = findPreference(ConfigManager.KEY_DEBUG_MAIN_THREAD_STRICT);
+        if (strictModePref != null) {
+            strictModePref.setVisible(top.galqq.BuildConfig.DEBUG);
+            strictModePref.setChecked(ConfigManager.isMainThreadStrictModeEnabled());
+            strictModePref.setOnPreferenceChangeListener((preference, newValue) -> {
+                ConfigManager.setMainThreadStrictModeEnabled((Boolean) newValue);
+                return true;
+            });
+        }
+        
         // Filter Mode
         androidx.preference.ListPreference filterModePref = findPreference(ConfigManager.KEY_FILTER_MODE);
         if (filterModePref != null) {
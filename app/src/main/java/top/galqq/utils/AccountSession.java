@@ -0,0 +1,215 @@
+package top.galqq.utils;
+
+import android.content.Context;
+
+import java.lang.ref.WeakReference;
+
+import de.robv.android.xposed.XposedBridge;
+import de.robv.android.xposed.XposedHelpers;
+
+/**
+ * 当前登录账号的会话信息（UIN、昵称、AppRuntime）
+ *
+ * 原先群聊消息每次绑定都要通过 {@link AppRuntimeHelper#getLongAccountUin} 反射调用
+ * getCurrentAccountUin，只为判断消息是否是自己发的。这里解析一次后缓存，
+ * 由 getCurrentAccountUin 的 Hook 观察到的 UIN 变化、以及切换账号/退出登录的 Hook 使其失效。
+ *
+ * 账号变化时清空按消息/会话缓存的数据（上下文、选项状态、消息快照、好感度显示缓存、图片描述），
+ * 丢弃上一个账号排队中和进行中的 AI 请求，并把持久化的选项切到新账号自己的存储，
+ * 好感度缓存键也带上账号，切换账号后不会混用另一个账号的数据。
+ *
+ * 所有方法线程安全。
+ */
+public final class AccountSession {
+
+    private static final String TAG = "GalQQ.AccountSession";
+
+    private static final LogHelper.Logger LOG = LogHelper.hookLogger(TAG);
+
+    private static final class Session {
+        final long uin;
+        final String uinString;
+        volatile WeakReference<Object> appRuntimeRef;
+        volatile String nickname;
+
+        Session(long uin, Object appRuntime) {
+            this.uin = uin;
+            this.uinString = String.valueOf(uin);
+            this.appRuntimeRef = new WeakReference<>(appRuntime);
+        }
+    }
+
+    // 当前会话（尚未解析或已失效时为 null）
+    private static volatile Session sSession;
+    // 最近一次确认的账号（失效后保留，用于判断重新解析出的是否是另一个账号）
+    private static long sLastUin = 0;
+
+    private AccountSession() {}
+
+    /**
+     * 当前登录账号 UIN，获取失败返回 0
+     * 只在首次调用或会话失效后访问 AppRuntime
+     */
+    public static long getUin(Context context) {
+        Session session = sSession;
+        if (session == null) {
+            session = resolve(context);
+        }
+        return session != null ? session.uin : 0;
+    }
+
+    /**
+     * 当前登录账号 UIN 字符串，获取失败返回 null
+     */
+    public static String getUinString(Context context) {
+        Session session = sSession;
+        if (session == null) {
+            session = resolve(context);
+        }
+        return session != null ? session.uinString : null;
+    }
+
+    /**
+     * 当前账号的 AppRuntime（已被回收时重新获取）
+     */
+    public static Object getAppRuntime(Context context) {
+        Session session = sSession;
+        if (session == null) {
+            session = resolve(context);
+        }
+        if (session == null) {
+            return AppRuntimeHelper.getAppRuntime(resolveContext(context));
+        }
+        Object appRuntime = session.appRuntimeRef.get();
+        if (appRuntime == null) {
+            appRuntime = AppRuntimeHelper.getAppRuntime(resolveContext(context));
+            session.appRuntimeRef = new WeakReference<>(appRuntime);
+        }
+        return appRuntime;
+    }
+
+    /**
+     * 当前账号昵称（首次调用时读取），获取失败返回 null
+     */
+    public static String getNickname(Context context) {
+        Session session = sSession;
+        if (session == null) {
+            session = resolve(context);
+        }
+        if (session == null) {
+            return null;
+        }
+        String nickname = session.nickname;
+        if (nickname == null) {
+            try {
+                Object result = XposedHelpers.callMethod(getAppRuntime(context), "getCurrentNickname");
+                nickname = result instanceof String ? (String) result : "";
+            } catch (Throwable t) {
+                nickname = "";
+            }
+            session.nickname = nickname;
+        }
+        return nickname.isEmpty() ? null : nickname;
+    }
+
+    /**
+     * 按账号区分的存储键（账号未知时返回原键）
+     */
+    public static String scopedKey(Context context, String key) {
+        long uin = getUin(context);
+        return uin > 0 ? key + "_" + uin : key;
+    }
+
+    /**
+     * getCurrentAccountUin 的 Hook 观察到返回值（调用非常频繁，相同时直接返回）
+     */
+    public static void onUinObserved(String uinString) {
+        Session session = sSession;
+        if (session != null && session.uinString.equals(uinString)) {
+            return;
+        }
+        long uin;
+        try {
+            uin = Long.parseLong(uinString);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (uin > 0) {
+            update(new Session(uin, null));
+        }
+    }
+
+    /**
+     * 切换账号/退出登录时调用，下次访问时重新解析
+     */
+    public static void invalidate() {
+        sSession = null;
+        LOG.d("会话已失效");
+    }
+
+    private static Session resolve(Context context) {
+        Context ctx = resolveContext(context);
+        if (ctx == null) {
+            return null;
+        }
+        Object appRuntime = AppRuntimeHelper.getAppRuntime(ctx);
+        if (appRuntime == null) {
+            return null;
+        }
+        long uin = 0;
+        try {
+            Object result = XposedHelpers.callMethod(appRuntime, "getCurrentAccountUin");
+            if (result instanceof Long) {
+                uin = (Long) result;
+            } else if (result instanceof String) {
+                uin = Long.parseLong((String) result);
+            }
+        } catch (Throwable t) {
+            LOG.d("获取当前账号失败: {}", t.getMessage());
+        }
+        if (uin <= 0) {
+            return null;
+        }
+        // 上面的调用会触发 getCurrentAccountUin Hook，可能已经建立了同一账号的会话
+        Session current = sSession;
+        if (current != null && current.uin == uin) {
+            current.appRuntimeRef = new WeakReference<>(appRuntime);
+            return current;
+        }
+        Session session = new Session(uin, appRuntime);
+        update(session);
+        return session;
+    }
+
+    private static void update(Session session) {
+        long oldUin;
+        synchronized (AccountSession.class) {
+            sSession = session;
+            oldUin = sLastUin;
+            sLastUin = session.uin;
+        }
+        if (oldUin != session.uin) {
+            onAccountChanged(oldUin, session.uin);
+        }
+    }
+
+    private static void onAccountChanged(long oldUin, long newUin) {
+        if (oldUin != 0) {
+            // 另一个账号的会话和消息状态，不能沿用
+            MessageContextManager.clearAll();
+            MessageUiStateStore.clearAll();
+            MessageSnapshot.clearAll();
+            ImageDescriptionCache.clearAll();
+            top.galqq.hook.MessageInterceptor.onAccountChanged();
+            AiRateLimitedQueue.onAccountChanged();
+            XposedBridge.log(TAG + ": 账号已切换 " + oldUin + " -> " + newUin + "，已清空会话缓存");
+        } else {
+            LOG.d("当前账号 {}", newUin);
+        }
+        OptionsDiskStore.onAccountChanged(newUin);
+    }
+
+    private static Context resolveContext(Context context) {
+        return context != null ? context : AppRuntimeHelper.getContext();
+    }
+}
@@ -0,0 +1,149 @@
+package top.galqq.utils;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import de.robv.android.xposed.XposedBridge;
+
+/**
+ * 自适应并发上限（AIMD，按往返延迟调整）
+ *
+ * QPS 只限制发出的速度，上游变慢（推理模型、服务商过载）时进行中的请求会越积越多，
+ * 每个请求的延迟都跟着变长。这里在令牌桶之上再限制同时进行中的请求数：
+ * - 每次成功的往返延迟同时更新慢速均值（基线）和快速均值（近况）
+ * - 近况超过基线的 {@link #LATENCY_TOLERANCE} 倍或请求超时：上限乘以 {@link #BACKOFF_RATIO}，
+ *   一个往返时间内最多降一次
+ * - 延迟正常且上限已被占满：上限加 1/limit（约每一轮往返加 1）
+ * - 基线会慢慢跟随持续的高延迟，换成慢模型后不会一直压着上限
+ *
+ * 所有方法线程安全；出队前 {@link #tryAcquire}，请求结束时 {@link #release}。
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    private static final String TAG = "GalQQ.Concurrency";
+
+    private static final LogHelper.Logger LOG = LogHelper.verboseLogger(TAG);
+
+    // 近况超过基线多少倍视为变慢
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // 变慢时的收缩比例
+    private static final double BACKOFF_RATIO = 0.75;
+    // 基线 / 近况的平滑系数
+    private static final double BASELINE_ALPHA = 0.05;
+    private static final double RECENT_ALPHA = 0.3;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private double baselineRttNs;   // 0 表示还没有样本
+    private double recentRttNs;
+    private long lastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * 占用一个并发名额
+     * @return 已达上限时返回 false
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= getLimit()) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * 归还名额（不计入延迟样本，用于取消或以错误结束的请求）
+     */
+    public synchronized void release() {
+        if (inFlight > 0) {
+            inFlight--;
+        }
+    }
+
+    /**
+     * 记录一次成功的往返延迟（请求仍占用名额时调用）
+     * 只应包含上游的往返时间：从 HTTP 调用创建时计时，不含本地预处理和排队
+     */
+    public synchronized void onSample(long rttNanos) {
+        if (rttNanos <= 0) {
+            return;
+        }
+        if (baselineRttNs == 0) {
+            baselineRttNs = rttNanos;
+            recentRttNs = rttNanos;
+            return;
+        }
+        recentRttNs += RECENT_ALPHA * (rttNanos - recentRttNs);
+        baselineRttNs += BASELINE_ALPHA * (rttNanos - baselineRttNs);
+
+        if (recentRttNs > baselineRttNs * LATENCY_TOLERANCE) {
+            decrease(false);
+        } else if (inFlight >= getLimit() && limit < maxLimit) {
+            // 只有名额被占满时才说明上限在起作用，才值得增加
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    /**
+     * 请求超时：按变慢处理
+     */
+    public synchronized void onTimeout() {
+        decrease(true);
+    }
+
+    private void decrease(boolean timeout) {
+        long now = System.nanoTime();
+        // 一个往返时间内只降一次，避免同一批慢请求把上限连续压到底
+        long cooldown = recentRttNs > 0 ? (long) recentRttNs : TimeUnit.SECONDS.toNanos(1);
+        if (now - lastDecreaseNanos < cooldown) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        double old = limit;
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        if ((int) old != (int) limit) {
+            XposedBridge.log(TAG + ": 🔽 并发上限 " + (int) old + " → " + (int) limit + "（" + reasonOf(timeout) + "）");
+        } else if (LOG.isEnabled()) {
+            LOG.d("并发上限 {}（{}）", String.format(Locale.US, "%.2f", limit), reasonOf(timeout));
+        }
+    }
+
+    // 只在输出日志时拼接
+    private String reasonOf(boolean timeout) {
+        return timeout ? "请求超时"
+            : "延迟 " + formatMs(recentRttNs) + " > 基线 " + formatMs(baselineRttNs) + " × " + LATENCY_TOLERANCE;
+    }
+
+    // ========== 状态 ==========
+
+    public synchronized int getLimit() {
+        return Math.max(minLimit, (int) limit);
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 近况往返延迟（毫秒），还没有样本时为 0
+     */
+    public synchronized long getRecentRttMs() {
+        return (long) (recentRttNs / 1_000_000);
+    }
+
+    public synchronized long getBaselineRttMs() {
+        return (long) (baselineRttNs / 1_000_000);
+    }
+
+    private static String formatMs(double nanos) {
+        return String.format(Locale.US, "%.0fms", nanos / 1_000_000);
+    }
+}
@@ -15,6 +15,7 @@ import top.galqq.config.ConfigManager;
 /**
  * 好感度数据缓存
  * 使用 MMKV 存储好感度数据，支持缓存有效期检查
+ * 键按当前登录账号区分（好感度排行是账号自己的数据）
  */
 public class AffinityCache {
 
@@ -102,23 +103,24 @@ public class AffinityCache {
      * @return 时间戳（毫秒），如果没有缓存返回 0
      */
     public long getTimestamp() {
-        return ConfigManager.getLong(KEY_TIMESTAMP, 0);
+        return ConfigManager.getLong(scoped(KEY_TIMESTAMP), 0);
     }
 
     /**
      * 清除所有缓存
      */
     public void clearCache() {
-        ConfigManager.remove(KEY_WHO_CARES_ME);
-        ConfigManager.remove(KEY_WHO_I_CARE);
-        ConfigManager.remove(KEY_TIMESTAMP);
+        ConfigManager.remove(scoped(KEY_WHO_CARES_ME));
+        ConfigManager.remove(scoped(KEY_WHO_I_CARE));
+        ConfigManager.remove(scoped(KEY_TIMESTAMP));
         debugLog(TAG + ": 缓存已清除");
     }
 
     /**
      * 保存数据到 MMKV
      */
-    private void saveData(String key, Map<String, Integer> data) {
+    private void saveData(String baseKey, Map<String, Integer> data) {
+        String key = scoped(baseKey);
         if (data == null) {
             ConfigManager.remove(key);
             return;
@@ -140,7 +142,7 @@ public class AffinityCache {
      * 从 MMKV 加载数据
      */
     private Map<String, Integer> loadData(String key) {
-        String jsonStr = ConfigManager.getString(key, null);
+        String jsonStr = ConfigManager.getString(scoped(key), null);
         if (jsonStr == null || jsonStr.isEmpty()) {
             return null;
         }
@@ -165,12 +167,19 @@ public class AffinityCache {
         }
     }
 
+    /**
+     * 当前账号的存储键
+     */
+    private String scoped(String key) {
+        return AccountSession.scopedKey(mContext, key);
+    }
+
     /**
      * 更新时间戳
      */
     private void updateTimestamp() {
         long timestamp = System.currentTimeMillis();
-        ConfigManager.putLong(KEY_TIMESTAMP, timestamp);
+        ConfigManager.putLong(scoped(KEY_TIMESTAMP), timestamp);
         debugLog(TAG + ": 更新时间戳: " + timestamp);
     }
 }
@@ -12,9 +12,10 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -28,21 +29,21 @@ import top.galqq.hook.MessageInterceptor;
  * 功能：
  * 1. 动态QPS限流（初始3 req/s，429时降速，成功后恢复）
  * 2. 优先级队列（可见消息优先处理）
- * 3. 线程池异步处理
+ * 3. 基于回调的异步执行：请求等待响应、重试退避期间都不占用线程，线程数固定
  * 4. 失败重试 + 指数退避
  * 5. 持久化队列（进程重启恢复）
+ * 6. 跟踪选项条可见性：滑回屏幕的请求提升优先级，滑走的降级，选项条被回收后取消请求
+ * 7. 低优先级预取：额度取自限流器空余，可见消息的请求会接管同一消息的预取
+ * 8. 群聊防抖：自动显示模式下同一群连续来消息时，只有最新一条保留请求，其余并入它的上下文
+ * 9. 服务商限流响应头：剩余额度为 0 时暂停到重置、429 按 Retry-After 重试；降速后的 QPS 按接口持久化
+ * 10. 自适应并发上限：在令牌桶之上限制进行中的请求数，上游变慢时按往返延迟收缩（见 {@link AdaptiveConcurrencyLimit}）
+ * 11. 单飞合并：指纹（消息、提示词、模型、上下文末尾）相同的请求挂到排队或进行中的同一请求上，共用一次调用的结果
  */
 public class AiRateLimitedQueue {
     
     private static final String TAG = "GalQQ.AiQueue";
     
-    private static void debugLog(String message) {
-        try {
-            if (ConfigManager.isVerboseLogEnabled()) {
-                XposedBridge.log(message);
-            }
-        } catch (Throwable ignored) {}
-    }
+    private static final LogHelper.Logger LOG = LogHelper.verboseLogger(null);
     
     // 单例
     private static volatile AiRateLimitedQueue instance;
@@ -50,20 +51,53 @@ public class AiRateLimitedQueue {
     // 优先级队列（自动排序）
     private final PriorityBlockingQueue<PrioritizedRequest> requestQueue;
     
-    // 动态限流器
-    private final DynamicRateLimiter rateLimiter;
+    // 令牌桶限流器（容量内的连续请求立即放行）
+    private final TokenBucketLimiter rateLimiter;
+    
+    // 进行中的请求数上限（出队时占用，请求结束时归还；429 退避等待期间仍占用）
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    
+    // 限流器当前对应的接口（host + path），学习到的 QPS 按它保存
+    private volatile String limiterEndpoint;
+    // 最近一次 Retry-After 的截止时间（nanoTime，0 表示没有）
+    private volatile long retryAfterUntilNanos;
     
     // 持久化管理器
     private final RequestPersistence persistence;
     
-    // 异步执行线程池
-    private final ExecutorService executorService;
+    // 调度线程：发出请求、重试定时和超时（请求等待响应期间不占用线程）
+    private final ScheduledExecutorService scheduler;
     
     // 当前正在处理的请求描述（用于监控）
     private final List<String> activeRequests = java.util.Collections.synchronizedList(new ArrayList<>());
     
-    // 工作线程
-    private Thread workerThread;
+    // msgId -> 排队或处理中的请求（用于预取/恢复请求的去重和接管）
+    private final java.util.concurrent.ConcurrentHashMap<String, PrioritizedRequest> pendingByMsgId =
+        new java.util.concurrent.ConcurrentHashMap<>();
+    
+    // 请求指纹 -> 排队或处理中的请求（单飞合并）
+    private final java.util.concurrent.ConcurrentHashMap<String, PrioritizedRequest> pendingByFingerprint =
+        new java.util.concurrent.ConcurrentHashMap<>();
+    
+    // 排队或处理中的预取请求数
+    private final AtomicInteger prefetchCount = new AtomicInteger(0);
+    
+    // 预取额度：限流器在这段时间内能放行的请求数，扣除已排队和处理中的请求
+    private static final double PREFETCH_HORIZON_SECONDS = 2.0;
+    // 同时存在的预取请求上限
+    private static final int MAX_PREFETCH_PENDING = 6;
+    
+    // 群聊防抖：会话安静这么久后才发出最新一条的请求
+    private static final long DEBOUNCE_QUIET_MS = 1500;
+    // 消息持续不断时最多等待这么久（避免一直发不出去）
+    private static final long DEBOUNCE_MAX_WAIT_MS = 5000;
+    
+    // 会话ID -> 防抖中的请求（debounceLock 保护）
+    private final Object debounceLock = new Object();
+    private final java.util.Map<String, DebounceSlot> debounceSlots = new java.util.HashMap<>();
+    
+    // 是否已安排出队（调度线程上最多一个待执行的 dispatch）
+    private final java.util.concurrent.atomic.AtomicBoolean dispatchScheduled = new java.util.concurrent.atomic.AtomicBoolean();
     
     // UI Handler
     private final Handler mainHandler;
@@ -72,25 +106,36 @@ public class AiRateLimitedQueue {
         // 初始化优先级队列（容量100）
         this.requestQueue = new PriorityBlockingQueue<>(100);
         
-        // 初始化动态限流器（使用配置的QPS，默认3.0）
+        // 初始化令牌桶限流器（使用配置的QPS和突发容量）
         float initialQps = ConfigManager.getAiQps();
-        this.rateLimiter = new DynamicRateLimiter(initialQps, 0.5);
+        this.rateLimiter = new TokenBucketLimiter("AI", ConfigManager::getAiQps, ConfigManager::getAiBurst, 0.5);
+        
+        // 从上次学习到的 QPS 开始，并在降速/恢复时保存；限流响应头由 HttpAiClient 转交
+        switchEndpoint(ProviderRateLimits.endpointKey(ConfigManager.getApiUrl()));
+        rateLimiter.setRateListener(qps ->
+            ProviderRateLimits.saveLearnedQps(limiterEndpoint, rateLimiter.isThrottled() ? qps : 0));
+        ProviderRateLimits.setListener(this::onRateLimitInfo);
+        
+        // 并发上限从分发线程上限开始（一次点开多条「显示选项」时全部立即发出），变慢时在 [1, 分发线程上限] 内收缩
+        this.concurrencyLimit = new AdaptiveConcurrencyLimit(
+            HttpAiClient.MAX_CONCURRENT_CALLS, 1, HttpAiClient.MAX_CONCURRENT_CALLS);
         
         // 初始化持久化管理器
         this.persistence = new RequestPersistence(context);
         
-        // 初始化线程池（用于并发执行请求，避免阻塞队列）
-        this.executorService = Executors.newCachedThreadPool();
+        // 初始化调度线程（单线程，所有请求共用）
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AiQueueScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
         
         this.mainHandler = new Handler(Looper.getMainLooper());
         
-        // 恢复持久化的请求
-        restoreRequests(context);
-        
-        // 启动工作线程
-        startWorker();
+        // 恢复持久化的请求（在持久化线程读取 SharedPreferences，首次绑定时不阻塞主线程）
+        persistence.post(() -> restoreRequests(context));
         
-        debugLog(TAG + ": 初始化完成，初始QPS=" + initialQps);
+        LOG.d(TAG + ": 初始化完成，初始QPS={}", initialQps);
     }
     
     public static AiRateLimitedQueue getInstance(Context context) {
@@ -164,253 +209,820 @@ public class AiRateLimitedQueue {
                               List<ImageExtractor.ImageElement> imageElements,
                               String conversationId,
                               HttpAiClient.AiCallback callback) {
+        submitRequest(context, msgContent, msgId, priority, contextMessages,
+                     currentSenderName, currentTimestamp, senderQQ, customSystemPrompt,
+                     imageElements, conversationId, null, callback);
+    }
+    
+    /**
+     * 提交AI请求（带可见性跟踪，必须在主线程调用）
+     * 
+     * @param visibility 选项条可见性（可为null）。不为null时优先级由可见性决定并随滚动调整，
+     *                   选项条被回收后请求会被移出队列或取消
+     */
+    public void submitRequest(Context context, String msgContent, String msgId, Priority priority, 
+                              List<top.galqq.utils.MessageContextManager.ChatMessage> contextMessages,
+                              String currentSenderName, long currentTimestamp,
+                              String senderQQ, String customSystemPrompt,
+                              List<ImageExtractor.ImageElement> imageElements,
+                              String conversationId,
+                              RequestVisibility visibility,
+                              HttpAiClient.AiCallback callback) {
+        if (visibility != null) {
+            if (visibility.getState() == RequestVisibility.ABANDONED) {
+                LOG.d(TAG + ": 选项条已不可用，不提交请求 msgId={}", msgId);
+                return;
+            }
+            priority = visibility.isVisible() ? Priority.HIGH : Priority.NORMAL;
+        }
+        
+        // 同一消息已有请求时：预取直接放弃；可见消息的请求接管预取和恢复的请求
+        List<HttpAiClient.AiCallback> inherited = null;
+        PrioritizedRequest pending = msgId != null ? pendingByMsgId.get(msgId) : null;
+        if (priority == Priority.LOW) {
+            if (pending != null) {
+                callback.onFailure(new Exception("已有相同消息的请求"));
+                return;
+            }
+        } else if (pending != null && pending.isPlaceholder()) {
+            if (requestQueue.remove(pending)) {
+                // 还在排队：由新请求替代，原请求的回调跟随新请求
+                forget(pending);
+                inherited = pending.finish();
+            } else if (pending.attach(callback)) {
+                // 已发出：等待它的结果即可
+                LOG.d(TAG + ": 等待进行中的{}请求结果 msgId={}", (pending.prefetch ? "预取" : "恢复"), msgId);
+                attachVisibility(pending, visibility);
+                return;
+            }
+        } else if (attachToSameFingerprint(
+                PrioritizedRequest.fingerprintOf(msgId, msgContent, customSystemPrompt, contextMessages),
+                priority, callback, visibility)) {
+            return;
+        }
+        
         PrioritizedRequest request = new PrioritizedRequest(
             context, msgContent, msgId, priority, contextMessages, 
             currentSenderName, currentTimestamp, senderQQ, customSystemPrompt, 
-            imageElements, conversationId, callback, System.currentTimeMillis()
+            imageElements, conversationId, visibility, callback, System.currentTimeMillis()
         );
+        if (inherited != null) {
+            for (HttpAiClient.AiCallback follower : inherited) {
+                request.attach(follower);
+            }
+        }
+        if (visibility != null) {
+            visibility.setListener((v, state) -> onVisibilityChanged(request, state));
+        }
+        track(request);
         
+        if (shouldDebounce(request)) {
+            debounce(request);
+        } else {
+            enqueue(request);
+        }
+    }
+    
+    /**
+     * 单飞合并：相同指纹的请求还在排队或进行中时，把回调挂到它上面（重绑定、加载中再点刷新、自动显示和手动显示同时触发）
+     * 新请求优先级更高且原请求仍在排队时，提升原请求的优先级；新请求的选项条可见性此后与原请求的合并计算
+     * @return 已合并
+     */
+    private boolean attachToSameFingerprint(String fingerprint, Priority priority, HttpAiClient.AiCallback callback,
+                                            RequestVisibility visibility) {
+        PrioritizedRequest same = pendingByFingerprint.get(fingerprint);
+        if (same == null || same.cancelled || !same.attach(callback)) {
+            return false;
+        }
+        if (priority.value < same.priority.value && requestQueue.remove(same)) {
+            same.priority = priority;
+            requestQueue.offer(same);
+        }
+        LOG.d(TAG + ": 合并相同请求 msgId={} [{}]", same.msgId, same.priority);
+        attachVisibility(same, visibility);
+        return true;
+    }
+    
+    /**
+     * 合并进来的回调的选项条也参与请求的可见性：任何一个可见都按可见处理（主线程）
+     */
+    private void attachVisibility(PrioritizedRequest request, RequestVisibility visibility) {
+        if (visibility == null) {
+            return;
+        }
+        if (!request.addFollowerVisibility(visibility)) {
+            // 请求已结束
+            visibility.release();
+            return;
+        }
+        visibility.setListener((v, state) -> onVisibilityChanged(request, state));
+    }
+    
+    /**
+     * 放入优先级队列
+     */
+    private void enqueue(PrioritizedRequest request) {
         boolean added = requestQueue.offer(request);
         if (added) {
             // XposedBridge.log(TAG + ": 请求入队 [" + priority + "] 队列大小=" + requestQueue.size());
             // 只有HIGH优先级且有msgId的任务才持久化，避免IO过于频繁
-            if (priority == Priority.HIGH && msgId != null) {
+            if (request.priority == Priority.HIGH && request.msgId != null) {
                 persistence.saveQueueAsync(requestQueue);
             }
+            scheduleDispatch(0);
         } else {
-            debugLog(TAG + ": ⚠️ 队列已满，丢弃请求");
-            callback.onFailure(new Exception("队列已满"));
+            LOG.d(TAG + ": ⚠️ 队列已满，丢弃请求");
+            forget(request);
+            request.releaseVisibility();
+            for (HttpAiClient.AiCallback cb : request.finish()) {
+                cb.onFailure(new Exception("队列已满"));
+            }
+        }
+    }
+    
+    // ========== 群聊防抖 ==========
+    
+    /**
+     * 是否参与群聊防抖：自动显示模式下自动发起的群聊请求（用户手动点击的、预取的和私聊不参与）
+     */
+    private static boolean shouldDebounce(PrioritizedRequest request) {
+        if (request.prefetch || !request.isGroupChat() || !ConfigManager.isAutoShowOptionsEnabled()) {
+            return false;
+        }
+        return request.msgId == null
+            || !MessageUiStateStore.isRequested(MessageUiStateStore.keyOf(request.msgId));
+    }
+    
+    /**
+     * 同一会话只保留最新一条消息的请求：
+     * 队列中和防抖中更早的请求被取代（内容并入新请求的上下文），新请求等会话安静后再入队
+     */
+    private void debounce(PrioritizedRequest request) {
+        String conversationId = request.conversationId;
+        List<PrioritizedRequest> superseded = new ArrayList<>();
+        synchronized (debounceLock) {
+            DebounceSlot slot = debounceSlots.get(conversationId);
+            if (slot != null && request.currentTimestamp < slot.request.currentTimestamp) {
+                // 比防抖中的消息更旧（例如刷新旧消息），不参与防抖
+                enqueue(request);
+                return;
+            }
+            
+            // 已在队列中等待限流的更早请求
+            for (PrioritizedRequest queued : new ArrayList<>(requestQueue)) {
+                if (isSupersededBy(queued, request) && requestQueue.remove(queued)) {
+                    superseded.add(queued);
+                }
+            }
+            
+            long now = SystemClock.uptimeMillis();
+            if (slot == null) {
+                slot = new DebounceSlot(conversationId, now);
+                debounceSlots.put(conversationId, slot);
+            } else {
+                mainHandler.removeCallbacks(slot.flush);
+                superseded.add(slot.request);
+            }
+            slot.request = request;
+            long delay = Math.min(DEBOUNCE_QUIET_MS, slot.firstArrival + DEBOUNCE_MAX_WAIT_MS - now);
+            mainHandler.postDelayed(slot.flush, Math.max(0, delay));
+        }
+        
+        for (PrioritizedRequest old : superseded) {
+            request.foldIntoContext(old);
+            forget(old);
+            old.releaseVisibility();
+            for (HttpAiClient.AiCallback cb : old.finish()) {
+                mainHandler.post(() -> cb.onFailure(new SupersededException()));
+            }
+        }
+        if (!superseded.isEmpty()) {
+            // 上下文变了，按新的输入重新登记指纹，之后只与输入相同的请求合并
+            refingerprint(request);
+            LOG.d(TAG + ": 群聊防抖，{} 个请求被最新消息取代 conversation={}", superseded.size(), conversationId);
+        }
+    }
+    
+    private static boolean isSupersededBy(PrioritizedRequest old, PrioritizedRequest latest) {
+        return old != latest && !old.prefetch && !old.cancelled
+            && latest.conversationId.equals(old.conversationId)
+            && old.currentTimestamp <= latest.currentTimestamp
+            && shouldDebounce(old);
+    }
+    
+    /**
+     * 防抖时间到：把会话中最新的请求放入队列
+     */
+    private void flushDebounce(DebounceSlot slot) {
+        PrioritizedRequest request;
+        synchronized (debounceLock) {
+            if (debounceSlots.get(slot.conversationId) != slot) {
+                return;
+            }
+            debounceSlots.remove(slot.conversationId);
+            request = slot.request;
+        }
+        if (request.cancelled) {
+            forget(request);
+            notifyCancelled(request);
+            return;
+        }
+        enqueue(request);
+    }
+    
+    /**
+     * 从防抖中移除（选项条被回收时）
+     */
+    private boolean removeFromDebounce(PrioritizedRequest request) {
+        if (request.conversationId == null) {
+            return false;
+        }
+        synchronized (debounceLock) {
+            DebounceSlot slot = debounceSlots.get(request.conversationId);
+            if (slot == null || slot.request != request) {
+                return false;
+            }
+            mainHandler.removeCallbacks(slot.flush);
+            debounceSlots.remove(request.conversationId);
+            return true;
+        }
+    }
+    
+    /**
+     * 重新计算指纹（上下文被改写后）
+     */
+    private void refingerprint(PrioritizedRequest request) {
+        String updated = PrioritizedRequest.fingerprintOf(
+            request.msgId, request.msgContent, request.customSystemPrompt, request.contextMessages);
+        String old = request.fingerprint;
+        if (updated.equals(old)) {
+            return;
+        }
+        pendingByFingerprint.remove(old, request);
+        request.fingerprint = updated;
+        pendingByFingerprint.put(updated, request);
+    }
+    
+    /**
+     * 记录排队中的请求
+     */
+    private void track(PrioritizedRequest request) {
+        if (request.msgId != null) {
+            pendingByMsgId.put(request.msgId, request);
+        }
+        pendingByFingerprint.put(request.fingerprint, request);
+        if (request.prefetch) {
+            prefetchCount.incrementAndGet();
         }
     }
     
+    /**
+     * 请求完成或被移出队列
+     */
+    private void forget(PrioritizedRequest request) {
+        if (request.msgId != null) {
+            pendingByMsgId.remove(request.msgId, request);
+        }
+        pendingByFingerprint.remove(request.fingerprint, request);
+        if (request.prefetch) {
+            prefetchCount.decrementAndGet();
+        }
+    }
+    
+    /**
+     * 当前可用于预取的请求数
+     * 限流器因429降速期间不预取；否则按限流器在 PREFETCH_HORIZON_SECONDS 内能放行的请求数，
+     * 扣除已排队和处理中的请求
+     */
+    public int getPrefetchBudget() {
+        if (rateLimiter.isThrottled()) {
+            return 0;
+        }
+        int capacity = (int) (rateLimiter.getCurrentQPS() * PREFETCH_HORIZON_SECONDS);
+        int headroom = capacity - requestQueue.size() - activeRequests.size();
+        return Math.max(0, Math.min(headroom, MAX_PREFETCH_PENDING - prefetchCount.get()));
+    }
+    
+    /**
+     * 选项条可见性变化（主线程）
+     */
+    private void onVisibilityChanged(PrioritizedRequest request, int changed) {
+        // 合并了多个选项条时按它们中最可见的一个
+        int state = request.combinedVisibility();
+        if (state == RequestVisibility.ABANDONED) {
+            cancelRequest(request);
+            return;
+        }
+        Priority newPriority = state == RequestVisibility.VISIBLE ? Priority.HIGH : Priority.NORMAL;
+        if (request.priority == newPriority) {
+            return;
+        }
+        // 堆中元素的排序键不能原地修改：先移出再重新入队（timestamp 不变，同优先级仍按提交顺序）
+        if (requestQueue.remove(request)) {
+            request.priority = newPriority;
+            requestQueue.offer(request);
+            LOG.d(TAG + ": 可见性变化，调整优先级 -> {} msgId={}", newPriority, request.msgId);
+        } else {
+            // 已在处理中，只影响监控显示
+            request.priority = newPriority;
+        }
+    }
+    
+    /**
+     * 取消没有人能看到结果的请求：还在排队的直接移出，已发出的取消 OkHttp Call
+     */
+    private void cancelRequest(PrioritizedRequest request) {
+        if (request.hasFollowers()) {
+            // 还有其他回调在等结果（接管了预取），不能取消
+            return;
+        }
+        request.cancelled = true;
+        if (requestQueue.remove(request) || removeFromDebounce(request)) {
+            LOG.d(TAG + ": 选项条已回收，移出队列 msgId={}", request.msgId);
+            forget(request);
+            request.releaseVisibility();
+            notifyCancelled(request);
+            return;
+        }
+        okhttp3.Call call = request.call;
+        if (call != null && !call.isCanceled()) {
+            call.cancel();
+            LOG.d(TAG + ": 选项条已回收，取消进行中的请求 msgId={}", request.msgId);
+        }
+    }
+    
+    /**
+     * 账号切换：丢弃上一个账号防抖中、排队中和进行中的请求（回调以 {@link CancelledException} 结束），并清空持久化的请求
+     */
+    public static void onAccountChanged() {
+        AiRateLimitedQueue queue = instance;
+        if (queue != null) {
+            queue.dropAll();
+        }
+    }
+    
+    private void dropAll() {
+        List<PrioritizedRequest> dropped = new ArrayList<>();
+        synchronized (debounceLock) {
+            for (DebounceSlot slot : debounceSlots.values()) {
+                mainHandler.removeCallbacks(slot.flush);
+                dropped.add(slot.request);
+            }
+            debounceSlots.clear();
+        }
+        requestQueue.drainTo(dropped);
+        for (PrioritizedRequest request : dropped) {
+            request.cancelled = true;
+            forget(request);
+            mainHandler.post(request::releaseVisibility);
+            notifyCancelled(request);
+        }
+        // 剩下的都已发出或在等待重试：标记取消，失败回调（或重试前的检查）中按已取消结束、通知回调并归还名额
+        int inFlight = 0;
+        for (PrioritizedRequest request : pendingByFingerprint.values()) {
+            request.cancelled = true;
+            okhttp3.Call call = request.call;
+            if (call != null && !call.isCanceled()) {
+                call.cancel();
+            }
+            inFlight++;
+        }
+        persistence.post(persistence::clear);
+        XposedBridge.log(TAG + ": 账号已切换，丢弃 " + dropped.size() + " 个排队请求，取消 " + inFlight + " 个进行中的请求");
+    }
+    
     /**
      * 恢复持久化的请求
      */
     private void restoreRequests(Context context) {
         List<PrioritizedRequest> restored = persistence.loadQueue(context);
         if (!restored.isEmpty()) {
-            debugLog(TAG + ": 恢复了 " + restored.size() + " 个持久化请求");
-            for (PrioritizedRequest req : restored) {
-                requestQueue.offer(req);
+            // 在持久化线程读取，合并回主线程：与 submitRequest 的查找-提交在同一线程，不会交错
+            mainHandler.post(() -> mergeRestored(restored));
+        }
+    }
+    
+    /**
+     * 把恢复的请求放回队列（主线程）
+     */
+    private void mergeRestored(List<PrioritizedRequest> restored) {
+        LOG.d(TAG + ": 恢复了 {} 个持久化请求", restored.size());
+        for (PrioritizedRequest req : restored) {
+            // 恢复在后台进行，期间同一条消息可能已重新提交：恢复的回调跟随它，不再单独请求
+            PrioritizedRequest pending = req.msgId != null ? pendingByMsgId.get(req.msgId) : null;
+            if (pending != null && pending.attach(req.callback)) {
+                continue;
+            }
+            if (requestQueue.offer(req)) {
+                track(req);
             }
         }
+        scheduleDispatch(0);
     }
     
+    // ========== 出队与限流 ==========
+    
     /**
-     * 启动工作线程（持续从队列取任务）
+     * 安排一次出队（已有待执行的出队时忽略）
      */
-    private void startWorker() {
-        workerThread = new Thread(() -> {
-            debugLog(TAG + ": 工作线程启动");
-            
-            while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    // 阻塞获取下一个请求
-                    PrioritizedRequest request = requestQueue.take();
-                    
-                    // 限流：等待直到可以发送
-                    rateLimiter.acquire();
-                    
-                    // 异步提交到线程池执行，不阻塞工作线程
-                    executorService.submit(() -> {
-                        String reqInfo = "[" + request.priority + "] " + 
-                                       (request.msgContent.length() > 10 ? request.msgContent.substring(0, 10) + "..." : request.msgContent);
-                        activeRequests.add(reqInfo);
-                        try {
-                            // 处理请求（带重试）
-                            processRequest(request);
-                            
-                            // 处理完后更新持久化（移除已完成的）
-                            if (request.priority == Priority.HIGH && request.msgId != null) {
-                                persistence.saveQueueAsync(requestQueue);
-                            }
-                        } catch (Throwable t) {
-                            debugLog(TAG + ": 异步任务执行异常: " + t.getMessage());
-                        } finally {
-                            activeRequests.remove(reqInfo);
-                        }
-                    });
-                    
-                } catch (InterruptedException e) {
-                    debugLog(TAG + ": 工作线程被中断");
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Throwable t) {
-                    XposedBridge.log(TAG + ": 工作线程异常: " + t.getMessage());
+    private void scheduleDispatch(long delayNanos) {
+        if (!dispatchScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        if (delayNanos <= 0) {
+            scheduler.execute(this::dispatch);
+        } else {
+            scheduler.schedule(this::dispatch, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    /**
+     * 出队（调度线程）：桶里有令牌就连续发出，令牌用完时定时到下一个令牌可用再继续，不阻塞任何线程
+     */
+    private void dispatch() {
+        dispatchScheduled.set(false);
+        try {
+            while (true) {
+                PrioritizedRequest head = requestQueue.peek();
+                if (head == null) {
+                    return;
+                }
+                if (head.cancelled) {
+                    if (requestQueue.remove(head)) {
+                        forget(head);
+                        notifyCancelled(head);
+                    }
+                    continue;
+                }
+                // 并发已满：等有请求结束（complete 中归还名额后会重新出队）
+                if (!concurrencyLimit.tryAcquire()) {
+                    return;
+                }
+                // 限流：没有令牌时到下一个令牌可用时再出队（期间到达的高优先级请求仍会先发出）
+                long wait = rateLimiter.tryAcquire();
+                if (wait > 0) {
+                    concurrencyLimit.release();
+                    scheduleDispatch(wait);
+                    return;
+                }
+                PrioritizedRequest request = requestQueue.poll();
+                if (request == null) {
+                    concurrencyLimit.release();
+                    return;
                 }
+                if (request.cancelled) {
+                    concurrencyLimit.release();
+                    forget(request);
+                    notifyCancelled(request);
+                    continue;
+                }
+                request.holdsSlot = true;
+                request.activeInfo = "[" + request.priority + "] " + 
+                               (request.msgContent.length() > 10 ? request.msgContent.substring(0, 10) + "..." : request.msgContent);
+                activeRequests.add(request.activeInfo);
+                startAttempt(request);
+            }
+        } catch (Throwable t) {
+            XposedBridge.log(TAG + ": 出队异常: " + t.getMessage());
+            scheduleDispatch(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+    
+    // ========== 请求执行（基于回调的状态推进） ==========
+    //
+    // 每个请求依次经历：发出（调度线程）-> 等待回调（不占线程）-> 成功 / 失败 / 定时重试。
+    // 重试通过 scheduler 定时重新发出，不在任何线程上 sleep；超时也由 scheduler 触发。
+    // 因此线程数固定为：调度线程 1 + OkHttp 分发线程（HttpAiClient 中有上限），与排队和进行中的请求数无关。
+    
+    private static final int MAX_RATE_LIMIT_RETRIES = 3;
+    private static final int MAX_FORMAT_ERROR_RETRIES = 5;
+    private static final long[] RATE_LIMIT_BACKOFF_MS = {1000, 2000, 4000};  // 1s, 2s, 4s
+    private static final long FORMAT_ERROR_RETRY_DELAY_MS = 500;
+    // Retry-After 超过该值时不再重试（多半是日配额用尽，等下去没有意义）
+    private static final long MAX_RETRY_AFTER_MS = 30_000;
+    // 根据响应头暂停限流器的上限（防止异常的重置时间让队列长时间停住）
+    private static final long MAX_HEADER_PAUSE_MS = 60_000;
+    // 单次 HTTP 调用的超时（从 Call 创建时开始计时，不包括图片处理和排队）
+    private static final long ATTEMPT_TIMEOUT_MS = 60000;
+    // Call 创建之前（图片在 HttpAiClient 的图片线程排队、读取和识别）的超时，只防止图片处理卡住
+    private static final long PREPARE_TIMEOUT_MS = 180_000;
+    
+    /**
+     * 发出一次尝试（调度线程）
+     */
+    private void startAttempt(PrioritizedRequest request) {
+        if (request.cancelled) {
+            // 选项条已回收，结果没有人能看到，不再发出
+            notifyCancelled(request);
+            complete(request);
+            return;
+        }
+        AttemptCallback attempt = new AttemptCallback(request);
+        request.callStartNanos = 0;
+        // HTTP 超时在 onCallCreated 中开始；在此之前只有图片处理的超时
+        attempt.timeout = scheduler.schedule(attempt::onPrepareTimeout, PREPARE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        try {
+            // 检查是否有图片需要处理
+            boolean hasImages = request.imageElements != null && !request.imageElements.isEmpty() 
+                               && ConfigManager.isImageRecognitionEnabled();
+            
+            if (hasImages) {
+                // 使用带图片的方法（传递conversationId和msgId用于缓存），图片在 HttpAiClient 的后台线程处理
+                LOG.d(TAG + ": 检测到图片，使用fetchOptionsWithImages处理");
+                HttpAiClient.fetchOptionsWithImages(request.context, request.msgContent,
+                                         request.currentSenderName, request.currentTimestamp,
+                                         request.contextMessages, request.customSystemPrompt,
+                                         request.imageElements, request.conversationId, request.msgId,
+                                         attempt);
+            } else if (request.customSystemPrompt != null && !request.customSystemPrompt.isEmpty()) {
+                // 使用自定义提示词（静默模式）
+                HttpAiClient.fetchOptionsWithPromptSilent(request.context, request.msgContent,
+                                         request.currentSenderName, request.currentTimestamp,
+                                         request.contextMessages, request.customSystemPrompt,
+                                         attempt);
+            } else {
+                // 使用默认提示词（静默模式）
+                HttpAiClient.fetchOptionsSilent(request.context, request.msgContent,
+                                         request.currentSenderName, request.currentTimestamp,
+                                         request.contextMessages, attempt);
             }
-        }, "AiQueueWorker");
-        workerThread.start();
+        } catch (Throwable t) {
+            attempt.onFailure(t instanceof Exception ? (Exception) t : new Exception(t));
+        }
+    }
+    
+    /**
+     * 一次尝试成功（任意线程）
+     */
+    private void onAttemptSuccess(PrioritizedRequest request, List<String> options) {
+        // 成功：通知限流器，纯文本请求的 HTTP 往返延迟计入并发上限（不含本地图片处理和排队）
+        rateLimiter.onSuccess();
+        long callStart = request.callStartNanos;
+        if (request.holdsSlot && callStart > 0 && !request.hasImages()) {
+            concurrencyLimit.onSample(System.nanoTime() - callStart);
+        }
+        
+        // 回调成功（切换到UI线程）
+        for (HttpAiClient.AiCallback cb : request.finish()) {
+            mainHandler.post(MainThreadWatchdog.wrap("AiQueue.onSuccess", () -> cb.onSuccess(options)));
+        }
+        complete(request);
     }
     
     /**
-     * 处理单个请求（带重试）
+     * 一次尝试失败（任意线程）
      * 支持两种重试：
      * 1. 429速率限制：最多重试3次，指数退避
      * 2. 格式错误：最多重试5次，静默重试
      */
-    private void processRequest(PrioritizedRequest request) {
-        final int MAX_RATE_LIMIT_RETRIES = 3;
-        final int MAX_FORMAT_ERROR_RETRIES = 5;
-        final int[] BACKOFF_MS = {1000, 2000, 4000};  // 1s, 2s, 4s
-        
-        int rateLimitAttempt = 0;
-        int formatErrorAttempt = 0;
-        Exception lastException = null;
+    private void onAttemptFailure(PrioritizedRequest request, Exception e) {
+        if (request.cancelled) {
+            LOG.d(TAG + ": 请求已取消 msgId={}", request.msgId);
+            notifyCancelled(request);
+            complete(request);
+            return;
+        }
         
-        while (rateLimitAttempt <= MAX_RATE_LIMIT_RETRIES && formatErrorAttempt < MAX_FORMAT_ERROR_RETRIES) {
-            try {
-                // 调用AI接口（同步）
-                final List<String> options = fetchOptionsSync(request);
-                
-                // 成功：通知限流器
-                rateLimiter.onSuccess();
-                
-                // 回调成功（切换到UI线程）
-                mainHandler.post(() -> request.callback.onSuccess(options));
-                
+        Exception error = classify(e);
+        if (error instanceof RateLimitException) {
+            // 429错误：动态降速
+            rateLimiter.on429Error();
+            long retryAfterMs = getRetryAfterRemainingMs();
+            if (request.rateLimitAttempts < MAX_RATE_LIMIT_RETRIES && retryAfterMs <= MAX_RETRY_AFTER_MS) {
+                // 服务商给了 Retry-After 时按它等待，否则指数退避
+                long delay = Math.max(RATE_LIMIT_BACKOFF_MS[request.rateLimitAttempts], retryAfterMs);
+                request.rateLimitAttempts++;
+                XposedBridge.log(TAG + ": ⚠️ 触发429限流，等待 " + delay + "ms 后重试");
+                scheduler.schedule(() -> startAttempt(request), delay, TimeUnit.MILLISECONDS);
                 return;
-                
-            } catch (RateLimitException e) {
-                // 429错误：动态降速
-                rateLimiter.on429Error();
-                lastException = e;
-                
-                if (rateLimitAttempt < MAX_RATE_LIMIT_RETRIES) {
-                    long delay = BACKOFF_MS[rateLimitAttempt];
-                    XposedBridge.log(TAG + ": ⚠️ 触发429限流，等待 " + delay + "ms 后重试");
-                    SystemClock.sleep(delay);
-                    rateLimitAttempt++;
-                } else {
-                    break;  // 429重试次数用尽
-                }
-                
-            } catch (FormatErrorException e) {
-                // 格式错误：静默重试
-                formatErrorAttempt++;
-                lastException = e;
-                
-                if (formatErrorAttempt < MAX_FORMAT_ERROR_RETRIES) {
-                    XposedBridge.log(TAG + ": ⚠️ AI返回格式错误，自动重试 (" + formatErrorAttempt + "/" + MAX_FORMAT_ERROR_RETRIES + ")");
-                    // 短暂延迟后重试
-                    SystemClock.sleep(500);
-                } else {
-                    // 达到最大重试次数
-                    XposedBridge.log(TAG + ": ❌ AI返回格式错误，已重试 " + MAX_FORMAT_ERROR_RETRIES + " 次仍失败");
-                    break;
-                }
-                
-            } catch (Exception e) {
-                // 其他错误：直接失败，不重试
-                XposedBridge.log(TAG + ": ❌ 请求失败: " + e.getMessage());
-                mainHandler.post(() -> request.callback.onFailure(e));
+            }
+            if (retryAfterMs > MAX_RETRY_AFTER_MS) {
+                XposedBridge.log(TAG + ": ❌ 服务商要求等待 " + retryAfterMs + "ms，不再重试");
+            }
+        } else if (error instanceof FormatErrorException) {
+            // 格式错误：静默重试
+            request.formatErrorAttempts++;
+            if (request.formatErrorAttempts < MAX_FORMAT_ERROR_RETRIES) {
+                XposedBridge.log(TAG + ": ⚠️ AI返回格式错误，自动重试 (" + request.formatErrorAttempts + "/" + MAX_FORMAT_ERROR_RETRIES + ")");
+                // 短暂延迟后重试
+                scheduler.schedule(() -> startAttempt(request), FORMAT_ERROR_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
                 return;
             }
+            // 达到最大重试次数
+            XposedBridge.log(TAG + ": ❌ AI返回格式错误，已重试 " + MAX_FORMAT_ERROR_RETRIES + " 次仍失败");
+        } else {
+            // 其他错误：直接失败，不重试
+            XposedBridge.log(TAG + ": ❌ 请求失败: " + error.getMessage());
+            for (HttpAiClient.AiCallback cb : request.finish()) {
+                mainHandler.post(MainThreadWatchdog.wrap("AiQueue.onFailure", () -> cb.onFailure(error)));
+            }
+            complete(request);
+            return;
         }
         
         // 重试次数用尽，最终失败
-        final Exception finalException = lastException;
-        final boolean isFormatError = finalException instanceof FormatErrorException;
+        final boolean isFormatError = error instanceof FormatErrorException;
         
         if (isFormatError) {
             XposedBridge.log(TAG + ": ❌ 格式错误重试 " + MAX_FORMAT_ERROR_RETRIES + " 次后仍失败，通知显示重新加载按钮");
+        }
+        for (HttpAiClient.AiCallback cb : request.finish()) {
             // 格式错误：通知显示重新加载按钮
-            if (request.callback instanceof HttpAiClient.AiCallbackWithRetry) {
-                HttpAiClient.AiCallbackWithRetry retryCallback = (HttpAiClient.AiCallbackWithRetry) request.callback;
+            if (isFormatError && cb instanceof HttpAiClient.AiCallbackWithRetry) {
+                HttpAiClient.AiCallbackWithRetry retryCallback = (HttpAiClient.AiCallbackWithRetry) cb;
                 // 创建重试动作
                 Runnable retryAction = () -> {
                     XposedBridge.log(TAG + ": 用户点击重新加载");
                     // 重新提交请求（保留senderQQ和customSystemPrompt）
-                    submitRequest(request.context, request.msgContent, request.msgId, request.priority,
+                    Priority retryPriority = request.priority == Priority.LOW ? Priority.HIGH : request.priority;
+                    submitRequest(request.context, request.msgContent, request.msgId, retryPriority,
                                  request.contextMessages, request.currentSenderName, request.currentTimestamp,
-                                 request.senderQQ, request.customSystemPrompt, request.callback);
+                                 request.senderQQ, request.customSystemPrompt, cb);
                 };
-                mainHandler.post(() -> retryCallback.onAllRetriesFailed(retryAction));
+                mainHandler.post(MainThreadWatchdog.wrap("AiQueue.onAllRetriesFailed", () -> retryCallback.onAllRetriesFailed(retryAction)));
             } else {
                 // 普通回调：直接失败
-                mainHandler.post(() -> request.callback.onFailure(finalException));
+                mainHandler.post(MainThreadWatchdog.wrap("AiQueue.onFailure", () -> cb.onFailure(error)));
             }
-        } else {
-            mainHandler.post(() -> request.callback.onFailure(finalException));
         }
+        complete(request);
+    }
+    
+    // ========== 服务商限流响应头 ==========
+    
+    /**
+     * 收到限流响应头（OkHttp 回调线程，先于该请求的回调）：在额度耗尽前提前收紧限流器
+     */
+    private void onRateLimitInfo(String endpoint, ProviderRateLimits.Info info) {
+        switchEndpoint(endpoint);
+        long now = System.nanoTime();
+        if (info.retryAfterMs >= 0) {
+            retryAfterUntilNanos = now + TimeUnit.MILLISECONDS.toNanos(info.retryAfterMs);
+            pauseLimiter(now, info.retryAfterMs);
+        }
+        if (info.remainingRequests == 0 && info.resetRequestsMs > 0) {
+            LOG.d(TAG + ": 请求额度用尽，暂停到 {}ms 后重置", info.resetRequestsMs);
+            pauseLimiter(now, info.resetRequestsMs);
+        } else if (info.remainingRequests > 0) {
+            rateLimiter.limitAvailable((int) Math.min(Integer.MAX_VALUE, info.remainingRequests));
+        }
+        if (info.remainingTokens == 0 && info.resetTokensMs > 0) {
+            LOG.d(TAG + ": Token额度用尽，暂停到 {}ms 后重置", info.resetTokensMs);
+            pauseLimiter(now, info.resetTokensMs);
+        }
+    }
+    
+    private void pauseLimiter(long now, long pauseMs) {
+        rateLimiter.pauseUntil(now + TimeUnit.MILLISECONDS.toNanos(Math.min(pauseMs, MAX_HEADER_PAUSE_MS)));
+    }
+    
+    /**
+     * 切换接口时恢复该接口学习到的 QPS（没有记录则回到配置值）
+     */
+    private void switchEndpoint(String endpoint) {
+        if (endpoint == null || endpoint.equals(limiterEndpoint)) {
+            return;
+        }
+        synchronized (rateLimiter) {
+            if (endpoint.equals(limiterEndpoint)) {
+                return;
+            }
+            limiterEndpoint = endpoint;
+            rateLimiter.restoreQps(ProviderRateLimits.getLearnedQps(endpoint));
+        }
+    }
+    
+    private long getRetryAfterRemainingMs() {
+        long until = retryAfterUntilNanos;
+        return until == 0 ? 0 : Math.max(0, TimeUnit.NANOSECONDS.toMillis(until - System.nanoTime()));
+    }
+    
+    /**
+     * 区分可重试的错误
+     */
+    private static Exception classify(Exception e) {
+        String errorMsg = e.getMessage();
+        if (errorMsg != null) {
+            // 检查是否是429错误
+            if (errorMsg.contains("Rate limit")) {
+                return new RateLimitException(e);
+            }
+            // 检查是否是格式错误（可重试）
+            if (errorMsg.contains("格式") || errorMsg.contains("选项不足")) {
+                return new FormatErrorException(e);
+            }
+        }
+        return e;
+    }
+    
+    /**
+     * 请求被取消：回调以 {@link CancelledException} 结束，调用方据此清理自己的状态（如预取中的标记）
+     */
+    private void notifyCancelled(PrioritizedRequest request) {
+        for (HttpAiClient.AiCallback cb : request.finish()) {
+            mainHandler.post(() -> cb.onFailure(new CancelledException()));
+        }
+    }
+    
+    /**
+     * 请求结束（成功、最终失败或取消）
+     */
+    private void complete(PrioritizedRequest request) {
+        if (request.activeInfo != null) {
+            activeRequests.remove(request.activeInfo);
+        }
+        // 归还并发名额，让排队的请求出队
+        if (request.holdsSlot) {
+            request.holdsSlot = false;
+            concurrencyLimit.release();
+            scheduleDispatch(0);
+        }
+        // 处理完后更新持久化（移除已完成的）
+        if (request.priority == Priority.HIGH && request.msgId != null) {
+            persistence.saveQueueAsync(requestQueue);
+        }
+        forget(request);
+        mainHandler.post(request::releaseVisibility);
     }
     
     /**
-     * 同步调用AI接口（供内部使用）
+     * 单次尝试的回调：结果、失败和超时只有第一个生效
      */
-    private List<String> fetchOptionsSync(PrioritizedRequest request) throws Exception {
-        final Object lock = new Object();
-        final List<String>[] resultHolder = new List[1];
-        final Exception[] errorHolder = new Exception[1];
+    private class AttemptCallback implements HttpAiClient.CancellableAiCallback {
+        private final PrioritizedRequest request;
+        private final java.util.concurrent.atomic.AtomicBoolean settled = new java.util.concurrent.atomic.AtomicBoolean();
+        volatile ScheduledFuture<?> timeout;
         
-        HttpAiClient.AiCallback syncCallback = new HttpAiClient.AiCallback() {
-            @Override
-            public void onSuccess(List<String> options) {
-                synchronized (lock) {
-                    resultHolder[0] = options;
-                    lock.notify();
-                }
+        AttemptCallback(PrioritizedRequest request) {
+            this.request = request;
+        }
+        
+        @Override
+        public void onCallCreated(okhttp3.Call call) {
+            request.call = call;
+            // 图片预处理期间可能已被取消
+            if (request.cancelled || settled.get()) {
+                call.cancel();
+                return;
             }
-            
-            @Override
-            public void onFailure(Exception e) {
-                synchronized (lock) {
-                    errorHolder[0] = e;
-                    lock.notify();
-                }
+            request.callStartNanos = System.nanoTime();
+            // 图片处理的超时换成 HTTP 超时（settle 与这里并发时，新的超时触发后什么也不做）
+            ScheduledFuture<?> previous = timeout;
+            timeout = scheduler.schedule(this::onTimeout, ATTEMPT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (previous != null) {
+                previous.cancel(false);
             }
-        };
+        }
         
-        synchronized (lock) {
-            // 检查是否有图片需要处理
-            boolean hasImages = request.imageElements != null && !request.imageElements.isEmpty() 
-                               && ConfigManager.isImageRecognitionEnabled();
-            
-            if (hasImages) {
-                // 使用带图片的方法（传递conversationId和msgId用于缓存）
-                debugLog(TAG + ": 检测到图片，使用fetchOptionsWithImages处理");
-                HttpAiClient.fetchOptionsWithImages(request.context, request.msgContent,
-                                         request.currentSenderName, request.currentTimestamp,
-                                         request.contextMessages, request.customSystemPrompt,
-                                         request.imageElements, request.conversationId, request.msgId,
-                                         syncCallback);
-            } else if (request.customSystemPrompt != null && !request.customSystemPrompt.isEmpty()) {
-                // 使用自定义提示词（静默模式）
-                HttpAiClient.fetchOptionsWithPromptSilent(request.context, request.msgContent,
-                                         request.currentSenderName, request.currentTimestamp,
-                                         request.contextMessages, request.customSystemPrompt,
-                                         syncCallback);
-            } else {
-                // 使用默认提示词（静默模式）
-                HttpAiClient.fetchOptionsSilent(request.context, request.msgContent,
-                                         request.currentSenderName, request.currentTimestamp,
-                                         request.contextMessages, syncCallback);
+        @Override
+        public boolean isSettled() {
+            return request.cancelled || settled.get();
+        }
+        
+        @Override
+        public void onSuccess(List<String> options) {
+            if (settle()) {
+                onAttemptSuccess(request, options);
             }
-            
-            // 等待结果（最多60秒，图片处理可能需要更长时间）
-            lock.wait(60000);
         }
         
-        if (errorHolder[0] != null) {
-            String errorMsg = errorHolder[0].getMessage();
-            if (errorMsg != null) {
-                // 检查是否是429错误
-                if (errorMsg.contains("Rate limit")) {
-                    throw new RateLimitException(errorHolder[0]);
+        @Override
+        public void onFailure(Exception e) {
+            if (settle()) {
+                onAttemptFailure(request, e);
+            }
+        }
+        
+        void onTimeout() {
+            if (settle()) {
+                okhttp3.Call call = request.call;
+                if (call != null) {
+                    call.cancel();
                 }
-                // 检查是否是格式错误（可重试）
-                if (errorMsg.contains("格式") || errorMsg.contains("选项不足")) {
-                    throw new FormatErrorException(errorHolder[0]);
+                if (!request.hasImages()) {
+                    concurrencyLimit.onTimeout();
                 }
+                onAttemptFailure(request, new Exception("请求超时"));
             }
-            throw errorHolder[0];
         }
         
-        if (resultHolder[0] == null) {
-            throw new Exception("请求超时");
+        void onPrepareTimeout() {
+            if (settle()) {
+                // 本地图片处理太慢，与上游无关，不计入并发上限
+                onAttemptFailure(request, new Exception("图片处理超时"));
+            }
         }
         
-        return resultHolder[0];
+        private boolean settle() {
+            if (!settled.compareAndSet(false, true)) {
+                return false;
+            }
+            ScheduledFuture<?> t = timeout;
+            if (t != null) {
+                t.cancel(false);
+            }
+            return true;
+        }
     }
     
     /**
@@ -427,6 +1039,27 @@ public class AiRateLimitedQueue {
         return rateLimiter.getCurrentQPS();
     }
     
+    /**
+     * 获取当前并发上限
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit.getLimit();
+    }
+    
+    /**
+     * 获取占用并发名额的请求数
+     */
+    public int getInFlightCount() {
+        return concurrencyLimit.getInFlight();
+    }
+    
+    /**
+     * 获取近况往返延迟（毫秒），还没有样本时为 0
+     */
+    public long getRecentRttMs() {
+        return concurrencyLimit.getRecentRttMs();
+    }
+    
     /**
      * 获取当前正在处理的请求列表
      */
@@ -435,17 +1068,13 @@ public class AiRateLimitedQueue {
     }
     
     /**
-     * 获取线程池状态信息
+     * 获取线程状态信息
+     * Active 为正在执行的 HTTP 调用数（占用 OkHttp 分发线程），Pool 为分发线程上限
      */
     public String getThreadPoolInfo() {
-        if (executorService instanceof java.util.concurrent.ThreadPoolExecutor) {
-            java.util.concurrent.ThreadPoolExecutor pool = (java.util.concurrent.ThreadPoolExecutor) executorService;
-            return "Active: " + pool.getActiveCount() + 
-                   ", Pool: " + pool.getPoolSize() + 
-                   ", Core: " + pool.getCorePoolSize() + 
-                   ", Max: " + pool.getMaximumPoolSize();
-        }
-        return "Unknown Executor Type";
+        return "Active: " + HttpAiClient.getRunningCallCount() + 
+               ", Pool: " + HttpAiClient.MAX_CONCURRENT_CALLS + 
+               ", InFlight: " + activeRequests.size();
     }
     
     // ========== 内部类 ==========
@@ -455,7 +1084,8 @@ public class AiRateLimitedQueue {
      */
     public enum Priority {
         HIGH(0),    // 高优先级（屏幕可见消息）
-        NORMAL(1);  // 普通优先级
+        NORMAL(1),  // 普通优先级
+        LOW(2);     // 预取（可见区域附近尚未显示的消息）
         
         final int value;
         
@@ -478,23 +1108,37 @@ public class AiRateLimitedQueue {
         final Context context;
         final String msgContent;
         final String msgId; // 用于持久化和缓存
-        final Priority priority;
-        final List<top.galqq.utils.MessageContextManager.ChatMessage> contextMessages; // 上下文消息
+        volatile Priority priority; // 随可见性调整（只能在移出队列后修改）
+        volatile List<top.galqq.utils.MessageContextManager.ChatMessage> contextMessages; // 上下文消息（防抖时会并入被取代的消息）
         final String currentSenderName; // 当前消息发送人昵称
         final long currentTimestamp; // 当前消息时间戳
         final String senderQQ; // 发送者QQ号（用于黑白名单过滤）
         final String customSystemPrompt; // 自定义系统提示词
         final List<ImageExtractor.ImageElement> imageElements; // 图片元素列表
         final String conversationId; // 会话ID（用于图片描述缓存）
+        final RequestVisibility visibility; // 选项条可见性（可为null）
         final HttpAiClient.AiCallback callback;
         final long timestamp;  // 同优先级按时间排序
+        final boolean prefetch; // 是否为预取请求
+        boolean restored; // 从持久化恢复的请求（没有上下文，发布前设置）
+        volatile String fingerprint; // 单飞合并用的请求指纹（上下文被改写后重新计算）
+        volatile okhttp3.Call call; // 进行中的请求（用于取消）
+        volatile boolean cancelled; // 选项条已回收，不再需要结果
+        volatile int rateLimitAttempts; // 已进行的429重试次数
+        volatile int formatErrorAttempts; // 已发生的格式错误次数
+        volatile String activeInfo; // 监控显示用描述（发出后设置）
+        volatile boolean holdsSlot; // 是否占用并发名额（出队时设置，complete 时归还）
+        volatile long callStartNanos; // 当前尝试的 HTTP 调用创建时间（计算往返延迟，0 表示还没发出）
+        private final List<HttpAiClient.AiCallback> followers = new ArrayList<>(); // 合并进来的其他回调
+        private final List<RequestVisibility> followerVisibilities = new ArrayList<>(1); // 合并进来的选项条可见性
+        private boolean finished;
         
         PrioritizedRequest(Context context, String msgContent, String msgId, Priority priority, 
                           List<top.galqq.utils.MessageContextManager.ChatMessage> contextMessages,
                           String currentSenderName, long currentTimestamp,
                           HttpAiClient.AiCallback callback, long timestamp) {
             this(context, msgContent, msgId, priority, contextMessages, currentSenderName, 
-                 currentTimestamp, null, null, null, null, callback, timestamp);
+                 currentTimestamp, null, null, null, null, null, callback, timestamp);
         }
         
         PrioritizedRequest(Context context, String msgContent, String msgId, Priority priority, 
@@ -504,7 +1148,7 @@ public class AiRateLimitedQueue {
                           List<ImageExtractor.ImageElement> imageElements,
                           HttpAiClient.AiCallback callback, long timestamp) {
             this(context, msgContent, msgId, priority, contextMessages, currentSenderName,
-                 currentTimestamp, senderQQ, customSystemPrompt, imageElements, null, callback, timestamp);
+                 currentTimestamp, senderQQ, customSystemPrompt, imageElements, null, null, callback, timestamp);
         }
         
         PrioritizedRequest(Context context, String msgContent, String msgId, Priority priority, 
@@ -513,6 +1157,7 @@ public class AiRateLimitedQueue {
                           String senderQQ, String customSystemPrompt,
                           List<ImageExtractor.ImageElement> imageElements,
                           String conversationId,
+                          RequestVisibility visibility,
                           HttpAiClient.AiCallback callback, long timestamp) {
             this.context = context;
             this.msgContent = msgContent;
@@ -525,8 +1170,159 @@ public class AiRateLimitedQueue {
             this.customSystemPrompt = customSystemPrompt;
             this.imageElements = imageElements;
             this.conversationId = conversationId;
+            this.visibility = visibility;
             this.callback = callback;
             this.timestamp = timestamp;
+            this.prefetch = priority == Priority.LOW;
+            this.fingerprint = fingerprintOf(msgId, msgContent, customSystemPrompt, contextMessages);
+        }
+        
+        // 指纹中包含的上下文末尾消息数
+        private static final int FINGERPRINT_CONTEXT_TAIL = 3;
+        
+        /**
+         * 请求指纹：消息、系统提示词、模型和上下文末尾几条都相同时，AI 的输入相同，可以共用一次调用
+         */
+        static String fingerprintOf(String msgId, String msgContent, String customSystemPrompt,
+                                    List<top.galqq.utils.MessageContextManager.ChatMessage> contextMessages) {
+            String prompt = (customSystemPrompt != null && !customSystemPrompt.isEmpty())
+                    ? customSystemPrompt : ConfigManager.getSysPrompt();
+            StringBuilder sb = new StringBuilder(64);
+            if (msgId != null) {
+                sb.append(msgId);
+            } else {
+                sb.append('#').append(msgContent != null ? msgContent.hashCode() : 0);
+            }
+            sb.append('|').append(prompt != null ? prompt.hashCode() : 0)
+              .append('|').append(ConfigManager.getAiModel())
+              .append('|');
+            if (contextMessages != null) {
+                int from = Math.max(0, contextMessages.size() - FINGERPRINT_CONTEXT_TAIL);
+                for (int i = from; i < contextMessages.size(); i++) {
+                    top.galqq.utils.MessageContextManager.ChatMessage msg = contextMessages.get(i);
+                    if (msg.msgId != null) {
+                        sb.append(msg.msgId);
+                    } else {
+                        sb.append('#').append(java.util.Objects.hash(msg.senderName, msg.content, msg.timestamp));
+                    }
+                    sb.append(',');
+                }
+            }
+            return sb.toString();
+        }
+        
+        /**
+         * 预取或恢复的请求：没有界面直接在等，可见消息的请求可以替代或接管
+         */
+        boolean isPlaceholder() {
+            return prefetch || restored;
+        }
+        
+        /**
+         * 是否带图片（图片请求的往返延迟与纯文本不可比，不参与并发上限的调整）
+         */
+        boolean hasImages() {
+            return imageElements != null && !imageElements.isEmpty();
+        }
+        
+        /**
+         * 让另一个回调也接收本请求的结果
+         * @return 请求已完成（结果已分发）时返回 false
+         */
+        synchronized boolean attach(HttpAiClient.AiCallback other) {
+            if (finished) {
+                return false;
+            }
+            followers.add(other);
+            return true;
+        }
+        
+        synchronized boolean hasFollowers() {
+            return !followers.isEmpty();
+        }
+        
+        /**
+         * 合并进来的回调对应的选项条
+         * @return 请求已完成时返回 false
+         */
+        synchronized boolean addFollowerVisibility(RequestVisibility other) {
+            if (finished) {
+                return false;
+            }
+            followerVisibilities.add(other);
+            return true;
+        }
+        
+        /**
+         * 所有选项条中最可见的状态（状态值越小越可见）：任一可见即 VISIBLE，全部放弃才 ABANDONED，没有选项条时为 HIDDEN
+         */
+        synchronized int combinedVisibility() {
+            int best = visibility != null ? visibility.getState()
+                : (followerVisibilities.isEmpty() ? RequestVisibility.HIDDEN : RequestVisibility.ABANDONED);
+            for (RequestVisibility other : followerVisibilities) {
+                best = Math.min(best, other.getState());
+            }
+            return best;
+        }
+        
+        /**
+         * 停止跟踪全部选项条（主线程）
+         */
+        void releaseVisibility() {
+            if (visibility != null) {
+                visibility.release();
+            }
+            List<RequestVisibility> others;
+            synchronized (this) {
+                others = new ArrayList<>(followerVisibilities);
+                followerVisibilities.clear();
+            }
+            for (RequestVisibility other : others) {
+                other.release();
+            }
+        }
+        
+        /**
+         * 群聊（会话ID与发送者不同）
+         */
+        boolean isGroupChat() {
+            return conversationId != null && senderQQ != null && !conversationId.equals(senderQQ);
+        }
+        
+        /**
+         * 把被取代的消息并入上下文（上下文中已有该消息时跳过）
+         */
+        void foldIntoContext(PrioritizedRequest old) {
+            List<top.galqq.utils.MessageContextManager.ChatMessage> current = contextMessages;
+            if (current == null || old.msgContent == null) {
+                return;
+            }
+            for (top.galqq.utils.MessageContextManager.ChatMessage msg : current) {
+                if (old.msgId != null && old.msgId.equals(msg.msgId)) {
+                    return;
+                }
+            }
+            List<top.galqq.utils.MessageContextManager.ChatMessage> merged = new ArrayList<>(current);
+            merged.add(new top.galqq.utils.MessageContextManager.ChatMessage(
+                old.currentSenderName != null ? old.currentSenderName : "未知",
+                old.msgContent, false, old.currentTimestamp, old.msgId));
+            java.util.Collections.sort(merged, (a, b) -> Long.compare(a.timestamp, b.timestamp));
+            contextMessages = merged;
+        }
+        
+        /**
+         * 标记完成并返回需要通知的全部回调（已完成时返回空列表，每个回调只通知一次）
+         */
+        synchronized List<HttpAiClient.AiCallback> finish() {
+            if (finished) {
+                return java.util.Collections.emptyList();
+            }
+            finished = true;
+            List<HttpAiClient.AiCallback> all = new ArrayList<>(followers.size() + 1);
+            all.add(callback);
+            all.addAll(followers);
+            followers.clear();
+            return all;
         }
         
         @Override
@@ -579,130 +1375,47 @@ public class AiRateLimitedQueue {
                 };
                 
                 // 恢复的请求不包含上下文（传null）
-                return new PrioritizedRequest(context, msgContent, msgId, 
+                PrioritizedRequest request = new PrioritizedRequest(context, msgContent, msgId, 
                     Priority.fromInt(priorityVal), null, null, 0, restoreCallback, timestamp);
+                request.restored = true;
+                return request;
             } catch (Exception e) {
                 return null;
             }
         }
     }
     
-    /**
-     * 动态QPS限流器
-     */
-    /**
-     * 动态QPS限流器
-     */
-    private static class DynamicRateLimiter {
-        private volatile double currentQPS;        // 当前QPS
-        private volatile double targetQPS;         // 目标QPS（配置值）
-        private final double minQPS;               // 最小QPS
-        private final AtomicInteger successCount = new AtomicInteger(0);
-        private volatile long lastAdjustTime = System.currentTimeMillis();
-        private volatile long lastTokenTime = System.currentTimeMillis();
-        
-        DynamicRateLimiter(double initialQPS, double minQPS) {
-            this.targetQPS = initialQPS;
-            this.minQPS = minQPS;
-            this.currentQPS = initialQPS;
-        }
-        
-        /**
-         * 更新目标QPS
-         */
-        void updateTargetQps(double newQps) {
-            if (Math.abs(this.targetQPS - newQps) > 0.1) {
-                XposedBridge.log(TAG + ": 更新目标QPS: " + this.targetQPS + " -> " + newQps);
-                this.targetQPS = newQps;
-                // 如果当前QPS高于新目标，立即降低
-                if (this.currentQPS > newQps) {
-                    this.currentQPS = newQps;
-                }
-            }
-        }
-        
-        /**
-         * 获取令牌（阻塞直到可用）
-         */
-        synchronized void acquire() {
-            // 每次获取令牌前，检查配置是否有更新（MMKV读取很快）
-            float configQps = ConfigManager.getAiQps();
-            updateTargetQps(configQps);
-            
-            long intervalMs = (long) (1000.0 / currentQPS);
-            long now = System.currentTimeMillis();
-            long waitTime = lastTokenTime + intervalMs - now;
-            
-            if (waitTime > 0) {
-                try {
-                    Thread.sleep(waitTime);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-            
-            lastTokenTime = System.currentTimeMillis();
-        }
-        
-        /**
-         * 429错误：降速50%
-         */
-        synchronized void on429Error() {
-            double oldQPS = currentQPS;
-            currentQPS = Math.max(minQPS, currentQPS * 0.5);
-            successCount.set(0);
-            
-            XposedBridge.log(TAG + ": 🔽 触发429，QPS降速: " + 
-                           String.format("%.2f", oldQPS) + " → " + 
-                           String.format("%.2f", currentQPS) + " req/s");
-        }
-        
-        /**
-         * 成功回调：连续成功后恢复QPS
-         */
-        void onSuccess() {
-            int count = successCount.incrementAndGet();
-            long now = System.currentTimeMillis();
-            
-            // 每30秒最多恢复一次，且需要连续成功10次
-            if (now - lastAdjustTime > 30000 && count >= 10 && currentQPS < targetQPS) {
-                synchronized (this) {
-                    double oldQPS = currentQPS;
-                    // 恢复时不超过目标QPS
-                    currentQPS = Math.min(targetQPS, currentQPS * 1.2);
-                    successCount.set(0);
-                    lastAdjustTime = now;
-                    
-                    XposedBridge.log(TAG + ": 🔼 连续成功，QPS恢复: " + 
-                                   String.format("%.2f", oldQPS) + " → " + 
-                                   String.format("%.2f", currentQPS) + " req/s");
-                }
-            }
-        }
-        
-        double getCurrentQPS() {
-            return currentQPS;
-        }
-    }
-    
     /**
      * 持久化管理器
      */
     private static class RequestPersistence {
         private static final String PREF_NAME = "galqq_ai_queue";
         private static final String KEY_PENDING = "pending_requests";
-        private final SharedPreferences prefs;
+        private final Context context;
+        private SharedPreferences prefs; // 只在 bgHandler 线程访问，首次使用时打开
         private final Handler bgHandler;
         private long lastSaveTime = 0;
         
         RequestPersistence(Context context) {
-            this.prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+            this.context = context;
             // 使用后台线程处理IO
             android.os.HandlerThread thread = new android.os.HandlerThread("AiPersistence");
             thread.start();
             this.bgHandler = new Handler(thread.getLooper());
         }
         
+        private SharedPreferences prefs() {
+            if (prefs == null) {
+                prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+            }
+            return prefs;
+        }
+        
+        // 在持久化线程执行（与保存操作按提交顺序串行）
+        void post(Runnable task) {
+            bgHandler.post(task);
+        }
+        
         // 异步保存队列（节流：最多1秒1次）
         void saveQueueAsync(PriorityBlockingQueue<PrioritizedRequest> queue) {
             long now = System.currentTimeMillis();
@@ -730,7 +1443,7 @@ public class AiRateLimitedQueue {
                         if (count >= 50) break;
                     }
                     
-                    prefs.edit().putString(KEY_PENDING, array.toString()).apply();
+                    prefs().edit().putString(KEY_PENDING, array.toString()).apply();
                     // XposedBridge.log(TAG + ": 已持久化 " + count + " 个请求");
                 } catch (Exception e) {
                     XposedBridge.log(TAG + ": 持久化失败: " + e.getMessage());
@@ -738,11 +1451,16 @@ public class AiRateLimitedQueue {
             });
         }
         
-        // 加载队列（同步）
+        // 清空持久化的请求（在持久化线程调用）
+        void clear() {
+            prefs().edit().remove(KEY_PENDING).apply();
+        }
+        
+        // 加载队列（同步，需在持久化线程调用）
         List<PrioritizedRequest> loadQueue(Context context) {
             List<PrioritizedRequest> result = new ArrayList<>();
             try {
-                String jsonStr = prefs.getString(KEY_PENDING, "[]");
+                String jsonStr = prefs().getString(KEY_PENDING, "[]");
                 JSONArray array = new JSONArray(jsonStr);
                 
                 for (int i = 0; i < array.length(); i++) {
@@ -754,7 +1472,7 @@ public class AiRateLimitedQueue {
                 }
                 
                 // 加载后清空，避免重复处理
-                prefs.edit().remove(KEY_PENDING).apply();
+                prefs().edit().remove(KEY_PENDING).apply();
                 
             } catch (Exception e) {
                 XposedBridge.log(TAG + ": 加载持久化请求失败: " + e.getMessage());
@@ -763,6 +1481,39 @@ public class AiRateLimitedQueue {
         }
     }
     
+    /**
+     * 防抖槽：会话中等待安静的最新请求
+     */
+    private class DebounceSlot {
+        final String conversationId;
+        final long firstArrival; // 本轮连续消息中第一条到达的时间（uptimeMillis）
+        PrioritizedRequest request;
+        final Runnable flush = () -> flushDebounce(this);
+        
+        DebounceSlot(String conversationId, long firstArrival) {
+            this.conversationId = conversationId;
+            this.firstArrival = firstArrival;
+        }
+    }
+    
+    /**
+     * 请求被同一群中更新的消息取代（群聊防抖）
+     */
+    public static class SupersededException extends Exception {
+        SupersededException() {
+            super("已被更新的消息取代");
+        }
+    }
+    
+    /**
+     * 请求被取消（选项条已回收或账号已切换），不需要提示
+     */
+    public static class CancelledException extends Exception {
+        CancelledException() {
+            super("请求已取消");
+        }
+    }
+    
     /**
      * 速率限制异常（429错误）
      */
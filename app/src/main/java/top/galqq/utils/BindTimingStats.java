@@ -0,0 +1,165 @@
+package top.galqq.utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 消息气泡绑定耗时统计
+ *
+ * 按阶段记录 processQQNTMessage 的纳秒耗时，写入对数分桶直方图（每个 2 的幂区间再分 4 档，
+ * 误差不超过 25%），记录只是一次原子自增，不分配对象，可以常开。
+ * 同时统计主线程单次绑定超过 4ms 预算的次数，在 AI 监控面板中展示 p50/p95/p99。
+ */
+public final class BindTimingStats {
+
+    public static final int PHASE_FIELDS = 0;        // 字段读取
+    public static final int PHASE_FILTERS = 1;       // 环境识别与消息过滤
+    public static final int PHASE_CONTEXT = 2;       // 快照构建与上下文写入（后台线程）
+    public static final int PHASE_AFFINITY = 3;      // 好感度视图
+    public static final int PHASE_VIEW_CREATE = 4;   // 选项条/按钮创建
+    public static final int PHASE_LAYOUT = 5;        // 插入布局与内容填充
+    public static final int PHASE_TOTAL = 6;         // 主线程单次绑定总耗时
+    public static final int PHASE_ATTACH = 7;        // 后台准备完成后回到主线程的挂载（不计入绑定总计）
+
+    private static final String[] PHASE_NAMES = {
+        "字段读取", "过滤", "上下文(后台)", "好感度", "视图创建", "布局插入", "主线程总计", "后台挂载"
+    };
+
+    private static final int PHASE_COUNT = PHASE_NAMES.length;
+
+    // 主线程单次绑定预算：4ms
+    public static final long BIND_BUDGET_NS = 4_000_000L;
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private static final AtomicLongArray histograms = new AtomicLongArray(PHASE_COUNT * BUCKETS);
+    private static final AtomicLongArray counts = new AtomicLongArray(PHASE_COUNT);
+    private static final AtomicLong overBudgetBinds = new AtomicLong();
+
+    private BindTimingStats() {}
+
+    // ========== 记录 ==========
+
+    /**
+     * 记录一个阶段的耗时
+     */
+    public static void record(int phase, long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        histograms.incrementAndGet(phase * BUCKETS + bucketOf(nanos));
+        counts.incrementAndGet(phase);
+    }
+
+    /**
+     * 记录一次主线程绑定的总耗时（超过预算时计数）
+     */
+    public static void recordBind(long nanos) {
+        record(PHASE_TOTAL, nanos);
+        if (nanos > BIND_BUDGET_NS) {
+            overBudgetBinds.incrementAndGet();
+        }
+    }
+
+    public static void reset() {
+        for (int i = 0; i < histograms.length(); i++) {
+            histograms.set(i, 0);
+        }
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        overBudgetBinds.set(0);
+    }
+
+    // ========== 查询 ==========
+
+    public static long getCount(int phase) {
+        return counts.get(phase);
+    }
+
+    public static long getOverBudgetCount() {
+        return overBudgetBinds.get();
+    }
+
+    /**
+     * 估算分位数（纳秒）
+     * @param percentile 0-100
+     * @return 没有数据时返回 0
+     */
+    public static long getPercentile(int phase, double percentile) {
+        long[] buckets = new long[BUCKETS];
+        long total = 0;
+        int base = phase * BUCKETS;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = histograms.get(base + i);
+            total += buckets[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return bucketMidpoint(i);
+            }
+        }
+        return bucketMidpoint(BUCKETS - 1);
+    }
+
+    /**
+     * 生成监控面板展示用的摘要文本
+     */
+    public static String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        long binds = getCount(PHASE_TOTAL);
+        long over = getOverBudgetCount();
+        sb.append(String.format(Locale.getDefault(), "绑定次数: %d，超过 %dms: %d (%.1f%%)\n\n",
+            binds, BIND_BUDGET_NS / 1_000_000L, over, binds > 0 ? over * 100.0 / binds : 0.0));
+        sb.append(String.format(Locale.getDefault(), "%-8s %7s %7s %7s %7s\n", "阶段", "次数", "p50", "p95", "p99"));
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            sb.append(String.format(Locale.getDefault(), "%-8s %7d %7s %7s %7s\n",
+                PHASE_NAMES[phase], getCount(phase),
+                formatNanos(getPercentile(phase, 50)),
+                formatNanos(getPercentile(phase, 95)),
+                formatNanos(getPercentile(phase, 99))));
+        }
+        return sb.toString();
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000L) {
+            return nanos + "ns";
+        } else if (nanos < 1_000_000L) {
+            return String.format(Locale.getDefault(), "%.0fµs", nanos / 1_000.0);
+        }
+        return String.format(Locale.getDefault(), "%.1fms", nanos / 1_000_000.0);
+    }
+
+    // ========== 分桶 ==========
+
+    private static int bucketOf(long nanos) {
+        int bits = 64 - Long.numberOfLeadingZeros(nanos);
+        if (bits <= SUB_BUCKET_BITS + 1) {
+            return (int) nanos;
+        }
+        int sub = (int) (nanos >>> (bits - SUB_BUCKET_BITS - 1)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, bits * SUB_BUCKETS + sub);
+    }
+
+    private static long bucketMidpoint(int bucket) {
+        int bits = bucket / SUB_BUCKETS;
+        if (bits <= SUB_BUCKET_BITS + 1) {
+            return bucket;
+        }
+        int sub = bucket % SUB_BUCKETS;
+        int shift = bits - SUB_BUCKET_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + sub) << shift;
+        long upper = (long) (SUB_BUCKETS + sub + 1) << shift;
+        return (lower + upper) / 2;
+    }
+}
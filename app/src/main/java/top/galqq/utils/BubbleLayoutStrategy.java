@@ -0,0 +1,358 @@
+package top.galqq.utils;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * 消息气泡布局策略缓存
+ *
+ * 同一种 ViewHolder 根布局（按 rootView 运行时类区分）的结构是固定的：
+ * 是否为 ConstraintLayout、消息气泡是哪个子 View、表情回复行在哪个 ID 上。
+ * 首次绑定时学习一次并缓存，之后的绑定不再递归遍历整棵 View 树，也不再反射查找 ConstraintLayout 类。
+ * 连续多次都找不到的（该类布局没有表情回复行 / 可识别的气泡）也记下来，不再反复遍历。
+ *
+ * 插入的选项条和好感度视图记录在 rootView 的 Tag 上，下次绑定时 O(1) 取回并移除。
+ */
+public class BubbleLayoutStrategy {
+
+    private static final String TAG = "GalQQ.BubbleLayoutStrategy";
+
+    private static final LogHelper.Logger LOG = LogHelper.hookLogger(TAG);
+
+    // View Tag key：rootView 上记录已插入的视图
+    public static final int TAG_INSERTED_OPTION_BAR = 0x7F0A1238;
+    public static final int TAG_INSERTED_AFFINITY = 0x7F0A1239;
+
+    private static final String CONSTRAINT_LAYOUT = "androidx.constraintlayout.widget.ConstraintLayout";
+    private static final String CONSTRAINT_LAYOUT_PARAMS = "androidx.constraintlayout.widget.ConstraintLayout$LayoutParams";
+    private static final String CONSTRAINT_SET = "androidx.constraintlayout.widget.ConstraintSet";
+
+    // rootView 运行时类 -> 布局策略
+    private static final Map<Class<?>, BubbleLayoutStrategy> strategies = new ConcurrentHashMap<>();
+
+    // View 运行时类 -> 是否为表情回复视图（顶层精确匹配 / 嵌套模糊匹配），避免每次绑定都做字符串匹配
+    private static final Map<Class<?>, Boolean> topLevelReactionClasses = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Boolean> nestedReactionClasses = new ConcurrentHashMap<>();
+
+    public final boolean isConstraintLayout;
+    private final Constructor<?> layoutParamsConstructor;
+    private final Class<?> constraintSetClass;
+
+    // 通过 BubbleLayout 类名学到的消息气泡 ID
+    private volatile int anchorId = View.NO_ID;
+    // 学到的表情回复视图 ID
+    private volatile int reactionId = View.NO_ID;
+
+    // 连续查找失败次数，达到上限后视为该类布局没有对应视图（留几次余量给延迟加载的子 View）
+    private static final int MAX_MISSES = 8;
+    private volatile int anchorMisses = 0;
+    private volatile int reactionMisses = 0;
+
+    private BubbleLayoutStrategy(ViewGroup rootView) {
+        Class<?> rootClass = rootView.getClass();
+        ClassLoader classLoader = rootView.getContext().getClassLoader();
+        Class<?> constraintLayoutClass = loadClass(CONSTRAINT_LAYOUT, classLoader);
+        boolean constraint = constraintLayoutClass != null && constraintLayoutClass.isAssignableFrom(rootClass);
+        if (!constraint && rootClass.getName().contains("ConstraintLayout")) {
+            // 类加载器不同（如混淆/插件化）时按类名判断
+            constraint = true;
+            classLoader = rootClass.getClassLoader();
+        }
+        isConstraintLayout = constraint;
+
+        Constructor<?> ctor = null;
+        Class<?> setClass = null;
+        if (constraint) {
+            try {
+                Class<?> lpClass = loadClass(CONSTRAINT_LAYOUT_PARAMS, classLoader);
+                if (lpClass != null) {
+                    ctor = lpClass.getConstructor(int.class, int.class);
+                }
+            } catch (NoSuchMethodException ignored) {}
+            setClass = loadClass(CONSTRAINT_SET, classLoader);
+        }
+        layoutParamsConstructor = ctor;
+        constraintSetClass = setClass;
+        LOG.d("学习布局 {}, constraint={}", rootClass.getName(), constraint);
+    }
+
+    /**
+     * 获取 rootView 所属类的布局策略（首次调用时学习）
+     */
+    public static BubbleLayoutStrategy forRoot(ViewGroup rootView) {
+        Class<?> rootClass = rootView.getClass();
+        BubbleLayoutStrategy strategy = strategies.get(rootClass);
+        if (strategy == null) {
+            strategy = new BubbleLayoutStrategy(rootView);
+            strategies.put(rootClass, strategy);
+        }
+        return strategy;
+    }
+
+    // ========== ConstraintLayout 反射 ==========
+
+    /**
+     * 创建 ConstraintLayout.LayoutParams
+     */
+    public ViewGroup.LayoutParams newLayoutParams(int width, int height) throws Exception {
+        if (layoutParamsConstructor == null) {
+            throw new IllegalStateException("ConstraintLayout$LayoutParams unavailable");
+        }
+        return (ViewGroup.LayoutParams) layoutParamsConstructor.newInstance(width, height);
+    }
+
+    /**
+     * 创建 ConstraintSet 实例
+     */
+    public Object newConstraintSet() throws Exception {
+        if (constraintSetClass == null) {
+            throw new IllegalStateException("ConstraintSet unavailable");
+        }
+        return constraintSetClass.newInstance();
+    }
+
+    // ========== 消息气泡定位 ==========
+
+    /**
+     * 查找消息气泡 ID
+     * 优先使用学到的 ID（只检查直接子 View），其次按 BubbleLayout 类名查找，
+     * 再按文字内容查找，最后退化到第一个带 ID 的 LinearLayout；任一方式找到的 ID 都会缓存
+     *
+     * @param msgContent 消息文字内容（用于文字查找，可为空）
+     * @return 气泡 ID，找不到返回 -1
+     */
+    public int findAnchorId(ViewGroup rootView, String msgContent) {
+        int learned = getCachedAnchorId(rootView);
+        if (learned != -1) {
+            return learned;
+        }
+        if (anchorMisses >= MAX_MISSES) {
+            return -1;
+        }
+
+        // 1. BubbleLayout Class Name Search (Priority)
+        for (int i = 0; i < rootView.getChildCount(); i++) {
+            View child = rootView.getChildAt(i);
+            if (child.getClass().getName().contains("BubbleLayout") && child.getId() != View.NO_ID) {
+                return learnAnchor(child);
+            }
+        }
+
+        // 2. Text Content Search (Fallback)
+        if (msgContent != null && !msgContent.isEmpty()) {
+            View textContainer = findViewWithText(rootView, msgContent);
+            if (textContainer != null) {
+                View bubble = textContainer;
+                while (bubble.getParent() != rootView && bubble.getParent() instanceof View) {
+                    bubble = (View) bubble.getParent();
+                }
+                if (bubble.getParent() == rootView && bubble.getId() != View.NO_ID) {
+                    return learnAnchor(bubble);
+                }
+            }
+        }
+
+        // 3. LinearLayout Fallback (Last Resort)
+        for (int i = 0; i < rootView.getChildCount(); i++) {
+            View child = rootView.getChildAt(i);
+            if (child instanceof LinearLayout && child.getId() != View.NO_ID) {
+                return learnAnchor(child);
+            }
+        }
+        if (++anchorMisses == MAX_MISSES) {
+            LOG.d("{} 中找不到消息气泡，不再查找", rootView.getClass().getName());
+        }
+        return -1;
+    }
+
+    private int learnAnchor(View bubble) {
+        anchorId = bubble.getId();
+        anchorMisses = 0;
+        LOG.d("学到消息气泡 {}, ID={}", bubble.getClass().getSimpleName(), anchorId);
+        return anchorId;
+    }
+
+    /**
+     * 获取已学到的消息气泡 ID（只检查直接子 View）
+     * @return 未学到或当前布局中不存在时返回 -1
+     */
+    public int getCachedAnchorId(ViewGroup rootView) {
+        int learned = anchorId;
+        return learned != View.NO_ID && hasDirectChild(rootView, learned) ? learned : -1;
+    }
+
+    private static boolean hasDirectChild(ViewGroup rootView, int id) {
+        for (int i = 0; i < rootView.getChildCount(); i++) {
+            if (rootView.getChildAt(i).getId() == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static View findViewWithText(ViewGroup root, String text) {
+        for (int i = 0; i < root.getChildCount(); i++) {
+            View child = root.getChildAt(i);
+            if (child instanceof TextView) {
+                String viewText = ((TextView) child).getText().toString();
+                if (viewText.contains(text) || text.contains(viewText)) {
+                    return child;
+                }
+            } else if (child instanceof ViewGroup) {
+                View found = findViewWithText((ViewGroup) child, text);
+                if (found != null) return found;
+            }
+        }
+        return null;
+    }
+
+    // ========== 表情回复定位 ==========
+
+    /**
+     * 查找可见的表情回复视图
+     * 学到 ID 后直接按 ID 取；未学到时遍历 View 树，类名匹配结果按 View 类缓存。
+     * 不可见的表情回复视图同样用于学习 ID（多数消息没有表情回复，行是隐藏的）
+     *
+     * @return 表情回复视图，未找到或不可见返回 null
+     */
+    public View findEmojiReactionView(ViewGroup rootView) {
+        int learned = reactionId;
+        if (learned != View.NO_ID) {
+            View view = rootView.findViewById(learned);
+            return view != null && view.getVisibility() == View.VISIBLE ? view : null;
+        }
+        if (reactionMisses >= MAX_MISSES) {
+            return null;
+        }
+        try {
+            View found = findReactionInChildren(rootView, true);
+            if (found == null) {
+                if (++reactionMisses == MAX_MISSES) {
+                    LOG.d("{} 中没有表情回复视图，不再查找", rootView.getClass().getName());
+                }
+                return null;
+            }
+            reactionId = found.getId();
+            LOG.d("学到表情回复视图 {}, ID={}", found.getClass().getName(), reactionId);
+            return found.getVisibility() == View.VISIBLE ? found : null;
+        } catch (Throwable t) {
+            LOG.d("[EMOJI_REACTION] 查找表情回复视图失败: {}", t.getMessage());
+            return null;
+        }
+    }
+
+    private static View findReactionInChildren(ViewGroup parent, boolean topLevel) {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            View child = parent.getChildAt(i);
+            boolean isReactionView = topLevel ? isTopLevelReactionClass(child.getClass())
+                                              : isNestedReactionClass(child.getClass());
+            if (isReactionView && child.getId() != View.NO_ID) {
+                return child;
+            }
+            if (child instanceof ViewGroup) {
+                View found = findReactionInChildren((ViewGroup) child, false);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 顶层子 View 的宽松匹配：只要包含特征关键词就可能是表情回复
+     */
+    private static boolean isTopLevelReactionClass(Class<?> clazz) {
+        Boolean cached = topLevelReactionClasses.get(clazz);
+        if (cached != null) {
+            return cached;
+        }
+        String className = clazz.getName();
+        String classNameLower = className.toLowerCase();
+        boolean result =
+            className.contains("EmojiUpdateTextView") ||
+            className.contains("msgtail") ||
+            (classNameLower.contains("emoji") && !classNameLower.contains("input") && !classNameLower.contains("edit")) ||
+            classNameLower.contains("reaction") ||
+            classNameLower.contains("emoticon") ||
+            (classNameLower.contains("face") && !classNameLower.contains("avatar"));
+        topLevelReactionClasses.put(clazz, result);
+        return result;
+    }
+
+    /**
+     * 嵌套子 View 的模糊匹配：使用多种关键字组合判断，不依赖精确类名
+     */
+    private static boolean isNestedReactionClass(Class<?> clazz) {
+        Boolean cached = nestedReactionClasses.get(clazz);
+        if (cached != null) {
+            return cached;
+        }
+        String classNameLower = clazz.getName().toLowerCase();
+        String simpleName = clazz.getSimpleName().toLowerCase();
+        boolean result =
+            (classNameLower.contains("emoji") && (classNameLower.contains("text") || classNameLower.contains("update") || classNameLower.contains("view"))) ||
+            classNameLower.contains("reaction") ||
+            classNameLower.contains("emoticon") ||
+            (classNameLower.contains("msgtail") && classNameLower.contains("emoji")) ||
+            (classNameLower.contains("aio") && classNameLower.contains("reaction")) ||
+            (classNameLower.contains("msg") && classNameLower.contains("reaction")) ||
+            simpleName.contains("reaction") ||
+            simpleName.contains("emoji");
+        nestedReactionClasses.put(clazz, result);
+        return result;
+    }
+
+    // ========== 已插入视图 ==========
+
+    /**
+     * 记录插入到 rootView 中的视图
+     * @param key TAG_INSERTED_OPTION_BAR / TAG_INSERTED_AFFINITY
+     */
+    public static void rememberInserted(ViewGroup rootView, int key, View view) {
+        rootView.setTag(key, view);
+    }
+
+    /**
+     * 取出并移除之前插入的视图
+     * @return 被移除的视图，没有则返回 null
+     */
+    public static View removeInserted(ViewGroup rootView, int key) {
+        Object tag = rootView.getTag(key);
+        rootView.setTag(key, null);
+        if (!(tag instanceof View)) {
+            return null;
+        }
+        View view = (View) tag;
+        if (view.getParent() instanceof ViewGroup) {
+            ((ViewGroup) view.getParent()).removeView(view);
+        }
+        return view;
+    }
+
+    /**
+     * 获取之前插入且仍在 rootView 中的视图
+     */
+    public static View getInserted(ViewGroup rootView, int key) {
+        Object tag = rootView.getTag(key);
+        if (tag instanceof View && ((View) tag).getParent() != null) {
+            return (View) tag;
+        }
+        return null;
+    }
+
+    private static Class<?> loadClass(String name, ClassLoader classLoader) {
+        try {
+            return Class.forName(name, false, classLoader);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+}
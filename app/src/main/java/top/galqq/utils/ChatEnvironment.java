@@ -0,0 +1,299 @@
+package top.galqq.utils;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import android.widget.AbsListView;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 聊天环境描述（按宿主 Activity/Context 缓存）
+ *
+ * 同一个聊天界面里的所有消息气泡共享同一个环境：所在 Activity、是否为转发消息详情页、
+ * 承载消息的 RecyclerView。原先每次绑定都要解包 ContextWrapper 链并向上遍历父容器
+ * 查找 RecyclerView，这里只在气泡的父容器变化时重新查找（切换 Fragment、重建聊天面板后列表会换成新的），
+ * 其余绑定直接复用。
+ *
+ * 群聊/私聊不放在这里：同一个 Activity 可以先后承载不同类型的会话，按消息快照判断。
+ *
+ * 找到 RecyclerView 后同时监听它的滚动：快速滑动期间，好感度查询、上下文写入、AI 请求等
+ * 非视觉工作通过 {@link #runWhenIdle} 推迟到列表静止后执行。同一个气泡重新绑定时替换旧任务，
+ * 静止时已经滑出屏幕的气泡直接丢弃。
+ *
+ * 旧版 QQ 的聊天列表是 ListView：同样作为消息列表监听。AbsListView 没有公开的 getScrollState，
+ * 也不能占用它唯一的 OnScrollListener（QQ 自己在用），按最近的滚动事件判断是否静止
+ * （AbsListView 每次滚动都会调用 onScrollChanged，同样触发 ViewTreeObserver 的滚动回调）。
+ *
+ * 只能在主线程调用。
+ */
+public final class ChatEnvironment {
+
+    // 推迟任务的类别（同一气泡每类只保留一个）
+    public static final int TASK_BIND = 0;        // 快照构建与上下文写入
+    public static final int TASK_AFFINITY = 1;    // 好感度查询
+    public static final int TASK_REQUEST = 2;     // AI 请求（自动显示）
+    private static final int TASK_SLOTS = 3;
+
+    // 宿主 Context -> 环境描述（界面销毁后自动回收）
+    private static final Map<Context, ChatEnvironment> environments = new WeakHashMap<>();
+
+    // View 运行时类 -> 是否为 RecyclerView 子类
+    private static final Map<Class<?>, Boolean> recyclerViewClasses = new ConcurrentHashMap<>();
+
+    // RecyclerView 运行时类 -> getScrollState 方法（混淆后找不到时为 NO_METHOD）
+    private static final Map<Class<?>, Object> scrollStateMethods = new ConcurrentHashMap<>();
+    private static final Object NO_METHOD = new Object();
+
+    // 最后一次滚动事件后经过多久视为静止
+    private static final long IDLE_DELAY_MS = 150;
+    // 静止检查间隔
+    private static final long FLUSH_CHECK_MS = 100;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public final String activityName;
+    public final boolean isMultiForward;
+
+    private WeakReference<View> recyclerViewRef;
+    // 上次查找 RecyclerView 时气泡的直接父容器（父容器不变时不再向上遍历）
+    private WeakReference<Object> lastBubbleParentRef;
+
+    // 最后一次滚动事件时间（uptimeMillis）
+    private long lastScrollUptime = 0;
+    // 推迟执行的任务：气泡根视图 -> 各类任务（同一气泡同一类任务只保留最新提交的）
+    private final LinkedHashMap<View, Runnable[]> pendingTasks = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+    private final Runnable flushRunnable = this::flushPending;
+
+    private ChatEnvironment(String activityName) {
+        this.activityName = activityName;
+        this.isMultiForward = activityName != null && activityName.contains("MultiForwardActivity");
+    }
+
+    /**
+     * 获取消息气泡所在的聊天环境
+     * 首次调用时解析 Activity；RecyclerView 在气泡挂到列表上之后才能找到，
+     * 之后只在气泡的父容器变化时重新查找，列表被替换时改为监听新列表
+     */
+    public static ChatEnvironment of(View bubbleRoot) {
+        Context context = bubbleRoot.getContext();
+        ChatEnvironment env = environments.get(context);
+        if (env == null) {
+            env = new ChatEnvironment(resolveActivityName(context));
+            environments.put(context, env);
+        }
+        ViewParent parent = bubbleRoot.getParent();
+        if (parent != null) {
+            Object lastParent = env.lastBubbleParentRef != null ? env.lastBubbleParentRef.get() : null;
+            View current = env.getRecyclerView();
+            if (parent != lastParent || current == null) {
+                env.lastBubbleParentRef = new WeakReference<>(parent);
+                View recyclerView = parent == current ? current : findRecyclerView(bubbleRoot);
+                if (recyclerView != null && recyclerView != current) {
+                    env.switchRecyclerView(current, recyclerView);
+                }
+            }
+        }
+        return env;
+    }
+
+    /**
+     * 承载消息的 RecyclerView（旧版 QQ 为 ListView；尚未找到或已销毁时返回 null）
+     */
+    public View getRecyclerView() {
+        return recyclerViewRef != null ? recyclerViewRef.get() : null;
+    }
+
+    // ========== 滚动状态 ==========
+
+    // RecyclerView 滚动时会调用 onScrollChanged，进而触发 ViewTreeObserver 的滚动回调
+    private final ViewTreeObserver.OnScrollChangedListener scrollListener = () ->
+        lastScrollUptime = SystemClock.uptimeMillis();
+
+    private final View.OnAttachStateChangeListener detachListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {}
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            // 聊天界面关闭，丢弃所有未执行的任务（避免持有已销毁的视图）
+            pendingTasks.clear();
+            mainHandler.removeCallbacks(flushRunnable);
+            flushScheduled = false;
+        }
+    };
+
+    /**
+     * 改为监听新的 RecyclerView，旧列表上的监听移除
+     */
+    private void switchRecyclerView(View oldRecyclerView, View recyclerView) {
+        if (oldRecyclerView != null) {
+            ViewTreeObserver oldObserver = oldRecyclerView.getViewTreeObserver();
+            if (oldObserver.isAlive()) {
+                oldObserver.removeOnScrollChangedListener(scrollListener);
+            }
+            oldRecyclerView.removeOnAttachStateChangeListener(detachListener);
+        }
+        recyclerViewRef = new WeakReference<>(recyclerView);
+        recyclerView.getViewTreeObserver().addOnScrollChangedListener(scrollListener);
+        recyclerView.addOnAttachStateChangeListener(detachListener);
+    }
+
+    /**
+     * 列表是否正在滚动
+     * 优先使用 RecyclerView.getScrollState()，方法不可用（混淆、ListView）时以最近的滚动事件判断
+     */
+    public boolean isScrolling() {
+        View recyclerView = getRecyclerView();
+        if (recyclerView == null) {
+            return false;
+        }
+        Method getScrollState = getScrollStateMethod(recyclerView.getClass());
+        if (getScrollState != null) {
+            try {
+                return (Integer) getScrollState.invoke(recyclerView) != 0; // SCROLL_STATE_IDLE = 0
+            } catch (Throwable ignored) {}
+        }
+        return SystemClock.uptimeMillis() - lastScrollUptime < IDLE_DELAY_MS;
+    }
+
+    /**
+     * 列表静止时立即执行，滚动中则推迟到静止后执行
+     * 同一个气泡同一类任务只保留最后提交的；静止时气泡已不在屏幕上则丢弃
+     *
+     * @param bubbleRoot 气泡根视图（合并/丢弃的依据）
+     * @param taskType TASK_BIND / TASK_AFFINITY / TASK_REQUEST
+     */
+    public void runWhenIdle(View bubbleRoot, int taskType, Runnable task) {
+        Runnable[] slots = pendingTasks.get(bubbleRoot);
+        if (!isScrolling()) {
+            if (slots != null) {
+                slots[taskType] = null;
+            }
+            task.run();
+            return;
+        }
+        if (slots == null) {
+            slots = new Runnable[TASK_SLOTS];
+            pendingTasks.put(bubbleRoot, slots);
+        }
+        slots[taskType] = task;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            mainHandler.postDelayed(flushRunnable, FLUSH_CHECK_MS);
+        }
+    }
+
+    private void flushPending() {
+        flushScheduled = false;
+        if (pendingTasks.isEmpty()) {
+            return;
+        }
+        if (isScrolling()) {
+            flushScheduled = true;
+            mainHandler.postDelayed(flushRunnable, FLUSH_CHECK_MS);
+            return;
+        }
+        List<View> bubbles = new ArrayList<>(pendingTasks.keySet());
+        List<Runnable[]> tasks = new ArrayList<>(pendingTasks.values());
+        pendingTasks.clear();
+        long watchdogToken = MainThreadWatchdog.begin("ChatEnvironment.flush");
+        try {
+            for (int i = 0; i < bubbles.size(); i++) {
+                if (!bubbles.get(i).isAttachedToWindow()) {
+                    continue; // 已滑出屏幕
+                }
+                for (Runnable task : tasks.get(i)) {
+                    if (task == null) {
+                        continue;
+                    }
+                    try {
+                        task.run();
+                    } catch (Throwable ignored) {}
+                }
+            }
+        } finally {
+            MainThreadWatchdog.end(watchdogToken);
+        }
+    }
+
+    private static Method getScrollStateMethod(Class<?> clazz) {
+        Object cached = scrollStateMethods.get(clazz);
+        if (cached == null) {
+            Object method = NO_METHOD;
+            try {
+                Method m = clazz.getMethod("getScrollState");
+                if (m.getReturnType() == int.class) {
+                    method = m;
+                }
+            } catch (Throwable ignored) {}
+            scrollStateMethods.put(clazz, method);
+            cached = method;
+        }
+        return cached == NO_METHOD ? null : (Method) cached;
+    }
+
+    private static String resolveActivityName(Context context) {
+        Context current = context;
+        while (current != null) {
+            if (current instanceof Activity) {
+                return current.getClass().getName();
+            }
+            if (!(current instanceof ContextWrapper)) {
+                break;
+            }
+            Context base = ((ContextWrapper) current).getBaseContext();
+            if (base == current) {
+                break;
+            }
+            current = base;
+        }
+        return null;
+    }
+
+    private static View findRecyclerView(View view) {
+        ViewParent parent = view.getParent();
+        while (parent instanceof View) {
+            if (parent instanceof AbsListView || isRecyclerView(parent.getClass())) {
+                return (View) parent;
+            }
+            parent = parent.getParent();
+        }
+        return null;
+    }
+
+    /**
+     * 判断类是否是 RecyclerView 或其子类（结果按类缓存）
+     */
+    public static boolean isRecyclerView(Class<?> clazz) {
+        Boolean cached = recyclerViewClasses.get(clazz);
+        if (cached != null) {
+            return cached;
+        }
+        boolean result = false;
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            String name = c.getName();
+            if ("androidx.recyclerview.widget.RecyclerView".equals(name) ||
+                "android.support.v7.widget.RecyclerView".equals(name)) {
+                result = true;
+                break;
+            }
+        }
+        recyclerViewClasses.put(clazz, result);
+        return result;
+    }
+}
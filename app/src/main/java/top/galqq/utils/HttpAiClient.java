@@ -16,6 +16,7 @@ import okhttp3.Authenticator;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.Credentials;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -37,6 +38,20 @@ import top.galqq.config.ConfigManager;
 public class HttpAiClient {
 
     private static final String TAG = "GalQQ.AI";
+    
+    // 同时执行的 HTTP 调用上限（OkHttp 每个执行中的调用占用一个分发线程，超出的在分发器中排队，不创建线程）
+    public static final int MAX_CONCURRENT_CALLS = 6;
+    // 所有 AI 客户端共用的分发器（客户端因配置变化重建后上限仍然有效）
+    private static final Dispatcher AI_DISPATCHER = createDispatcher();
+    // 图片读取/编码和图片识别的后台线程（固定 2 个）
+    private static final java.util.concurrent.ExecutorService IMAGE_EXECUTOR =
+        java.util.concurrent.Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "GalQQ-AiImage");
+            thread.setDaemon(true);
+            return thread;
+        });
+    // 调试日志（受详细日志开关控制），警告和错误仍直接输出
+    private static final LogHelper.Logger LOG = LogHelper.verboseLogger(TAG);
     private static final int MAX_RETRY_COUNT = 5; // 最大重试次数
     private static OkHttpClient client;
     private static OkHttpClient clientWithProxy;
@@ -59,23 +74,38 @@ public class HttpAiClient {
         
         // 检查超时配置是否变化，需要重建客户端
         if (client != null && timeout != lastTimeout) {
-            Log.d(TAG, "AI超时配置变化，重建客户端: " + lastTimeout + "s -> " + timeout + "s");
+            LOG.d("AI超时配置变化，重建客户端: {}s -> {}s", lastTimeout, timeout);
             client = null;
         }
         
         // 不使用代理的客户端
         if (client == null) {
             client = new OkHttpClient.Builder()
+                    .dispatcher(AI_DISPATCHER)
                     .connectTimeout(timeout, TimeUnit.SECONDS)
                     .readTimeout(timeout * 2, TimeUnit.SECONDS)  // 读取超时设为2倍，给AI足够的响应时间
                     .writeTimeout(timeout, TimeUnit.SECONDS)
                     .build();
             lastTimeout = timeout;
-            Log.d(TAG, "创建AI客户端，超时配置: connect=" + timeout + "s, read=" + (timeout * 2) + "s, write=" + timeout + "s");
+            LOG.d("创建AI客户端，超时配置: connect={}s, read={}s, write={}s", timeout, (timeout * 2), timeout);
         }
         return client;
     }
     
+    private static Dispatcher createDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_CONCURRENT_CALLS);
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_CALLS);
+        return dispatcher;
+    }
+    
+    /**
+     * 正在执行的 AI 调用数（用于监控）
+     */
+    public static int getRunningCallCount() {
+        return AI_DISPATCHER.runningCallsCount();
+    }
+    
     /**
      * 获取带代理的 OkHttpClient 实例
      * 支持 HTTP 和 SOCKS 代理，以及用户名密码认证
@@ -95,7 +125,9 @@ public class HttpAiClient {
         int proxyPort = ConfigManager.getProxyPort();
         int timeout = ConfigManager.getAiTimeout();
         
-        Log.d(TAG, "创建代理客户端: " + proxyType + "://" + proxyHost + ":" + proxyPort + ", 超时: " + timeout + "s");
+        if (LOG.isEnabled()) {
+            LOG.d("创建代理客户端: " + proxyType + "://" + proxyHost + ":" + proxyPort + ", 超时: " + timeout + "s");
+        }
         
         // 创建代理对象
         Proxy.Type type = "SOCKS".equalsIgnoreCase(proxyType) ? Proxy.Type.SOCKS : Proxy.Type.HTTP;
@@ -103,6 +135,7 @@ public class HttpAiClient {
         
         // 代理模式下连接超时增加5秒余量
         OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(AI_DISPATCHER)
                 .proxy(proxy)
                 .connectTimeout(timeout + 5, TimeUnit.SECONDS)  // 代理可能需要更长时间
                 .readTimeout(timeout * 2 + 10, TimeUnit.SECONDS)
@@ -114,7 +147,7 @@ public class HttpAiClient {
             String password = ConfigManager.getProxyPassword();
             
             if (username != null && !username.isEmpty()) {
-                Log.d(TAG, "代理认证已启用，用户名: " + username);
+                LOG.d("代理认证已启用，用户名: {}", username);
                 
                 // 添加代理认证器
                 builder.proxyAuthenticator(new Authenticator() {
@@ -154,7 +187,7 @@ public class HttpAiClient {
     public static synchronized void resetProxyClient() {
         clientWithProxy = null;
         lastProxyConfig = "";
-        Log.d(TAG, "代理客户端已重置");
+        LOG.d("代理客户端已重置");
     }
     
     /**
@@ -165,7 +198,7 @@ public class HttpAiClient {
         clientWithProxy = null;
         lastTimeout = 0;
         lastProxyConfig = "";
-        Log.d(TAG, "AI客户端已重置");
+        LOG.d("AI客户端已重置");
     }
     
     /**
@@ -189,7 +222,7 @@ public class HttpAiClient {
         String proxyType = ConfigManager.getProxyType();
         String proxyInfo = proxyType + "://" + host + ":" + port;
         
-        Log.d(TAG, "开始测试代理连接: " + proxyInfo);
+        LOG.d("开始测试代理连接: {}", proxyInfo);
         
         // 检查是否使用127.0.0.1，给出提示
         boolean isLocalhost = host.equals("127.0.0.1") || host.equals("localhost");
@@ -253,7 +286,7 @@ public class HttpAiClient {
         }
         
         String testUrl = testUrls[index];
-        Log.d(TAG, "测试代理URL[" + index + "]: " + testUrl);
+        LOG.d("测试代理URL[{}]: {}", index, testUrl);
         
         Request request = new Request.Builder()
                 .url(testUrl)
@@ -277,7 +310,7 @@ public class HttpAiClient {
                     // 200, 204 都算成功
                     if (code == 200 || code == 204) {
                         String body = response.body() != null ? response.body().string() : "";
-                        Log.d(TAG, "代理测试成功，URL: " + testUrl + ", 响应码: " + code);
+                        LOG.d("代理测试成功，URL: {}, 响应码: {}", testUrl, code);
                         
                         // 尝试解析返回的IP（如果是httpbin）
                         String resultMsg = "代理连接正常";
@@ -330,6 +363,23 @@ public class HttpAiClient {
         void onAllRetriesFailed(Runnable retryAction);
     }
 
+    /**
+     * 扩展回调接口 - 发出请求前拿到 OkHttp Call，结果没人能看到时可以取消
+     */
+    public interface CancellableAiCallback extends AiCallback {
+        /**
+         * 请求即将发出时调用（可能在任意线程）
+         */
+        void onCallCreated(Call call);
+
+        /**
+         * 请求是否已结束（取消、超时或已有结果）；排队中的图片处理据此跳过，不再花费识别调用
+         */
+        default boolean isSettled() {
+            return false;
+        }
+    }
+
     /**
      * 获取AI生成的回复选项（无上下文和元数据，向后兼容）
      */
@@ -366,7 +416,7 @@ public class HttpAiClient {
         
         // 创建重试动作
         Runnable retryAction = () -> {
-            Log.d(TAG, "用户点击重新加载");
+            LOG.d("用户点击重新加载");
             fetchOptionsWithRetryInternal(context, userMessage, currentSenderName, currentTimestamp,
                                           contextMessages, callback, 0);
         };
@@ -395,7 +445,7 @@ public class HttpAiClient {
                 if (isFormatError && retryCount < MAX_RETRY_COUNT - 1) {
                     // 还有重试机会，静默重试（不显示任何提示）
                     int nextRetry = retryCount + 1;
-                    Log.d(TAG, "格式错误，静默重试 (" + nextRetry + "/" + MAX_RETRY_COUNT + "): " + errorMsg);
+                    LOG.d("格式错误，静默重试 ({}/{}): {}", nextRetry, MAX_RETRY_COUNT, errorMsg);
                     
                     // 延迟500ms后重试，避免请求过快
                     mainHandler.postDelayed(() -> {
@@ -536,8 +586,12 @@ public class HttpAiClient {
             
             if (needContextImageRecognition) {
                 // 有上下文图片需要处理，在后台线程处理
-                Log.d(TAG, "当前消息无图片，但有上下文图片需要处理");
-                new Thread(() -> {
+                LOG.d("当前消息无图片，但有上下文图片需要处理");
+                IMAGE_EXECUTOR.execute(() -> {
+                    if (isSettled(callback)) {
+                        LOG.d("请求已结束，跳过排队中的图片处理");
+                        return;
+                    }
                     try {
                         // 根据是否启用外挂AI选择处理方式
                         if (ConfigManager.isVisionAiEnabled()) {
@@ -545,18 +599,14 @@ public class HttpAiClient {
                         } else {
                             processContextImagesForMainAi(context, conversationId, contextMessages);
                         }
-                        mainHandler.post(() -> {
-                            fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
-                                                contextMessages, customPrompt, null, conversationId, callback, false);
-                        });
+                        fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
+                                            contextMessages, customPrompt, null, conversationId, callback, false);
                     } catch (Exception e) {
                         Log.e(TAG, "上下文图片识别失败: " + e.getMessage());
-                        mainHandler.post(() -> {
-                            fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
-                                                contextMessages, customPrompt, null, conversationId, callback, false);
-                        });
+                        fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
+                                            contextMessages, customPrompt, null, conversationId, callback, false);
                     }
-                }).start();
+                });
             } else {
                 // 不需要处理上下文图片，直接调用
                 fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
@@ -566,17 +616,17 @@ public class HttpAiClient {
         }
         
         // 检查是否启用外挂AI
-        Log.d(TAG, "fetchOptionsWithImages: 图片数量=" + imageElements.size() + ", VisionAI启用=" + ConfigManager.isVisionAiEnabled());
+        LOG.d("fetchOptionsWithImages: 图片数量={}, VisionAI启用={}", imageElements.size(), ConfigManager.isVisionAiEnabled());
         
         if (ConfigManager.isVisionAiEnabled()) {
             // 使用外挂AI获取图片描述
-            Log.d(TAG, "使用外挂AI处理图片");
+            LOG.d("使用外挂AI处理图片");
             processImagesWithVisionAi(context, userMessage, currentSenderName, currentTimestamp,
                                       contextMessages, customPrompt, imageElements, 
                                       conversationId, msgId, callback);
         } else {
             // 未启用外挂AI，将图片Base64直接发送给主AI（如果主AI支持Vision）
-            Log.d(TAG, "未启用外挂AI，尝试直接获取图片Base64");
+            LOG.d("未启用外挂AI，尝试直接获取图片Base64");
             
             // 【上下文图片识别】如果启用了上下文图片识别，也需要处理上下文中的图片
             final boolean contextImageEnabled = ConfigManager.isContextImageRecognitionEnabled() 
@@ -586,9 +636,13 @@ public class HttpAiClient {
             
             if (contextImageEnabled) {
                 // 在后台线程处理上下文图片和当前图片
-                Log.d(TAG, "启用了上下文图片识别，在后台线程处理所有图片");
+                LOG.d("启用了上下文图片识别，在后台线程处理所有图片");
                 final String finalConversationId = conversationId;
-                new Thread(() -> {
+                IMAGE_EXECUTOR.execute(() -> {
+                    if (isSettled(callback)) {
+                        LOG.d("请求已结束，跳过排队中的图片处理");
+                        return;
+                    }
                     try {
                         // 处理上下文图片
                         processContextImagesForMainAi(context, finalConversationId, contextMessages);
@@ -603,55 +657,68 @@ public class HttpAiClient {
                             }
                         }
                         
-                        // 在主线程调用AI
-                        mainHandler.post(() -> {
-                            if (!imageBase64List.isEmpty()) {
-                                fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
-                                                    contextMessages, customPrompt, imageBase64List, finalConversationId, callback, false);
-                            } else {
-                                fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
-                                                    contextMessages, customPrompt, null, finalConversationId, callback, false);
-                            }
-                        });
+                        // 直接在当前后台线程构建请求（请求体含图片Base64和上下文，不放到主线程）
+                        if (!imageBase64List.isEmpty()) {
+                            fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
+                                                contextMessages, customPrompt, imageBase64List, finalConversationId, callback, false);
+                        } else {
+                            fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
+                                                contextMessages, customPrompt, null, finalConversationId, callback, false);
+                        }
                     } catch (Exception e) {
                         Log.e(TAG, "处理图片失败: " + e.getMessage());
-                        mainHandler.post(() -> {
-                            fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
-                                                contextMessages, customPrompt, null, callback, false);
-                        });
+                        fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
+                                            contextMessages, customPrompt, null, callback, false);
                     }
-                }).start();
+                });
                 return;
             }
             
-            // 不需要处理上下文图片，直接处理当前消息图片
-            List<String> imageBase64List = new java.util.ArrayList<>();
-            for (int i = 0; i < imageElements.size(); i++) {
-                ImageExtractor.ImageElement img = imageElements.get(i);
-                Log.d(TAG, "处理图片 " + (i + 1) + "/" + imageElements.size() + ": " + img);
-                String base64 = ImageBase64Helper.fromImageElement(img);
-                if (base64 != null) {
-                    imageBase64List.add(base64);
-                    Log.d(TAG, "图片 " + (i + 1) + " Base64获取成功，长度=" + base64.length());
-                } else {
-                    Log.w(TAG, "图片 " + (i + 1) + " Base64获取失败");
+            // 不需要处理上下文图片，在后台线程直接处理当前消息图片（读取文件和编码不占用调用方线程）
+            IMAGE_EXECUTOR.execute(() -> {
+                if (isSettled(callback)) {
+                    LOG.d("请求已结束，跳过排队中的图片处理");
+                    return;
+                }
+                List<String> imageBase64List = new java.util.ArrayList<>();
+                for (int i = 0; i < imageElements.size(); i++) {
+                    ImageExtractor.ImageElement img = imageElements.get(i);
+                    if (LOG.isEnabled()) {
+                        LOG.d("处理图片 " + (i + 1) + "/" + imageElements.size() + ": " + img);
+                    }
+                    String base64 = ImageBase64Helper.fromImageElement(img);
+                    if (base64 != null) {
+                        imageBase64List.add(base64);
+                        if (LOG.isEnabled()) {
+                            LOG.d("图片 " + (i + 1) + " Base64获取成功，长度=" + base64.length());
+                        }
+                    } else {
+                        Log.w(TAG, "图片 " + (i + 1) + " Base64获取失败");
+                    }
                 }
-            }
             
-            Log.d(TAG, "成功获取 " + imageBase64List.size() + "/" + imageElements.size() + " 张图片的Base64");
+                LOG.d("成功获取 {}/{} 张图片的Base64", imageBase64List.size(), imageElements.size());
             
-            if (!imageBase64List.isEmpty()) {
-                fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
-                                    contextMessages, customPrompt, imageBase64List, callback, false);
-            } else {
-                // 无法获取图片Base64，降级为普通请求
-                Log.w(TAG, "无法获取任何图片Base64，降级为普通请求");
-                fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
-                                    contextMessages, customPrompt, null, callback, false);
-            }
+                if (!imageBase64List.isEmpty()) {
+                    fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
+                                        contextMessages, customPrompt, imageBase64List, callback, false);
+                } else {
+                    // 无法获取图片Base64，降级为普通请求
+                    Log.w(TAG, "无法获取任何图片Base64，降级为普通请求");
+                    fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
+                                        contextMessages, customPrompt, null, callback, false);
+                }
+            });
         }
     }
     
+    /**
+     * 调用方已不再等待结果（图片处理排队期间请求被取消或超时）
+     */
+    private static boolean isSettled(AiCallback callback) {
+        return callback instanceof CancellableAiCallback && ((CancellableAiCallback) callback).isSettled();
+    }
+    
     /**
      * 使用外挂AI处理图片，获取描述后再调用主AI
      * 支持缓存和速率限制
@@ -684,23 +751,31 @@ public class HttpAiClient {
                                     String conversationId, String msgId,
                                     AiCallback callback) {
         // 在后台线程处理图片
-        new Thread(() -> {
+        IMAGE_EXECUTOR.execute(() -> {
+            if (isSettled(callback)) {
+                LOG.d("请求已结束，跳过排队中的图片处理");
+                return;
+            }
             try {
                 // 【上下文图片识别】先识别上下文中未识别的图片
                 if (ConfigManager.isContextImageRecognitionEnabled() && conversationId != null && contextMessages != null) {
                     recognizeContextImages(context, conversationId, contextMessages);
+                    if (isSettled(callback)) {
+                        LOG.d("请求已结束，跳过当前消息的图片识别");
+                        return;
+                    }
                 }
                 
                 List<String> imageDescriptions;
                 
                 // 如果有会话ID和消息ID，使用带缓存的队列
                 if (conversationId != null && msgId != null) {
-                    Log.d(TAG, "使用VisionAiQueue处理图片，conversationId=" + conversationId + ", msgId=" + msgId);
+                    LOG.d("使用VisionAiQueue处理图片，conversationId={}, msgId={}", conversationId, msgId);
                     imageDescriptions = VisionAiQueue.getInstance().recognizeSync(
                         context, conversationId, msgId, imageElements);
                 } else {
                     // 降级：直接处理（不缓存）
-                    Log.d(TAG, "无会话/消息ID，直接处理图片");
+                    LOG.d("无会话/消息ID，直接处理图片");
                     imageDescriptions = new java.util.ArrayList<>();
                     
                     for (int i = 0; i < imageElements.size(); i++) {
@@ -708,12 +783,16 @@ public class HttpAiClient {
                         String base64 = ImageBase64Helper.fromImageElement(img);
                         
                         if (base64 != null) {
-                            Log.d(TAG, "正在识别图片 " + (i + 1) + "/" + imageElements.size());
+                            if (LOG.isEnabled()) {
+                                LOG.d("正在识别图片 " + (i + 1) + "/" + imageElements.size());
+                            }
                             String description = VisionAiClient.analyzeImageSync(base64);
                             
                             if (description != null && !description.isEmpty()) {
                                 imageDescriptions.add(description);
-                                Log.d(TAG, "图片" + (i + 1) + "描述: " + description);
+                                if (LOG.isEnabled()) {
+                                    LOG.d("图片" + (i + 1) + "描述: " + description);
+                                }
                             } else {
                                 imageDescriptions.add("[图片识别失败]");
                                 Log.w(TAG, "图片" + (i + 1) + "识别失败");
@@ -733,12 +812,10 @@ public class HttpAiClient {
                 AiLogManager.logImageRecognition(context, imageElements.size(), 0, 
                     imageDescriptions, System.currentTimeMillis());
                 
-                // 在主线程调用主AI（传递conversationId用于上下文图片）
+                // 在当前后台线程调用主AI（传递conversationId用于上下文图片）
                 final String finalConversationId = conversationId;
-                mainHandler.post(() -> {
-                    fetchOptionsInternal(context, mergedMessage, currentSenderName, currentTimestamp, 
-                                        contextMessages, customPrompt, null, finalConversationId, callback, false);
-                });
+                fetchOptionsInternal(context, mergedMessage, currentSenderName, currentTimestamp, 
+                                    contextMessages, customPrompt, null, finalConversationId, callback, false);
                 
             } catch (Exception e) {
                 Log.e(TAG, "图片处理失败", e);
@@ -746,12 +823,10 @@ public class HttpAiClient {
                 
                 // 降级为不带图片的请求
                 final String finalConversationId = conversationId;
-                mainHandler.post(() -> {
-                    fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
-                                        contextMessages, customPrompt, null, finalConversationId, callback, false);
-                });
+                fetchOptionsInternal(context, userMessage, currentSenderName, currentTimestamp, 
+                                    contextMessages, customPrompt, null, finalConversationId, callback, false);
             }
-        }).start();
+        });
     }
     
     /**
@@ -790,14 +865,14 @@ public class HttpAiClient {
             return;
         }
         
-        Log.d(TAG, "开始处理上下文图片（主AI模式），消息数=" + contextMessages.size());
+        LOG.d("开始处理上下文图片（主AI模式），消息数={}", contextMessages.size());
         
         for (top.galqq.utils.MessageContextManager.ChatMessage msg : contextMessages) {
             // 方式1：使用缓存的图片元素
             if (msg.hasImages && msg.msgId != null && msg.imageCount > 0) {
                 // 检查是否已经全部处理过
                 if (ImageDescriptionCache.hasAll(conversationId, msg.msgId, msg.imageCount)) {
-                    Log.d(TAG, "消息 " + msg.msgId + " 的图片已全部处理，跳过");
+                    LOG.d("消息 {} 的图片已全部处理，跳过", msg.msgId);
                     continue;
                 }
                 
@@ -806,7 +881,7 @@ public class HttpAiClient {
                     ImageDescriptionCache.getImageElements(conversationId, msg.msgId);
                 
                 if (imageElements != null && !imageElements.isEmpty()) {
-                    Log.d(TAG, "处理消息 " + msg.msgId + " 的 " + imageElements.size() + " 张图片（使用缓存元素）");
+                    LOG.d("处理消息 {} 的 {} 张图片（使用缓存元素）", msg.msgId, imageElements.size());
                     
                     for (int i = 0; i < imageElements.size(); i++) {
                         if (ImageDescriptionCache.has(conversationId, msg.msgId, i)) {
@@ -818,7 +893,9 @@ public class HttpAiClient {
                         
                         if (base64 != null) {
                             ImageDescriptionCache.put(conversationId, msg.msgId, i, "BASE64:" + base64);
-                            Log.d(TAG, "图片 " + (i + 1) + " base64获取成功，长度=" + base64.length());
+                            if (LOG.isEnabled()) {
+                                LOG.d("图片 " + (i + 1) + " base64获取成功，长度=" + base64.length());
+                            }
                         } else {
                             ImageDescriptionCache.put(conversationId, msg.msgId, i, "[无法读取图片]");
                             Log.w(TAG, "图片 " + (i + 1) + " base64获取失败");
@@ -830,7 +907,7 @@ public class HttpAiClient {
             
             // 方式2：从消息内容中提取图片URL（兼容历史消息）
             if (msg.content != null && msg.content.contains("[图片:") && msg.content.contains("multimedia.nt.qq.com.cn")) {
-                Log.d(TAG, "从消息内容中提取图片URL: " + msg.msgId);
+                LOG.d("从消息内容中提取图片URL: {}", msg.msgId);
                 
                 // 使用正则表达式提取图片URL
                 java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(
@@ -853,7 +930,7 @@ public class HttpAiClient {
                         continue;
                     }
                     
-                    Log.d(TAG, "下载图片: " + imageUrl);
+                    LOG.d("下载图片: {}", imageUrl);
                     
                     // 下载图片并转换为base64
                     try {
@@ -863,7 +940,7 @@ public class HttpAiClient {
                             String mimeType = ImageDownloader.getMimeTypeFromUrl(imageUrl);
                             String fullBase64 = "data:" + mimeType + ";base64," + base64;
                             ImageDescriptionCache.put(conversationId, cacheKey, imageIndex, "BASE64:" + fullBase64);
-                            Log.d(TAG, "图片下载成功，base64长度=" + base64.length());
+                            LOG.d("图片下载成功，base64长度={}", base64.length());
                         } else {
                             ImageDescriptionCache.put(conversationId, cacheKey, imageIndex, "[无法下载图片]");
                             Log.w(TAG, "图片下载失败");
@@ -878,7 +955,7 @@ public class HttpAiClient {
             }
         }
         
-        Log.d(TAG, "上下文图片处理完成（主AI模式）");
+        LOG.d("上下文图片处理完成（主AI模式）");
     }
     
     /**
@@ -895,7 +972,7 @@ public class HttpAiClient {
             return;
         }
         
-        Log.d(TAG, "开始识别上下文图片，消息数=" + contextMessages.size());
+        LOG.d("开始识别上下文图片，消息数={}", contextMessages.size());
         
         for (top.galqq.utils.MessageContextManager.ChatMessage msg : contextMessages) {
             if (!msg.hasImages || msg.msgId == null || msg.imageCount <= 0) {
@@ -904,7 +981,7 @@ public class HttpAiClient {
             
             // 检查是否已经全部识别过
             if (ImageDescriptionCache.hasAll(conversationId, msg.msgId, msg.imageCount)) {
-                Log.d(TAG, "消息 " + msg.msgId + " 的图片已全部识别，跳过");
+                LOG.d("消息 {} 的图片已全部识别，跳过", msg.msgId);
                 continue;
             }
             
@@ -913,11 +990,11 @@ public class HttpAiClient {
                 ImageDescriptionCache.getImageElements(conversationId, msg.msgId);
             
             if (imageElements == null || imageElements.isEmpty()) {
-                Log.d(TAG, "消息 " + msg.msgId + " 没有缓存的图片元素，跳过");
+                LOG.d("消息 {} 没有缓存的图片元素，跳过", msg.msgId);
                 continue;
             }
             
-            Log.d(TAG, "识别消息 " + msg.msgId + " 的 " + imageElements.size() + " 张图片");
+            LOG.d("识别消息 {} 的 {} 张图片", msg.msgId, imageElements.size());
             
             // 使用 VisionAiQueue 同步识别（会自动使用缓存和速率限制）
             try {
@@ -927,7 +1004,7 @@ public class HttpAiClient {
             }
         }
         
-        Log.d(TAG, "上下文图片识别完成");
+        LOG.d("上下文图片识别完成");
     }
 
     /**
@@ -1010,7 +1087,7 @@ public class HttpAiClient {
             if (ConfigManager.isReasoningEffortEnabled()) {
                 String reasoningEffort = ConfigManager.getAiReasoningEffort();
                 jsonBody.put("reasoning_effort", reasoningEffort);
-                Log.d(TAG, "启用思考模式: reasoning_effort=" + reasoningEffort);
+                LOG.d("启用思考模式: reasoning_effort={}", reasoningEffort);
             }
 
             JSONArray messages = new JSONArray();
@@ -1139,7 +1216,7 @@ public class HttpAiClient {
                     ctxMsg.put("content", formattedContent);
                     messages.put(ctxMsg);
                 }
-                Log.i(TAG, "Added " + contextMessages.size() + " context messages");
+                LOG.d("Added {} context messages", contextMessages.size());
             }
 
             // 当前用户消息（添加特殊标注）
@@ -1198,7 +1275,7 @@ public class HttpAiClient {
                 }
                 
                 userMsg.put("content", contentArray);
-                Log.d(TAG, "构建带图片的请求，图片数: " + imageBase64List.size());
+                LOG.d("构建带图片的请求，图片数: {}", imageBase64List.size());
             } else {
                 // 普通文本消息
                 userMsg.put("content", formattedCurrentMsg);
@@ -1225,15 +1302,25 @@ public class HttpAiClient {
                 // 日志中截断base64内容（200字符），但实际请求包保持完整
                 String jsonForLog = truncateBase64InJson(jsonBody.toString(), 200);
                 String requestLog = buildRequestLog(provider, model, apiUrl, apiKey, jsonForLog);
-                Log.d(TAG, "发送AI请求:\n" + requestLog);
+                LOG.d("发送AI请求:\n{}", requestLog);
                 AiLogManager.addLog(context, "AI请求\n" + requestLog);
             } else {
-                Log.d(TAG, "发送AI请求: " + provider + " / " + model);
+                LOG.d("发送AI请求: {} / {}", provider, model);
             }
 
-            getClient().newCall(request).enqueue(new Callback() {
+            Call aiCall = getClient().newCall(request);
+            if (callback instanceof CancellableAiCallback) {
+                ((CancellableAiCallback) callback).onCallCreated(aiCall);
+            }
+            aiCall.enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
+                    if (call.isCanceled()) {
+                        // 主动取消（选项条已不可见），不记录错误也不提示
+                        LOG.d("AI请求已取消: {}", model);
+                        callback.onFailure(e);
+                        return;
+                    }
                     String error = e.getMessage();
                     Log.e(TAG, "AI请求失败: " + error, e);
                     logError(context, provider, model, apiUrl, error);
@@ -1247,6 +1334,9 @@ public class HttpAiClient {
                 public void onResponse(Call call, Response response) throws IOException {
                     String responseBody = null;
                     try {
+                        // 先把限流响应头交给限流器（在回调之前，429 重试可以使用 Retry-After）
+                        ProviderRateLimits.onResponse(apiUrl, response);
+                        
                         if (!response.isSuccessful()) {
                             int code = response.code();
                             String error = "HTTP " + code + ": " + response.message();
@@ -1271,7 +1361,9 @@ public class HttpAiClient {
                         }
 
                         responseBody = response.body().string();
-                        Log.d(TAG, "AI响应: " + responseBody.substring(0, Math.min(200, responseBody.length())));
+                        if (LOG.isEnabled()) {
+                            LOG.d("AI响应: " + responseBody.substring(0, Math.min(200, responseBody.length())));
+                        }
 
                         // 解析JSON格式的响应
                         List<String> options = parseJsonResponse(responseBody);
@@ -1305,6 +1397,10 @@ public class HttpAiClient {
                         callback.onSuccess(options);
 
                     } catch (Exception e) {
+                        if (call.isCanceled()) {
+                            callback.onFailure(e);
+                            return;
+                        }
                         Log.e(TAG, "解析失败", e);
                         String error = "解析错误: " + e.getMessage();
                         if (!suppressToast) {
@@ -1355,7 +1451,7 @@ public class HttpAiClient {
             // 策略1: 直接包含options等字段
             result = parseOptionsJson(cleanedResponse);
             if (result != null && result.size() >= 3) {
-                Log.d(TAG, "解析成功: 直接JSON格式");
+                LOG.d("解析成功: 直接JSON格式");
                 return result;
             }
             
@@ -1367,7 +1463,7 @@ public class HttpAiClient {
             
         } catch (Exception e) {
             // 响应本身不是有效JSON，尝试其他策略
-            Log.d(TAG, "响应不是标准JSON，尝试其他解析策略: " + e.getMessage());
+            LOG.d("响应不是标准JSON，尝试其他解析策略: {}", e.getMessage());
         }
         
         // 策略3: 尝试从原始响应中提取有效的JSON对象
@@ -1449,7 +1545,7 @@ public class HttpAiClient {
             // 检查后面是否还有内容（可能是另一个JSON对象）
             String remaining = trimmed.substring(endIndex + 1).trim();
             if (remaining.startsWith("{")) {
-                Log.d(TAG, "检测到多个JSON对象拼接，只使用第一个");
+                LOG.d("检测到多个JSON对象拼接，只使用第一个");
                 return trimmed.substring(0, endIndex + 1);
             }
         }
@@ -1464,17 +1560,17 @@ public class HttpAiClient {
     private static List<String> parseOpenAiFormat(JSONObject jsonResponse) {
         try {
             if (!jsonResponse.has("choices")) {
-                Log.d(TAG, "parseOpenAiFormat: 没有choices字段");
+                LOG.d("parseOpenAiFormat: 没有choices字段");
                 return null;
             }
             
             JSONArray choices = jsonResponse.getJSONArray("choices");
             if (choices.length() == 0) {
-                Log.d(TAG, "parseOpenAiFormat: choices数组为空");
+                LOG.d("parseOpenAiFormat: choices数组为空");
                 return null;
             }
             
-            Log.d(TAG, "parseOpenAiFormat: 找到 " + choices.length() + " 个choices");
+            LOG.d("parseOpenAiFormat: 找到 {} 个choices", choices.length());
             
             // 遍历所有choices，找到有有效content的那个
             for (int i = 0; i < choices.length(); i++) {
@@ -1482,16 +1578,16 @@ public class HttpAiClient {
                 
                 // 检查finish_reason，跳过被截断的响应
                 String finishReason = choice.optString("finish_reason", "");
-                Log.d(TAG, "parseOpenAiFormat: choice[" + i + "] finish_reason=" + finishReason);
+                LOG.d("parseOpenAiFormat: choice[{}] finish_reason={}", i, finishReason);
                 
                 if ("length".equals(finishReason)) {
-                    Log.d(TAG, "跳过被截断的choice (finish_reason=length)");
+                    LOG.d("跳过被截断的choice (finish_reason=length)");
                     continue;
                 }
                 
                 // 获取message对象
                 if (!choice.has("message")) {
-                    Log.d(TAG, "parseOpenAiFormat: choice[" + i + "] 没有message字段");
+                    LOG.d("parseOpenAiFormat: choice[{}] 没有message字段", i);
                     continue;
                 }
                 
@@ -1506,20 +1602,22 @@ public class HttpAiClient {
                 }
                 
                 if (content.isEmpty()) {
-                    Log.d(TAG, "choice[" + i + "] content为空，跳过");
+                    LOG.d("choice[{}] content为空，跳过", i);
                     continue;
                 }
                 
-                Log.d(TAG, "parseOpenAiFormat: choice[" + i + "] content长度=" + content.length());
-                Log.d(TAG, "parseOpenAiFormat: content前100字符=" + content.substring(0, Math.min(100, content.length())));
+                LOG.d("parseOpenAiFormat: choice[{}] content长度={}", i, content.length());
+                if (LOG.isEnabled()) {
+                    LOG.d("parseOpenAiFormat: content前100字符=" + content.substring(0, Math.min(100, content.length())));
+                }
                 
                 // 从content中尝试多种解析策略
                 List<String> result = parseContentWithStrategies(content);
                 if (result != null && result.size() >= 3) {
-                    Log.d(TAG, "解析成功: OpenAI格式 choice[" + i + "], 选项数=" + result.size());
+                    LOG.d("解析成功: OpenAI格式 choice[{}], 选项数={}", i, result.size());
                     return result;
                 } else {
-                    Log.d(TAG, "parseOpenAiFormat: choice[" + i + "] parseContentWithStrategies返回null或不足3个");
+                    LOG.d("parseOpenAiFormat: choice[{}] parseContentWithStrategies返回null或不足3个", i);
                 }
             }
             
@@ -1549,7 +1647,7 @@ public class HttpAiClient {
                 // 尝试作为OpenAI格式解析
                 List<String> result = parseOpenAiFormat(json);
                 if (result != null && result.size() >= 3) {
-                    Log.d(TAG, "从拼接响应中提取成功");
+                    LOG.d("从拼接响应中提取成功");
                     return result;
                 }
                 
@@ -1634,34 +1732,34 @@ public class HttpAiClient {
      */
     private static List<String> parseContentWithStrategies(String content) {
         if (content == null || content.trim().isEmpty()) {
-            Log.d(TAG, "parseContentWithStrategies: content为空");
+            LOG.d("parseContentWithStrategies: content为空");
             return null;
         }
         
-        Log.d(TAG, "parseContentWithStrategies: 开始解析，content长度=" + content.length());
+        LOG.d("parseContentWithStrategies: 开始解析，content长度={}", content.length());
         
         List<String> result = null;
         
         // 策略A: 直接作为JSON解析（支持多种字段名）
         result = parseOptionsJson(content);
         if (result != null && result.size() >= 3) {
-            Log.d(TAG, "解析成功: content直接JSON, 选项数=" + result.size());
+            LOG.d("解析成功: content直接JSON, 选项数={}", result.size());
             return result;
         }
         
         // 策略B: 从Markdown代码块中提取JSON
         String markdownJson = extractJsonFromMarkdown(content);
         if (markdownJson != null) {
-            Log.d(TAG, "parseContentWithStrategies: 找到Markdown代码块，长度=" + markdownJson.length());
+            LOG.d("parseContentWithStrategies: 找到Markdown代码块，长度={}", markdownJson.length());
             result = parseOptionsJson(markdownJson);
             if (result != null && result.size() >= 3) {
-                Log.d(TAG, "解析成功: Markdown代码块, 选项数=" + result.size());
+                LOG.d("解析成功: Markdown代码块, 选项数={}", result.size());
                 return result;
             }
             // 尝试从不完整的JSON中提取选项
             result = extractOptionsFromIncompleteJson(markdownJson);
             if (result != null && result.size() >= 3) {
-                Log.d(TAG, "解析成功: 不完整Markdown JSON, 选项数=" + result.size());
+                LOG.d("解析成功: 不完整Markdown JSON, 选项数={}", result.size());
                 return result;
             }
         }
@@ -1671,13 +1769,13 @@ public class HttpAiClient {
         if (textJson != null) {
             result = parseOptionsJson(textJson);
             if (result != null && result.size() >= 3) {
-                Log.d(TAG, "解析成功: 混合文本JSON");
+                LOG.d("解析成功: 混合文本JSON");
                 return result;
             }
             // 尝试从不完整的JSON中提取选项
             result = extractOptionsFromIncompleteJson(textJson);
             if (result != null && result.size() >= 3) {
-                Log.d(TAG, "解析成功: 不完整混合文本JSON");
+                LOG.d("解析成功: 不完整混合文本JSON");
                 return result;
             }
         }
@@ -1685,35 +1783,35 @@ public class HttpAiClient {
         // 策略D: 尝试从整个content中提取不完整JSON的选项
         result = extractOptionsFromIncompleteJson(content);
         if (result != null && result.size() >= 3) {
-            Log.d(TAG, "解析成功: 不完整JSON提取");
+            LOG.d("解析成功: 不完整JSON提取");
             return result;
         }
         
         // 策略E: 从任意代码块中提取（更宽松的匹配）
         result = extractFromAnyCodeBlock(content);
         if (result != null && result.size() >= 3) {
-            Log.d(TAG, "解析成功: 任意代码块提取");
+            LOG.d("解析成功: 任意代码块提取");
             return result;
         }
         
         // 策略G: 旧格式（|||分隔）
         result = parseLegacyFormat(content);
         if (result != null && result.size() >= 3) {
-            Log.d(TAG, "解析成功: |||分隔格式");
+            LOG.d("解析成功: |||分隔格式");
             return result;
         }
         
         // 策略H: 编号/项目符号列表
         result = parseNumberedList(content);
         if (result != null && result.size() >= 3) {
-            Log.d(TAG, "解析成功: 编号列表格式");
+            LOG.d("解析成功: 编号列表格式");
             return result;
         }
         
         // 策略I: 纯文本行（最后的备选方案）
         result = parsePlainLines(content);
         if (result != null && result.size() >= 3) {
-            Log.d(TAG, "解析成功: 纯文本行格式");
+            LOG.d("解析成功: 纯文本行格式");
             return result;
         }
         
@@ -1803,7 +1901,7 @@ public class HttpAiClient {
         if (matcher.find()) {
             String extracted = matcher.group(1);
             if (extracted != null && !extracted.trim().isEmpty()) {
-                Log.d(TAG, "extractJsonFromMarkdown: 正则匹配成功，长度=" + extracted.length());
+                LOG.d("extractJsonFromMarkdown: 正则匹配成功，长度={}", extracted.length());
                 return extracted.trim();
             }
         }
@@ -1829,13 +1927,13 @@ public class HttpAiClient {
             if (endIndex != -1 && endIndex > contentStart) {
                 String extracted = content.substring(contentStart, endIndex).trim();
                 if (!extracted.isEmpty()) {
-                    Log.d(TAG, "extractJsonFromMarkdown: 手动提取成功，长度=" + extracted.length());
+                    LOG.d("extractJsonFromMarkdown: 手动提取成功，长度={}", extracted.length());
                     return extracted;
                 }
             }
         }
         
-        Log.d(TAG, "extractJsonFromMarkdown: 未找到Markdown代码块");
+        LOG.d("extractJsonFromMarkdown: 未找到Markdown代码块");
         return null;
     }
 
@@ -1879,7 +1977,7 @@ public class HttpAiClient {
             
             // 提取代码块内容
             String blockContent = content.substring(contentStart, blockEnd).trim();
-            Log.d(TAG, "extractFromAnyCodeBlock: 找到代码块，长度=" + blockContent.length());
+            LOG.d("extractFromAnyCodeBlock: 找到代码块，长度={}", blockContent.length());
             
             if (!blockContent.isEmpty()) {
                 // 尝试多种解析方式
@@ -1887,28 +1985,28 @@ public class HttpAiClient {
                 // 1. 直接作为JSON解析
                 List<String> result = parseOptionsJson(blockContent);
                 if (result != null && result.size() >= 3) {
-                    Log.d(TAG, "extractFromAnyCodeBlock: JSON解析成功");
+                    LOG.d("extractFromAnyCodeBlock: JSON解析成功");
                     return result;
                 }
                 
                 // 2. 从不完整JSON中提取
                 result = extractOptionsFromIncompleteJson(blockContent);
                 if (result != null && result.size() >= 3) {
-                    Log.d(TAG, "extractFromAnyCodeBlock: 不完整JSON提取成功");
+                    LOG.d("extractFromAnyCodeBlock: 不完整JSON提取成功");
                     return result;
                 }
                 
                 // 3. 作为编号列表解析
                 result = parseNumberedList(blockContent);
                 if (result != null && result.size() >= 3) {
-                    Log.d(TAG, "extractFromAnyCodeBlock: 编号列表解析成功");
+                    LOG.d("extractFromAnyCodeBlock: 编号列表解析成功");
                     return result;
                 }
                 
                 // 4. 作为纯文本行解析
                 result = parsePlainLines(blockContent);
                 if (result != null && result.size() >= 3) {
-                    Log.d(TAG, "extractFromAnyCodeBlock: 纯文本行解析成功");
+                    LOG.d("extractFromAnyCodeBlock: 纯文本行解析成功");
                     return result;
                 }
             }
@@ -2009,7 +2107,7 @@ public class HttpAiClient {
             
             return null;
         } catch (Exception e) {
-            Log.d(TAG, "parseOptionsJson失败: " + e.getMessage());
+            LOG.d("parseOptionsJson失败: {}", e.getMessage());
             return null;
         }
     }
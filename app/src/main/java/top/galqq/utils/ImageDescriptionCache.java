@@ -215,13 +215,16 @@ public class ImageDescriptionCache {
     }
     
     /**
-     * 清除所有缓存
+     * 清除所有缓存（包括图片元素缓存）
      */
     public static void clearAll() {
         synchronized (globalCache) {
             globalCache.evictAll();
         }
         conversationCacheMap.clear();
+        synchronized (imageElementCache) {
+            imageElementCache.evictAll();
+        }
         debugLog("清除所有图片描述缓存");
     }
     
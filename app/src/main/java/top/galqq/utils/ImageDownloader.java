@@ -57,15 +57,7 @@ public class ImageDownloader {
     /**
      * 调试日志输出（受 gal_debug_hook_log 配置开关控制）
      */
-    private static void debugLog(String message) {
-        try {
-            if (ConfigManager.isDebugHookLogEnabled()) {
-                XposedBridge.log(TAG + ": " + message);
-            }
-        } catch (Throwable ignored) {
-            // ConfigManager 未初始化时忽略
-        }
-    }
+    private static final LogHelper.Logger LOG = LogHelper.hookLogger(TAG);
     
     /**
      * 下载图片并转换为Base64
@@ -81,72 +73,76 @@ public class ImageDownloader {
      */
     public static String downloadAndConvertToBase64(ImageExtractor.ImageElement imageElement, Context context) {
         if (imageElement == null) {
-            debugLog("图片元素为空");
+            LOG.d("图片元素为空");
             return null;
         }
         
         // 【增强调试】打印完整的图片元素信息
-        debugLog("========== 开始处理图片下载 ==========");
-        debugLog("ImageElement 完整信息:");
-        debugLog("  fileName: " + imageElement.fileName);
-        debugLog("  fileSize: " + imageElement.fileSize);
-        debugLog("  width: " + imageElement.width);
-        debugLog("  height: " + imageElement.height);
-        debugLog("  md5: " + imageElement.md5);
-        debugLog("  fileUuid: " + imageElement.fileUuid);
-        debugLog("  imageUrl (originImageUrl): " + imageElement.imageUrl);
-        debugLog("  sourcePath: " + imageElement.sourcePath);
-        debugLog("  thumbPath: " + imageElement.thumbPath);
+        LOG.d("========== 开始处理图片下载 ==========");
+        LOG.d("ImageElement 完整信息:");
+        LOG.d("  fileName: {}", imageElement.fileName);
+        LOG.d("  fileSize: {}", imageElement.fileSize);
+        LOG.d("  width: {}", imageElement.width);
+        LOG.d("  height: {}", imageElement.height);
+        LOG.d("  md5: {}", imageElement.md5);
+        LOG.d("  fileUuid: {}", imageElement.fileUuid);
+        LOG.d("  imageUrl (originImageUrl): {}", imageElement.imageUrl);
+        LOG.d("  sourcePath: {}", imageElement.sourcePath);
+        LOG.d("  thumbPath: {}", imageElement.thumbPath);
         
         // ========== 优先级1: 尝试 sourcePath（原图本地路径）==========
         if (imageElement.sourcePath != null && !imageElement.sourcePath.isEmpty()) {
-            debugLog("★ [优先级1] 尝试 sourcePath: " + imageElement.sourcePath);
+            LOG.d("★ [优先级1] 尝试 sourcePath: {}", imageElement.sourcePath);
             java.io.File sourceFile = new java.io.File(imageElement.sourcePath);
             if (sourceFile.exists() && sourceFile.canRead()) {
-                debugLog("★ sourcePath 文件存在且可读，直接转换为Base64");
+                LOG.d("★ sourcePath 文件存在且可读，直接转换为Base64");
                 String base64 = fileToBase64(sourceFile);
                 if (base64 != null) {
-                    debugLog("★ sourcePath 转Base64成功，长度: " + base64.length());
+                    LOG.d("★ sourcePath 转Base64成功，长度: {}", base64.length());
                     return base64;
                 } else {
-                    debugLog("sourcePath 转Base64失败，继续尝试其他方式");
+                    LOG.d("sourcePath 转Base64失败，继续尝试其他方式");
                 }
             } else {
-                debugLog("sourcePath 文件不存在或不可读: exists=" + sourceFile.exists() + ", canRead=" + sourceFile.canRead());
+                LOG.d("sourcePath 文件不存在或不可读: exists={}, canRead={}", sourceFile.exists(), sourceFile.canRead());
             }
         } else {
-            debugLog("[优先级1] sourcePath 为空，跳过");
+            LOG.d("[优先级1] sourcePath 为空，跳过");
         }
         
         // ========== 优先级2: 尝试网络下载 ==========
-        debugLog("[优先级2] 尝试网络下载...");
+        LOG.d("[优先级2] 尝试网络下载...");
         
         // 【打印 RkeyHook 状态】
-        debugLog("RkeyHook 状态:");
-        debugLog("  rkey_group: " + (top.galqq.hook.RkeyHook.rkey_group != null ? 
-            top.galqq.hook.RkeyHook.rkey_group.substring(0, Math.min(50, top.galqq.hook.RkeyHook.rkey_group.length())) + "..." : "null"));
-        debugLog("  rkey_private: " + (top.galqq.hook.RkeyHook.rkey_private != null ? 
-            top.galqq.hook.RkeyHook.rkey_private.substring(0, Math.min(50, top.galqq.hook.RkeyHook.rkey_private.length())) + "..." : "null"));
-        debugLog("  hasValidRkey: " + top.galqq.hook.RkeyHook.hasValidRkey());
-        debugLog("  stats: " + top.galqq.hook.RkeyHook.getStats());
+        LOG.d("RkeyHook 状态:");
+        if (LOG.isEnabled()) {
+            LOG.d("  rkey_group: " + (top.galqq.hook.RkeyHook.rkey_group != null ? 
+                top.galqq.hook.RkeyHook.rkey_group.substring(0, Math.min(50, top.galqq.hook.RkeyHook.rkey_group.length())) + "..." : "null"));
+        }
+        if (LOG.isEnabled()) {
+            LOG.d("  rkey_private: " + (top.galqq.hook.RkeyHook.rkey_private != null ? 
+                top.galqq.hook.RkeyHook.rkey_private.substring(0, Math.min(50, top.galqq.hook.RkeyHook.rkey_private.length())) + "..." : "null"));
+        }
+        LOG.d("  hasValidRkey: {}", top.galqq.hook.RkeyHook.hasValidRkey());
+        LOG.d("  stats: {}", top.galqq.hook.RkeyHook.getStats());
         
         String originUrl = imageElement.imageUrl;
         String md5 = imageElement.md5;
         
         // 尝试网络下载
         if ((originUrl != null && !originUrl.isEmpty()) || (md5 != null && !md5.isEmpty())) {
-            debugLog("准备网络下载: originUrl=" + originUrl + ", md5=" + md5);
+            LOG.d("准备网络下载: originUrl={}, md5={}", originUrl, md5);
             
             try {
                 // 构建完整URL（支持 originUrl 为空时使用 MD5 构建备用 URL）
                 String fullUrl = buildFullUrl(originUrl, md5);
                 if (fullUrl != null) {
-                    debugLog("完整URL: " + fullUrl);
+                    LOG.d("完整URL: {}", fullUrl);
                     
                     // 下载图片到临时文件
                     File tempFile = downloadToTempFile(fullUrl, context);
                     if (tempFile != null) {
-                        debugLog("图片下载成功，临时文件: " + tempFile.getAbsolutePath());
+                        LOG.d("图片下载成功，临时文件: {}", tempFile.getAbsolutePath());
                         
                         // 转换为Base64
                         String base64 = fileToBase64(tempFile);
@@ -154,49 +150,49 @@ public class ImageDownloader {
                         // 删除临时文件
                         if (tempFile.exists()) {
                             boolean deleted = tempFile.delete();
-                            debugLog("删除临时文件: " + (deleted ? "成功" : "失败"));
+                            LOG.d("删除临时文件: {}", (deleted ? "成功" : "失败"));
                         }
                         
                         if (base64 != null) {
-                            debugLog("★ 网络下载转Base64成功，长度: " + base64.length());
+                            LOG.d("★ 网络下载转Base64成功，长度: {}", base64.length());
                             return base64;
                         } else {
-                            debugLog("网络下载转Base64失败，继续尝试兜底方式");
+                            LOG.d("网络下载转Base64失败，继续尝试兜底方式");
                         }
                     } else {
-                        debugLog("下载图片失败，继续尝试兜底方式");
+                        LOG.d("下载图片失败，继续尝试兜底方式");
                     }
                 } else {
-                    debugLog("构建完整URL失败，继续尝试兜底方式");
+                    LOG.d("构建完整URL失败，继续尝试兜底方式");
                 }
             } catch (Exception e) {
-                debugLog("网络下载异常: " + e.getMessage() + "，继续尝试兜底方式");
+                LOG.d("网络下载异常: {}，继续尝试兜底方式", e.getMessage());
             }
         } else {
-            debugLog("[优先级2] originUrl 和 md5 都为空，跳过网络下载");
+            LOG.d("[优先级2] originUrl 和 md5 都为空，跳过网络下载");
         }
         
         // ========== 优先级3: 尝试 thumbPath（缩略图兜底）==========
         if (imageElement.thumbPath != null && !imageElement.thumbPath.isEmpty()) {
-            debugLog("★ [优先级3-兜底] 尝试 thumbPath: " + imageElement.thumbPath);
+            LOG.d("★ [优先级3-兜底] 尝试 thumbPath: {}", imageElement.thumbPath);
             java.io.File thumbFile = new java.io.File(imageElement.thumbPath);
             if (thumbFile.exists() && thumbFile.canRead()) {
-                debugLog("★ thumbPath 文件存在且可读，直接转换为Base64");
+                LOG.d("★ thumbPath 文件存在且可读，直接转换为Base64");
                 String base64 = fileToBase64(thumbFile);
                 if (base64 != null) {
-                    debugLog("★ thumbPath 转Base64成功（兜底），长度: " + base64.length());
+                    LOG.d("★ thumbPath 转Base64成功（兜底），长度: {}", base64.length());
                     return base64;
                 } else {
-                    debugLog("thumbPath 转Base64失败");
+                    LOG.d("thumbPath 转Base64失败");
                 }
             } else {
-                debugLog("thumbPath 文件不存在或不可读: exists=" + thumbFile.exists() + ", canRead=" + thumbFile.canRead());
+                LOG.d("thumbPath 文件不存在或不可读: exists={}, canRead={}", thumbFile.exists(), thumbFile.canRead());
             }
         } else {
-            debugLog("[优先级3] thumbPath 为空，无法兜底");
+            LOG.d("[优先级3] thumbPath 为空，无法兜底");
         }
         
-        debugLog("========== 所有方式都失败，无法获取图片 ==========");
+        LOG.d("========== 所有方式都失败，无法获取图片 ==========");
         return null;
     }
 
@@ -209,12 +205,12 @@ public class ImageDownloader {
      * @return 完整URL
      */
     public static String buildFullUrl(String originUrl, String md5) {
-        debugLog("---------- buildFullUrl 开始 ----------");
-        debugLog("输入参数: originUrl=" + originUrl + ", md5=" + md5);
+        LOG.d("---------- buildFullUrl 开始 ----------");
+        LOG.d("输入参数: originUrl={}, md5={}", originUrl, md5);
         
         // 如果已经是完整URL，直接返回
         if (originUrl != null && (originUrl.startsWith("http://") || originUrl.startsWith("https://"))) {
-            debugLog("情况0: 已是完整URL，直接返回");
+            LOG.d("情况0: 已是完整URL，直接返回");
             return originUrl;
         }
         
@@ -222,47 +218,55 @@ public class ImageDownloader {
         if (originUrl == null || originUrl.isEmpty()) {
             if (md5 != null && !md5.isEmpty()) {
                 String url = LEGACY_BASE_URL + "/gchatpic_new/0/0-0-" + md5.toUpperCase() + "/0";
-                debugLog("情况1: originUrl为空，使用MD5构建旧版URL（不需要rkey）");
-                debugLog("构建的URL: " + url);
+                LOG.d("情况1: originUrl为空，使用MD5构建旧版URL（不需要rkey）");
+                LOG.d("构建的URL: {}", url);
                 return url;
             }
-            debugLog("情况1失败: originUrl和MD5都为空，无法构建URL");
+            LOG.d("情况1失败: originUrl和MD5都为空，无法构建URL");
             return null;
         }
         
         // 情况2：originUrl 以 /download 开头，需要 rkey（QQNT 新版）
         if (originUrl.startsWith("/download")) {
-            debugLog("情况2: QQNT新版URL格式（以/download开头）");
+            LOG.d("情况2: QQNT新版URL格式（以/download开头）");
             
             // 判断是群聊还是私聊图片
             // 注意：appid=1406 表示私聊图片，需要使用 private_rkey
             // 参考 NapCatQQ: const rkey = appid === '1406' ? rkeyData.private_rkey : rkeyData.group_rkey;
             boolean useGroupRkey = !originUrl.contains("appid=1406");
-            debugLog("  appid检测: " + (useGroupRkey ? "群聊图片(非1406)" : "私聊图片(appid=1406)"));
+            LOG.d("  appid检测: {}", (useGroupRkey ? "群聊图片(非1406)" : "私聊图片(appid=1406)"));
             
             // 获取对应的 rkey
-            debugLog("  开始获取rkey...");
+            LOG.d("  开始获取rkey...");
             String rkey = getRkey(useGroupRkey);
-            debugLog("  获取到的rkey: " + (rkey != null ? rkey.substring(0, Math.min(80, rkey.length())) + "..." : "null"));
+            if (LOG.isEnabled()) {
+                LOG.d("  获取到的rkey: " + (rkey != null ? rkey.substring(0, Math.min(80, rkey.length())) + "..." : "null"));
+            }
             
             String url = BASE_URL + originUrl;
-            debugLog("  基础URL: " + url.substring(0, Math.min(100, url.length())) + "...");
+            if (LOG.isEnabled()) {
+                LOG.d("  基础URL: " + url.substring(0, Math.min(100, url.length())) + "...");
+            }
             
             if (rkey != null && !rkey.isEmpty()) {
                 // QAuxiliary 的 rkey 已经包含 &rkey= 前缀，直接拼接
                 url += rkey;
-                debugLog("  最终URL（带rkey）: " + url.substring(0, Math.min(150, url.length())) + "...");
+                if (LOG.isEnabled()) {
+                    LOG.d("  最终URL（带rkey）: " + url.substring(0, Math.min(150, url.length())) + "...");
+                }
             } else {
-                debugLog("  ⚠ 获取rkey失败，URL不带rkey（可能无法访问）");
-                debugLog("  最终URL（无rkey）: " + url.substring(0, Math.min(150, url.length())) + "...");
+                LOG.d("  ⚠ 获取rkey失败，URL不带rkey（可能无法访问）");
+                if (LOG.isEnabled()) {
+                    LOG.d("  最终URL（无rkey）: " + url.substring(0, Math.min(150, url.length())) + "...");
+                }
             }
             return url;
         }
         
         // 情况3：旧版 URL（不以 /download 开头），使用 gchat.qpic.cn，不需要 rkey
         String url = LEGACY_BASE_URL + originUrl;
-        debugLog("情况3: 旧版URL格式（不以/download开头），不需要rkey");
-        debugLog("构建的URL: " + url);
+        LOG.d("情况3: 旧版URL格式（不以/download开头），不需要rkey");
+        LOG.d("构建的URL: {}", url);
         return url;
     }
     
@@ -283,48 +287,58 @@ public class ImageDownloader {
      * @return rkey字符串
      */
     private static String getRkey(boolean isGroup) {
-        debugLog("    [getRkey] 开始获取rkey, isGroup=" + isGroup);
+        LOG.d("    [getRkey] 开始获取rkey, isGroup={}", isGroup);
         
         // 优先使用 RkeyHook 获取的 rkey（和 QAuxiliary 一样直接访问静态变量）
-        debugLog("    [getRkey] 检查RkeyHook静态变量...");
-        debugLog("    [getRkey]   RkeyHook.rkey_group = " + (RkeyHook.rkey_group != null ? 
-            "'" + RkeyHook.rkey_group.substring(0, Math.min(50, RkeyHook.rkey_group.length())) + "...'" : "null"));
-        debugLog("    [getRkey]   RkeyHook.rkey_private = " + (RkeyHook.rkey_private != null ? 
-            "'" + RkeyHook.rkey_private.substring(0, Math.min(50, RkeyHook.rkey_private.length())) + "...'" : "null"));
+        LOG.d("    [getRkey] 检查RkeyHook静态变量...");
+        if (LOG.isEnabled()) {
+            LOG.d("    [getRkey]   RkeyHook.rkey_group = " + (RkeyHook.rkey_group != null ? 
+                "'" + RkeyHook.rkey_group.substring(0, Math.min(50, RkeyHook.rkey_group.length())) + "...'" : "null"));
+        }
+        if (LOG.isEnabled()) {
+            LOG.d("    [getRkey]   RkeyHook.rkey_private = " + (RkeyHook.rkey_private != null ? 
+                "'" + RkeyHook.rkey_private.substring(0, Math.min(50, RkeyHook.rkey_private.length())) + "...'" : "null"));
+        }
         
         String hookedRkey = isGroup ? RkeyHook.rkey_group : RkeyHook.rkey_private;
         if (hookedRkey != null && !hookedRkey.isEmpty()) {
-            debugLog("    [getRkey] ✓ 使用RkeyHook获取的rkey: " + (isGroup ? "group" : "private"));
+            LOG.d("    [getRkey] ✓ 使用RkeyHook获取的rkey: {}", (isGroup ? "group" : "private"));
             return hookedRkey;
         }
-        debugLog("    [getRkey] RkeyHook中没有有效的rkey");
+        LOG.d("    [getRkey] RkeyHook中没有有效的rkey");
         
         // 检查 API 缓存是否有效
-        debugLog("    [getRkey] 检查API缓存...");
-        debugLog("    [getRkey]   当前时间: " + System.currentTimeMillis());
-        debugLog("    [getRkey]   缓存过期时间: " + rkeyExpireTime);
-        debugLog("    [getRkey]   缓存是否有效: " + (System.currentTimeMillis() < rkeyExpireTime));
-        debugLog("    [getRkey]   cachedGroupRkey = " + (cachedGroupRkey != null ? 
-            "'" + cachedGroupRkey.substring(0, Math.min(50, cachedGroupRkey.length())) + "...'" : "null"));
-        debugLog("    [getRkey]   cachedPrivateRkey = " + (cachedPrivateRkey != null ? 
-            "'" + cachedPrivateRkey.substring(0, Math.min(50, cachedPrivateRkey.length())) + "...'" : "null"));
+        LOG.d("    [getRkey] 检查API缓存...");
+        LOG.d("    [getRkey]   当前时间: {}", System.currentTimeMillis());
+        LOG.d("    [getRkey]   缓存过期时间: {}", rkeyExpireTime);
+        LOG.d("    [getRkey]   缓存是否有效: {}", (System.currentTimeMillis() < rkeyExpireTime));
+        if (LOG.isEnabled()) {
+            LOG.d("    [getRkey]   cachedGroupRkey = " + (cachedGroupRkey != null ? 
+                "'" + cachedGroupRkey.substring(0, Math.min(50, cachedGroupRkey.length())) + "...'" : "null"));
+        }
+        if (LOG.isEnabled()) {
+            LOG.d("    [getRkey]   cachedPrivateRkey = " + (cachedPrivateRkey != null ? 
+                "'" + cachedPrivateRkey.substring(0, Math.min(50, cachedPrivateRkey.length())) + "...'" : "null"));
+        }
         
         if (System.currentTimeMillis() < rkeyExpireTime) {
             String cached = isGroup ? cachedGroupRkey : cachedPrivateRkey;
             if (cached != null && !cached.isEmpty()) {
-                debugLog("    [getRkey] ✓ 使用API缓存的rkey: " + (isGroup ? "group" : "private"));
+                LOG.d("    [getRkey] ✓ 使用API缓存的rkey: {}", (isGroup ? "group" : "private"));
                 return cached;
             }
         }
-        debugLog("    [getRkey] API缓存无效或为空");
+        LOG.d("    [getRkey] API缓存无效或为空");
         
         // 从兜底API获取rkey
-        debugLog("    [getRkey] 尝试从兜底API获取rkey...");
+        LOG.d("    [getRkey] 尝试从兜底API获取rkey...");
         fetchRkeyFromApi();
         
         String result = isGroup ? cachedGroupRkey : cachedPrivateRkey;
-        debugLog("    [getRkey] API获取结果: " + (result != null ? 
-            "'" + result.substring(0, Math.min(50, result.length())) + "...'" : "null"));
+        if (LOG.isEnabled()) {
+            LOG.d("    [getRkey] API获取结果: " + (result != null ? 
+                "'" + result.substring(0, Math.min(50, result.length())) + "...'" : "null"));
+        }
         
         return result;
     }
@@ -351,12 +365,12 @@ public class ImageDownloader {
         // 尝试多个服务器
         for (String apiUrl : RKEY_API_URLS) {
             if (tryFetchRkeyFromUrl(apiUrl)) {
-                debugLog("成功从 " + apiUrl + " 获取rkey");
+                LOG.d("成功从 {} 获取rkey", apiUrl);
                 return;
             }
         }
         
-        debugLog("所有rkey API都失败了");
+        LOG.d("所有rkey API都失败了");
     }
     
     /**
@@ -365,7 +379,7 @@ public class ImageDownloader {
     private static boolean tryFetchRkeyFromUrl(String apiUrl) {
         HttpURLConnection conn = null;
         try {
-            debugLog("请求rkey API: " + apiUrl);
+            LOG.d("请求rkey API: {}", apiUrl);
             
             URL url = new URL(apiUrl);
             conn = (HttpURLConnection) url.openConnection();
@@ -375,7 +389,7 @@ public class ImageDownloader {
             conn.setRequestProperty("User-Agent", "GalQQ/1.0");
             
             int responseCode = conn.getResponseCode();
-            debugLog("rkey API响应码: " + responseCode);
+            LOG.d("rkey API响应码: {}", responseCode);
             
             if (responseCode == HttpURLConnection.HTTP_OK) {
                 InputStream is = conn.getInputStream();
@@ -388,17 +402,17 @@ public class ImageDownloader {
                 is.close();
                 
                 String response = baos.toString("UTF-8");
-                debugLog("rkey API响应: " + response);
+                LOG.d("rkey API响应: {}", response);
                 
                 // 解析JSON响应
                 return parseRkeyResponse(response);
             } else {
-                debugLog("rkey API请求失败: " + responseCode);
+                LOG.d("rkey API请求失败: {}", responseCode);
                 return false;
             }
             
         } catch (Exception e) {
-            debugLog("获取rkey异常: " + e.getMessage());
+            LOG.d("获取rkey异常: {}", e.getMessage());
             return false;
         } finally {
             if (conn != null) {
@@ -438,7 +452,7 @@ public class ImageDownloader {
             
             // 检查是否获取到了 rkey
             if (privateRkey == null && groupRkey == null) {
-                debugLog("响应中没有找到 rkey");
+                LOG.d("响应中没有找到 rkey");
                 return false;
             }
             
@@ -449,7 +463,9 @@ public class ImageDownloader {
                     privateRkey = "&rkey=" + privateRkey;
                 }
                 cachedPrivateRkey = privateRkey;
-                debugLog("获取到private_rkey: " + cachedPrivateRkey.substring(0, Math.min(50, cachedPrivateRkey.length())) + "...");
+                if (LOG.isEnabled()) {
+                    LOG.d("获取到private_rkey: " + cachedPrivateRkey.substring(0, Math.min(50, cachedPrivateRkey.length())) + "...");
+                }
             }
             
             if (groupRkey != null) {
@@ -458,7 +474,9 @@ public class ImageDownloader {
                     groupRkey = "&rkey=" + groupRkey;
                 }
                 cachedGroupRkey = groupRkey;
-                debugLog("获取到group_rkey: " + cachedGroupRkey.substring(0, Math.min(50, cachedGroupRkey.length())) + "...");
+                if (LOG.isEnabled()) {
+                    LOG.d("获取到group_rkey: " + cachedGroupRkey.substring(0, Math.min(50, cachedGroupRkey.length())) + "...");
+                }
             }
             
             // 获取过期时间
@@ -466,7 +484,7 @@ public class ImageDownloader {
                 long expiredTime = json.getLong("expired_time");
                 // 转换为毫秒，并提前5分钟过期以确保安全
                 rkeyExpireTime = expiredTime * 1000 - TimeUnit.MINUTES.toMillis(5);
-                debugLog("rkey过期时间: " + expiredTime);
+                LOG.d("rkey过期时间: {}", expiredTime);
             } else {
                 // 默认缓存1小时
                 rkeyExpireTime = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
@@ -475,7 +493,7 @@ public class ImageDownloader {
             return cachedPrivateRkey != null || cachedGroupRkey != null;
             
         } catch (Exception e) {
-            debugLog("解析rkey响应失败: " + e.getMessage());
+            LOG.d("解析rkey响应失败: {}", e.getMessage());
             return false;
         }
     }
@@ -501,14 +519,14 @@ public class ImageDownloader {
             File externalDir = context.getExternalFilesDir(null);
             if (externalDir != null && externalDir.canWrite()) {
                 galqqCacheDir = new File(externalDir, "galqq_images");
-                debugLog("使用外部存储目录: " + galqqCacheDir.getAbsolutePath());
+                LOG.d("使用外部存储目录: {}", galqqCacheDir.getAbsolutePath());
             }
             
             // 如果外部存储不可用，使用内部缓存目录
             if (galqqCacheDir == null || (!galqqCacheDir.exists() && !galqqCacheDir.mkdirs())) {
                 File cacheDir = context.getCacheDir();
                 galqqCacheDir = new File(cacheDir, "galqq_images");
-                debugLog("使用内部缓存目录: " + galqqCacheDir.getAbsolutePath());
+                LOG.d("使用内部缓存目录: {}", galqqCacheDir.getAbsolutePath());
             }
             
             if (!galqqCacheDir.exists()) {
@@ -516,7 +534,7 @@ public class ImageDownloader {
             }
             
             tempFile = new File(galqqCacheDir, "img_" + System.currentTimeMillis() + ".tmp");
-            debugLog("临时文件路径: " + tempFile.getAbsolutePath());
+            LOG.d("临时文件路径: {}", tempFile.getAbsolutePath());
             
             // 建立连接
             URL url = new URL(imageUrl);
@@ -529,21 +547,21 @@ public class ImageDownloader {
             conn.setInstanceFollowRedirects(true);
             
             int responseCode = conn.getResponseCode();
-            debugLog("图片下载响应码: " + responseCode);
+            LOG.d("图片下载响应码: {}", responseCode);
             
             if (responseCode != HttpURLConnection.HTTP_OK) {
-                debugLog("图片下载失败，HTTP状态码: " + responseCode);
+                LOG.d("图片下载失败，HTTP状态码: {}", responseCode);
                 return null;
             }
             
             // 获取内容长度
             int contentLength = conn.getContentLength();
-            debugLog("图片大小: " + contentLength + " bytes");
+            LOG.d("图片大小: {} bytes", contentLength);
             
             // 检查文件大小限制（默认2MB）
             int maxSize = ConfigManager.getInt(ConfigManager.KEY_IMAGE_MAX_SIZE, ConfigManager.DEFAULT_IMAGE_MAX_SIZE) * 1024;
             if (contentLength > maxSize) {
-                debugLog("图片太大，跳过下载: " + contentLength + " > " + maxSize);
+                LOG.d("图片太大，跳过下载: {} > {}", contentLength, maxSize);
                 return null;
             }
             
@@ -561,12 +579,12 @@ public class ImageDownloader {
             }
             
             fos.flush();
-            debugLog("图片下载完成，实际大小: " + totalRead + " bytes");
+            LOG.d("图片下载完成，实际大小: {} bytes", totalRead);
             
             return tempFile;
             
         } catch (Exception e) {
-            debugLog("下载图片异常: " + e.getMessage());
+            LOG.d("下载图片异常: {}", e.getMessage());
             // 清理临时文件
             if (tempFile != null && tempFile.exists()) {
                 tempFile.delete();
@@ -601,13 +619,13 @@ public class ImageDownloader {
             int read = fis.read(bytes);
             
             if (read != bytes.length) {
-                debugLog("文件读取不完整: " + read + "/" + bytes.length);
+                LOG.d("文件读取不完整: {}/{}", read, bytes.length);
             }
             
             return Base64.encodeToString(bytes, Base64.NO_WRAP);
             
         } catch (Exception e) {
-            debugLog("文件转Base64异常: " + e.getMessage());
+            LOG.d("文件转Base64异常: {}", e.getMessage());
             return null;
         } finally {
             try {
@@ -624,7 +642,7 @@ public class ImageDownloader {
      * @param privateRkey 私聊rkey
      */
     public static void setRkey(String groupRkey, String privateRkey) {
-        debugLog("手动设置rkey - group: " + groupRkey + ", private: " + privateRkey);
+        LOG.d("手动设置rkey - group: {}, private: {}", groupRkey, privateRkey);
         cachedGroupRkey = groupRkey;
         cachedPrivateRkey = privateRkey;
         // 设置1小时过期
@@ -635,7 +653,7 @@ public class ImageDownloader {
      * 清除rkey缓存
      */
     public static void clearRkeyCache() {
-        debugLog("清除rkey缓存");
+        LOG.d("清除rkey缓存");
         cachedGroupRkey = null;
         cachedPrivateRkey = null;
         rkeyExpireTime = 0;
@@ -690,7 +708,7 @@ public class ImageDownloader {
             }
             
         } catch (Exception e) {
-            debugLog("清理临时文件异常: " + e.getMessage());
+            LOG.d("清理临时文件异常: {}", e.getMessage());
         }
     }
     
@@ -720,7 +738,7 @@ public class ImageDownloader {
         }
         
         if (deleted > 0) {
-            debugLog("清理了 " + deleted + " 个过期临时文件: " + dir.getAbsolutePath());
+            LOG.d("清理了 {} 个过期临时文件: {}", deleted, dir.getAbsolutePath());
         }
     }
     
@@ -735,13 +753,13 @@ public class ImageDownloader {
             return null;
         }
         
-        debugLog("开始通过URL下载图片: " + imageUrl);
+        LOG.d("开始通过URL下载图片: {}", imageUrl);
         
         try {
             // 创建临时文件
             File tempFile = downloadToTempFile(imageUrl, context);
             if (tempFile == null || !tempFile.exists()) {
-                debugLog("下载失败或文件不存在");
+                LOG.d("下载失败或文件不存在");
                 return null;
             }
             
@@ -751,16 +769,16 @@ public class ImageDownloader {
             // 清理临时文件
             try {
                 if (tempFile.delete()) {
-                    debugLog("临时文件已删除: " + tempFile.getName());
+                    LOG.d("临时文件已删除: {}", tempFile.getName());
                 }
             } catch (Exception e) {
-                debugLog("删除临时文件失败: " + e.getMessage());
+                LOG.d("删除临时文件失败: {}", e.getMessage());
             }
             
             return base64;
             
         } catch (Exception e) {
-            debugLog("下载图片异常: " + e.getMessage());
+            LOG.d("下载图片异常: {}", e.getMessage());
             return null;
         }
     }
@@ -3,7 +3,6 @@ package top.galqq.utils;
 import java.util.ArrayList;
 import java.util.List;
 import de.robv.android.xposed.XposedBridge;
-import de.robv.android.xposed.XposedHelpers;
 
 /**
  * 图片提取器 - 从QQ消息中提取图片和表情包元素
@@ -22,7 +21,7 @@ public class ImageExtractor {
         
         try {
             // 获取elements列表
-            List<?> elements = (List<?>) XposedHelpers.getObjectField(msgRecord, "elements");
+            List<?> elements = MsgRecordAccessor.getElements(msgRecord);
             if (elements == null || elements.isEmpty()) {
                 return images;
             }
@@ -30,14 +29,14 @@ public class ImageExtractor {
             // 遍历每个element
             for (Object element : elements) {
                 try {
-                    // 检查elementType是否为2(图片)
-                    int elementType = XposedHelpers.getIntField(element, "elementType");
-                    if (elementType != 2) {
+                    // 检查elementType是否为2(图片)（按元素类缓存字段句柄，不再抛异常试探）
+                    int elementType = MsgElementClassifier.getElementType(element);
+                    if (elementType != MsgElementClassifier.ELEMENT_PIC) {
                         continue;
                     }
                     
                     // 获取picElement
-                    Object picElement = XposedHelpers.getObjectField(element, "picElement");
+                    Object picElement = MsgElementClassifier.getPicElement(element);
                     if (picElement == null) {
                         continue;
                     }
@@ -114,7 +113,7 @@ public class ImageExtractor {
         List<EmojiElement> emojis = new ArrayList<>();
         
         try {
-            List<?> elements = (List<?>) XposedHelpers.getObjectField(msgRecord, "elements");
+            List<?> elements = MsgRecordAccessor.getElements(msgRecord);
             if (elements == null || elements.isEmpty()) {
                 return emojis;
             }
@@ -122,7 +121,7 @@ public class ImageExtractor {
             for (Object element : elements) {
                 try {
                     // 检查系统表情
-                    Object faceElement = XposedHelpers.getObjectField(element, "faceElement");
+                    Object faceElement = MsgElementClassifier.getFaceElement(element);
                     if (faceElement != null) {
                         EmojiElement emoji = new EmojiElement();
                         // TODO: 等待表情包数据结构确认后实现
@@ -134,7 +133,7 @@ public class ImageExtractor {
                     }
                     
                     // 检查商城表情包
-                    Object marketFaceElement = XposedHelpers.getObjectField(element, "marketFaceElement");
+                    Object marketFaceElement = MsgElementClassifier.getMarketFaceElement(element);
                     if (marketFaceElement != null) {
                         EmojiElement emoji = new EmojiElement();
                         // TODO: 等待表情包数据结构确认后实现
@@ -238,37 +237,24 @@ public class ImageExtractor {
     }
     
     /**
-     * 安全获取String字段
+     * 安全获取String字段（字段句柄按类缓存，字段不存在时返回null）
      */
     private static String getStringField(Object obj, String fieldName) {
-        try {
-            Object value = XposedHelpers.getObjectField(obj, fieldName);
-            return value != null ? String.valueOf(value) : null;
-        } catch (Throwable t) {
-            return null;
-        }
+        return MsgElementClassifier.getString(obj, fieldName);
     }
     
     /**
      * 安全获取int字段
      */
     private static int getIntField(Object obj, String fieldName) {
-        try {
-            return XposedHelpers.getIntField(obj, fieldName);
-        } catch (Throwable t) {
-            return 0;
-        }
+        return MsgElementClassifier.getInt(obj, fieldName);
     }
     
     /**
      * 安全获取long字段
      */
     private static long getLongField(Object obj, String fieldName) {
-        try {
-            return XposedHelpers.getLongField(obj, fieldName);
-        } catch (Throwable t) {
-            return 0L;
-        }
+        return MsgElementClassifier.getLong(obj, fieldName);
     }
     
     /**
@@ -278,7 +264,7 @@ public class ImageExtractor {
     @SuppressWarnings("unchecked")
     private static String getThumbPathFromMap(Object picElement) {
         try {
-            Object thumbPathObj = XposedHelpers.getObjectField(picElement, "thumbPath");
+            Object thumbPathObj = MsgElementClassifier.getObject(picElement, "thumbPath");
             if (thumbPathObj == null) {
                 return null;
             }
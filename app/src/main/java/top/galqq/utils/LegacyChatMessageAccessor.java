@@ -0,0 +1,98 @@
+package top.galqq.utils;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 旧版（非 QQNT）ChatMessage 字段访问器
+ *
+ * 与 {@link MsgRecordAccessor} 相同：每个运行时类只解析一次 Field 句柄，
+ * getView 时一次性读取选项条需要的字段，不再每次通过 XposedHelpers 按名称查找。
+ */
+public class LegacyChatMessageAccessor {
+
+    // 运行时类 -> 已解析的访问器
+    private static final Map<Class<?>, LegacyChatMessageAccessor> accessorCache = new ConcurrentHashMap<>();
+
+    private final Field fIsSend;
+    private final Field fMsg;
+    private final Field fUniseq;
+    private final Field fFriendUin;
+
+    private LegacyChatMessageAccessor(Class<?> clazz) {
+        fIsSend = findField(clazz, "isSend");
+        fMsg = findField(clazz, "msg");
+        fUniseq = findField(clazz, "uniseq");
+        fFriendUin = findField(clazz, "frienduin");
+    }
+
+    private static LegacyChatMessageAccessor forClass(Class<?> clazz) {
+        LegacyChatMessageAccessor accessor = accessorCache.get(clazz);
+        if (accessor == null) {
+            accessor = new LegacyChatMessageAccessor(clazz);
+            LegacyChatMessageAccessor existing = accessorCache.putIfAbsent(clazz, accessor);
+            if (existing != null) {
+                accessor = existing;
+            }
+        }
+        return accessor;
+    }
+
+    /**
+     * 一次性读取 ChatMessage 的常用字段
+     * @return 字段快照，chatMessage 为 null 时返回 null
+     */
+    public static Fields read(Object chatMessage) {
+        if (chatMessage == null) {
+            return null;
+        }
+        LegacyChatMessageAccessor accessor = forClass(chatMessage.getClass());
+        Fields f = new Fields();
+        try {
+            f.isSend = accessor.fIsSend != null && accessor.fIsSend.getBoolean(chatMessage);
+        } catch (Throwable ignored) {}
+        Object msg = getRaw(accessor.fMsg, chatMessage);
+        f.msg = msg != null ? String.valueOf(msg) : null;
+        Object uniseq = getRaw(accessor.fUniseq, chatMessage);
+        f.msgId = uniseq != null && !"0".equals(String.valueOf(uniseq)) ? String.valueOf(uniseq) : null;
+        Object friendUin = getRaw(accessor.fFriendUin, chatMessage);
+        f.conversationId = friendUin != null ? String.valueOf(friendUin) : null;
+        return f;
+    }
+
+    private static Object getRaw(Field field, Object obj) {
+        if (field == null) return null;
+        try {
+            return field.get(obj);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private static Field findField(Class<?> clazz, String name) {
+        Class<?> current = clazz;
+        while (current != null && current != Object.class) {
+            try {
+                Field field = current.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException ignored) {
+                current = current.getSuperclass();
+            } catch (Throwable t) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * ChatMessage 字段快照
+     */
+    public static class Fields {
+        public boolean isSend;           // 自己发送的消息
+        public String msg;               // 消息文本
+        public String msgId;             // uniseq（用于缓存键），缺失时为 null
+        public String conversationId;    // frienduin（好友QQ或群号）
+    }
+}
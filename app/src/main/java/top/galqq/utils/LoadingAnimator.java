@@ -0,0 +1,169 @@
+package top.galqq.utils;
+
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.TextView;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 共享的「加载中...」动画
+ *
+ * 原先每个加载中的选项条都有自己的 Handler 循环，每 400ms 重建一次字符串并 setText，
+ * 待完成的气泡一多，主线程每秒被唤醒几十次。这里所有加载文字共用一个 Choreographer 帧回调，
+ * 一次回调更新全部，且只在点数变化时才 setText。
+ *
+ * - 从窗口分离（滑出屏幕、被缓存）的文字暂停，重新挂上窗口时自动恢复
+ * - 仍在窗口上但暂时不可见（父容器被隐藏）的文字暂停，下次绘制时发现重新可见就恢复
+ * - 被移除（加载完成后子 View 被回收）的文字永久注销
+ * - 没有活动中的文字时不再注册帧回调，空闲的聊天界面没有任何唤醒
+ *
+ * 只能在主线程调用。
+ */
+public final class LoadingAnimator {
+
+    // 点数变化间隔（与原先的 400ms 一致）
+    private static final long STEP_MS = 400;
+    private static final long STEP_NANOS = STEP_MS * 1_000_000L;
+    // 动画周期：0->1->2->3->2->1->0
+    private static final int CYCLE = 6;
+
+    private static final List<Entry> active = new ArrayList<>();
+    private static boolean scheduled = false;
+    private static final Choreographer.FrameCallback frameCallback = LoadingAnimator::doFrame;
+
+    private LoadingAnimator() {}
+
+    /**
+     * 开始动画
+     * @param view 加载文字（不要是视图池中的 TextView，注销前不能被复用）
+     * @param baseText 不含点的文字，例如「加载中」
+     */
+    public static void start(TextView view, String baseText) {
+        view.setText(baseText);
+        Entry entry = new Entry(view, baseText);
+        view.addOnAttachStateChangeListener(entry);
+        // 尚未挂到窗口时等 onViewAttachedToWindow 再激活
+        if (view.isAttachedToWindow()) {
+            entry.activate();
+        }
+    }
+
+    private static void scheduleFrame() {
+        if (!scheduled && !active.isEmpty()) {
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallbackDelayed(frameCallback, STEP_MS);
+        }
+    }
+
+    private static void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        // 所有文字共用同一相位，同一帧内一起变化
+        int phase = (int) ((frameTimeNanos / STEP_NANOS) % CYCLE);
+        int dots = phase <= 3 ? phase : CYCLE - phase;
+        for (int i = active.size() - 1; i >= 0; i--) {
+            Entry entry = active.get(i);
+            TextView view = entry.viewRef.get();
+            if (view == null || view.getParent() == null) {
+                // 已移除：永久注销
+                active.remove(i);
+                entry.dispose(view);
+                continue;
+            }
+            if (!view.isShown()) {
+                // 暂时被隐藏：暂停，重新可见后恢复
+                active.remove(i);
+                entry.pauseUntilShown(view);
+                continue;
+            }
+            if (entry.lastDots != dots) {
+                entry.lastDots = dots;
+                view.setText(entry.textFor(dots));
+            }
+        }
+        scheduleFrame();
+    }
+
+    private static final class Entry implements View.OnAttachStateChangeListener, ViewTreeObserver.OnPreDrawListener {
+        final WeakReference<TextView> viewRef;
+        final String[] texts = new String[4];
+        int lastDots = 0;
+        boolean disposed = false;
+        // 因不可见而暂停时监听绘制的 ViewTreeObserver
+        ViewTreeObserver pausedObserver;
+
+        Entry(TextView view, String baseText) {
+            this.viewRef = new WeakReference<>(view);
+            StringBuilder sb = new StringBuilder(baseText);
+            for (int i = 0; i < texts.length; i++) {
+                texts[i] = sb.toString();
+                sb.append('.');
+            }
+        }
+
+        String textFor(int dots) {
+            return texts[dots];
+        }
+
+        void activate() {
+            if (!disposed && !active.contains(this)) {
+                active.add(this);
+                scheduleFrame();
+            }
+        }
+
+        void dispose(TextView view) {
+            disposed = true;
+            stopWatchingDraw();
+            if (view != null) {
+                view.removeOnAttachStateChangeListener(this);
+            }
+        }
+
+        /**
+         * 不可见时暂停：只监听绘制（父容器重新显示会触发一次绘制），不占用帧回调
+         */
+        void pauseUntilShown(TextView view) {
+            if (pausedObserver == null) {
+                pausedObserver = view.getViewTreeObserver();
+                pausedObserver.addOnPreDrawListener(this);
+            }
+        }
+
+        private void stopWatchingDraw() {
+            if (pausedObserver != null) {
+                if (pausedObserver.isAlive()) {
+                    pausedObserver.removeOnPreDrawListener(this);
+                }
+                pausedObserver = null;
+            }
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            TextView view = viewRef.get();
+            if (view == null) {
+                stopWatchingDraw();
+            } else if (view.isShown()) {
+                stopWatchingDraw();
+                activate();
+            }
+            return true;
+        }
+
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            activate();
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            // 暂停（被移除的文字不会再挂回窗口，监听器随 View 一起回收）
+            active.remove(this);
+            stopWatchingDraw();
+        }
+    }
+}
@@ -1,14 +1,182 @@
 package top.galqq.utils;
 
+import java.util.function.Supplier;
+
 import de.robv.android.xposed.XposedBridge;
 import top.galqq.config.ConfigManager;
 
 /**
  * 统一的日志工具类
  * 所有调试日志都应该通过这个类输出，以便统一控制
+ *
+ * 调试日志通过 {@link Logger} 输出，先检查开关再格式化：关闭时 Supplier 不会被调用，
+ * 带参数的 {@code "{}"} 占位符也不会拼接，热路径上关闭的日志不产生任何字符串。
+ * 参数超过三个时请先用 {@link Logger#isEnabled()} 判断（避免可变参数数组）。
  */
 public class LogHelper {
     
+    // 日志开关通道
+    private static final int CHANNEL_VERBOSE = 0;  // gal_verbose_log（详细日志）
+    private static final int CHANNEL_HOOK = 1;     // gal_debug_hook_log（调试Hook日志）
+    
+    // 开关缓存：日志检查在绑定热路径上，不每次都读 MMKV
+    private static final long SWITCH_CACHE_MS = 2000;
+    private static volatile boolean sHookEnabled = false;
+    private static volatile long sHookCheckedAt = 0;
+    
+    /**
+     * 调试日志记录器（按类创建一个，作为静态常量持有）
+     */
+    public static final class Logger {
+        private final String tag;
+        private final String prefix;
+        private final int channel;
+        
+        private Logger(String tag, int channel) {
+            this.tag = tag;
+            this.prefix = tag != null ? tag + ": " : null;
+            this.channel = channel;
+        }
+        
+        /**
+         * 日志是否开启（构造昂贵的日志内容前先判断）
+         */
+        public boolean isEnabled() {
+            return channel == CHANNEL_HOOK ? isHookLogEnabled() : isVerboseLogEnabled();
+        }
+        
+        public void d(String message) {
+            if (isEnabled()) {
+                emit(message);
+            }
+        }
+        
+        /**
+         * 延迟构造：只有开启时才调用 supplier
+         * 注意捕获局部变量的 lambda 本身也会分配对象，热路径上优先使用占位符版本
+         */
+        public void d(Supplier<String> message) {
+            if (isEnabled()) {
+                emit(message.get());
+            }
+        }
+        
+        /**
+         * 占位符格式：{@code d("msgId={}", msgId)}
+         */
+        public void d(String pattern, Object arg) {
+            if (isEnabled()) {
+                emit(format(pattern, arg, null, null, 1));
+            }
+        }
+        
+        public void d(String pattern, Object arg1, Object arg2) {
+            if (isEnabled()) {
+                emit(format(pattern, arg1, arg2, null, 2));
+            }
+        }
+        
+        public void d(String pattern, Object arg1, Object arg2, Object arg3) {
+            if (isEnabled()) {
+                emit(format(pattern, arg1, arg2, arg3, 3));
+            }
+        }
+        
+        public void d(Throwable t) {
+            if (isEnabled()) {
+                try {
+                    XposedBridge.log(t);
+                } catch (Throwable e) {
+                    android.util.Log.d(tag != null ? tag : "GalQQ", "", t);
+                }
+            }
+        }
+        
+        private void emit(String message) {
+            try {
+                XposedBridge.log(prefix != null ? prefix + message : message);
+            } catch (Throwable t) {
+                // 模块自身进程（设置界面）没有 XposedBridge，退回 logcat
+                android.util.Log.d(tag != null ? tag : "GalQQ", message);
+            }
+        }
+    }
+    
+    /**
+     * 受「调试Hook日志」开关控制的记录器
+     * @param tag 日志前缀，消息自带 TAG 时传 null
+     */
+    public static Logger hookLogger(String tag) {
+        return new Logger(tag, CHANNEL_HOOK);
+    }
+    
+    /**
+     * 受「详细日志」开关控制的记录器
+     * @param tag 日志前缀，消息自带 TAG 时传 null
+     */
+    public static Logger verboseLogger(String tag) {
+        return new Logger(tag, CHANNEL_VERBOSE);
+    }
+    
+    /**
+     * 调试Hook日志是否开启（短时缓存）
+     */
+    public static boolean isHookLogEnabled() {
+        long now = System.currentTimeMillis();
+        if (now - sHookCheckedAt < SWITCH_CACHE_MS) {
+            return sHookEnabled;
+        }
+        boolean enabled;
+        try {
+            enabled = ConfigManager.isDebugHookLogEnabled();
+        } catch (Throwable t) {
+            // ConfigManager 未初始化
+            enabled = false;
+        }
+        sHookEnabled = enabled;
+        sHookCheckedAt = now;
+        return enabled;
+    }
+    
+    /**
+     * 详细日志是否开启（ConfigManager 内部已有缓存）
+     */
+    public static boolean isVerboseLogEnabled() {
+        try {
+            return ConfigManager.isVerboseLogEnabled();
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+    
+    /**
+     * 开关被修改后立即生效
+     */
+    public static void invalidateSwitches() {
+        sHookCheckedAt = 0;
+    }
+    
+    /**
+     * 依次替换 pattern 中的 {}（只在日志开启后调用）
+     */
+    private static String format(String pattern, Object arg1, Object arg2, Object arg3, int argCount) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 32);
+        int start = 0;
+        int used = 0;
+        while (used < argCount) {
+            int index = pattern.indexOf("{}", start);
+            if (index < 0) {
+                break;
+            }
+            sb.append(pattern, start, index);
+            sb.append(used == 0 ? arg1 : used == 1 ? arg2 : arg3);
+            used++;
+            start = index + 2;
+        }
+        sb.append(pattern, start, pattern.length());
+        return sb.toString();
+    }
+    
     /**
      * 输出调试日志（受配置开关控制）
      * 只有在启用详细日志时才会输出
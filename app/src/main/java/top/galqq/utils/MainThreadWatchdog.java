@@ -0,0 +1,365 @@
+package top.galqq.utils;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import top.galqq.config.ConfigManager;
+
+/**
+ * 主线程耗时看门狗
+ *
+ * 模块的入口（Hook 回调、投递到主线程的回调、滚动静止后的延迟任务）用 {@link #begin}/{@link #end} 包住，
+ * 在主 Looper 上运行时计时。超过预算仍未返回时，后台采样线程抓取主线程调用栈（每个预算周期一次，
+ * 最多 {@link #MAX_SAMPLES} 次），结束后把入口名、耗时和栈样本记为一次违规，
+ * 在 AI 监控面板中按入口汇总展示。
+ *
+ * 不在主线程的调用直接忽略；嵌套调用只统计最外层入口。
+ *
+ * 只在开启「调试Hook日志」或严格模式时计时（见 {@link #isEnabled}），
+ * 关闭时 begin/end 只读一次缓存的开关，不投递采样任务也不更新统计。
+ *
+ * 严格模式：调试版开启「主线程严格模式」后，超预算的入口在结束时抛出 {@link BudgetExceededException}，
+ * 栈为第一次采样到的主线程调用栈，方便直接定位。正式版不会抛出。
+ */
+public final class MainThreadWatchdog {
+
+    private static final String TAG = "GalQQ.Watchdog";
+
+    private static final LogHelper.Logger LOG = LogHelper.hookLogger(TAG);
+
+    // 默认预算：8ms（60Hz 下半帧）
+    public static final long DEFAULT_BUDGET_NS = 8_000_000L;
+
+    // 单次违规最多保留的栈样本数
+    private static final int MAX_SAMPLES = 3;
+    // 最近违规记录条数
+    private static final int MAX_OFFENDERS = 20;
+    // 每个栈样本最多保留的帧数
+    private static final int MAX_FRAMES = 24;
+
+    // begin() 的返回值：非主线程 / 嵌套调用
+    private static final long TOKEN_IGNORED = -1;
+    private static final long TOKEN_NESTED = 0;
+
+    // ===== 以下状态只在主线程写，采样线程只读 volatile 字段 =====
+    private static int depth = 0;
+    private static volatile String currentEntry;
+    private static volatile long currentBudgetNs;
+    private static volatile int generation = 0;
+
+    // 当前入口已采集的栈样本（采样线程写，主线程在 end() 中取走）
+    private static final Object sampleLock = new Object();
+    private static final List<StackTraceElement[]> pendingSamples = new ArrayList<>(MAX_SAMPLES);
+    private static int sampleGeneration = -1;
+
+    private static final Map<String, EntryStats> entryStats = new ConcurrentHashMap<>();
+    private static final ArrayDeque<Offender> offenders = new ArrayDeque<>(MAX_OFFENDERS);
+
+    // 开关缓存：begin() 在每次绑定和每个投递的回调上调用，不每次都读 MMKV
+    private static final long SWITCH_CACHE_MS = 2000;
+    private static volatile boolean sEnabled = false;
+    private static volatile long sCheckedAt = 0;
+
+    private static volatile Handler samplerHandler;
+    private static final Runnable sampleRunnable = MainThreadWatchdog::sample;
+
+    private MainThreadWatchdog() {}
+
+    // ========== 计时 ==========
+
+    /**
+     * 进入模块入口（默认预算）
+     * @return 传给 {@link #end} 的令牌
+     */
+    public static long begin(String entryPoint) {
+        return begin(entryPoint, DEFAULT_BUDGET_NS);
+    }
+
+    /**
+     * 进入模块入口
+     * @param entryPoint 入口名（请使用常量字符串）
+     * @param budgetNs 该入口的主线程预算
+     * @return 传给 {@link #end} 的令牌
+     */
+    public static long begin(String entryPoint, long budgetNs) {
+        if (!isEnabled() || Looper.myLooper() != Looper.getMainLooper()) {
+            return TOKEN_IGNORED;
+        }
+        if (depth++ > 0) {
+            return TOKEN_NESTED;
+        }
+        currentEntry = entryPoint;
+        currentBudgetNs = budgetNs;
+        generation++;
+        long startNs = System.nanoTime();
+        getSamplerHandler().postDelayed(sampleRunnable, budgetNs / 1_000_000L);
+        return startNs;
+    }
+
+    /**
+     * 离开模块入口（放在 finally 中）
+     */
+    public static void end(long token) {
+        if (token == TOKEN_IGNORED) {
+            return;
+        }
+        if (--depth > 0 || token == TOKEN_NESTED) {
+            return;
+        }
+        long durationNs = System.nanoTime() - token;
+        String entryPoint = currentEntry;
+        long budgetNs = currentBudgetNs;
+        currentEntry = null;
+        getSamplerHandler().removeCallbacks(sampleRunnable);
+
+        EntryStats stats = getStats(entryPoint);
+        stats.count.incrementAndGet();
+        updateMax(stats.maxNs, durationNs);
+        if (durationNs <= budgetNs) {
+            return;
+        }
+        stats.overBudget.incrementAndGet();
+
+        List<StackTraceElement[]> samples = takeSamples(generation);
+        Offender offender = new Offender(entryPoint, durationNs, budgetNs, System.currentTimeMillis(), samples);
+        synchronized (offenders) {
+            if (offenders.size() >= MAX_OFFENDERS) {
+                offenders.pollFirst();
+            }
+            offenders.addLast(offender);
+        }
+        if (LOG.isEnabled()) {
+            LOG.d(offender.describe());
+        }
+
+        if (isStrictMode()) {
+            BudgetExceededException e = new BudgetExceededException(entryPoint, durationNs, budgetNs);
+            if (!samples.isEmpty()) {
+                e.setStackTrace(samples.get(0));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 包装投递到主线程的任务
+     */
+    public static Runnable wrap(String entryPoint, Runnable task) {
+        if (!isEnabled()) {
+            return task;
+        }
+        return () -> {
+            long token = begin(entryPoint);
+            try {
+                task.run();
+            } finally {
+                end(token);
+            }
+        };
+    }
+
+    /**
+     * 是否计时：开启「调试Hook日志」或严格模式时（短时缓存）
+     */
+    public static boolean isEnabled() {
+        long now = System.currentTimeMillis();
+        if (now - sCheckedAt < SWITCH_CACHE_MS) {
+            return sEnabled;
+        }
+        boolean enabled = LogHelper.isHookLogEnabled() || isStrictMode();
+        sEnabled = enabled;
+        sCheckedAt = now;
+        return enabled;
+    }
+
+    /**
+     * 严格模式：只在调试版且打开开关时生效
+     */
+    public static boolean isStrictMode() {
+        try {
+            return top.galqq.BuildConfig.DEBUG && ConfigManager.isMainThreadStrictModeEnabled();
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    // ========== 采样 ==========
+
+    private static Handler getSamplerHandler() {
+        if (samplerHandler == null) {
+            synchronized (MainThreadWatchdog.class) {
+                if (samplerHandler == null) {
+                    HandlerThread thread = new HandlerThread("GalQQ-Watchdog", android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    thread.start();
+                    samplerHandler = new Handler(thread.getLooper());
+                }
+            }
+        }
+        return samplerHandler;
+    }
+
+    /**
+     * 采样线程：入口仍在执行时抓取主线程栈，未达上限则一个预算周期后再采
+     */
+    private static void sample() {
+        int gen = generation;
+        if (currentEntry == null) {
+            return;
+        }
+        StackTraceElement[] stack = Looper.getMainLooper().getThread().getStackTrace();
+        if (currentEntry == null || gen != generation) {
+            return; // 采样期间入口已结束
+        }
+        int count;
+        synchronized (sampleLock) {
+            if (sampleGeneration != gen) {
+                pendingSamples.clear();
+                sampleGeneration = gen;
+            }
+            pendingSamples.add(stack);
+            count = pendingSamples.size();
+        }
+        if (count < MAX_SAMPLES) {
+            samplerHandler.postDelayed(sampleRunnable, Math.max(1, currentBudgetNs / 1_000_000L));
+        }
+    }
+
+    private static List<StackTraceElement[]> takeSamples(int gen) {
+        synchronized (sampleLock) {
+            if (sampleGeneration != gen || pendingSamples.isEmpty()) {
+                return new ArrayList<>(0);
+            }
+            List<StackTraceElement[]> samples = new ArrayList<>(pendingSamples);
+            pendingSamples.clear();
+            return samples;
+        }
+    }
+
+    // ========== 统计 ==========
+
+    private static EntryStats getStats(String entryPoint) {
+        EntryStats stats = entryStats.get(entryPoint);
+        if (stats == null) {
+            stats = new EntryStats();
+            EntryStats existing = entryStats.putIfAbsent(entryPoint, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    public static boolean hasData() {
+        return !entryStats.isEmpty();
+    }
+
+    public static void reset() {
+        entryStats.clear();
+        synchronized (offenders) {
+            offenders.clear();
+        }
+    }
+
+    /**
+     * 生成监控面板展示用的摘要文本（按入口汇总 + 最近几次违规的栈样本）
+     */
+    public static String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.getDefault(), "%-28s %7s %5s %8s\n", "入口", "次数", "超时", "最长"));
+        List<String> names = new ArrayList<>(entryStats.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            EntryStats stats = entryStats.get(name);
+            if (stats == null) continue;
+            sb.append(String.format(Locale.getDefault(), "%-28s %7d %5d %6.1fms\n",
+                name, stats.count.get(), stats.overBudget.get(), stats.maxNs.get() / 1_000_000.0));
+        }
+        List<Offender> recent;
+        synchronized (offenders) {
+            recent = new ArrayList<>(offenders);
+        }
+        if (!recent.isEmpty()) {
+            sb.append("\n最近超时（最多显示 3 条）:\n");
+            for (int i = recent.size() - 1, shown = 0; i >= 0 && shown < 3; i--, shown++) {
+                sb.append(recent.get(i).describe()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class EntryStats {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong overBudget = new AtomicLong();
+        final AtomicLong maxNs = new AtomicLong();
+    }
+
+    /**
+     * 一次超预算记录
+     */
+    private static final class Offender {
+        final String entryPoint;
+        final long durationNs;
+        final long budgetNs;
+        final long timestamp;
+        final List<StackTraceElement[]> samples;
+
+        Offender(String entryPoint, long durationNs, long budgetNs, long timestamp, List<StackTraceElement[]> samples) {
+            this.entryPoint = entryPoint;
+            this.durationNs = durationNs;
+            this.budgetNs = budgetNs;
+            this.timestamp = timestamp;
+            this.samples = samples;
+        }
+
+        String describe() {
+            StringBuilder sb = new StringBuilder();
+            sb.append('[').append(new SimpleDateFormat("HH:mm:ss", Locale.getDefault()).format(new Date(timestamp)))
+              .append("] ").append(entryPoint)
+              .append(String.format(Locale.getDefault(), " 耗时 %.1fms（预算 %.1fms），栈样本 %d 个",
+                  durationNs / 1_000_000.0, budgetNs / 1_000_000.0, samples.size()));
+            for (int i = 0; i < samples.size(); i++) {
+                StackTraceElement[] stack = samples.get(i);
+                sb.append("\n  #").append(i + 1).append(':');
+                int frames = Math.min(stack.length, MAX_FRAMES);
+                for (int f = 0; f < frames; f++) {
+                    sb.append("\n    at ").append(stack[f]);
+                }
+                if (stack.length > frames) {
+                    sb.append("\n    ... ").append(stack.length - frames).append(" more");
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 严格模式下超预算时抛出
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        public BudgetExceededException(String entryPoint, long durationNs, long budgetNs) {
+            super(String.format(Locale.US, "%s blocked main thread for %.1fms (budget %.1fms)",
+                entryPoint, durationNs / 1_000_000.0, budgetNs / 1_000_000.0));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package top.galqq.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import top.galqq.config.ConfigManager;
+
+/**
+ * 消息派生数据快照（不可变）
+ *
+ * RecyclerView 滚动时同一条消息会被反复绑定，图片/表情提取、引用解析、内容合并、
+ * 发送者名称和自己/群聊判断的结果对同一条消息是固定的，按 msgId 缓存后，
+ * 再次绑定只需一次查表。
+ *
+ * 快照记录构建时的识别配置（configStamp），配置变化后自动失效重建。
+ */
+public final class MessageSnapshot {
+
+    private static final int MAX_SNAPSHOTS = 300;
+
+    // msgId -> 快照（LRU）
+    private static final Map<String, MessageSnapshot> snapshotCache = Collections.synchronizedMap(
+        new LinkedHashMap<String, MessageSnapshot>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MessageSnapshot> eldest) {
+                return size() > MAX_SNAPSHOTS;
+            }
+        }
+    );
+
+    public static final int STAMP_IMAGE = 1;
+    public static final int STAMP_EMOJI = 1 << 1;
+    public static final int STAMP_VISION = 1 << 2;
+
+    public final String msgId;
+    public final long stateKey;                // MessageUiStateStore 的键（由 long msgId 得到，msgId 缺失时为 0）
+    public final String peerUin;
+    public final String senderUin;
+    public final long msgTime;                 // 消息时间（毫秒）
+    public final boolean isSelf;
+    public final boolean isGroupChat;
+    public final boolean displayable;          // 是否需要显示（false 表示无内容，直接跳过）
+    public final String textContent;           // 原始文字内容
+    public final String mergedContent;         // 合并图片/表情描述和引用信息后的内容
+    public final String senderName;            // 上下文中的发送者名称（自己的消息带"[我]"）
+    public final List<ImageExtractor.ImageElement> imageElements; // 不可修改，可能为空列表
+    public final int emojiCount;
+    public final int configStamp;
+
+    public MessageSnapshot(String msgId, long stateKey, String peerUin, String senderUin, long msgTime,
+                           boolean isSelf, boolean isGroupChat, boolean displayable,
+                           String textContent, String mergedContent, String senderName,
+                           List<ImageExtractor.ImageElement> imageElements, int emojiCount, int configStamp) {
+        this.msgId = msgId;
+        this.stateKey = stateKey;
+        this.peerUin = peerUin;
+        this.senderUin = senderUin;
+        this.msgTime = msgTime;
+        this.isSelf = isSelf;
+        this.isGroupChat = isGroupChat;
+        this.displayable = displayable;
+        this.textContent = textContent != null ? textContent : "";
+        this.mergedContent = mergedContent != null ? mergedContent : this.textContent;
+        this.senderName = senderName;
+        this.imageElements = imageElements != null && !imageElements.isEmpty()
+            ? Collections.unmodifiableList(imageElements)
+            : Collections.<ImageExtractor.ImageElement>emptyList();
+        this.emojiCount = emojiCount;
+        this.configStamp = configStamp;
+    }
+
+    public boolean hasImages() {
+        return !imageElements.isEmpty();
+    }
+
+    /**
+     * 当前识别配置的指纹（图片识别 / 表情识别 / 外挂AI）
+     */
+    public static int currentConfigStamp() {
+        int stamp = 0;
+        if (ConfigManager.isImageRecognitionEnabled()) stamp |= STAMP_IMAGE;
+        if (ConfigManager.isEmojiRecognitionEnabled()) stamp |= STAMP_EMOJI;
+        if (ConfigManager.isVisionAiEnabled()) stamp |= STAMP_VISION;
+        return stamp;
+    }
+
+    /**
+     * 获取快照（不检查配置指纹）
+     */
+    public static MessageSnapshot get(String msgId) {
+        if (msgId == null) return null;
+        return snapshotCache.get(msgId);
+    }
+
+    /**
+     * 获取与当前配置匹配的快照，配置已变化时返回 null
+     */
+    public static MessageSnapshot get(String msgId, int configStamp) {
+        MessageSnapshot snapshot = get(msgId);
+        if (snapshot != null && snapshot.configStamp != configStamp) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    public static void put(MessageSnapshot snapshot) {
+        if (snapshot == null || snapshot.msgId == null) return;
+        snapshotCache.put(snapshot.msgId, snapshot);
+    }
+
+    public static void remove(String msgId) {
+        if (msgId == null) return;
+        snapshotCache.remove(msgId);
+    }
+
+    public static void clearAll() {
+        snapshotCache.clear();
+    }
+
+    public static int size() {
+        return snapshotCache.size();
+    }
+}
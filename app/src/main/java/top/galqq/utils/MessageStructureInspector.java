@@ -0,0 +1,187 @@
+package top.galqq.utils;
+
+import android.os.SystemClock;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.robv.android.xposed.XposedBridge;
+import top.galqq.config.ConfigManager;
+
+/**
+ * 消息结构分析（调试用，适配新版 QQ 的图片/表情元素）
+ *
+ * 原先每次绑定都在主线程遍历元素类名，只要像图片/表情就反射输出全部字段，
+ * 即使调试日志关闭，类名扫描也照做，图片多的群每次绑定都要付出这部分开销。
+ *
+ * 现在：
+ * - 只有同时开启「调试Hook日志」和「分析消息结构」时才做任何事，关闭时只有两次配置读取
+ * - 每分钟最多抽样 {@link #MAX_SAMPLES_PER_MINUTE} 条消息
+ * - 绑定线程只复制元素列表，字段反射和日志输出都在后台线程完成
+ */
+public final class MessageStructureInspector {
+
+    private static final String TAG = "GalQQ.Inspector";
+
+    // 每分钟最多分析的消息数
+    private static final int MAX_SAMPLES_PER_MINUTE = 5;
+    private static final long WINDOW_MS = 60_000;
+    // 嵌套对象最多输出的字段数
+    private static final int MAX_NESTED_FIELDS = 20;
+
+    // 元素运行时类 -> 类名是否像图片/表情
+    private static final Map<Class<?>, Boolean> mediaClasses = new ConcurrentHashMap<>();
+
+    private static final Object lock = new Object();
+    private static long windowStart = 0;
+    private static int samplesInWindow = 0;
+
+    private static volatile ExecutorService executor;
+
+    private MessageStructureInspector() {}
+
+    /**
+     * 绑定时调用：消息含图片/表情元素且未超出抽样额度时，在后台输出其结构
+     * @param msgRecordClass 消息记录的类名（用于日志）
+     * @param elements 消息元素列表（只做浅拷贝）
+     */
+    public static void maybeInspect(String msgRecordClass, List<?> elements) {
+        if (elements == null || elements.isEmpty()
+                || !ConfigManager.isDebugHookLogEnabled()
+                || !ConfigManager.isMessageStructureDebugEnabled()) {
+            return;
+        }
+        if (!containsMedia(elements) || !tryAcquireSample()) {
+            return;
+        }
+        final List<Object> snapshot = new ArrayList<Object>(elements);
+        getExecutor().execute(() -> dump(msgRecordClass, snapshot));
+    }
+
+    private static boolean containsMedia(List<?> elements) {
+        for (Object element : elements) {
+            if (element != null && isMediaClass(element.getClass())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMediaClass(Class<?> clazz) {
+        Boolean cached = mediaClasses.get(clazz);
+        if (cached == null) {
+            cached = looksLikeMedia(clazz.getName());
+            mediaClasses.put(clazz, cached);
+        }
+        return cached;
+    }
+
+    private static boolean looksLikeMedia(String name) {
+        String lower = name.toLowerCase();
+        return lower.contains("pic") || lower.contains("image")
+            || lower.contains("face") || lower.contains("emoji");
+    }
+
+    private static boolean tryAcquireSample() {
+        long now = SystemClock.uptimeMillis();
+        synchronized (lock) {
+            if (now - windowStart >= WINDOW_MS) {
+                windowStart = now;
+                samplesInWindow = 0;
+            }
+            if (samplesInWindow >= MAX_SAMPLES_PER_MINUTE) {
+                return false;
+            }
+            samplesInWindow++;
+            return true;
+        }
+    }
+
+    private static ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (MessageStructureInspector.class) {
+                if (executor == null) {
+                    executor = Executors.newSingleThreadExecutor(r -> {
+                        Thread thread = new Thread(r, "GalQQ-Inspector");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return executor;
+    }
+
+    // ========== 后台输出 ==========
+
+    private static void dump(String msgRecordClass, List<Object> elements) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            sb.append(TAG).append(": ========== 消息结构分析 ==========\n");
+            sb.append("msgRecord类型: ").append(msgRecordClass).append('\n');
+            sb.append("elements数量: ").append(elements.size()).append('\n');
+            for (int i = 0; i < elements.size(); i++) {
+                Object element = elements.get(i);
+                sb.append("--- Element[").append(i).append("] ---\n");
+                if (element == null) {
+                    sb.append("  null\n");
+                    continue;
+                }
+                sb.append("  类型: ").append(element.getClass().getName()).append('\n');
+                for (Field field : element.getClass().getDeclaredFields()) {
+                    try {
+                        field.setAccessible(true);
+                        Object value = field.get(element);
+                        sb.append("  .").append(field.getName()).append(" = ").append(preview(value, 200)).append('\n');
+                        if (value != null && !field.getType().isPrimitive() && !field.getType().equals(String.class)) {
+                            sb.append("    └─ 类型: ").append(value.getClass().getName()).append('\n');
+                            // 特别关注可能是图片或表情包的字段
+                            if (looksLikeMedia(field.getName())) {
+                                sb.append("    ⭐ 可能包含图片/表情包数据!\n");
+                                appendNestedFields(sb, value, "       ");
+                            }
+                        }
+                    } catch (Throwable t) {
+                        sb.append("  .").append(field.getName()).append(" - 访问失败: ").append(t.getMessage()).append('\n');
+                    }
+                }
+            }
+            sb.append("========== 消息结构分析完成 ==========");
+            XposedBridge.log(sb.toString());
+        } catch (Throwable t) {
+            XposedBridge.log(TAG + ": 消息结构分析失败: " + t.getMessage());
+        }
+    }
+
+    private static void appendNestedFields(StringBuilder sb, Object obj, String indent) {
+        Field[] fields = obj.getClass().getDeclaredFields();
+        int count = Math.min(fields.length, MAX_NESTED_FIELDS);
+        for (int i = 0; i < count; i++) {
+            Field field = fields[i];
+            try {
+                field.setAccessible(true);
+                Object value = field.get(obj);
+                sb.append(indent).append('.').append(field.getName()).append(" = ").append(preview(value, 100)).append('\n');
+                if (value != null && !field.getType().isPrimitive() && !field.getType().equals(String.class)) {
+                    sb.append(indent).append("  └─ 类型: ").append(value.getClass().getName()).append('\n');
+                }
+            } catch (Throwable ignored) {
+                // 忽略访问失败的字段
+            }
+        }
+        if (fields.length > count) {
+            sb.append(indent).append("... (还有 ").append(fields.length - count).append(" 个字段未显示)\n");
+        }
+    }
+
+    private static String preview(Object value, int maxLength) {
+        String str = String.valueOf(value);
+        return str.length() > maxLength ? str.substring(0, maxLength) + "..." : str;
+    }
+}
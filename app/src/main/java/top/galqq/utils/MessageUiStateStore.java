@@ -0,0 +1,335 @@
+package top.galqq.utils;
+
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 消息 UI 状态存储（按 long msgId）
+ *
+ * 合并原先的三份状态：AI 选项缓存、「已请求显示选项」集合、「已收起」集合。
+ * 旧实现中选项缓存是未同步的 LinkedHashMap（在队列回调线程中修改），
+ * 两个 HashSet 在整个 QQ 进程生命周期内只增不减，QQ 挂几天后会持续占用内存。
+ *
+ * 这里用 long 作为键（避免每次装箱/创建 String），按最近访问顺序维护双向链表，
+ * 同时按条目数和估算字节数两个上限淘汰最久未访问的条目。所有方法线程安全。
+ */
+public final class MessageUiStateStore {
+
+    private static final int MAX_ENTRIES = 2000;
+    private static final long MAX_BYTES = 512 * 1024;
+
+    // 条目估算开销（对象头 + 字段 + 链表指针 + 稀疏数组槽位）
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final int OPTION_OVERHEAD_BYTES = 40;
+
+    private static final class Entry {
+        final long msgId;
+        List<String> options;       // 不可修改，无缓存时为 null
+        long promptFingerprint;     // 生成选项时的提示词/模型指纹，未知为 0
+        boolean requested;          // 用户已点击「显示选项」
+        boolean collapsed;          // 用户已收起选项
+        int bytes;
+        Entry prev;
+        Entry next;
+
+        Entry(long msgId) {
+            this.msgId = msgId;
+        }
+
+        boolean isEmpty() {
+            return options == null && !requested && !collapsed;
+        }
+    }
+
+    private static final Object lock = new Object();
+    private static final LongSparseArray<Entry> entries = new LongSparseArray<>();
+    // 链表头为最久未访问，尾为最近访问
+    private static Entry head;
+    private static Entry tail;
+    private static long totalBytes = 0;
+
+    private MessageUiStateStore() {}
+
+    // ========== 键 ==========
+
+    /**
+     * QQNT 消息的存储键：直接使用 MsgRecord 中的 long msgId（{@code MsgFields.msgIdLong}）
+     */
+    public static long keyOf(long msgIdLong) {
+        return msgIdLong;
+    }
+
+    /**
+     * 将 msgId 字符串转换为存储键（只有字符串形式时使用，例如 AI 回调和旧版 QQ）
+     * 能完整放进 long 的十进制数（QQNT 的 msgId，通常 19 位）按数值解析，与 {@link #keyOf(long)} 一致；
+     * 其他 msgId（旧版 QQ 的非数字 ID、超出 long 范围的数字）使用 64 位 FNV-1a 哈希
+     */
+    public static long keyOf(String msgId) {
+        if (msgId == null || msgId.isEmpty()) {
+            return 0L;
+        }
+        int length = msgId.length();
+        boolean negative = msgId.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        if (length > start && length - start <= 19) {
+            // 与 Long.parseLong 相同：以负数累加并检查溢出，但不抛异常
+            long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+            long multmin = limit / 10;
+            long value = 0L;
+            boolean numeric = true;
+            for (int i = start; i < length; i++) {
+                int digit = msgId.charAt(i) - '0';
+                if (digit < 0 || digit > 9 || value < multmin) {
+                    numeric = false;
+                    break;
+                }
+                value *= 10;
+                if (value < limit + digit) {
+                    numeric = false;
+                    break;
+                }
+                value -= digit;
+            }
+            if (numeric) {
+                return negative ? value : -value;
+            }
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= msgId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 计算提示词/模型指纹
+     */
+    public static long promptFingerprint(String prompt, String model) {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, prompt);
+        hash ^= 0x1F;
+        hash *= 0x100000001b3L;
+        hash = fnv(hash, model);
+        return hash == 0L ? 1L : hash;
+    }
+
+    private static long fnv(long hash, String value) {
+        if (value == null) {
+            return hash;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // ========== 选项 ==========
+
+    public static void putOptions(long msgId, List<String> options, long promptFingerprint) {
+        if (msgId == 0L || options == null) {
+            return;
+        }
+        List<String> copy = Collections.unmodifiableList(new ArrayList<>(options));
+        synchronized (lock) {
+            Entry entry = obtainLocked(msgId);
+            entry.options = copy;
+            entry.promptFingerprint = promptFingerprint;
+            resizeLocked(entry);
+            trimLocked();
+        }
+    }
+
+    /**
+     * 获取缓存的选项（不可修改），没有时返回 null
+     * 与 {@link OptionsDiskStore} 一致：生成时的指纹与 promptFingerprint 不同（提示词或模型已修改）按未命中处理；
+     * 任一指纹为 0（未知）时不比较
+     */
+    public static List<String> getOptions(long msgId, long promptFingerprint) {
+        synchronized (lock) {
+            Entry entry = entries.get(msgId);
+            if (!matchesLocked(entry, promptFingerprint)) {
+                return null;
+            }
+            touchLocked(entry);
+            return entry.options;
+        }
+    }
+
+    /**
+     * 是否有当前提示词/模型下可用的选项，指纹规则同 {@link #getOptions(long, long)}
+     */
+    public static boolean hasOptions(long msgId, long promptFingerprint) {
+        synchronized (lock) {
+            return matchesLocked(entries.get(msgId), promptFingerprint);
+        }
+    }
+
+    private static boolean matchesLocked(Entry entry, long promptFingerprint) {
+        if (entry == null || entry.options == null) {
+            return false;
+        }
+        return promptFingerprint == 0L || entry.promptFingerprint == 0L
+            || entry.promptFingerprint == promptFingerprint;
+    }
+
+    // ========== 已请求 / 已收起 ==========
+
+    public static void setRequested(long msgId, boolean requested) {
+        setFlag(msgId, true, requested);
+    }
+
+    public static boolean isRequested(long msgId) {
+        synchronized (lock) {
+            Entry entry = entries.get(msgId);
+            return entry != null && entry.requested;
+        }
+    }
+
+    public static void setCollapsed(long msgId, boolean collapsed) {
+        setFlag(msgId, false, collapsed);
+    }
+
+    public static boolean isCollapsed(long msgId) {
+        synchronized (lock) {
+            Entry entry = entries.get(msgId);
+            return entry != null && entry.collapsed;
+        }
+    }
+
+    private static void setFlag(long msgId, boolean requestedFlag, boolean value) {
+        if (msgId == 0L) {
+            return;
+        }
+        synchronized (lock) {
+            Entry entry = entries.get(msgId);
+            if (entry == null) {
+                if (!value) {
+                    return;
+                }
+                entry = obtainLocked(msgId);
+            } else {
+                touchLocked(entry);
+            }
+            if (requestedFlag) {
+                entry.requested = value;
+            } else {
+                entry.collapsed = value;
+            }
+            if (entry.isEmpty()) {
+                removeLocked(entry);
+            } else {
+                trimLocked();
+            }
+        }
+    }
+
+    // ========== 管理 ==========
+
+    public static void remove(long msgId) {
+        synchronized (lock) {
+            Entry entry = entries.get(msgId);
+            if (entry != null) {
+                removeLocked(entry);
+            }
+        }
+    }
+
+    public static void clearAll() {
+        synchronized (lock) {
+            entries.clear();
+            head = null;
+            tail = null;
+            totalBytes = 0;
+        }
+    }
+
+    public static int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    public static long byteSize() {
+        synchronized (lock) {
+            return totalBytes;
+        }
+    }
+
+    // ========== 内部实现（调用方持有 lock） ==========
+
+    private static Entry obtainLocked(long msgId) {
+        Entry entry = entries.get(msgId);
+        if (entry != null) {
+            touchLocked(entry);
+            return entry;
+        }
+        entry = new Entry(msgId);
+        entries.put(msgId, entry);
+        appendLocked(entry);
+        resizeLocked(entry);
+        return entry;
+    }
+
+    private static void resizeLocked(Entry entry) {
+        int bytes = ENTRY_OVERHEAD_BYTES;
+        if (entry.options != null) {
+            for (String option : entry.options) {
+                bytes += OPTION_OVERHEAD_BYTES + (option != null ? option.length() * 2 : 0);
+            }
+        }
+        totalBytes += bytes - entry.bytes;
+        entry.bytes = bytes;
+    }
+
+    private static void touchLocked(Entry entry) {
+        if (entry == tail) {
+            return;
+        }
+        unlinkLocked(entry);
+        appendLocked(entry);
+    }
+
+    private static void appendLocked(Entry entry) {
+        entry.prev = tail;
+        entry.next = null;
+        if (tail != null) {
+            tail.next = entry;
+        } else {
+            head = entry;
+        }
+        tail = entry;
+    }
+
+    private static void unlinkLocked(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            head = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        } else {
+            tail = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private static void removeLocked(Entry entry) {
+        unlinkLocked(entry);
+        entries.remove(entry.msgId);
+        totalBytes -= entry.bytes;
+    }
+
+    private static void trimLocked() {
+        while (head != null && head != tail
+                && (entries.size() > MAX_ENTRIES || totalBytes > MAX_BYTES)) {
+            removeLocked(head);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package top.galqq.utils;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * QQNT 消息元素分类器
+ *
+ * 原先对每个元素都用 XposedHelpers.getObjectField 试探 replyElement / faceElement 等字段，
+ * 字段不存在时抛出 NoSuchFieldError 再被 catch，异常作为控制流开销很大。
+ * 这里按元素运行时类预先解析一次字段句柄（包括"字段不存在"这种否定结果），
+ * 之后解析多元素的富文本消息不会再抛出任何异常。
+ *
+ * 同时提供按类缓存的通用字段读取方法，用于 picElement / replyElement 等嵌套对象。
+ */
+public class MsgElementClassifier {
+
+    // QQNT elementType 取值
+    public static final int ELEMENT_TEXT = 1;
+    public static final int ELEMENT_PIC = 2;
+    public static final int ELEMENT_FACE = 6;
+    public static final int ELEMENT_REPLY = 7;
+    public static final int ELEMENT_MARKET_FACE = 11;
+
+    // 否定结果占位（字段不存在）
+    private static final Object NO_FIELD = new Object();
+
+    // 运行时类 -> (字段名 -> Field 或 NO_FIELD)
+    private static final Map<Class<?>, Map<String, Object>> fieldCache = new ConcurrentHashMap<>();
+
+    // 元素运行时类 -> 预解析的元素结构
+    private static final Map<Class<?>, ElementShape> shapeCache = new ConcurrentHashMap<>();
+
+    /**
+     * 元素结构：该元素类上各个子元素字段的句柄（不存在为 null）
+     */
+    private static final class ElementShape {
+        final Field elementType;
+        final Field textElement;
+        final Field picElement;
+        final Field faceElement;
+        final Field marketFaceElement;
+        final Field replyElement;
+
+        ElementShape(Class<?> clazz) {
+            elementType = findField(clazz, "elementType");
+            textElement = findField(clazz, "textElement");
+            picElement = findField(clazz, "picElement");
+            faceElement = findField(clazz, "faceElement");
+            marketFaceElement = findField(clazz, "marketFaceElement");
+            replyElement = findField(clazz, "replyElement");
+        }
+    }
+
+    private static ElementShape shapeOf(Object element) {
+        Class<?> clazz = element.getClass();
+        ElementShape shape = shapeCache.get(clazz);
+        if (shape == null) {
+            shape = new ElementShape(clazz);
+            shapeCache.put(clazz, shape);
+        }
+        return shape;
+    }
+
+    // ========== 元素分类 ==========
+
+    /**
+     * 获取元素类型（elementType 字段），字段不存在时返回 -1
+     */
+    public static int getElementType(Object element) {
+        if (element == null) return -1;
+        Field field = shapeOf(element).elementType;
+        if (field == null) return -1;
+        return readInt(field, element);
+    }
+
+    public static Object getTextElement(Object element) {
+        return element != null ? readObject(shapeOf(element).textElement, element) : null;
+    }
+
+    public static Object getPicElement(Object element) {
+        return element != null ? readObject(shapeOf(element).picElement, element) : null;
+    }
+
+    public static Object getFaceElement(Object element) {
+        return element != null ? readObject(shapeOf(element).faceElement, element) : null;
+    }
+
+    public static Object getMarketFaceElement(Object element) {
+        return element != null ? readObject(shapeOf(element).marketFaceElement, element) : null;
+    }
+
+    public static Object getReplyElement(Object element) {
+        return element != null ? readObject(shapeOf(element).replyElement, element) : null;
+    }
+
+    /**
+     * 获取文本元素的文字内容
+     */
+    public static String getTextContent(Object element) {
+        Object textElement = getTextElement(element);
+        if (textElement == null) return null;
+        Object content = getObject(textElement, "content");
+        return content instanceof String ? (String) content : null;
+    }
+
+    // ========== 通用字段读取（按类缓存，不抛异常） ==========
+
+    /**
+     * 读取对象字段，字段不存在时返回 null
+     */
+    public static Object getObject(Object obj, String fieldName) {
+        if (obj == null) return null;
+        return readObject(cachedField(obj.getClass(), fieldName), obj);
+    }
+
+    /**
+     * 读取字符串字段（String.valueOf），字段不存在或值为 null 时返回 null
+     */
+    public static String getString(Object obj, String fieldName) {
+        Object value = getObject(obj, fieldName);
+        return value != null ? String.valueOf(value) : null;
+    }
+
+    /**
+     * 读取 int 字段，字段不存在时返回 0
+     */
+    public static int getInt(Object obj, String fieldName) {
+        if (obj == null) return 0;
+        Field field = cachedField(obj.getClass(), fieldName);
+        return field != null ? readInt(field, obj) : 0;
+    }
+
+    /**
+     * 读取 long 字段，字段不存在时返回 0
+     */
+    public static long getLong(Object obj, String fieldName) {
+        if (obj == null) return 0L;
+        Field field = cachedField(obj.getClass(), fieldName);
+        if (field == null) return 0L;
+        try {
+            Class<?> type = field.getType();
+            if (type == long.class || type == int.class) {
+                return field.getLong(obj);
+            }
+            Object value = field.get(obj);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+        } catch (IllegalAccessException | IllegalArgumentException ignored) {}
+        return 0L;
+    }
+
+    /**
+     * 该类上是否存在指定字段
+     */
+    public static boolean hasField(Object obj, String fieldName) {
+        return obj != null && cachedField(obj.getClass(), fieldName) != null;
+    }
+
+    // ========== 内部实现 ==========
+
+    private static Field cachedField(Class<?> clazz, String fieldName) {
+        Map<String, Object> fields = fieldCache.get(clazz);
+        if (fields == null) {
+            fields = new ConcurrentHashMap<>();
+            fieldCache.put(clazz, fields);
+        }
+        Object cached = fields.get(fieldName);
+        if (cached == null) {
+            Field field = findField(clazz, fieldName);
+            cached = field != null ? field : NO_FIELD;
+            fields.put(fieldName, cached);
+        }
+        return cached == NO_FIELD ? null : (Field) cached;
+    }
+
+    private static Object readObject(Field field, Object obj) {
+        if (field == null) return null;
+        try {
+            return field.get(obj);
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int readInt(Field field, Object obj) {
+        try {
+            if (field.getType() == int.class) {
+                return field.getInt(obj);
+            }
+            Object value = field.get(obj);
+            if (value instanceof Number) {
+                return ((Number) value).intValue();
+            }
+        } catch (IllegalAccessException | IllegalArgumentException ignored) {}
+        return 0;
+    }
+
+    /**
+     * 沿继承链查找字段（只在首次解析时调用，找不到返回 null）
+     */
+    private static Field findField(Class<?> clazz, String name) {
+        Class<?> current = clazz;
+        while (current != null && current != Object.class) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.getName().equals(name)) {
+                    try {
+                        field.setAccessible(true);
+                        return field;
+                    } catch (Throwable t) {
+                        return null;
+                    }
+                }
+            }
+            current = current.getSuperclass();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,233 @@
+package top.galqq.utils;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * QQNT MsgRecord 字段访问器
+ *
+ * 每个 MsgRecord 运行时类只解析一次 Field 句柄，之后一次性读取气泡绑定所需的全部字段，
+ * 避免在 UI 线程上反复调用 XposedHelpers.getObjectField（每次都要按名称查找字段）。
+ *
+ * 字段不存在时对应值保持默认（null / 0），与原先 try/catch 包裹的读取语义一致。
+ */
+public class MsgRecordAccessor {
+
+    private static final String TAG = "GalQQ.MsgRecordAccessor";
+
+    private static final LogHelper.Logger LOG = LogHelper.hookLogger(TAG);
+
+    // 运行时类 -> 已解析的访问器
+    private static final Map<Class<?>, MsgRecordAccessor> accessorCache = new ConcurrentHashMap<>();
+
+    private final Field fPeerUin;
+    private final Field fSenderUin;
+    private final Field fSendType;
+    private final Field fMsgType;
+    private final Field fSubMsgType;
+    private final Field fMsgId;
+    private final Field fMsgTime;
+    private final Field fMsgSeq;
+    private final Field fSendRemarkName;
+    private final Field fSendNickName;
+    private final Field fElements;
+
+    private MsgRecordAccessor(Class<?> clazz) {
+        fPeerUin = findField(clazz, "peerUin");
+        fSenderUin = findField(clazz, "senderUin");
+        fSendType = findField(clazz, "sendType");
+        fMsgType = findField(clazz, "msgType");
+        fSubMsgType = findField(clazz, "subMsgType");
+        fMsgId = findField(clazz, "msgId");
+        fMsgTime = findField(clazz, "msgTime");
+        Field seq = findField(clazz, "msgSeq");
+        fMsgSeq = seq != null ? seq : findField(clazz, "seq");
+        fSendRemarkName = findField(clazz, "sendRemarkName");
+        fSendNickName = findField(clazz, "sendNickName");
+        fElements = findField(clazz, "elements");
+        LOG.d("已解析 {} 的字段句柄, complete={}", clazz.getName(), isComplete());
+    }
+
+    /**
+     * 获取指定运行时类的访问器（首次调用时解析字段）
+     */
+    public static MsgRecordAccessor forClass(Class<?> clazz) {
+        MsgRecordAccessor accessor = accessorCache.get(clazz);
+        if (accessor == null) {
+            accessor = new MsgRecordAccessor(clazz);
+            MsgRecordAccessor existing = accessorCache.putIfAbsent(clazz, accessor);
+            if (existing != null) {
+                accessor = existing;
+            }
+        }
+        return accessor;
+    }
+
+    /**
+     * 一次性读取 MsgRecord 的全部常用字段
+     * @param msgRecord QQNT MsgRecord 对象
+     * @return 字段快照，msgRecord 为 null 时返回 null
+     */
+    public static MsgFields read(Object msgRecord) {
+        if (msgRecord == null) {
+            return null;
+        }
+        return forClass(msgRecord.getClass()).readFields(msgRecord);
+    }
+
+    /**
+     * 只读取 elements 字段
+     * @return 消息元素列表，不存在时返回 null
+     */
+    public static List<?> getElements(Object msgRecord) {
+        if (msgRecord == null) {
+            return null;
+        }
+        Object elements = getRaw(forClass(msgRecord.getClass()).fElements, msgRecord);
+        return elements instanceof List ? (List<?>) elements : null;
+    }
+
+    /**
+     * sendType 和 msgType 是否都能解析（缺失时说明不是 QQNT MsgRecord）
+     */
+    public boolean isComplete() {
+        return fSendType != null && fMsgType != null;
+    }
+
+    private MsgFields readFields(Object msgRecord) {
+        MsgFields f = new MsgFields();
+        f.complete = isComplete();
+        f.peerUin = getAsString(fPeerUin, msgRecord);
+        f.senderUin = getAsString(fSenderUin, msgRecord);
+        f.sendType = getAsInt(fSendType, msgRecord);
+        f.msgType = getAsInt(fMsgType, msgRecord);
+        f.subMsgType = getAsInt(fSubMsgType, msgRecord);
+        f.msgIdLong = getAsLong(fMsgId, msgRecord);
+        f.msgId = fMsgId != null ? getAsString(fMsgId, msgRecord) : null;
+        f.hasMsgTime = fMsgTime != null;
+        f.msgTimeSeconds = getAsLong(fMsgTime, msgRecord);
+        f.msgSeq = getAsLong(fMsgSeq, msgRecord);
+        f.sendRemarkName = getAsNullableString(fSendRemarkName, msgRecord);
+        f.sendNickName = getAsNullableString(fSendNickName, msgRecord);
+        Object elements = getRaw(fElements, msgRecord);
+        f.elements = elements instanceof List ? (List<?>) elements : null;
+        return f;
+    }
+
+    // ========== 读取辅助方法 ==========
+
+    private static Object getRaw(Field field, Object obj) {
+        if (field == null) return null;
+        try {
+            return field.get(obj);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * 与 String.valueOf(getObjectField(...)) 语义一致：字段存在时 null 值得到 "null"
+     */
+    private static String getAsString(Field field, Object obj) {
+        if (field == null) return null;
+        return String.valueOf(getRaw(field, obj));
+    }
+
+    private static String getAsNullableString(Field field, Object obj) {
+        Object value = getRaw(field, obj);
+        return value != null ? String.valueOf(value) : null;
+    }
+
+    private static int getAsInt(Field field, Object obj) {
+        if (field == null) return 0;
+        try {
+            if (field.getType() == int.class) {
+                return field.getInt(obj);
+            }
+            Object value = field.get(obj);
+            if (value instanceof Number) {
+                return ((Number) value).intValue();
+            }
+        } catch (Throwable ignored) {}
+        return 0;
+    }
+
+    private static long getAsLong(Field field, Object obj) {
+        if (field == null) return 0L;
+        try {
+            Class<?> type = field.getType();
+            if (type == long.class || type == int.class) {
+                return field.getLong(obj);
+            }
+            Object value = field.get(obj);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            if (value != null) {
+                return Long.parseLong(String.valueOf(value));
+            }
+        } catch (Throwable ignored) {}
+        return 0L;
+    }
+
+    private static Field findField(Class<?> clazz, String name) {
+        Class<?> current = clazz;
+        while (current != null && current != Object.class) {
+            try {
+                Field field = current.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException ignored) {
+                current = current.getSuperclass();
+            } catch (Throwable t) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // ========== 数据类 ==========
+
+    /**
+     * MsgRecord 字段快照（一次读取的结果）
+     */
+    public static class MsgFields {
+        public boolean complete;         // sendType/msgType 是否可用
+        public String peerUin;           // 会话对象（群号或对方QQ）
+        public String senderUin;         // 发送者QQ
+        public int sendType;             // 1=自己发送, 0=收到的消息
+        public int msgType;
+        public int subMsgType;
+        public String msgId;             // 字符串形式的 msgId（用于缓存键）
+        public long msgIdLong;           // 原始 msgId
+        public boolean hasMsgTime;
+        public long msgTimeSeconds;      // 消息时间（秒）
+        public long msgSeq;              // 消息序列号（msgSeq 或 seq）
+        public String sendRemarkName;    // 备注名
+        public String sendNickName;      // QQ昵称
+        public List<?> elements;         // 消息元素列表
+
+        /**
+         * 发送者显示名：优先备注名，其次QQ昵称（昵称为空白时返回 null）
+         */
+        public String getSenderName() {
+            if (sendRemarkName != null && !sendRemarkName.trim().isEmpty()) {
+                return sendRemarkName;
+            }
+            if (sendNickName != null && !sendNickName.trim().isEmpty()) {
+                return sendNickName;
+            }
+            return null;
+        }
+
+        /**
+         * 消息时间（毫秒）
+         */
+        public long getMsgTimeMillis() {
+            return msgTimeSeconds * 1000L;
+        }
+    }
+}
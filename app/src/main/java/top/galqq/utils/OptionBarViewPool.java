@@ -0,0 +1,339 @@
+package top.galqq.utils;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.graphics.drawable.StateListDrawable;
+import android.os.Bundle;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 选项条视图池
+ *
+ * 长群聊滚动时每次绑定都会新建 LinearLayout / TextView / GradientDrawable，再把旧的移除，
+ * 频繁分配导致 GC 卡顿。这里按 Context 缓存已移除的选项条和按钮，重置后复用；
+ * 圆角背景按 (颜色, 半径) 共享 ConstantState，每个 View 只创建轻量的 Drawable 外壳。
+ *
+ * 池中的 View 强引用着自己的 Context，所以不能用 WeakHashMap 自动回收：
+ * 视图池只为能找到宿主 Activity 的 Context 创建，Activity 销毁时通过生命周期回调整个清掉。
+ *
+ * 所有方法都只能在主线程调用。
+ */
+public class OptionBarViewPool {
+
+    // View Tag key：标记由视图池创建的 View
+    private static final int POOLED_TAG = 0x7F0A1236;
+    // View Tag key：选项条当前归属的绑定令牌（用于丢弃过期的异步回调）
+    private static final int OWNER_TAG = 0x7F0A1237;
+
+    private static final int MAX_LAYOUTS = 12;
+    private static final int MAX_TEXT_VIEWS = 48;
+
+    // Context -> 视图池（宿主 Activity 销毁时移除）
+    private static final Map<Context, Pool> pools = new HashMap<>();
+    // 已注册生命周期回调的 Application
+    private static Application callbacksApp;
+
+    // (颜色, 半径) -> 共享的背景 ConstantState
+    private static final Map<Long, Drawable.ConstantState> roundedStates = new HashMap<>();
+    private static final Map<Long, Drawable.ConstantState> selectableStates = new HashMap<>();
+
+    private static int ownerCounter = 0;
+
+    private static class Pool {
+        final Activity activity;
+        final ArrayDeque<LinearLayout> layouts = new ArrayDeque<>();
+        final ArrayDeque<TextView> textViews = new ArrayDeque<>();
+
+        Pool(Activity activity) {
+            this.activity = activity;
+        }
+    }
+
+    /**
+     * @return 找不到宿主 Activity 或 Activity 已销毁时返回 null（此时不做池化）
+     */
+    private static Pool getPool(Context context) {
+        Pool pool = pools.get(context);
+        if (pool == null) {
+            Activity activity = findActivity(context);
+            if (activity == null || activity.isFinishing() || activity.isDestroyed()) {
+                return null;
+            }
+            registerCallbacks(activity.getApplication());
+            pool = new Pool(activity);
+            pools.put(context, pool);
+        }
+        return pool;
+    }
+
+    private static Activity findActivity(Context context) {
+        Context current = context;
+        while (current instanceof ContextWrapper) {
+            if (current instanceof Activity) {
+                return (Activity) current;
+            }
+            current = ((ContextWrapper) current).getBaseContext();
+        }
+        return null;
+    }
+
+    /**
+     * Activity 销毁时清掉属于它的视图池（池中的 View 会随之释放）
+     */
+    private static void registerCallbacks(Application app) {
+        if (app == null || app == callbacksApp) {
+            return;
+        }
+        callbacksApp = app;
+        app.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+                Iterator<Pool> it = pools.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().activity == activity) {
+                        it.remove();
+                    }
+                }
+            }
+
+            @Override public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+            @Override public void onActivityStarted(Activity activity) {}
+            @Override public void onActivityResumed(Activity activity) {}
+            @Override public void onActivityPaused(Activity activity) {}
+            @Override public void onActivityStopped(Activity activity) {}
+            @Override public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+        });
+    }
+
+    // ========== 获取 ==========
+
+    /**
+     * 获取一个已重置的 LinearLayout
+     * @param orientation LinearLayout.VERTICAL / HORIZONTAL
+     */
+    public static LinearLayout obtainLinearLayout(Context context, int orientation) {
+        Pool pool = getPool(context);
+        LinearLayout layout = pool != null ? pool.layouts.poll() : null;
+        if (layout == null) {
+            layout = new LinearLayout(context);
+            layout.setTag(POOLED_TAG, Boolean.TRUE);
+        }
+        layout.setOrientation(orientation);
+        return layout;
+    }
+
+    /**
+     * 获取一个已重置的 TextView
+     */
+    public static TextView obtainTextView(Context context) {
+        Pool pool = getPool(context);
+        TextView textView = pool != null ? pool.textViews.poll() : null;
+        if (textView == null) {
+            textView = new TextView(context);
+            textView.setTag(POOLED_TAG, Boolean.TRUE);
+        }
+        return textView;
+    }
+
+    /**
+     * 取出 View 已有的 LinearLayout.LayoutParams 就地修改（回收时已重置为 WRAP_CONTENT、无边距），
+     * 没有时创建一个并设置上去。View 尚未加入父容器，修改后无需再次 setLayoutParams
+     */
+    public static LinearLayout.LayoutParams linearParams(View view) {
+        ViewGroup.LayoutParams lp = view.getLayoutParams();
+        if (lp instanceof LinearLayout.LayoutParams) {
+            return (LinearLayout.LayoutParams) lp;
+        }
+        LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
+            ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        view.setLayoutParams(params);
+        return params;
+    }
+
+    // ========== 回收 ==========
+
+    /**
+     * 回收已从父容器移除的 View（递归回收其中由视图池创建的子 View）
+     * 非视图池创建的 View 只会被忽略
+     */
+    public static void release(View view) {
+        if (view == null || view.getParent() != null) {
+            return;
+        }
+        if (view instanceof ViewGroup) {
+            recycleChildren((ViewGroup) view);
+        }
+        if (view.getTag(POOLED_TAG) != Boolean.TRUE) {
+            return;
+        }
+        Pool pool = getPool(view.getContext());
+        if (pool == null) {
+            return;
+        }
+        if (view instanceof LinearLayout) {
+            if (pool.layouts.size() < MAX_LAYOUTS) {
+                resetLinearLayout((LinearLayout) view);
+                pool.layouts.push((LinearLayout) view);
+            }
+        } else if (view instanceof TextView) {
+            if (pool.textViews.size() < MAX_TEXT_VIEWS) {
+                resetTextView((TextView) view);
+                pool.textViews.push((TextView) view);
+            }
+        }
+    }
+
+    /**
+     * 移除并回收容器中的所有子 View
+     * 可以在子 View 自己的点击回调中调用：监听器已在执行，被回收的子 View 只会在之后被重新取出
+     */
+    public static void recycleChildren(ViewGroup parent) {
+        int count = parent.getChildCount();
+        if (count == 0) {
+            return;
+        }
+        View[] children = new View[count];
+        for (int i = 0; i < count; i++) {
+            children[i] = parent.getChildAt(i);
+        }
+        parent.removeAllViews();
+        for (View child : children) {
+            release(child);
+        }
+    }
+
+    private static void resetView(View view) {
+        view.setId(View.NO_ID);
+        view.setTag(OWNER_TAG, null);
+        view.setOnClickListener(null);
+        view.setOnLongClickListener(null);
+        view.setClickable(false);
+        view.setLongClickable(false);
+        view.setFocusable(false);
+        view.setBackground(null);
+        view.setPadding(0, 0, 0, 0);
+        view.setVisibility(View.VISIBLE);
+        view.setAlpha(1f);
+        view.setTranslationX(0f);
+        view.setTranslationY(0f);
+        // 就地重置 LayoutParams，不为每次回收分配新对象（View 已脱离父容器，无需 requestLayout）
+        ViewGroup.LayoutParams lp = view.getLayoutParams();
+        if (lp != null) {
+            lp.width = ViewGroup.LayoutParams.WRAP_CONTENT;
+            lp.height = ViewGroup.LayoutParams.WRAP_CONTENT;
+            if (lp instanceof ViewGroup.MarginLayoutParams) {
+                ((ViewGroup.MarginLayoutParams) lp).setMargins(0, 0, 0, 0);
+            }
+            if (lp instanceof LinearLayout.LayoutParams) {
+                ((LinearLayout.LayoutParams) lp).weight = 0;
+                ((LinearLayout.LayoutParams) lp).gravity = -1;
+            }
+        }
+    }
+
+    private static void resetLinearLayout(LinearLayout layout) {
+        resetView(layout);
+        layout.setGravity(Gravity.START | Gravity.TOP);
+    }
+
+    private static void resetTextView(TextView textView) {
+        resetView(textView);
+        textView.setText("");
+        textView.setMaxWidth(Integer.MAX_VALUE);
+        textView.setGravity(Gravity.START | Gravity.TOP);
+        textView.setTextColor(Color.BLACK);
+    }
+
+    // ========== 归属令牌 ==========
+
+    /**
+     * 将选项条绑定到一次新的内容请求
+     * @return 绑定令牌，异步回调时用 {@link #isOwnedBy} 校验
+     */
+    public static int bindOwner(View view) {
+        int token = ++ownerCounter;
+        view.setTag(OWNER_TAG, token);
+        return token;
+    }
+
+    /**
+     * 选项条是否仍属于该令牌对应的请求（被回收或重新绑定后返回 false）
+     */
+    public static boolean isOwnedBy(View view, int token) {
+        Object tag = view.getTag(OWNER_TAG);
+        return tag instanceof Integer && (Integer) tag == token;
+    }
+
+    // ========== 共享背景 ==========
+
+    /**
+     * 圆角背景（共享 ConstantState）
+     */
+    public static Drawable getRoundedBackground(int color, int radiusPx) {
+        long key = drawableKey(color, radiusPx);
+        Drawable.ConstantState state = roundedStates.get(key);
+        if (state == null) {
+            state = createRoundedDrawable(color, radiusPx).getConstantState();
+            roundedStates.put(key, state);
+        }
+        return state.newDrawable();
+    }
+
+    /**
+     * 带按压状态的圆角背景（共享 ConstantState）
+     * 普通状态使用原始颜色，按压状态使用加深 10% 的颜色
+     */
+    public static Drawable getSelectableRoundedBackground(int color, int radiusPx) {
+        long key = drawableKey(color, radiusPx);
+        Drawable.ConstantState state = selectableStates.get(key);
+        if (state == null) {
+            StateListDrawable stateListDrawable = new StateListDrawable();
+            stateListDrawable.addState(new int[]{android.R.attr.state_pressed},
+                createRoundedDrawable(darkenColor(color, 0.1f), radiusPx));
+            stateListDrawable.addState(new int[]{}, createRoundedDrawable(color, radiusPx));
+            state = stateListDrawable.getConstantState();
+            selectableStates.put(key, state);
+        }
+        return state.newDrawable();
+    }
+
+    private static GradientDrawable createRoundedDrawable(int color, int radiusPx) {
+        GradientDrawable drawable = new GradientDrawable();
+        drawable.setShape(GradientDrawable.RECTANGLE);
+        drawable.setColor(color);
+        drawable.setCornerRadius(radiusPx);
+        return drawable;
+    }
+
+    private static long drawableKey(int color, int radiusPx) {
+        return ((long) color << 32) | (radiusPx & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 将颜色加深指定比例
+     * @param color 原始颜色
+     * @param factor 加深因子 (0.0-1.0)，例如 0.1 表示加深 10%
+     * @return 加深后的颜色
+     */
+    public static int darkenColor(int color, float factor) {
+        int a = Color.alpha(color);
+        int r = Math.max(0, (int) (Color.red(color) * (1 - factor)));
+        int g = Math.max(0, (int) (Color.green(color) * (1 - factor)));
+        int b = Math.max(0, (int) (Color.blue(color) * (1 - factor)));
+        return Color.argb(a, r, g, b);
+    }
+}
@@ -0,0 +1,289 @@
+package top.galqq.utils;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.LongSparseArray;
+
+import com.tencent.mmkv.MMKV;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import top.galqq.config.ConfigManager;
+
+/**
+ * AI 选项持久化存储
+ *
+ * 内存中的选项缓存在 QQ 重启或重新进入聊天后就没了，超过历史阈值的消息只能重新请求，
+ * 已经付费生成过的结果被白白浪费。这里把生成的选项按 msgId + 提示词/模型指纹写入独立的 MMKV，
+ * 提示词或模型变化后旧结果自然不再命中。每个账号使用自己的 MMKV（见 {@link AccountSession}）。
+ *
+ * 写入在专用后台线程异步执行；读取 {@link #load} 会访问磁盘，只能在后台线程调用。
+ * 启动后在后台建立 msgId 索引，主线程可用 {@link #mightContain} 快速判断是否值得去磁盘查找。
+ *
+ * 上限和有效期在写线程上维护：启动后延迟一次清理、之后定期清理，写入使条目数超过上限时立即清理。
+ */
+public class OptionsDiskStore {
+
+    private static final String TAG = "GalQQ.OptionsDiskStore";
+
+    private static final LogHelper.Logger LOG = LogHelper.hookLogger(TAG);
+
+    private static final String MMKV_ID = "GalQQ_Options";
+
+    // 最多保存的条目数，超过后按写入时间淘汰最旧的
+    private static final int MAX_ENTRIES = 5000;
+    // 超过上限时一次清理到这个数量，避免之后每次写入都触发清理
+    private static final int TRIM_TARGET = MAX_ENTRIES * 9 / 10;
+    // 条目有效期：30天
+    private static final long MAX_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+    // 启动后首次清理的延迟和之后的清理间隔
+    private static final long FIRST_TRIM_DELAY_MS = 60_000;
+    private static final long TRIM_INTERVAL_MS = 6L * 60 * 60 * 1000;
+
+    private static final Object PRESENT = new Object();
+
+    private static volatile MMKV sStore;
+    // sStore 所属的账号（0 表示账号未知）
+    private static volatile long sStoreUin;
+    private static volatile Handler sWriteHandler;
+
+    // 已持久化的 msgId 索引（后台加载完成前为 null）
+    private static final Object indexLock = new Object();
+    private static LongSparseArray<Object> sIndex;
+
+    private static MMKV getStore() {
+        if (sStore == null) {
+            synchronized (OptionsDiskStore.class) {
+                if (sStore == null) {
+                    // MMKV 由 ConfigManager.init 完成全局初始化
+                    long uin = AccountSession.getUin(null);
+                    sStoreUin = uin;
+                    sStore = MMKV.mmkvWithID(storeIdOf(uin));
+                }
+            }
+        }
+        return sStore;
+    }
+
+    private static Handler getWriteHandler() {
+        if (sWriteHandler == null) {
+            synchronized (OptionsDiskStore.class) {
+                if (sWriteHandler == null) {
+                    HandlerThread thread = new HandlerThread(
+                        "GalQQ-OptionsStore", android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    thread.start();
+                    Handler handler = new Handler(thread.getLooper());
+                    handler.post(OptionsDiskStore::loadIndex);
+                    handler.postDelayed(OptionsDiskStore::periodicTrim, FIRST_TRIM_DELAY_MS);
+                    sWriteHandler = handler;
+                }
+            }
+        }
+        return sWriteHandler;
+    }
+
+    private static String storeIdOf(long uin) {
+        return uin > 0 ? MMKV_ID + "_" + uin : MMKV_ID;
+    }
+
+    /**
+     * 账号变化：切换到该账号的存储并重建索引（尚未打开时什么都不做，打开时会使用当前账号）
+     */
+    public static void onAccountChanged(final long uin) {
+        if (sStore == null || sStoreUin == uin) {
+            return;
+        }
+        getWriteHandler().post(() -> {
+            synchronized (OptionsDiskStore.class) {
+                if (sStoreUin == uin) {
+                    return;
+                }
+                sStoreUin = uin;
+                sStore = MMKV.mmkvWithID(storeIdOf(uin));
+            }
+            synchronized (indexLock) {
+                sIndex = null;
+            }
+            loadIndex();
+        });
+    }
+
+    private static String keyOf(long msgId, long promptFingerprint) {
+        return msgId + "_" + Long.toHexString(promptFingerprint);
+    }
+
+    /**
+     * 异步保存选项
+     */
+    public static void put(final long msgId, final long promptFingerprint, List<String> options) {
+        if (msgId == 0L || promptFingerprint == 0L || options == null || options.isEmpty()) {
+            return;
+        }
+        final List<String> copy = new ArrayList<>(options);
+        getWriteHandler().post(() -> {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("t", System.currentTimeMillis());
+                json.put("o", new JSONArray(copy));
+                MMKV store = getStore();
+                store.encode(keyOf(msgId, promptFingerprint), json.toString());
+                synchronized (indexLock) {
+                    if (sIndex != null) {
+                        sIndex.put(msgId, PRESENT);
+                    }
+                }
+                // 超过上限时立即清理（count() 不读取内容，开销很小）
+                if (store.count() > MAX_ENTRIES) {
+                    trim(store);
+                }
+            } catch (Throwable t) {
+                LOG.d("保存选项失败: {}", t.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 读取选项（访问磁盘，必须在后台线程调用）
+     * @return 选项列表，不存在或已过期返回 null
+     */
+    public static List<String> load(long msgId, long promptFingerprint) {
+        if (msgId == 0L || promptFingerprint == 0L || !mightContain(msgId)) {
+            return null;
+        }
+        try {
+            String value = getStore().decodeString(keyOf(msgId, promptFingerprint), null);
+            if (value == null) {
+                return null;
+            }
+            JSONObject json = new JSONObject(value);
+            if (System.currentTimeMillis() - json.optLong("t", 0L) > MAX_AGE_MS) {
+                return null;
+            }
+            JSONArray array = json.optJSONArray("o");
+            if (array == null || array.length() == 0) {
+                return null;
+            }
+            List<String> options = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                options.add(array.getString(i));
+            }
+            return options;
+        } catch (Throwable t) {
+            LOG.d("读取选项失败: {}", t.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 该消息是否可能有持久化的选项（索引未加载完成时返回 true）
+     */
+    public static boolean mightContain(long msgId) {
+        getWriteHandler();
+        synchronized (indexLock) {
+            return sIndex == null || sIndex.get(msgId) != null;
+        }
+    }
+
+    /**
+     * 建立 msgId 索引（在写线程执行，只读取键，不解析内容）
+     */
+    private static void loadIndex() {
+        LongSparseArray<Object> index = new LongSparseArray<>();
+        try {
+            String[] keys = getStore().allKeys();
+            if (keys != null) {
+                addToIndex(index, Arrays.asList(keys));
+            }
+        } catch (Throwable t) {
+            LOG.d("建立索引失败: {}", t.getMessage());
+        }
+        synchronized (indexLock) {
+            sIndex = index;
+        }
+        LOG.d("索引已加载，共 {} 条消息", index.size());
+    }
+
+    /**
+     * 定期清理（在写线程执行）
+     */
+    private static void periodicTrim() {
+        try {
+            trim(getStore());
+        } catch (Throwable t) {
+            LOG.d("清理失败: {}", t.getMessage());
+        }
+        sWriteHandler.postDelayed(OptionsDiskStore::periodicTrim, TRIM_INTERVAL_MS);
+    }
+
+    /**
+     * 淘汰过期条目；超出上限时按写入时间淘汰最旧的，保留 TRIM_TARGET 条。之后重建索引（在写线程执行）
+     */
+    private static void trim(MMKV store) {
+        String[] keys = store.allKeys();
+        if (keys == null || keys.length == 0) {
+            return;
+        }
+        List<String> live = new ArrayList<>(keys.length);
+        List<String> expired = new ArrayList<>();
+        final long[] times = new long[keys.length];
+        long now = System.currentTimeMillis();
+        for (String key : keys) {
+            long time;
+            try {
+                time = new JSONObject(store.decodeString(key, "{}")).optLong("t", 0L);
+            } catch (Throwable t) {
+                time = 0L;
+            }
+            if (now - time > MAX_AGE_MS) {
+                expired.add(key);
+            } else {
+                times[live.size()] = time;
+                live.add(key);
+            }
+        }
+        if (live.size() > MAX_ENTRIES) {
+            // 按写入时间排序，淘汰最旧的
+            Integer[] order = new Integer[live.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingLong(i -> times[i]));
+            List<String> kept = new ArrayList<>(TRIM_TARGET);
+            int drop = live.size() - TRIM_TARGET;
+            for (int i = 0; i < order.length; i++) {
+                if (i < drop) {
+                    expired.add(live.get(order[i]));
+                } else {
+                    kept.add(live.get(order[i]));
+                }
+            }
+            live = kept;
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        store.removeValuesForKeys(expired.toArray(new String[0]));
+        LOG.d("已淘汰 {} 条过期选项", expired.size());
+        // 同一 msgId 可能有多个指纹的条目，按剩下的键重建索引
+        LongSparseArray<Object> index = new LongSparseArray<>();
+        addToIndex(index, live);
+        synchronized (indexLock) {
+            sIndex = index;
+        }
+    }
+
+    private static void addToIndex(LongSparseArray<Object> index, List<String> keys) {
+        for (String key : keys) {
+            int sep = key.lastIndexOf('_');
+            if (sep > 0) {
+                try {
+                    index.put(Long.parseLong(key.substring(0, sep)), PRESENT);
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package top.galqq.utils;
+
+import java.util.Date;
+import java.util.Locale;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+import top.galqq.config.ConfigManager;
+
+/**
+ * 服务商限流响应头解析 + 学习到的限流值持久化
+ *
+ * HttpAiClient 每收到一个响应就调用 {@link #onResponse}，解析：
+ * - Retry-After / retry-after-ms：429 时服务商要求等待的时间
+ * - x-ratelimit-remaining-requests / x-ratelimit-remaining-tokens：当前窗口剩余额度
+ * - x-ratelimit-reset-requests / x-ratelimit-reset-tokens：额度重置时间（"1s"、"6m0s"、"20ms" 等）
+ * 结果交给注册的 {@link Listener}（主AI队列），在额度耗尽前提前收紧限流器，而不是等 429 之后再降速。
+ *
+ * 限流器降速后的 QPS 按接口（host + path）保存在 MMKV，重启后从学习到的值开始，
+ * 不会每次从配置的 QPS 起步又立刻触发一轮 429。
+ */
+public final class ProviderRateLimits {
+
+    private static final String TAG = "GalQQ.RateLimits";
+
+    private static final LogHelper.Logger LOG = LogHelper.verboseLogger(TAG);
+
+    private static volatile Listener listener;
+
+    private ProviderRateLimits() {}
+
+    /**
+     * 限流信息监听（在 OkHttp 回调线程调用，先于请求回调）
+     */
+    public interface Listener {
+        void onRateLimitInfo(String endpoint, Info info);
+    }
+
+    public static void setListener(Listener l) {
+        listener = l;
+    }
+
+    /**
+     * 解析响应头并通知监听者（不读取响应体）
+     */
+    public static void onResponse(String apiUrl, Response response) {
+        Listener l = listener;
+        if (l == null) {
+            return;
+        }
+        try {
+            Info info = parse(response.code(), response.headers());
+            if (info == null) {
+                return;
+            }
+            String endpoint = endpointKey(apiUrl);
+            LOG.d("{} 限流响应头: {}", endpoint, info);
+            l.onRateLimitInfo(endpoint, info);
+        } catch (Throwable t) {
+            LOG.d(t);
+        }
+    }
+
+    // ========== 解析 ==========
+
+    /**
+     * @return 没有任何限流信息且不是 429 时返回 null
+     */
+    static Info parse(int code, Headers headers) {
+        boolean rateLimited = code == 429;
+        long retryAfterMs = parseRetryAfterMs(headers);
+        long remainingRequests = parseLong(headers.get("x-ratelimit-remaining-requests"));
+        long resetRequestsMs = parseDurationMs(headers.get("x-ratelimit-reset-requests"));
+        long remainingTokens = parseLong(headers.get("x-ratelimit-remaining-tokens"));
+        long resetTokensMs = parseDurationMs(headers.get("x-ratelimit-reset-tokens"));
+        if (!rateLimited && retryAfterMs < 0 && remainingRequests < 0 && remainingTokens < 0) {
+            return null;
+        }
+        return new Info(rateLimited, retryAfterMs, remainingRequests, resetRequestsMs, remainingTokens, resetTokensMs);
+    }
+
+    /**
+     * retry-after-ms 优先；Retry-After 可以是秒数或 HTTP 日期
+     */
+    private static long parseRetryAfterMs(Headers headers) {
+        String ms = headers.get("retry-after-ms");
+        if (ms != null) {
+            try {
+                return Math.max(0, (long) Double.parseDouble(ms.trim()));
+            } catch (NumberFormatException ignored) {}
+        }
+        String value = headers.get("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, (long) (Double.parseDouble(value.trim()) * 1000));
+        } catch (NumberFormatException ignored) {}
+        Date date = headers.getDate("Retry-After");
+        return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+    }
+
+    /**
+     * 解析重置时间：Go 风格时长（"1s"、"6m0s"、"1h2m3.5s"、"20ms"）、秒数或 Unix 时间戳（秒）
+     * @return 毫秒，无法解析时返回 -1
+     */
+    static long parseDurationMs(String value) {
+        if (value == null) {
+            return -1;
+        }
+        String s = value.trim().toLowerCase(Locale.US);
+        if (s.isEmpty()) {
+            return -1;
+        }
+        try {
+            if (s.matches("\\d+(\\.\\d+)?")) {
+                double seconds = Double.parseDouble(s);
+                if (seconds > 1e9) {
+                    // Unix 时间戳
+                    return Math.max(0, (long) (seconds * 1000) - System.currentTimeMillis());
+                }
+                return (long) (seconds * 1000);
+            }
+            long total = 0;
+            int i = 0;
+            while (i < s.length()) {
+                int numStart = i;
+                while (i < s.length() && (Character.isDigit(s.charAt(i)) || s.charAt(i) == '.')) i++;
+                if (numStart == i) {
+                    return -1;
+                }
+                double n = Double.parseDouble(s.substring(numStart, i));
+                int unitStart = i;
+                while (i < s.length() && Character.isLetter(s.charAt(i))) i++;
+                long factor;
+                switch (s.substring(unitStart, i)) {
+                    case "ms": factor = 1; break;
+                    case "s": factor = 1000; break;
+                    case "m": factor = 60_000; break;
+                    case "h": factor = 3_600_000; break;
+                    case "d": factor = 86_400_000; break;
+                    default: return -1;
+                }
+                total += (long) (n * factor);
+            }
+            return total;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // ========== 持久化 ==========
+
+    /**
+     * 接口标识：host + path（忽略协议、端口之外的查询参数等）
+     */
+    public static String endpointKey(String apiUrl) {
+        if (apiUrl == null) {
+            return "";
+        }
+        HttpUrl url = HttpUrl.parse(apiUrl.trim());
+        return url != null ? url.host() + url.encodedPath() : apiUrl.trim();
+    }
+
+    /**
+     * @return 该接口学习到的 QPS，没有记录时返回 0
+     */
+    public static double getLearnedQps(String endpoint) {
+        try {
+            return ConfigManager.getLearnedAiQps(endpoint);
+        } catch (Throwable t) {
+            return 0;
+        }
+    }
+
+    /**
+     * 保存学习到的 QPS；qps <= 0 表示已恢复到配置值，删除记录
+     */
+    public static void saveLearnedQps(String endpoint, double qps) {
+        try {
+            ConfigManager.setLearnedAiQps(endpoint, (float) qps);
+        } catch (Throwable t) {
+            LOG.d(t);
+        }
+    }
+
+    /**
+     * 一次响应中的限流信息（未提供的字段为 -1）
+     */
+    public static final class Info {
+        public final boolean rateLimited;        // HTTP 429
+        public final long retryAfterMs;
+        public final long remainingRequests;
+        public final long resetRequestsMs;
+        public final long remainingTokens;
+        public final long resetTokensMs;
+
+        Info(boolean rateLimited, long retryAfterMs, long remainingRequests, long resetRequestsMs,
+             long remainingTokens, long resetTokensMs) {
+            this.rateLimited = rateLimited;
+            this.retryAfterMs = retryAfterMs;
+            this.remainingRequests = remainingRequests;
+            this.resetRequestsMs = resetRequestsMs;
+            this.remainingTokens = remainingTokens;
+            this.resetTokensMs = resetTokensMs;
+        }
+
+        @Override
+        public String toString() {
+            return "429=" + rateLimited + ", retryAfter=" + retryAfterMs + "ms"
+                + ", requests=" + remainingRequests + "/reset " + resetRequestsMs + "ms"
+                + ", tokens=" + remainingTokens + "/reset " + resetTokensMs + "ms";
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package top.galqq.utils;
+
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AI 请求的可见性跟踪
+ *
+ * 原先只在提交时用 getGlobalVisibleRect 判断一次优先级：绑定时气泡往往还没挂到窗口上，
+ * 可见消息被当成 NORMAL；滑走的消息仍保持 HIGH；选项条被回收复用后，正在进行的请求也不会取消。
+ *
+ * 这里在主线程定期检查每个待完成请求对应的选项条：
+ * - VISIBLE：在屏幕可见区域内
+ * - HIDDEN：仍挂在气泡上，但已滑出可见区域（结果仍会写入缓存，滑回来时可直接使用）
+ * - ABANDONED：选项条已被回收/重新绑定/移除，没有人能看到这个结果
+ * 状态变化时通知队列调整优先级或取消请求。
+ *
+ * 除 {@link #getState} 外所有方法都只能在主线程调用。
+ */
+public final class RequestVisibility {
+
+    public static final int VISIBLE = 0;
+    public static final int HIDDEN = 1;
+    public static final int ABANDONED = 2;
+
+    // 检查间隔
+    private static final long CHECK_INTERVAL_MS = 250;
+
+    public interface Listener {
+        /**
+         * 可见性变化（主线程回调，进入 ABANDONED 后不再回调）
+         */
+        void onVisibilityChanged(RequestVisibility visibility, int state);
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final List<RequestVisibility> tracked = new ArrayList<>();
+    private static final Rect tmpRect = new Rect();
+    private static boolean checkScheduled = false;
+    private static final Runnable checkRunnable = RequestVisibility::checkAll;
+
+    private final WeakReference<View> viewRef;
+    private final int ownerToken;
+    private volatile int state;
+    private boolean wasAttached;
+    private Listener listener;
+
+    private RequestVisibility(View view, int ownerToken) {
+        this.viewRef = new WeakReference<>(view);
+        this.ownerToken = ownerToken;
+        this.state = evaluate();
+    }
+
+    /**
+     * 开始跟踪选项条的可见性
+     * @param view 选项条
+     * @param ownerToken {@link OptionBarViewPool#bindOwner} 返回的令牌，选项条换了归属即视为放弃
+     */
+    public static RequestVisibility track(View view, int ownerToken) {
+        RequestVisibility visibility = new RequestVisibility(view, ownerToken);
+        if (visibility.state != ABANDONED) {
+            tracked.add(visibility);
+            scheduleCheck();
+        }
+        return visibility;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public boolean isVisible() {
+        return state == VISIBLE;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 停止跟踪（请求已完成）
+     */
+    public void release() {
+        listener = null;
+        tracked.remove(this);
+    }
+
+    private int evaluate() {
+        View view = viewRef.get();
+        if (view == null || !OptionBarViewPool.isOwnedBy(view, ownerToken)) {
+            return ABANDONED;
+        }
+        if (view.getParent() == null) {
+            // 尚未插入布局时不算放弃；插入过又被移除（收起/重新绑定）才算
+            return wasAttached ? ABANDONED : HIDDEN;
+        }
+        wasAttached = true;
+        if (view.isAttachedToWindow() && view.isShown() && view.getGlobalVisibleRect(tmpRect)) {
+            return VISIBLE;
+        }
+        return HIDDEN;
+    }
+
+    private static void scheduleCheck() {
+        if (!checkScheduled) {
+            checkScheduled = true;
+            mainHandler.postDelayed(checkRunnable, CHECK_INTERVAL_MS);
+        }
+    }
+
+    private static void checkAll() {
+        checkScheduled = false;
+        if (tracked.isEmpty()) {
+            return;
+        }
+        // 回调中可能 release，先复制
+        List<RequestVisibility> snapshot = new ArrayList<>(tracked);
+        for (RequestVisibility visibility : snapshot) {
+            int newState = visibility.evaluate();
+            if (newState == visibility.state) {
+                continue;
+            }
+            visibility.state = newState;
+            if (newState == ABANDONED) {
+                tracked.remove(visibility);
+            }
+            Listener listener = visibility.listener;
+            if (listener != null) {
+                try {
+                    listener.onVisibilityChanged(visibility, newState);
+                } catch (Throwable ignored) {}
+            }
+        }
+        if (!tracked.isEmpty()) {
+            scheduleCheck();
+        }
+    }
+}
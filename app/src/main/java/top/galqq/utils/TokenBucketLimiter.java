@@ -0,0 +1,301 @@
+package top.galqq.utils;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+
+import de.robv.android.xposed.XposedBridge;
+
+/**
+ * 令牌桶限流器（主AI队列和外挂AI队列共用）
+ *
+ * 原先两个队列各有一份 DynamicRateLimiter：acquire 是 synchronized 的，持锁 sleep，
+ * 每取一个令牌都读一次 MMKV，而且请求严格等间隔发出，一次点开五条消息也要排 1~2 秒。
+ *
+ * 现在：
+ * - 桶容量 burst，空闲时攒满，连续的请求在容量内立即放行，之后按 QPS 补充
+ * - 按 GCRA（理论到达时间）实现，只有一个 AtomicLong，取令牌是 CAS 循环，无锁
+ * - 取不到令牌时返回需要等待的时间，由调用方定时重试；本身就是同步调用的场景用 {@link #acquireBlocking}
+ * - QPS 和 burst 配置每秒最多读取一次
+ * - 429 时降速 50% 并清空攒下的令牌，连续成功后逐步恢复到配置值
+ * - 调用方可根据服务商响应头暂停发放（{@link #pauseUntil}）或限制可立即放行的数量（{@link #limitAvailable}），
+ *   并通过 {@link #setRateListener} 持久化降速后的 QPS、启动时用 {@link #restoreQps} 恢复
+ */
+public final class TokenBucketLimiter {
+
+    private static final String TAG = "GalQQ.RateLimiter";
+
+    // 配置刷新间隔
+    private static final long CONFIG_REFRESH_NS = TimeUnit.SECONDS.toNanos(1);
+    // 恢复速率：每 30 秒最多一次，且需要连续成功 10 次
+    private static final long RECOVER_INTERVAL_NS = TimeUnit.SECONDS.toNanos(30);
+    private static final int RECOVER_SUCCESS_COUNT = 10;
+
+    private final String name;
+    private final DoubleSupplier qpsSource;
+    private final IntSupplier burstSource;
+    private final double minQps;
+
+    // 理论到达时间：下一个令牌在没有突发额度时的发放时刻（nanoTime）
+    private final AtomicLong theoreticalArrival;
+
+    private volatile double targetQps;      // 配置的 QPS
+    private volatile double currentQps;     // 当前 QPS（429 后低于配置）
+    private volatile long intervalNanos;    // 1 / currentQps
+    private volatile int burst;             // 桶容量
+    private volatile long configCheckedAt;
+
+    private final AtomicInteger successCount = new AtomicInteger(0);
+    private volatile long lastAdjustNanos;
+
+    // 429 降速 / 恢复后通知（参数为新的当前 QPS）
+    private volatile DoubleConsumer rateListener;
+
+    /**
+     * @param name 日志中的名称
+     * @param qpsSource 配置的 QPS（每秒最多读取一次）
+     * @param burstSource 配置的桶容量（每秒最多读取一次，最小为 1）
+     * @param minQps 429 降速的下限
+     */
+    public TokenBucketLimiter(String name, DoubleSupplier qpsSource, IntSupplier burstSource, double minQps) {
+        this.name = name;
+        this.qpsSource = qpsSource;
+        this.burstSource = burstSource;
+        this.minQps = minQps;
+        long now = System.nanoTime();
+        this.targetQps = sanitizeQps(qpsSource.getAsDouble());
+        this.currentQps = targetQps;
+        this.intervalNanos = toInterval(currentQps);
+        this.burst = Math.max(1, burstSource.getAsInt());
+        this.configCheckedAt = now;
+        this.lastAdjustNanos = now;
+        // 初始时桶是满的
+        this.theoreticalArrival = new AtomicLong(now);
+    }
+
+    // ========== 取令牌 ==========
+
+    /**
+     * 尝试取一个令牌（无锁、不阻塞）
+     * @return 0 表示已取得；否则为距离下一个令牌可用的纳秒数（未消耗令牌）
+     */
+    public long tryAcquire() {
+        refreshConfigIfStale();
+        while (true) {
+            long interval = intervalNanos;
+            long capacity = interval * burst;
+            long now = System.nanoTime();
+            long tat = theoreticalArrival.get();
+            long newTat = Math.max(tat, now) + interval;
+            long wait = newTat - now - capacity;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(tat, newTat)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 阻塞直到取得令牌（只用于本身就是同步调用的场景，不持有任何锁）
+     */
+    public void acquireBlocking() {
+        long wait;
+        while ((wait = tryAcquire()) > 0) {
+            LockSupport.parkNanos(this, wait);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    // ========== 反馈 ==========
+
+    /**
+     * 429错误：降速50%，并清空攒下的突发额度
+     */
+    public synchronized void on429Error() {
+        double oldQps = currentQps;
+        setCurrentQps(Math.max(Math.min(minQps, targetQps), currentQps * 0.5));
+        successCount.set(0);
+        lastAdjustNanos = System.nanoTime();
+        drainBurst();
+
+        XposedBridge.log(TAG + ": [" + name + "] 🔽 触发429，QPS降速: " +
+                       String.format(Locale.US, "%.2f", oldQps) + " → " +
+                       String.format(Locale.US, "%.2f", currentQps) + " req/s");
+        notifyRateChanged();
+    }
+
+    /**
+     * 成功回调：连续成功后恢复QPS
+     */
+    public void onSuccess() {
+        int count = successCount.incrementAndGet();
+        long now = System.nanoTime();
+        if (now - lastAdjustNanos > RECOVER_INTERVAL_NS && count >= RECOVER_SUCCESS_COUNT && currentQps < targetQps) {
+            synchronized (this) {
+                if (currentQps >= targetQps) {
+                    return;
+                }
+                double oldQps = currentQps;
+                // 恢复时不超过目标QPS
+                setCurrentQps(Math.min(targetQps, currentQps * 1.2));
+                successCount.set(0);
+                lastAdjustNanos = now;
+
+                XposedBridge.log(TAG + ": [" + name + "] 🔼 连续成功，QPS恢复: " +
+                               String.format(Locale.US, "%.2f", oldQps) + " → " +
+                               String.format(Locale.US, "%.2f", currentQps) + " req/s");
+                notifyRateChanged();
+            }
+        }
+    }
+
+    /**
+     * 在 untilNanos（nanoTime）之前不发放令牌，之后按当前速率发放（不补突发额度）
+     * 用于 Retry-After 或剩余额度为 0 时等待窗口重置
+     */
+    public void pauseUntil(long untilNanos) {
+        raiseArrival(untilNanos + intervalNanos * (burst - 1));
+    }
+
+    /**
+     * 可立即放行的令牌数不超过 tokens（服务商剩余额度少于桶中令牌时使用）
+     */
+    public void limitAvailable(int tokens) {
+        int capacity = burst;
+        if (tokens >= capacity) {
+            return;
+        }
+        raiseArrival(System.nanoTime() + intervalNanos * (capacity - Math.max(0, tokens)));
+    }
+
+    /**
+     * 恢复之前学习到的 QPS（不超过配置值、不低于下限）；qps <= 0 时回到配置值
+     */
+    public synchronized void restoreQps(double qps) {
+        double restored = qps > 0 ? Math.max(Math.min(minQps, targetQps), Math.min(targetQps, qps)) : targetQps;
+        if (Math.abs(restored - currentQps) < 0.001) {
+            return;
+        }
+        setCurrentQps(restored);
+        successCount.set(0);
+        lastAdjustNanos = System.nanoTime();
+        XposedBridge.log(TAG + ": [" + name + "] 使用学习到的QPS: " +
+                       String.format(Locale.US, "%.2f", currentQps) + " req/s（配置 " +
+                       String.format(Locale.US, "%.2f", targetQps) + "）");
+    }
+
+    public void setRateListener(DoubleConsumer listener) {
+        this.rateListener = listener;
+    }
+
+    // ========== 状态 ==========
+
+    public double getCurrentQPS() {
+        return currentQps;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * 当前桶中可立即放行的令牌数
+     */
+    public int getAvailableTokens() {
+        long interval = intervalNanos;
+        long now = System.nanoTime();
+        long ahead = Math.max(theoreticalArrival.get(), now) - now;
+        long available = (interval * burst - ahead) / interval;
+        return (int) Math.max(0, Math.min(burst, available));
+    }
+
+    /**
+     * 是否因429降速尚未恢复
+     */
+    public boolean isThrottled() {
+        return currentQps < targetQps;
+    }
+
+    // ========== 内部 ==========
+
+    private void refreshConfigIfStale() {
+        long now = System.nanoTime();
+        if (now - configCheckedAt < CONFIG_REFRESH_NS) {
+            return;
+        }
+        configCheckedAt = now;
+        double configQps;
+        int configBurst;
+        try {
+            configQps = sanitizeQps(qpsSource.getAsDouble());
+            configBurst = Math.max(1, burstSource.getAsInt());
+        } catch (Throwable t) {
+            return;
+        }
+        burst = configBurst;
+        if (Math.abs(targetQps - configQps) > 0.01) {
+            synchronized (this) {
+                XposedBridge.log(TAG + ": [" + name + "] 更新目标QPS: " + targetQps + " -> " + configQps);
+                boolean wasAtTarget = currentQps >= targetQps;
+                targetQps = configQps;
+                // 未降速时跟随新配置；当前QPS高于新目标时立即降低
+                if (wasAtTarget || currentQps > configQps) {
+                    setCurrentQps(configQps);
+                }
+            }
+        }
+    }
+
+    private void setCurrentQps(double qps) {
+        currentQps = qps;
+        intervalNanos = toInterval(qps);
+    }
+
+    private void notifyRateChanged() {
+        DoubleConsumer listener = rateListener;
+        if (listener != null) {
+            try {
+                listener.accept(currentQps);
+            } catch (Throwable t) {
+                XposedBridge.log(TAG + ": [" + name + "] 速率回调异常: " + t.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 清空突发额度：下一个令牌在一个间隔之后
+     */
+    private void drainBurst() {
+        raiseArrival(System.nanoTime() + intervalNanos * burst);
+    }
+
+    /**
+     * 把理论到达时间推迟到至少 target（只推迟，不提前）
+     */
+    private void raiseArrival(long target) {
+        long tat;
+        do {
+            tat = theoreticalArrival.get();
+            if (tat >= target) {
+                return;
+            }
+        } while (!theoreticalArrival.compareAndSet(tat, target));
+    }
+
+    private static double sanitizeQps(double qps) {
+        return qps > 0.01 ? qps : 0.01;
+    }
+
+    private static long toInterval(double qps) {
+        return (long) (TimeUnit.SECONDS.toNanos(1) / qps);
+    }
+}
@@ -0,0 +1,209 @@
+package top.galqq.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import top.galqq.config.ConfigManager;
+
+/**
+ * 视口邻近消息预取（自动显示模式）
+ *
+ * 自动显示模式下只有气泡绑定时才开始生成选项，滑到一条消息后还要再等一次完整的模型往返。
+ * 这里在列表静止后读取 RecyclerView 适配器中可见区域上下各 N 条（可配置）消息，
+ * 交给 {@link Target} 以低优先级提前提交生成请求，等气泡真正出现时选项通常已经在缓存里了。
+ *
+ * 每轮预取数量受 {@link AiRateLimitedQueue#getPrefetchBudget} 限制（限流器的空余额度），
+ * 不会挤占可见消息的请求。RecyclerView/Adapter 方法找不到（混淆）时自动停用。
+ *
+ * 只能在主线程调用。
+ */
+public final class ViewportPrefetcher {
+
+    private static final String TAG = "GalQQ.Prefetcher";
+
+    private static final LogHelper.Logger LOG = LogHelper.hookLogger(TAG);
+
+    /**
+     * 预取目标：判断并提交一条适配器数据项
+     */
+    public interface Target {
+        /**
+         * @param item 适配器中的数据项（类型由调用方自行判断）
+         * @return 是否提交了预取（占用一个预算）
+         */
+        boolean prefetch(Context context, Object item);
+    }
+
+    // 列表静止后等待多久再扫描（绑定连续发生时只扫描一次）
+    private static final long SCAN_DELAY_MS = 300;
+    public static final int MAX_WINDOW = 10;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final Object NO_METHOD = new Object();
+
+    // 运行时类 -> 方法（找不到时为 NO_METHOD）
+    private static final Map<Class<?>, Object> adapterMethods = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Object> childPositionMethods = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Object> itemCountMethods = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Object> currentListMethods = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Object> getItemMethods = new ConcurrentHashMap<>();
+
+    private static Target target;
+    private static WeakReference<ChatEnvironment> pendingEnv;
+    private static final Runnable scanRunnable = ViewportPrefetcher::runScan;
+
+    private ViewportPrefetcher() {}
+
+    public static void setTarget(Target t) {
+        target = t;
+    }
+
+    /**
+     * 请求一次预取扫描（气泡绑定时调用，合并为列表静止后的一次扫描）
+     */
+    public static void schedule(ChatEnvironment env) {
+        if (target == null || ConfigManager.getPrefetchWindow() <= 0) {
+            return;
+        }
+        pendingEnv = new WeakReference<>(env);
+        mainHandler.removeCallbacks(scanRunnable);
+        mainHandler.postDelayed(scanRunnable, SCAN_DELAY_MS);
+    }
+
+    private static void runScan() {
+        ChatEnvironment env = pendingEnv != null ? pendingEnv.get() : null;
+        if (env == null) {
+            return;
+        }
+        if (env.isScrolling()) {
+            mainHandler.postDelayed(scanRunnable, SCAN_DELAY_MS);
+            return;
+        }
+        pendingEnv = null;
+        try {
+            scan(env);
+        } catch (Throwable t) {
+            LOG.d("预取扫描失败: {}", t.getMessage());
+        }
+    }
+
+    private static void scan(ChatEnvironment env) throws Exception {
+        int window = Math.min(MAX_WINDOW, ConfigManager.getPrefetchWindow());
+        View recyclerView = env.getRecyclerView();
+        if (window <= 0 || target == null || !(recyclerView instanceof ViewGroup)
+                || !recyclerView.isAttachedToWindow()) {
+            return;
+        }
+        Method getAdapter = lookup(adapterMethods, recyclerView.getClass(), "getAdapter");
+        Method getChildPosition = lookup(childPositionMethods, recyclerView.getClass(), "getChildAdapterPosition", View.class);
+        if (getAdapter == null || getChildPosition == null) {
+            return;
+        }
+        Object adapter = getAdapter.invoke(recyclerView);
+        if (adapter == null) {
+            return;
+        }
+        Method getItemCount = lookup(itemCountMethods, adapter.getClass(), "getItemCount");
+        if (getItemCount == null) {
+            return;
+        }
+        int itemCount = (Integer) getItemCount.invoke(adapter);
+
+        // 可见区域：当前挂在 RecyclerView 上的子 View 对应的适配器位置
+        ViewGroup list = (ViewGroup) recyclerView;
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (int i = 0; i < list.getChildCount(); i++) {
+            int position = (Integer) getChildPosition.invoke(list, list.getChildAt(i));
+            if (position >= 0) {
+                first = Math.min(first, position);
+                last = Math.max(last, position);
+            }
+        }
+        if (last < 0) {
+            return;
+        }
+
+        Context context = recyclerView.getContext();
+        int budget = AiRateLimitedQueue.getInstance(context).getPrefetchBudget();
+        if (budget <= 0) {
+            LOG.d("限流器无空余额度，跳过预取");
+            return;
+        }
+
+        // 由近到远，上下交替
+        int submitted = 0;
+        for (int distance = 1; distance <= window && submitted < budget; distance++) {
+            if (prefetchAt(context, adapter, last + distance, itemCount)) {
+                submitted++;
+            }
+            if (submitted < budget && prefetchAt(context, adapter, first - distance, itemCount)) {
+                submitted++;
+            }
+        }
+        if (submitted > 0) {
+            LOG.d("可见区域 [{}, {}]，已提交 {} 条预取", first, last, submitted);
+        }
+    }
+
+    private static boolean prefetchAt(Context context, Object adapter, int position, int itemCount) {
+        if (position < 0 || position >= itemCount) {
+            return false;
+        }
+        Object item = getItem(adapter, position);
+        if (item == null) {
+            return false;
+        }
+        try {
+            return target.prefetch(context, item);
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /**
+     * 读取适配器数据项：优先 ListAdapter.getCurrentList()，其次 getItem(int)
+     */
+    private static Object getItem(Object adapter, int position) {
+        try {
+            Method getCurrentList = lookup(currentListMethods, adapter.getClass(), "getCurrentList");
+            if (getCurrentList != null) {
+                Object list = getCurrentList.invoke(adapter);
+                if (list instanceof List && position < ((List<?>) list).size()) {
+                    return ((List<?>) list).get(position);
+                }
+                return null;
+            }
+            Method getItem = lookup(getItemMethods, adapter.getClass(), "getItem", int.class);
+            return getItem != null ? getItem.invoke(adapter, position) : null;
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private static Method lookup(Map<Class<?>, Object> cache, Class<?> clazz, String name, Class<?>... params) {
+        Object cached = cache.get(clazz);
+        if (cached == null) {
+            Object method = NO_METHOD;
+            try {
+                Method m = clazz.getMethod(name, params);
+                if (m.getReturnType() != void.class) {
+                    m.setAccessible(true);
+                    method = m;
+                }
+            } catch (Throwable ignored) {}
+            cache.put(clazz, method);
+            cached = method;
+        }
+        return cached == NO_METHOD ? null : (Method) cached;
+    }
+}
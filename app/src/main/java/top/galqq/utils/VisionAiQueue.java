@@ -3,14 +3,12 @@ package top.galqq.utils;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.SystemClock;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import de.robv.android.xposed.XposedBridge;
 import top.galqq.config.ConfigManager;
@@ -19,7 +17,7 @@ import top.galqq.config.ConfigManager;
  * 外挂AI图片识别队列管理器
  * 
  * 功能：
- * 1. 使用与主AI相同的QPS限制
+ * 1. 令牌桶限流（与主AI共用 {@link TokenBucketLimiter} 实现，使用外挂AI自己的QPS配置）
  * 2. 支持缓存，避免重复识别
  * 3. 优先级队列（当前消息优先于上下文消息）
  * 4. 批量处理同一消息的多张图片
@@ -34,8 +32,8 @@ public class VisionAiQueue {
     // 优先级队列
     private final PriorityBlockingQueue<ImageRecognitionTask> taskQueue;
     
-    // 动态限流器（与主AI共享QPS配置）
-    private final DynamicRateLimiter rateLimiter;
+    // 令牌桶限流器（使用外挂AI自己的QPS和突发容量配置）
+    private final TokenBucketLimiter rateLimiter;
     
     // 线程池
     private final ExecutorService executorService;
@@ -50,7 +48,8 @@ public class VisionAiQueue {
         this.taskQueue = new PriorityBlockingQueue<>(50);
         // 使用外挂AI专用的QPS配置，而不是主AI的QPS
         float initialQps = ConfigManager.getVisionAiQps();
-        this.rateLimiter = new DynamicRateLimiter(initialQps, 0.3); // 最小0.3 QPS
+        this.rateLimiter = new TokenBucketLimiter("Vision", ConfigManager::getVisionAiQps,
+            ConfigManager::getVisionAiBurst, 0.3); // 最小0.3 QPS
         this.executorService = Executors.newFixedThreadPool(2); // 最多2个并发识别
         this.mainHandler = new Handler(Looper.getMainLooper());
         
@@ -148,8 +147,8 @@ public class VisionAiQueue {
                 continue;
             }
             
-            // 限流
-            rateLimiter.acquire();
+            // 限流（同步接口，调用方本身就在等待结果；等待时不持有任何锁）
+            rateLimiter.acquireBlocking();
             
             ImageExtractor.ImageElement img = imageElements.get(i);
             String base64 = ImageBase64Helper.fromImageElement(img);
@@ -181,6 +180,8 @@ public class VisionAiQueue {
     
     /**
      * 启动工作线程
+     * 每识别一张图片都先取得令牌，再从队列中取出当时优先级最高的任务，
+     * 识别完一张后任务带着进度重新入队，多图消息不会挡住之后到达的当前消息
      */
     private void startWorker() {
         workerThread = new Thread(() -> {
@@ -189,9 +190,21 @@ public class VisionAiQueue {
             while (!Thread.currentThread().isInterrupted()) {
                 try {
                     ImageRecognitionTask task = taskQueue.take();
+                    if (skipCached(task)) {
+                        continue;
+                    }
                     
-                    // 异步执行
-                    executorService.submit(() -> processTask(task));
+                    // 等待令牌期间可能有更高优先级的任务到达：放回队列，令牌交给当时的队头
+                    rateLimiter.acquireBlocking();
+                    taskQueue.offer(task);
+                    task = taskQueue.poll();
+                    while (task != null && skipCached(task)) {
+                        task = taskQueue.poll();
+                    }
+                    if (task != null) {
+                        final ImageRecognitionTask granted = task;
+                        executorService.execute(() -> recognizeNext(granted));
+                    }
                     
                 } catch (InterruptedException e) {
                     debugLog("工作线程被中断");
@@ -206,50 +219,61 @@ public class VisionAiQueue {
     }
     
     /**
-     * 处理单个任务
+     * 跳过已缓存的图片，全部完成时回调
+     * @return 任务已完成（不需要令牌）
      */
-    private void processTask(ImageRecognitionTask task) {
-        try {
-            List<String> descriptions = new ArrayList<>();
-            
-            for (int i = 0; i < task.imageElements.size(); i++) {
-                // 检查单张图片缓存
-                String cached = ImageDescriptionCache.get(task.conversationId, task.msgId, i);
-                if (cached != null) {
-                    descriptions.add(cached);
-                    continue;
-                }
-                
-                // 限流
-                rateLimiter.acquire();
-                
-                ImageExtractor.ImageElement img = task.imageElements.get(i);
-                String base64 = ImageBase64Helper.fromImageElement(img);
-                
-                if (base64 != null) {
-                    String description = VisionAiClient.analyzeImageSync(base64);
-                    
-                    if (description != null && !description.isEmpty()) {
-                        descriptions.add(description);
-                        ImageDescriptionCache.put(task.conversationId, task.msgId, i, description);
-                        rateLimiter.onSuccess();
-                    } else {
-                        descriptions.add("[图片识别失败]");
-                    }
-                } else {
-                    descriptions.add("[无法读取图片]");
-                }
+    private boolean skipCached(ImageRecognitionTask task) {
+        while (task.nextIndex < task.imageElements.size()) {
+            String cached = ImageDescriptionCache.get(task.conversationId, task.msgId, task.nextIndex);
+            if (cached == null) {
+                return false;
             }
-            
-            // 回调成功
-            mainHandler.post(() -> task.callback.onSuccess(descriptions));
-            
+            task.descriptions.add(cached);
+            task.nextIndex++;
+        }
+        List<String> descriptions = task.descriptions;
+        mainHandler.post(() -> task.callback.onSuccess(descriptions));
+        return true;
+    }
+    
+    /**
+     * 识别任务的下一张图片（线程池中执行，已取得令牌），还有剩余图片时重新入队
+     */
+    private void recognizeNext(ImageRecognitionTask task) {
+        try {
+            task.descriptions.add(recognize(task, task.nextIndex));
         } catch (Exception e) {
             debugLog("任务处理失败: " + e.getMessage());
             mainHandler.post(() -> task.callback.onFailure(e));
+            return;
+        }
+        task.nextIndex++;
+        if (task.nextIndex < task.imageElements.size()) {
+            taskQueue.offer(task);
+        } else {
+            List<String> descriptions = task.descriptions;
+            mainHandler.post(() -> task.callback.onSuccess(descriptions));
         }
     }
     
+    /**
+     * 识别单张图片（线程池中执行，已取得令牌）
+     */
+    private String recognize(ImageRecognitionTask task, int index) {
+        ImageExtractor.ImageElement img = task.imageElements.get(index);
+        String base64 = ImageBase64Helper.fromImageElement(img);
+        if (base64 == null) {
+            return "[无法读取图片]";
+        }
+        String description = VisionAiClient.analyzeImageSync(base64);
+        if (description != null && !description.isEmpty()) {
+            ImageDescriptionCache.put(task.conversationId, task.msgId, index, description);
+            rateLimiter.onSuccess();
+            return description;
+        }
+        return "[图片识别失败]";
+    }
+    
     /**
      * 获取队列大小
      */
@@ -277,6 +301,9 @@ public class VisionAiQueue {
         final boolean highPriority;
         final VisionCallback callback;
         final long timestamp;
+        // 识别进度（同一时间只在工作线程或一个识别线程上访问，入队/出队保证可见性）
+        final List<String> descriptions = new ArrayList<>();
+        int nextIndex;
         
         ImageRecognitionTask(Context context, String conversationId, String msgId,
                             List<ImageExtractor.ImageElement> imageElements,
@@ -301,66 +328,6 @@ public class VisionAiQueue {
         }
     }
     
-    /**
-     * 动态限流器
-     */
-    private static class DynamicRateLimiter {
-        private volatile double currentQPS;
-        private volatile double targetQPS;
-        private final double minQPS;
-        private final AtomicInteger successCount = new AtomicInteger(0);
-        private volatile long lastAdjustTime = System.currentTimeMillis();
-        private volatile long lastTokenTime = System.currentTimeMillis();
-        
-        DynamicRateLimiter(double initialQPS, double minQPS) {
-            this.targetQPS = initialQPS;
-            this.minQPS = minQPS;
-            this.currentQPS = initialQPS;
-        }
-        
-        synchronized void acquire() {
-            // 更新目标QPS（使用外挂AI专用的QPS配置）
-            float configQps = ConfigManager.getVisionAiQps();
-            if (Math.abs(this.targetQPS - configQps) > 0.1) {
-                this.targetQPS = configQps;
-                if (this.currentQPS > configQps) {
-                    this.currentQPS = configQps;
-                }
-            }
-            
-            long intervalMs = (long) (1000.0 / currentQPS);
-            long now = System.currentTimeMillis();
-            long waitTime = lastTokenTime + intervalMs - now;
-            
-            if (waitTime > 0) {
-                try {
-                    Thread.sleep(waitTime);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-            
-            lastTokenTime = System.currentTimeMillis();
-        }
-        
-        void onSuccess() {
-            int count = successCount.incrementAndGet();
-            long now = System.currentTimeMillis();
-            
-            if (now - lastAdjustTime > 30000 && count >= 10 && currentQPS < targetQPS) {
-                synchronized (this) {
-                    currentQPS = Math.min(targetQPS, currentQPS * 1.2);
-                    successCount.set(0);
-                    lastAdjustTime = now;
-                }
-            }
-        }
-        
-        double getCurrentQPS() {
-            return currentQPS;
-        }
-    }
-    
     private static void debugLog(String message) {
         try {
             if (ConfigManager.isDebugHookLogEnabled()) {